@@ -0,0 +1,93 @@
+package Aggregation;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the top level of the accumulators. An accumulator keeps
+ * the state of a single aggregate for all the groups: the state of each
+ * group is stored in a slot of the arrays of primitive values, and the
+ * slot is the index of the group. So updating a group changes a number 
+ * in the array in place, no object is created for every tuple.
+ * @author messfish
+ *
+ */
+public abstract class Accumulator {
+
+	protected int column;
+	// the index of the attribute in the tuple, -1 means the "*".
+	protected int capacity; // the number of slots in the arrays.
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 */
+	public Accumulator(int column) {
+		this.column = column;
+	}
+	
+	/**
+	 * This method is used to make sure there are enough slots, the arrays
+	 * grow twice as large when there is not enough space.
+	 * @param slots the number of slots that will be used.
+	 */
+	public void ensureCapacity(int slots) {
+		if(slots <= capacity)
+			return;
+		int size = Math.max(16, Math.max(slots, capacity * 2));
+		resize(size);
+		capacity = size;
+	}
+	
+	/**
+	 * This method sets the state of a new group with its first tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	public abstract void init(int slot, Tuple tuple);
+	
+	/**
+	 * This method sets the state of a group that has no tuple, which is
+	 * the only group of the aggregates without a "GROUP BY" on an empty
+	 * input. Since there is no null value, the results of such a group
+	 * are 0, or an empty string for a string attribute.
+	 * @param slot the index of the group.
+	 */
+	public abstract void clear(int slot);
+	
+	/**
+	 * This method updates the state of a group with another tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	public abstract void add(int slot, Tuple tuple);
+	
+	/**
+	 * This method returns the value of the aggregate for a group.
+	 * @param slot the index of the group.
+	 * @return the value of the aggregate.
+	 */
+	public abstract DataType getResult(int slot);
+	
+	/**
+	 * This method returns the data type of the result, which is the same
+	 * as the data type in the schema.
+	 * @return the data type of the result.
+	 */
+	public abstract int getDataType();
+	
+	/**
+	 * This method returns the number of bytes a slot takes, it is used to
+	 * check how many groups could fit into the memory.
+	 * @return the number of bytes of a single slot.
+	 */
+	public abstract int getSlotSize();
+	
+	/**
+	 * This method changes the size of the arrays, the states of the
+	 * slots which are already used should be kept.
+	 * @param size the new number of slots.
+	 */
+	protected abstract void resize(int size);
+
+}
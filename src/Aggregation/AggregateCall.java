@@ -0,0 +1,259 @@
+package Aggregation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import SQLExpression.AbstractVisitor;
+import SQLExpression.BinaryExpression;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SQLExpression.MultipleExpression;
+import SQLExpression.UnaryExpression;
+import SQLParser.PlainSelect;
+import Support.Mule;
+
+/**
+ * This class describes a single aggregate function that appears in the
+ * query, such as SUM(S.A) or COUNT(*). The parser keeps an aggregate as
+ * a column node whose name is the function with its argument, so this
+ * class splits that name into the function and the attribute. The name
+ * itself is used as the attribute name in the schema of the aggregation.
+ * @author messfish
+ *
+ */
+public class AggregateCall {
+
+	private static final String[] FUNCTIONS = {"COUNT", "SUM", "AVG", "MIN", "MAX",
+			"APPROX_COUNT_DISTINCT", "APPROX_PERCENTILE", "APPROX_MEDIAN"};
+	private String name; // the whole name, such as "SUM(S.A)".
+	private String function; // the name of the function, such as "SUM".
+	private String attribute; // the argument of the function, "*" for all.
+	private boolean isDistinct;
+	// this value indicates there is a "DISTINCT" in the argument.
+	private double fraction = 0.5;
+	// the quantile of APPROX_PERCENTILE, such as 0.9 in 
+	// APPROX_PERCENTILE(S.A,0.9). It is 0.5 for APPROX_MEDIAN.
+	
+	/**
+	 * Constructor: this constructor splits the name of the aggregate
+	 * into the function and the attribute.
+	 * @param name the name of the aggregate.
+	 */
+	public AggregateCall(String name) {
+		this.name = name;
+		int left = name.indexOf('('), right = name.lastIndexOf(')');
+		function = name.substring(0, left);
+		attribute = name.substring(left + 1, right);
+		if(attribute.startsWith("DISTINCT")) {
+			isDistinct = true;
+			attribute = attribute.substring(8);
+		}
+		int comma = attribute.indexOf(',');
+		if(comma != -1) {
+			fraction = Double.parseDouble(attribute.substring(comma + 1));
+			attribute = attribute.substring(0, comma);
+		}
+	}
+	
+	/**
+	 * This method checks whether a column name is actually an aggregate.
+	 * @param name the name of the column.
+	 * @return the boolean value shows whether it is an aggregate.
+	 */
+	public static boolean isAggregate(String name) {
+		int left = name.indexOf('(');
+		if(left == -1 || !name.endsWith(")"))
+			return false;
+		String function = name.substring(0, left);
+		for(String str : FUNCTIONS)
+			if(str.equals(function))
+				return true;
+		return false;
+	}
+	
+	/**
+	 * This method picks out all the aggregates in the expressions, the
+	 * same aggregate only appears once in the result.
+	 * @param list the list of expressions, the null ones are skipped.
+	 * @return the list of aggregates in the order they are found.
+	 */
+	public static List<AggregateCall> collect(List<Expression> list) {
+		List<AggregateCall> result = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		AbstractVisitor visitor = new AbstractVisitor() {
+			@Override
+			public void visit(Expression express) {
+				if(express instanceof ColumnNode) {
+					String name = ((ColumnNode)express).getWholeColumnName();
+					if(isAggregate(name) && names.add(name))
+						result.add(new AggregateCall(name));
+				}
+			}
+			@Override
+			public void visit(BinaryExpression express) {
+				express.getLeftChild().accept(this);
+				express.getRightChild().accept(this);
+			}
+			@Override
+			public void visit(UnaryExpression express) {
+				express.getChild().accept(this);
+			}
+			@Override
+			public void visit(MultipleExpression express) {
+				for(Expression child : express.getList())
+					child.accept(this);
+			}
+		};
+		for(Expression express : list)
+			if(express != null)
+				express.accept(visitor);
+		return result;
+	}
+	
+	/**
+	 * This method picks out the aggregates that the query asks for: the
+	 * ones in the SELECT, the HAVING and the ORDER BY language. 
+	 * @param plain the select query.
+	 * @return the list of aggregates in the order they are found.
+	 */
+	public static List<AggregateCall> collect(PlainSelect plain) {
+		List<Expression> list = new ArrayList<>(plain.getSelectElements());
+		list.add(plain.getHavingExpression());
+		list.addAll(plain.getOrderByElements());
+		return collect(list);
+	}
+	
+	/**
+	 * This method builds the accumulator which computes this aggregate.
+	 * When the tuples come from a partial aggregation, the schema holds
+	 * the state of this aggregate instead of the attribute, so the
+	 * accumulator merges the states.
+	 * @param schema the schema of the tuples to be aggregated.
+	 * @return the accumulator of this aggregate.
+	 */
+	public Accumulator newAccumulator(Map<String, Mule> schema) {
+		return newAccumulator(schema, null);
+	}
+	
+	/**
+	 * This method works just like the one above, except that the tuples
+	 * of a group could be sorted on an attribute, so COUNT(DISTINCT) of
+	 * that attribute compares a value with the one before it instead of
+	 * keeping all the values of the group.
+	 * @param schema the schema of the tuples to be aggregated.
+	 * @param sorted the attribute the tuples of a group are sorted on,
+	 * null means they are not sorted.
+	 * @return the accumulator of this aggregate.
+	 */
+	public Accumulator newAccumulator(Map<String, Mule> schema, String sorted) {
+		Mule state = schema.get(getStateName(0));
+		if(state != null)
+			return new MergeAccumulator((MergeableAccumulator)newAccumulator(
+					-1, state.getDataType(), false), state.getIndex());
+		int column = -1, type = 1;
+		if(!attribute.equals("*")) {
+			Mule mule = schema.get(attribute);
+			column = mule.getIndex();
+			type = mule.getDataType();
+		}
+		/* the ties of a sort are pulled apart by the whole tuple. */
+		return newAccumulator(column, type, sorted != null &&
+				(attribute.equals(sorted) || attribute.equals("*")));
+	}
+	
+	/**
+	 * This method finds the attribute the tuples of a group should be
+	 * sorted on, which is the attribute of the first COUNT(DISTINCT).
+	 * The other attributes of COUNT(DISTINCT) are not sorted, so their
+	 * accumulators keep the values of a group instead.
+	 * @param calls the list of aggregates to be computed.
+	 * @return the attribute, null when there is none.
+	 */
+	public static String getSortedAttribute(List<AggregateCall> calls) {
+		for(AggregateCall call : calls)
+			if(call.isDistinct && !call.attribute.equals("*"))
+				return call.attribute;
+		return null;
+	}
+	
+	/**
+	 * This method builds the accumulator of the function.
+	 * @param column the index of the attribute in the tuple.
+	 * @param type the data type of the attribute.
+	 * @param isSorted whether the tuples of a group are sorted on the
+	 * attribute.
+	 * @return the accumulator of this aggregate.
+	 */
+	private Accumulator newAccumulator(int column, int type, boolean isSorted) {
+		if(function.equals("COUNT") && isDistinct)
+			return new DistinctCountAccumulator(column, isSorted);
+		if(function.equals("COUNT"))
+			return new CountAccumulator(column);
+		if(function.equals("SUM"))
+			return new SumAccumulator(column, type);
+		if(function.equals("AVG"))
+			return new AvgAccumulator(column, type);
+		if(function.equals("APPROX_COUNT_DISTINCT"))
+			return new ApproxCountAccumulator(column);
+		if(function.startsWith("APPROX_"))
+			return new PercentileAccumulator(column, fraction);
+		return new MinMaxAccumulator(column, type, function.equals("MAX"));
+	}
+	
+	/**
+	 * This method returns the attribute name of a value in the state of
+	 * this aggregate, such as "AVG(S.A)[1]" for the count of the average.
+	 * @param index the index of the value in the state.
+	 * @return the name of the value in the schema.
+	 */
+	public String getStateName(int index) {
+		return name + "[" + index + "]";
+	}
+	
+	/**
+	 * This is the getter method of the whole name.
+	 * @return the name of the aggregate.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * This is the getter method of the function name.
+	 * @return the name of the function.
+	 */
+	public String getFunction() {
+		return function;
+	}
+	
+	/**
+	 * This is the getter method of the attribute.
+	 * @return the argument of the function.
+	 */
+	public String getAttribute() {
+		return attribute;
+	}
+	
+	/**
+	 * This method checks whether the state of this aggregate could be
+	 * written into tuples, so it could be partially aggregated. The 
+	 * sketches are written in several tuples, but COUNT(DISTINCT) keeps
+	 * all the values of a group, which could not be written.
+	 * @return the boolean value shows whether it could be merged.
+	 */
+	public boolean isMergeable() {
+		return !isDistinct;
+	}
+	
+	/**
+	 * This is the getter method of whether the argument is distinct.
+	 * @return the boolean value shows whether it is distinct.
+	 */
+	public boolean isDistinct() {
+		return isDistinct;
+	}
+
+}
@@ -0,0 +1,177 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of APPROX_COUNT_DISTINCT(...). Every 
+ * group keeps a HyperLogLog sketch of the values, so the tuples do not 
+ * need to be sorted like COUNT(DISTINCT ...), and it works in the hash
+ * aggregation as well. For APPROX_COUNT_DISTINCT(*), the whole tuple 
+ * is hashed. The state of a group is the sketch, which is written in
+ * pieces: the first value tells what the piece holds, followed by the
+ * long integers of the sketch.
+ * @author messfish
+ *
+ */
+public class ApproxCountAccumulator extends MergeableAccumulator {
+
+	private static final int WIDTH = 128;
+	// the number of long integers of the sketch in a piece of the state.
+	private HyperLogLog[] sketches = new HyperLogLog[0];
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 */
+	public ApproxCountAccumulator(int column) {
+		super(column);
+	}
+	
+	/**
+	 * This method creates the sketch of a new group.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		sketches[slot] = new HyperLogLog();
+		add(slot, tuple);
+	}
+	
+	/**
+	 * This method creates an empty sketch for a group without any tuple.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		sketches[slot] = new HyperLogLog();
+	}
+	
+	/**
+	 * This method puts the hash of the value into the sketch.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		long hash = column == -1 ? HyperLogLog.hash(tuple) :
+					HyperLogLog.hash(tuple.getData(column));
+		sketches[slot].add(hash);
+	}
+	
+	/**
+	 * This method returns the estimated number of distinct values.
+	 * @param slot the index of the group.
+	 * @return the count of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		return new DataType(sketches[slot].estimate());
+	}
+	
+	/**
+	 * The count is always a long integer.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return 1;
+	}
+	
+	/**
+	 * A sketch starts small but grows with the values of the group, so
+	 * the slot is counted by the largest size of the sketch, otherwise
+	 * the groups could take much more memory than the grant.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return HyperLogLog.getMaxSize();
+	}
+	
+	/**
+	 * The state is the kind of the piece followed by the long integers.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		int[] result = new int[WIDTH + 1];
+		Arrays.fill(result, 1);
+		return result;
+	}
+	
+	/**
+	 * This method returns the number of pieces the sketch is written in.
+	 * @param slot the index of the group.
+	 * @return the number of pieces of the state.
+	 */
+	@Override
+	public int getNumOfPieces(int slot) {
+		return sketches[slot].getNumOfPieces(WIDTH);
+	}
+	
+	/**
+	 * This method writes the first piece of the sketch of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		writeState(slot, tuple, start, 0);
+	}
+	
+	/**
+	 * This method writes a piece of the sketch of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 * @param piece the index of the piece.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start, int piece) {
+		long[] values = new long[WIDTH];
+		tuple.setData(start, new DataType(sketches[slot].writePiece(piece, values)));
+		for(int i=0;i<WIDTH;i++)
+			tuple.setData(start + i + 1, new DataType(values[i]));
+	}
+	
+	/**
+	 * This method creates the sketch of a new group from a piece.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		sketches[slot] = new HyperLogLog();
+		mergeState(slot, tuple, start);
+	}
+	
+	/**
+	 * This method merges a piece into the sketch of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		long[] values = new long[WIDTH];
+		for(int i=0;i<WIDTH;i++)
+			values[i] = tuple.getData(start + i + 1).getLong();
+		sketches[slot].mergePiece(tuple.getData(start).getLong(), values);
+	}
+	
+	/**
+	 * This method changes the size of the array of the sketches.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		sketches = Arrays.copyOf(sketches, size);
+	}
+
+}
@@ -0,0 +1,148 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of the AVG function. It keeps the sum
+ * just like the SUM function, together with the number of tuples. The
+ * average is always a double, so it does not lose the fractional part.
+ * @author messfish
+ *
+ */
+public class AvgAccumulator extends SumAccumulator {
+
+	private long[] counts = new long[0];
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 * @param type the data type of the attribute.
+	 */
+	public AvgAccumulator(int column, int type) {
+		super(column, type);
+	}
+	
+	/**
+	 * This method sets the sum and the count of a new group.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		super.init(slot, tuple);
+		counts[slot] = 1;
+	}
+	
+	/**
+	 * This method sets the sum and the count of a group without any 
+	 * tuple to zero.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		super.clear(slot);
+		counts[slot] = 0;
+	}
+	
+	/**
+	 * This method updates the sum and the count of the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		super.add(slot, tuple);
+		counts[slot]++;
+	}
+	
+	/**
+	 * This method returns the average of a group, which is 0 for the 
+	 * group without any tuple.
+	 * @param slot the index of the group.
+	 * @return the average of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		double sum = isLong ? longsums[slot] : doublesums[slot];
+		if(counts[slot] == 0)
+			return new DataType(0.0);
+		return new DataType(sum / counts[slot]);
+	}
+	
+	/**
+	 * The average is always a double.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return 5;
+	}
+	
+	/**
+	 * A slot holds the sum and the count.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return 16;
+	}
+	
+	/**
+	 * The state is the sum followed by the count.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		return new int[]{isLong ? 1 : 5, 1};
+	}
+	
+	/**
+	 * This method writes the sum and the count of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		super.writeState(slot, tuple, start);
+		tuple.setData(start + 1, new DataType(counts[slot]));
+	}
+	
+	/**
+	 * This method sets the sum and the count of a new group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		super.initState(slot, tuple, start);
+		counts[slot] = tuple.getData(start + 1).getLong();
+	}
+	
+	/**
+	 * This method adds a partial sum and count to the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		super.mergeState(slot, tuple, start);
+		counts[slot] += tuple.getData(start + 1).getLong();
+	}
+	
+	/**
+	 * This method changes the size of the arrays.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		super.resize(size);
+		counts = Arrays.copyOf(counts, size);
+	}
+
+}
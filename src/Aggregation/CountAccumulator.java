@@ -0,0 +1,135 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of the COUNT function. Since there is no
+ * null value in the tables, COUNT(*) and COUNT of an attribute are the
+ * same: the number of tuples in the group.
+ * @author messfish
+ *
+ */
+public class CountAccumulator extends MergeableAccumulator {
+
+	private long[] counts = new long[0];
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 */
+	public CountAccumulator(int column) {
+		super(column);
+	}
+	
+	/**
+	 * This method sets the count of a new group to one.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		counts[slot] = 1;
+	}
+	
+	/**
+	 * This method sets the count of a group without any tuple to zero.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		counts[slot] = 0;
+	}
+	
+	/**
+	 * This method adds one to the count of the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		counts[slot]++;
+	}
+	
+	/**
+	 * This method returns the count of a group.
+	 * @param slot the index of the group.
+	 * @return the count of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		return new DataType(counts[slot]);
+	}
+	
+	/**
+	 * The count is always a long integer.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return 1;
+	}
+	
+	/**
+	 * A slot holds a long integer.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return 8;
+	}
+	
+	/**
+	 * The state is the count itself.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		return new int[]{1};
+	}
+	
+	/**
+	 * This method writes the count of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		tuple.setData(start, new DataType(counts[slot]));
+	}
+	
+	/**
+	 * This method sets the count of a new group from a partial count.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		counts[slot] = tuple.getData(start).getLong();
+	}
+	
+	/**
+	 * This method adds a partial count to the count of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		counts[slot] += tuple.getData(start).getLong();
+	}
+	
+	/**
+	 * This method changes the size of the array.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		counts = Arrays.copyOf(counts, size);
+	}
+
+}
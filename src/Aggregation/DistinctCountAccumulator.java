@@ -0,0 +1,156 @@
+package Aggregation;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of COUNT(DISTINCT ...). When the tuples
+ * of a group come in the order of the attribute, the same values are 
+ * next to each other: a value is counted when it differs from the value
+ * before it. For COUNT(DISTINCT*), the whole tuple is compared. Since
+ * the tuples could only be sorted on one attribute after the group
+ * attributes, the COUNT(DISTINCT) of any other attribute keeps the set
+ * of the values of the group, which is dropped once the group is done.
+ * That is why it is only used by the sort based aggregation.
+ * @author messfish
+ *
+ */
+public class DistinctCountAccumulator extends Accumulator {
+
+	private long[] counts = new long[0];
+	private Tuple[] lasttuples = new Tuple[0];
+	// the tuple added last of every group.
+	private boolean isSorted;
+	// whether the tuples of a group are sorted on the attribute.
+	private Set<Object>[] values = newSets(0);
+	// the values of every group when the tuples are not sorted.
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 * @param isSorted whether the tuples of a group are sorted on the
+	 * attribute.
+	 */
+	public DistinctCountAccumulator(int column, boolean isSorted) {
+		super(column);
+		this.isSorted = isSorted;
+	}
+	
+	/**
+	 * This method sets the count of a new group to one.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		counts[slot] = 1;
+		if(isSorted)
+			lasttuples[slot] = tuple;
+		else {
+			values[slot] = new HashSet<>();
+			values[slot].add(getValue(tuple.getData(column)));
+		}
+	}
+	
+	/**
+	 * This method sets the count of a group without any tuple to zero.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		counts[slot] = 0;
+		lasttuples[slot] = null;
+		values[slot] = null;
+	}
+	
+	/**
+	 * This method adds one to the count when the tuple differs from
+	 * the one before it, or when the value is not in the set.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		if(!isSorted) {
+			if(values[slot].add(getValue(tuple.getData(column))))
+				counts[slot]++;
+			return;
+		}
+		Tuple last = lasttuples[slot];
+		boolean isSame = column == -1 ? last.isEqual(tuple) :
+						 last.getData(column).compare(tuple.getData(column)) == 0;
+		if(!isSame)
+			counts[slot]++;
+		lasttuples[slot] = tuple;
+	}
+	
+	/**
+	 * This method returns the number of distinct values of a group.
+	 * @param slot the index of the group.
+	 * @return the count of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		return new DataType(counts[slot]);
+	}
+	
+	/**
+	 * The count is always a long integer.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return 1;
+	}
+	
+	/**
+	 * A slot holds a long integer and a reference.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return 16;
+	}
+	
+	/**
+	 * This method changes the size of the arrays.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		counts = Arrays.copyOf(counts, size);
+		lasttuples = Arrays.copyOf(lasttuples, size);
+		Set<Object>[] array = newSets(size);
+		System.arraycopy(values, 0, array, 0, values.length);
+		values = array;
+	}
+	
+	/**
+	 * This method returns the value that is put into the set, which is
+	 * the long integer, the double value or the string itself.
+	 * @param data the value of the attribute.
+	 * @return the object that stands for the value.
+	 */
+	private Object getValue(DataType data) {
+		if(data.getType() == 1)
+			return data.getLong();
+		if(data.getType() == 2)
+			return data.getString();
+		return data.getDouble();
+	}
+	
+	/**
+	 * This method creates an array of the sets.
+	 * @param size the number of sets in the array.
+	 * @return the array of the sets.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Set<Object>[] newSets(int size) {
+		return new Set[size];
+	}
+
+}
@@ -0,0 +1,180 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is a hash table that maps the values of the group attributes
+ * to the index of the group. It uses open addressing with linear probing:
+ * the table is an array of integers, each entry is the index of a group
+ * plus one, and 0 means the entry is empty. The hash of every group is
+ * kept, so most of the probes are settled by comparing two integers, and
+ * the table could grow without computing the hashes again. The groups
+ * are numbered from 0 in the order they are added, the number is used
+ * as the slot in the accumulators.
+ * @author messfish
+ *
+ */
+public class GroupTable {
+
+	private int[] keyindex; // the indexes of the group attributes.
+	private int[] table; // the entries of the hash table.
+	private int mask; // the size of the table minus one.
+	private int[] hashes = new int[16]; // the hash of every group.
+	private DataType[][] keys = new DataType[16][];
+	// the values of the group attributes of every group.
+	private int size; // the number of groups.
+	
+	/**
+	 * Constructor: this constructor builds an empty table.
+	 * @param keyindex the indexes of the group attributes in the tuple.
+	 */
+	public GroupTable(int[] keyindex) {
+		this.keyindex = keyindex;
+		table = new int[64];
+		mask = table.length - 1;
+	}
+	
+	/**
+	 * This method computes the hash of the group attributes of a tuple.
+	 * The values are hashed directly, so no object is created.
+	 * @param tuple the tuple to be hashed.
+	 * @return the hash of the group attributes.
+	 */
+	public int hash(Tuple tuple) {
+		int hash = 0;
+		for(int index : keyindex) {
+			DataType data = tuple.getData(index);
+			int value = 0;
+			if(data.getType() == 1)
+				value = Long.hashCode(data.getLong());
+			else if(data.getType() == 2)
+				value = data.getString().hashCode();
+			else if(data.getType() == 5)
+				value = Double.hashCode(data.getDouble() == 0.0 ? 0.0 : data.getDouble());
+			hash = hash * 31 + value;
+		}
+		/* spread the bits so the low bits used by the table are mixed. */
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+	
+	/**
+	 * This method finds the group of a tuple.
+	 * @param tuple the tuple whose group will be found.
+	 * @param hash the hash of the tuple from the hash() method.
+	 * @return the index of the group, -1 when there is no such group.
+	 */
+	public int find(Tuple tuple, int hash) {
+		int position = hash & mask;
+		while(table[position] != 0) {
+			int group = table[position] - 1;
+			if(hashes[group] == hash && matches(group, tuple))
+				return group;
+			position = (position + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * This method adds a new group for the tuple. Notice the caller must
+	 * make sure the group of the tuple does not exist.
+	 * @param tuple the first tuple of the group.
+	 * @param hash the hash of the tuple from the hash() method.
+	 * @return the index of the new group.
+	 */
+	public int add(Tuple tuple, int hash) {
+		if((size + 1) * 2 > table.length)
+			rehash();
+		if(size == hashes.length) {
+			hashes = Arrays.copyOf(hashes, size * 2);
+			keys = Arrays.copyOf(keys, size * 2);
+		}
+		DataType[] key = new DataType[keyindex.length];
+		for(int i=0;i<key.length;i++)
+			key[i] = tuple.getData(keyindex[i]);
+		hashes[size] = hash;
+		keys[size] = key;
+		insert(size, hash);
+		size++;
+		return size - 1;
+	}
+	
+	/**
+	 * This method returns the values of the group attributes of a group.
+	 * @param group the index of the group.
+	 * @return the values of the group attributes.
+	 */
+	public DataType[] getKey(int group) {
+		return keys[group];
+	}
+	
+	/**
+	 * This method returns the number of groups in the table.
+	 * @return the number of groups.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * This method returns the number of bytes the table takes for each
+	 * group, not including the values of the group attributes.
+	 * @return the number of bytes of a single group.
+	 */
+	public static int getSlotSize() {
+		/* two entries of the table, the hash and the reference. */
+		return 20;
+	}
+	
+	/**
+	 * This method checks whether a tuple belongs to a group by comparing
+	 * the values of the group attributes one by one.
+	 * @param group the index of the group.
+	 * @param tuple the tuple to be checked.
+	 * @return the boolean value shows whether the tuple is in the group.
+	 */
+	private boolean matches(int group, Tuple tuple) {
+		DataType[] key = keys[group];
+		for(int i=0;i<key.length;i++) {
+			DataType data = tuple.getData(keyindex[i]);
+			if(data.getType() == 1) {
+				if(data.getLong() != key[i].getLong()) return false;
+			}else if(data.getType() == 2) {
+				if(!data.getString().equals(key[i].getString())) return false;
+			}else if(data.getType() == 5) {
+				if(data.getDouble() != key[i].getDouble()) return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * This method puts a group into the first empty entry after the
+	 * position of its hash.
+	 * @param group the index of the group.
+	 * @param hash the hash of the group.
+	 */
+	private void insert(int group, int hash) {
+		int position = hash & mask;
+		while(table[position] != 0)
+			position = (position + 1) & mask;
+		table[position] = group + 1;
+	}
+	
+	/**
+	 * This method doubles the size of the table and puts all the groups
+	 * into the new table by their hashes.
+	 */
+	private void rehash() {
+		table = new int[table.length * 2];
+		mask = table.length - 1;
+		for(int i=0;i<size;i++)
+			insert(i, hashes[i]);
+	}
+
+}
@@ -0,0 +1,160 @@
+package Aggregation;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is used by the final aggregation when the input comes from
+ * a partial aggregation. The tuples do not hold the attribute of the
+ * aggregate, but the state of a group that is partially aggregated, so
+ * this accumulator merges the states by the accumulator it wraps.
+ * @author messfish
+ *
+ */
+public class MergeAccumulator extends MergeableAccumulator {
+
+	private MergeableAccumulator accumulator; // the accumulator that keeps the states.
+	
+	/**
+	 * Constructor: this constructor sets the accumulator to merge the 
+	 * states and the index of the state in the tuple.
+	 * @param accumulator the accumulator that keeps the states.
+	 * @param column the index of the first value of the state.
+	 */
+	public MergeAccumulator(MergeableAccumulator accumulator, int column) {
+		super(column);
+		this.accumulator = accumulator;
+	}
+	
+	/**
+	 * This method sets the state of a new group with its first state.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		accumulator.initState(slot, tuple, column);
+	}
+	
+	/**
+	 * This method sets the state of a group without any state.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		accumulator.clear(slot);
+	}
+	
+	/**
+	 * This method merges another state into the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		accumulator.mergeState(slot, tuple, column);
+	}
+	
+	/**
+	 * This method returns the value of the aggregate for a group.
+	 * @param slot the index of the group.
+	 * @return the value of the aggregate.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		return accumulator.getResult(slot);
+	}
+	
+	/**
+	 * This method returns the data type of the result.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return accumulator.getDataType();
+	}
+	
+	/**
+	 * This method returns the number of bytes a slot takes.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return accumulator.getSlotSize();
+	}
+	
+	/**
+	 * The state stays the same after merging.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		return accumulator.getStateTypes();
+	}
+	
+	/**
+	 * This method writes the state of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		accumulator.writeState(slot, tuple, start);
+	}
+	
+	/**
+	 * This method returns the number of tuples the state of a group is
+	 * split into.
+	 * @param slot the index of the group.
+	 * @return the number of pieces of the state.
+	 */
+	@Override
+	public int getNumOfPieces(int slot) {
+		return accumulator.getNumOfPieces(slot);
+	}
+	
+	/**
+	 * This method writes a piece of the state of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 * @param piece the index of the piece.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start, int piece) {
+		accumulator.writeState(slot, tuple, start, piece);
+	}
+	
+	/**
+	 * This method sets the state of a new group from the state in a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		accumulator.initState(slot, tuple, start);
+	}
+	
+	/**
+	 * This method merges the state in a tuple into the state of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		accumulator.mergeState(slot, tuple, start);
+	}
+	
+	/**
+	 * This method changes the size of the arrays of the accumulator.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		accumulator.ensureCapacity(size);
+	}
+
+}
@@ -0,0 +1,91 @@
+package Aggregation;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator whose state of a group could be written
+ * into tuples, so the groups could be partially aggregated and the 
+ * states of the same group could be merged later. The state is a few
+ * values of a fixed size, so COUNT(DISTINCT), which keeps all the values
+ * of a group, is not one of them. A sketch could be larger than a page,
+ * so its state is split into pieces of a fixed size, each of them is 
+ * written into a tuple of its own and merged one by one. The other 
+ * accumulators of the same group write a state that changes nothing
+ * when it is merged into the pieces after the first one.
+ * @author messfish
+ *
+ */
+public abstract class MergeableAccumulator extends Accumulator {
+
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 */
+	public MergeableAccumulator(int column) {
+		super(column);
+	}
+	
+	/**
+	 * This method returns the data types of the state of a group. The
+	 * state is what a partial aggregation passes to the final one, so
+	 * two states of the same group could be merged.
+	 * @return the array of data types of the state.
+	 */
+	public abstract int[] getStateTypes();
+	
+	/**
+	 * This method writes the state of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	public abstract void writeState(int slot, Tuple tuple, int start);
+	
+	/**
+	 * This method returns the number of tuples the state of a group is
+	 * split into, which is 1 for the states of a few values.
+	 * @param slot the index of the group.
+	 * @return the number of pieces of the state.
+	 */
+	public int getNumOfPieces(int slot) {
+		return 1;
+	}
+	
+	/**
+	 * This method writes a piece of the state of a group into a tuple.
+	 * The first piece is the whole state, the other pieces are zeros,
+	 * so the counts and the sums are not changed when they are merged.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 * @param piece the index of the piece.
+	 */
+	public void writeState(int slot, Tuple tuple, int start, int piece) {
+		if(piece == 0) {
+			writeState(slot, tuple, start);
+			return;
+		}
+		int[] types = getStateTypes();
+		for(int i=0;i<types.length;i++)
+			tuple.setData(start + i, types[i] == 1 ? new DataType(0L) :
+				types[i] == 2 ? new DataType("") : new DataType(0.0));
+	}
+	
+	/**
+	 * This method sets the state of a new group from the state in a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	public abstract void initState(int slot, Tuple tuple, int start);
+	
+	/**
+	 * This method merges the state in a tuple into the state of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	public abstract void mergeState(int slot, Tuple tuple, int start);
+
+}
@@ -0,0 +1,196 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of the MIN and the MAX functions. The 
+ * long integers and the doubles are kept in the arrays of primitive
+ * values, only the strings are kept as objects.
+ * @author messfish
+ *
+ */
+public class MinMaxAccumulator extends MergeableAccumulator {
+
+	private int type; // the data type of the attribute.
+	private boolean isMax; // true for MAX, false for MIN.
+	private long[] longvalues = new long[0];
+	private double[] doublevalues = new double[0];
+	private String[] stringvalues = new String[0];
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 * @param type the data type of the attribute.
+	 * @param isMax true for the MAX function, false for the MIN function.
+	 */
+	public MinMaxAccumulator(int column, int type, boolean isMax) {
+		super(column);
+		this.type = type;
+		this.isMax = isMax;
+	}
+	
+	/**
+	 * This method sets the value of a new group to the first value.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		set(slot, tuple.getData(column));
+	}
+	
+	/**
+	 * This method sets the value of a group.
+	 * @param slot the index of the group.
+	 * @param data the value of the group.
+	 */
+	private void set(int slot, DataType data) {
+		if(type == 1) longvalues[slot] = data.getLong();
+		else if(type == 2) stringvalues[slot] = data.getString();
+		else doublevalues[slot] = data.getDouble();
+	}
+	
+	/**
+	 * This method sets the value of a group without any tuple to zero,
+	 * or an empty string.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		if(type == 1) longvalues[slot] = 0;
+		else if(type == 2) stringvalues[slot] = "";
+		else doublevalues[slot] = 0;
+	}
+	
+	/**
+	 * This method keeps the smaller or the larger value of the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		update(slot, tuple.getData(column));
+	}
+	
+	/**
+	 * This method keeps the smaller or the larger one of the value and
+	 * the value of the group.
+	 * @param slot the index of the group.
+	 * @param data the value to be compared.
+	 */
+	private void update(int slot, DataType data) {
+		if(type == 1) {
+			long value = data.getLong();
+			if(isMax ? value > longvalues[slot] : value < longvalues[slot])
+				longvalues[slot] = value;
+		}else if(type == 2) {
+			int result = data.getString().compareTo(stringvalues[slot]);
+			if(isMax ? result > 0 : result < 0)
+				stringvalues[slot] = data.getString();
+		}else {
+			double value = data.getDouble();
+			if(isMax ? value > doublevalues[slot] : value < doublevalues[slot])
+				doublevalues[slot] = value;
+		}
+	}
+	
+	/**
+	 * This method returns the smallest or the largest value of a group.
+	 * @param slot the index of the group.
+	 * @return the value of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		if(type == 1) return new DataType(longvalues[slot]);
+		if(type == 2) return new DataType(stringvalues[slot]);
+		return new DataType(doublevalues[slot]);
+	}
+	
+	/**
+	 * The result has the same type of the attribute.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return type;
+	}
+	
+	/**
+	 * A slot holds a number or a reference to a string.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return 8;
+	}
+	
+	/**
+	 * The state is the smallest or the largest value itself.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		return new int[]{type};
+	}
+	
+	/**
+	 * This method writes the value of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		tuple.setData(start, getResult(slot));
+	}
+	
+	/**
+	 * The value of the group is written into every piece, since merging
+	 * the same value again does not change the minimum or the maximum.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the state in the tuple.
+	 * @param piece the index of the piece.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start, int piece) {
+		writeState(slot, tuple, start);
+	}
+	
+	/**
+	 * This method sets the value of a new group from a partial value.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		set(slot, tuple.getData(start));
+	}
+	
+	/**
+	 * This method compares a partial value with the value of the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		update(slot, tuple.getData(start));
+	}
+	
+	/**
+	 * This method changes the size of the array in use.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		if(type == 1) longvalues = Arrays.copyOf(longvalues, size);
+		else if(type == 2) stringvalues = Arrays.copyOf(stringvalues, size);
+		else doublevalues = Arrays.copyOf(doublevalues, size);
+	}
+
+}
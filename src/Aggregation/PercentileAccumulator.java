@@ -0,0 +1,185 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of APPROX_PERCENTILE(..., fraction) and
+ * APPROX_MEDIAN(...), which is the percentile of 0.5. Every group keeps
+ * a quantile sketch of the values, so the values do not need to be 
+ * sorted, and it works in the hash aggregation as well. The state of a
+ * group is the sketch, which is written in pieces: the level and the 
+ * number of the values, followed by the values of that level.
+ * @author messfish
+ *
+ */
+public class PercentileAccumulator extends MergeableAccumulator {
+
+	private static final int WIDTH = 128;
+	// the number of values of the sketch in a piece of the state.
+	private QuantileSketch[] sketches = new QuantileSketch[0];
+	private double fraction; // the quantile to be returned.
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 * @param fraction the quantile to be returned, from 0 to 1.
+	 */
+	public PercentileAccumulator(int column, double fraction) {
+		super(column);
+		this.fraction = fraction;
+	}
+	
+	/**
+	 * This method creates the sketch of a new group.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		sketches[slot] = new QuantileSketch();
+		add(slot, tuple);
+	}
+	
+	/**
+	 * This method creates an empty sketch for a group without any tuple.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		sketches[slot] = new QuantileSketch();
+	}
+	
+	/**
+	 * This method puts the value into the sketch.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		DataType data = tuple.getData(column);
+		if(data.getType() == 1)
+			sketches[slot].add(data.getLong());
+		else sketches[slot].add(data.getDouble());
+	}
+	
+	/**
+	 * This method returns the estimated value at the quantile.
+	 * @param slot the index of the group.
+	 * @return the value at the quantile of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		return new DataType(sketches[slot].getQuantile(fraction));
+	}
+	
+	/**
+	 * The values are kept as double values in the sketch.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return 5;
+	}
+	
+	/**
+	 * A sketch starts small but grows with the values of the group, so
+	 * the slot is counted by the largest size of the sketch, otherwise
+	 * the groups could take much more memory than the grant.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return QuantileSketch.getMaxSize();
+	}
+	
+	/**
+	 * The state is the level and the number of the values, followed by
+	 * the values.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		int[] result = new int[WIDTH + 2];
+		Arrays.fill(result, 5);
+		result[0] = result[1] = 1;
+		return result;
+	}
+	
+	/**
+	 * This method returns the number of pieces the sketch is written in.
+	 * @param slot the index of the group.
+	 * @return the number of pieces of the state.
+	 */
+	@Override
+	public int getNumOfPieces(int slot) {
+		return sketches[slot].getNumOfPieces(WIDTH);
+	}
+	
+	/**
+	 * This method writes the first piece of the sketch of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		writeState(slot, tuple, start, 0);
+	}
+	
+	/**
+	 * This method writes a piece of the sketch of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the first value of the state in the tuple.
+	 * @param piece the index of the piece.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start, int piece) {
+		double[] values = new double[WIDTH];
+		int[] level = sketches[slot].writePiece(piece, values);
+		tuple.setData(start, new DataType((long)level[0]));
+		tuple.setData(start + 1, new DataType((long)level[1]));
+		for(int i=0;i<WIDTH;i++)
+			tuple.setData(start + i + 2, new DataType(values[i]));
+	}
+	
+	/**
+	 * This method creates the sketch of a new group from a piece.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		sketches[slot] = new QuantileSketch();
+		mergeState(slot, tuple, start);
+	}
+	
+	/**
+	 * This method merges a piece into the sketch of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the first value of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		int count = (int)tuple.getData(start + 1).getLong();
+		double[] values = new double[count];
+		for(int i=0;i<count;i++)
+			values[i] = tuple.getData(start + i + 2).getDouble();
+		sketches[slot].mergePiece((int)tuple.getData(start).getLong(), values, count);
+	}
+	
+	/**
+	 * This method changes the size of the array of the sketches.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		sketches = Arrays.copyOf(sketches, size);
+	}
+
+}
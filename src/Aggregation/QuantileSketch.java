@@ -0,0 +1,233 @@
+package Aggregation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class estimates the quantiles of the values it has seen, it is
+ * the KLL sketch. The values are kept in levels, a value in level h 
+ * stands for 2^h values. When a level is full, it is sorted and every 
+ * other value is moved up to the next level, starting from the first
+ * or the second one by chance, so the rank of every value is right on
+ * average. The lower levels are smaller than the higher ones, so the
+ * sketch only keeps about a thousand values no matter how many values it
+ * has seen, and the error of the rank is about 1%. A level is compacted
+ * as soon as it is full, and its array never grows beyond what the level
+ * could hold, so the size of the sketch is bounded. Two sketches could
+ * be merged by putting their levels together. A sketch is written into
+ * tuples in pieces, each of them holds some values of a single level.
+ * @author messfish
+ *
+ */
+public class QuantileSketch {
+
+	private static final int K = 256; // the size of the highest level.
+	private static final double C = 2.0 / 3.0;
+	// the ratio of the size of a level and the size of the one above it.
+	private static final int MAX_OF_LEVELS = 64;
+	// the number of levels of a sketch that has seen 2^64 values.
+	private double[][] levels = new double[1][8];
+	private int[] sizes = new int[1]; // the number of values of each level.
+	private int numoflevels = 1;
+	private int size; // the number of values kept in all the levels.
+	private Random random = new Random(0);
+	
+	/**
+	 * This method puts a value into the sketch.
+	 * @param value the value to be put.
+	 */
+	public void add(double value) {
+		append(0, value);
+	}
+	
+	/**
+	 * This method merges another sketch into this one.
+	 * @param that the sketch to be merged.
+	 */
+	public void merge(QuantileSketch that) {
+		while(numoflevels < that.numoflevels)
+			grow();
+		for(int h=0;h<that.numoflevels;h++)
+			for(int i=0;i<that.sizes[h];i++)
+				append(h, that.levels[h][i]);
+	}
+	
+	/**
+	 * This method returns the number of pieces the sketch is written in.
+	 * @param width the number of values in a piece.
+	 * @return the number of pieces, at least 1.
+	 */
+	public int getNumOfPieces(int width) {
+		int result = 0;
+		for(int h=0;h<numoflevels;h++)
+			result += (sizes[h] + width - 1) / width;
+		return Math.max(1, result);
+	}
+	
+	/**
+	 * This method writes a piece of the sketch. The pieces after the last
+	 * one have no value, so they change nothing when they are merged.
+	 * @param piece the index of the piece.
+	 * @param values the array the values of the piece are put in.
+	 * @return the level of the values and the number of values.
+	 */
+	public int[] writePiece(int piece, double[] values) {
+		Arrays.fill(values, 0);
+		for(int h=0;h<numoflevels;h++) {
+			int pieces = (sizes[h] + values.length - 1) / values.length;
+			if(piece < pieces) {
+				int start = piece * values.length;
+				int count = Math.min(values.length, sizes[h] - start);
+				System.arraycopy(levels[h], start, values, 0, count);
+				return new int[]{h, count};
+			}
+			piece -= pieces;
+		}
+		return new int[]{0, 0};
+	}
+	
+	/**
+	 * This method merges a piece written by the method above.
+	 * @param level the level of the values.
+	 * @param values the values of the piece.
+	 * @param count the number of values in the piece.
+	 */
+	public void mergePiece(int level, double[] values, int count) {
+		while(numoflevels <= level)
+			grow();
+		for(int i=0;i<count;i++)
+			append(level, values[i]);
+	}
+	
+	/**
+	 * This method returns the value at a quantile: the value which has
+	 * the given fraction of all the values smaller than it.
+	 * @param fraction the quantile, from 0 to 1.
+	 * @return the value at the quantile, 0 when there is no value.
+	 */
+	public double getQuantile(double fraction) {
+		if(size == 0)
+			return 0;
+		double[] values = new double[size];
+		long[] weights = new long[size];
+		Integer[] order = new Integer[size];
+		int index = 0;
+		long total = 0;
+		for(int h=0;h<numoflevels;h++) {
+			for(int i=0;i<sizes[h];i++) {
+				values[index] = levels[h][i];
+				weights[index] = 1L << h;
+				order[index] = index;
+				total += 1L << h;
+				index++;
+			}
+		}
+		Arrays.sort(order, (a,b)->Double.compare(values[a], values[b]));
+		double target = fraction * total;
+		long sum = 0;
+		for(int i : order) {
+			sum += weights[i];
+			if(sum >= target)
+				return values[i];
+		}
+		return values[order[size - 1]];
+	}
+	
+	/**
+	 * This method returns the number of bytes taken by the sketch.
+	 * @return the number of bytes of the sketch.
+	 */
+	public int getSize() {
+		int bytes = 0;
+		for(int h=0;h<numoflevels;h++)
+			bytes += levels[h].length * 8;
+		return bytes;
+	}
+	
+	/**
+	 * This method returns the largest number of bytes a sketch could take.
+	 * The top level holds at most K + 1 values, and a lower level holds
+	 * at most what it could hold before the last level was added, since
+	 * its array is cut down when a new level is added.
+	 * @return the number of bytes of the largest sketch.
+	 */
+	public static int getMaxSize() {
+		int values = K + 1;
+		for(int depth=0;depth<MAX_OF_LEVELS-1;depth++)
+			values += getCapacity(depth);
+		return values * 8;
+	}
+	
+	/**
+	 * This method returns the number of values a level could hold.
+	 * @param level the index of the level.
+	 * @return the capacity of the level.
+	 */
+	private int capacity(int level) {
+		return getCapacity(numoflevels - level - 1);
+	}
+	
+	/**
+	 * This method returns the number of values a level could hold by its
+	 * depth, which is the number of levels above it.
+	 * @param depth the depth of the level.
+	 * @return the capacity of the level.
+	 */
+	private static int getCapacity(int depth) {
+		return (int)Math.ceil(Math.pow(C, depth) * K) + 1;
+	}
+	
+	/**
+	 * This method adds a new level at the top. The lower levels could
+	 * hold fewer values now, so their arrays are cut down to what they
+	 * could hold, unless they have more values than that.
+	 */
+	private void grow() {
+		levels = Arrays.copyOf(levels, numoflevels + 1);
+		levels[numoflevels] = new double[8];
+		sizes = Arrays.copyOf(sizes, numoflevels + 1);
+		numoflevels++;
+		for(int h=0;h<numoflevels-1;h++) {
+			int length = Math.max(sizes[h], capacity(h));
+			if(levels[h].length > length)
+				levels[h] = Arrays.copyOf(levels[h], length);
+		}
+	}
+	
+	/**
+	 * This method sorts a level and moves every other value to the next
+	 * level. When the number of values is odd, the smallest one stays.
+	 * @param level the index of the level.
+	 */
+	private void compact(int level) {
+		int n = sizes[level], left = n % 2;
+		double[] array = levels[level];
+		Arrays.sort(array, 0, n);
+		int start = left + (random.nextBoolean() ? 1 : 0);
+		sizes[level] = left;
+		size -= n - left;
+		if(level + 1 >= numoflevels)
+			grow();
+		for(int i=start;i<n;i+=2)
+			append(level + 1, array[i]);
+	}
+	
+	/**
+	 * This method appends a value to a level. When the level is full, it
+	 * is compacted first, and the array of the level grows twice as large
+	 * until it could hold all the values of the level.
+	 * @param level the index of the level.
+	 * @param value the value to be appended.
+	 */
+	private void append(int level, double value) {
+		if(sizes[level] >= capacity(level))
+			compact(level);
+		if(sizes[level] == levels[level].length)
+			levels[level] = Arrays.copyOf(levels[level], 
+					Math.min(sizes[level] * 2, capacity(level)));
+		levels[level][sizes[level]] = value;
+		sizes[level]++;
+		size++;
+	}
+
+}
@@ -0,0 +1,70 @@
+package Aggregation;
+
+import TableElement.DataType;
+
+/**
+ * This class is a segment tree over a list of values, it returns the
+ * minimum or the maximum of the values in a range. The leaves are the
+ * values and every inner node keeps the smaller (or the larger) one of
+ * its two children, so a range is answered by O(log n) nodes instead
+ * of checking every value in it. This is used for the MIN and MAX
+ * window functions, where the frames of the tuples are overlapping
+ * ranges that do not simply grow.
+ * @author messfish
+ *
+ */
+public class SegmentTree {
+
+	private DataType[] tree;
+	// the nodes of the tree, the node i has the children 2i and 2i + 1,
+	// the leaves start from the number of values.
+	private int size; // the number of values.
+	private boolean isMax; // whether the tree picks the maximum.
+	
+	/**
+	 * Constructor: this constructor builds the tree from the bottom up.
+	 * @param values the values in the leaves.
+	 * @param isMax true for the maximum, false for the minimum.
+	 */
+	public SegmentTree(DataType[] values, boolean isMax) {
+		this.isMax = isMax;
+		size = values.length;
+		tree = new DataType[size * 2];
+		for(int i=0;i<size;i++)
+			tree[size + i] = values[i];
+		for(int i=size-1;i>0;i--)
+			tree[i] = pick(tree[i * 2], tree[i * 2 + 1]);
+	}
+	
+	/**
+	 * This method returns the minimum or the maximum of a range.
+	 * @param from the index of the first value, inclusive.
+	 * @param to the index of the last value, exclusive.
+	 * @return the minimum or the maximum, null when the range is empty.
+	 */
+	public DataType query(int from, int to) {
+		DataType result = null;
+		for(from+=size,to+=size;from<to;from>>=1,to>>=1) {
+			if((from & 1) == 1)
+				result = pick(result, tree[from++]);
+			if((to & 1) == 1)
+				result = pick(result, tree[--to]);
+		}
+		return result;
+	}
+	
+	/**
+	 * This method picks the smaller or the larger one of the two values.
+	 * @param first one of the values, null means there is none.
+	 * @param second one of the values, null means there is none.
+	 * @return the value picked.
+	 */
+	private DataType pick(DataType first, DataType second) {
+		if(first == null) return second;
+		if(second == null) return first;
+		int compare = first.compare(second);
+		if(isMax) return compare >= 0 ? first : second;
+		return compare <= 0 ? first : second;
+	}
+
+}
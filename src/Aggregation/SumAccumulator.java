@@ -0,0 +1,147 @@
+package Aggregation;
+
+import java.util.Arrays;
+
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the accumulator of the SUM function. The sum of long
+ * integers is kept in an array of long integers, any other numeric
+ * attribute is added up in an array of doubles.
+ * @author messfish
+ *
+ */
+public class SumAccumulator extends MergeableAccumulator {
+
+	protected boolean isLong; // this indicates the attribute is a long.
+	protected long[] longsums = new long[0];
+	protected double[] doublesums = new double[0];
+	
+	/**
+	 * Constructor: this constructor sets the attribute to aggregate.
+	 * @param column the index of the attribute in the tuple.
+	 * @param type the data type of the attribute.
+	 */
+	public SumAccumulator(int column, int type) {
+		super(column);
+		isLong = type == 1;
+	}
+	
+	/**
+	 * This method sets the sum of a new group to the first value.
+	 * @param slot the index of the group.
+	 * @param tuple the first tuple of the group.
+	 */
+	@Override
+	public void init(int slot, Tuple tuple) {
+		if(isLong) longsums[slot] = tuple.getData(column).getLong();
+		else doublesums[slot] = tuple.getData(column).getDouble();
+	}
+	
+	/**
+	 * This method sets the sum of a group without any tuple to zero.
+	 * @param slot the index of the group.
+	 */
+	@Override
+	public void clear(int slot) {
+		if(isLong) longsums[slot] = 0;
+		else doublesums[slot] = 0;
+	}
+	
+	/**
+	 * This method adds the value of the tuple to the sum of the group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that belongs to the group.
+	 */
+	@Override
+	public void add(int slot, Tuple tuple) {
+		if(isLong) longsums[slot] += tuple.getData(column).getLong();
+		else doublesums[slot] += tuple.getData(column).getDouble();
+	}
+	
+	/**
+	 * This method returns the sum of a group.
+	 * @param slot the index of the group.
+	 * @return the sum of the group.
+	 */
+	@Override
+	public DataType getResult(int slot) {
+		if(isLong) return new DataType(longsums[slot]);
+		return new DataType(doublesums[slot]);
+	}
+	
+	/**
+	 * The sum has the same type of the attribute.
+	 * @return the data type of the result.
+	 */
+	@Override
+	public int getDataType() {
+		return isLong ? 1 : 5;
+	}
+	
+	/**
+	 * A slot holds a long integer or a double.
+	 * @return the number of bytes of a single slot.
+	 */
+	@Override
+	public int getSlotSize() {
+		return 8;
+	}
+	
+	/**
+	 * The state is the sum itself.
+	 * @return the array of data types of the state.
+	 */
+	@Override
+	public int[] getStateTypes() {
+		return new int[]{isLong ? 1 : 5};
+	}
+	
+	/**
+	 * This method writes the sum of a group into a tuple.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple to write the state in.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void writeState(int slot, Tuple tuple, int start) {
+		if(isLong) tuple.setData(start, new DataType(longsums[slot]));
+		else tuple.setData(start, new DataType(doublesums[slot]));
+	}
+	
+	/**
+	 * This method sets the sum of a new group from a partial sum.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void initState(int slot, Tuple tuple, int start) {
+		if(isLong) longsums[slot] = tuple.getData(start).getLong();
+		else doublesums[slot] = tuple.getData(start).getDouble();
+	}
+	
+	/**
+	 * This method adds a partial sum to the sum of a group.
+	 * @param slot the index of the group.
+	 * @param tuple the tuple that holds the state.
+	 * @param start the index of the state in the tuple.
+	 */
+	@Override
+	public void mergeState(int slot, Tuple tuple, int start) {
+		if(isLong) longsums[slot] += tuple.getData(start).getLong();
+		else doublesums[slot] += tuple.getData(start).getDouble();
+	}
+	
+	/**
+	 * This method changes the size of the array in use.
+	 * @param size the new number of slots.
+	 */
+	@Override
+	protected void resize(int size) {
+		if(isLong) longsums = Arrays.copyOf(longsums, size);
+		else doublesums = Arrays.copyOf(doublesums, size);
+	}
+
+}
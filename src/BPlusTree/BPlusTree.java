@@ -1,42 +1,96 @@
 package BPlusTree;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.AbstractMap.SimpleEntry;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import Sorting.SortKey;
 import TableElement.DataType;
 
 /**
- * This is the class that is the actual B+Tree. Note there are some
- * assumptions about the tree: The order of the tree should not be 
- * larger than the number of keys but should not be smaller than the
- * number of keys if you multiply it by 2. We use the alternative (3)
- * for the method to store the keys.
+ * This is the class that is the actual B+Tree. The whole tree is stored
+ * in a single file of pages, the page 0 is the header which holds the
+ * root and the height, and each node is a page addressed by its ID. We
+ * use the alternative (2) to store the keys: each entry in the leaf is
+ * a key and the position of a tuple, the entries with the same key are
+ * ordered by the position so all the entries are unique. The keys are
+ * stored as the normalized keys, so they are compared as bytes. The 
+ * index nodes are few compared with the leaf nodes, so once they are 
+ * read they stay in the memory, and a search only reads the leaf nodes
+ * from the file. The leaf nodes are linked from left to right so the 
+ * tuples with the same key could be collected even if they are in
+ * several leaf nodes. 
+ * The tree could be used by several threads at the same time, each page
+ * has a latch and the threads go down the tree by latch crabbing: the
+ * latch of the child is taken before the one of the parent is released.
+ * A search takes the read latches. An insertion or a deletion takes the
+ * read latches and only the write latch of the leaf at first, which is 
+ * enough when the leaf does not split or get too small. Otherwise it 
+ * goes down again with the write latches, and the latches above a node
+ * are released as soon as the node is safe, which means the changes 
+ * below could not reach above it. The latches are always taken from the
+ * top to the bottom and from the left to the right, so no thread waits
+ * for another in a circle.
  * @author messfish
  *
  */
 public class BPlusTree {
 
-	protected static final int KEY_LIMITS = 100;
-	private static final int NUM_OF_BYTES = 4096;
-	private Compare compare = new Compare();
-	private int height;
+	private PageFile file; // the file that stores the pages of the tree.
+	private Map<Integer, IndexNode> cache;
+	// this map keeps the index nodes that are read, the key is the page.
+	private Map<Integer, ReentrantReadWriteLock> latches;
+	// this map stores the latch of each page.
+	private ReentrantReadWriteLock rootlatch;
+	// this latch protects the root and the height of the tree.
+	private int room;
+	// the largest number of bytes a key takes in an index node.
 	private String location;
-	private Node root;
 	
 	/**
-	 * Constructor: this constructor is used to build the B+ Tree
-	 * by using the argument as the file location of the root.
-	 * @param filelocation
+	 * Constructor: this constructor is used to open the B+ Tree that
+	 * is stored in the file.
+	 * @param filelocation the location of the file.
 	 */
 	public BPlusTree(String filelocation) {
+		this(filelocation, null);
+	}
+	
+	/**
+	 * Constructor: this constructor is used to open the B+ Tree, an 
+	 * empty tree is created when the file does not exist.
+	 * @param filelocation the location of the file.
+	 * @param datatype the types of the attributes in the key.
+	 */
+	public BPlusTree(String filelocation, int[] datatype) {
+		this(filelocation, datatype, datatype == null ? 0 : datatype.length);
+	}
+	
+	/**
+	 * Constructor: this constructor is used to open the B+ Tree, an 
+	 * empty tree is created when the file does not exist. Only the first
+	 * attributes are used for searching, the rest are included in the 
+	 * leaf nodes, so the tree covers the queries that read them.
+	 * @param filelocation the location of the file.
+	 * @param datatype the types of the attributes in the key.
+	 * @param numofkeys the number of attributes used for searching.
+	 */
+	public BPlusTree(String filelocation, int[] datatype, int numofkeys) {
 		location = filelocation;
-		root = new LeafNode(location + "/keylist");
+		file = new PageFile(filelocation, datatype, numofkeys);
+		cache = new ConcurrentHashMap<>();
+		latches = new ConcurrentHashMap<>();
+		rootlatch = new ReentrantReadWriteLock();
+		/* the key of a leaf has the position of the tuple, a string has at
+		 * most 255 characters and each one takes at most three bytes. */
+		room = 16;
+		for(int type : file.getDataType())
+			room += type==2 ? 766 : 8;
 	}
 	
 	/**
@@ -47,662 +101,613 @@ public class BPlusTree {
 	 * @return the height of the tree.
 	 */
 	public int getHeight() {
-		return height;
+		return file.getHeight();
 	}
 	
 	/**
-	 * This method is used to get the file location of the root node.
-	 * @return the location of the root node.
+	 * This method is used to get the location of the file of the tree.
+	 * @return the location of the file.
 	 */
 	public String getLocation() {
 		return location;
 	}
 	
 	/**
-	 * Search the value for a specific key, it will return a list
-	 * of table entries. Return null if the key is not found.
-	 * @param key the key that will be searched.
-	 * @return the list of table entries, null means the key does not found.
+	 * This method returns the file that stores the pages of the tree.
+	 * @return the page file of the tree.
 	 */
-	public List<int[]> search(DataType[] key) {
-		Node temp = root;
-		return search(temp,key,0);
+	public PageFile getPageFile() {
+		return file;
 	}
-
+	
+	/**
+	 * This method returns the types of the attributes in the tree.
+	 * @return the types of the attributes.
+	 */
+	public int[] getDataType() {
+		return file.getDataType();
+	}
+	
+	/**
+	 * This method returns the number of attributes used for searching.
+	 * @return the number of keys.
+	 */
+	public int getNumOfKeys() {
+		return file.getNumOfKeys();
+	}
+	
 	/**
-	 * This helper function is used to return a list of page entries.
-	 * It will go through the B+ Tree recursively to get the result.
-	 * @param temp the node that is used for searching.
+	 * This method builds the normalized key of the values. The values are
+	 * changed to the types of the key first, so a long integer could be
+	 * used to search a key of double values.
+	 * @param key the values in the key, it could be a prefix of the key.
+	 * @return the normalized key.
+	 */
+	public byte[] normalize(DataType[] key) {
+		DataType[] values = new DataType[key.length];
+		int[] datatype = file.getDataType();
+		for(int i=0;i<key.length;i++) {
+			values[i] = key[i];
+			if(datatype[i]==5 && key[i].getType()==1)
+				values[i] = new DataType((double)key[i].getLong());
+		}
+		return SortKey.normalize(values);
+	}
+	
+	/**
+	 * Search the value for a specific key, it will return a list
+	 * of table entries. Return null if the key is not found. Note the
+	 * key could be a prefix of the key of the tree, then all the entries
+	 * that start with the key are returned.
 	 * @param key the key that will be searched.
-	 * @param depth the depth of the B+ Tree.
 	 * @return the list of table entries, null means the key does not found.
 	 */
-	private List<int[]> search(Node temp, DataType[] key, int depth) {
-		if(temp==null) return null;
-		if(depth == height){
-			int index = searchIndex(temp, key);
-			if(index!=-1) {
-				if(key.length==temp.numofkeys)
-					return ((LeafNode)temp).valuelist.get(index);
-				/* this is the case where the key array is the prefix of
-				 * the key of B+ Tree. In this case, we need to traverse
-				 * the tree from leaf node to leaf node. */
-				else {
-					Node dummy = temp;
-					List<int[]> result = new ArrayList<>();
-					while(dummy!=null) {
-						int endindex = searchEnd(dummy,index,key,result);
-						if(endindex==dummy.keylist.size())
-							dummy = getNextNode(dummy.filelocation, height);
-						else break;
-					}
-					return result;
+	public List<int[]> search(DataType[] key) {
+		byte[] normal = normalize(key);
+		rootlatch.readLock().lock();
+		int page = file.getRoot(), height = file.getHeight();
+		latch(page).readLock().lock();
+		rootlatch.readLock().unlock();
+		/* go down to the first child that could hold the key, which is
+		 * the child after all the keys that are not larger than the key. */
+		for(int depth=0;depth<height;depth++) {
+			int child = getIndexNode(page).findChild(normal);
+			latch(child).readLock().lock();
+			latch(page).readLock().unlock();
+			page = child;
+		}
+		List<int[]> result = new ArrayList<>();
+		try {
+			LeafNode leaf = (LeafNode)Node.read(file, page);
+			int index = leaf.search(normal, false);
+			while(true) {
+				for(;index<leaf.getCount();index++) {
+					if(!leaf.startsWith(normal, index))
+						return result.size()==0 ? null : result;
+					result.add(leaf.getValue(index));
 				}
+				int next = leaf.getNext();
+				if(next==-1)
+					break;
+				latch(next).readLock().lock();
+				latch(page).readLock().unlock();
+				page = next;
+				leaf = (LeafNode)Node.read(file, page);
+				index = 0;
 			}
-			return null;
-		}
-		else{
-			IndexNode node = (IndexNode) temp;
-		    if(compare.compareArray(key, temp.keylist.get(0))<0) 
-		    	return search(node.getChild(0,depth+1==height),key,depth+1);
-		    else if(compare.compareArray(key, temp.keylist.get(temp.keylist.size()-1))>=0)
-		    	return search(node.getChild(node.keylist.size(), 
-		    					depth+1==height),key,depth+1);
-		    else{
-		    	int index = 0;
-		    	for(int i=0;i<temp.keylist.size()-1;i++){
-		    		if(compare.compareArray(key, temp.keylist.get(i))>=0
-		    				&&compare.compareArray(key, temp.keylist.get(i+1))<0){
-		    			index = i + 1;
-		    			break;
-		    		}
-		    	}
-		    	return search(node.getChild(index,depth+1==height),key,depth+1);
-		    }
+		} finally {
+			latch(page).readLock().unlock();
 		}
+		return result.size()==0 ? null : result;
 	}
 	
 	/**
-	 * This method is used to search the first index that has the key array 
-	 * in the parameter as the prefix. 
-	 * @param Node the node that will be searched.
-	 * @param key the key that will be used for searching.
-	 * @return the index which is the smallest valid one, -1 means there is 
-	 * no tuple available in the list.
+	 * This method inserts the key and the position of the tuple into
+	 * the tree. When the root is split, a new root is built on top of
+	 * the two nodes and the tree grows by one level.
+	 * @param key the key that will be inserted, followed by the values
+	 * of the included attributes.
+	 * @param value the position of the tuple, which is the page and the 
+	 * offset of the tuple.
 	 */
-	private int searchIndex(Node temp, DataType[] key) {
-		int index = 0;
-		List<DataType[]> list = temp.keylist;
-		for(;index<list.size();index++) {
-			if(compare.compareArray(key,list.get(index))==0)
-				break;
+	public void insert(DataType[] key, int[] value) {
+		byte[] entry = LeafNode.getKey(normalize(key), value);
+		/* at first try to put the key in the leaf without any split. */
+		int page = lockLeaf(entry);
+		try {
+			if(putInLeaf((LeafNode)Node.read(file, page), entry))
+				return;
+		} finally {
+			latch(page).writeLock().unlock();
+		}
+		Path path = lockPath(entry, true);
+		try {
+			int last = path.pages.size() - 1;
+			LeafNode leaf = (LeafNode)Node.read(file, path.pages.get(last));
+			Split split = null;
+			if(!putInLeaf(leaf, entry)) {
+				List<byte[]> keys = leaf.getKeys();
+				keys.add(leaf.search(entry, true), entry);
+				split = splitLeafNode(leaf, keys);
+			}
+			for(int i=last-1;i>=0&&split!=null;i--) {
+				IndexNode node = getIndexNode(path.pages.get(i));
+				split = insertIndex(node, node.search(entry, true), split);
+			}
+			/* only the root could be split at the top of the path. */
+			if(split != null) {
+				IndexNode root = new IndexNode(file.allocate(), null);
+				List<byte[]> keys = new ArrayList<>();
+				keys.add(split.key);
+				List<Integer> children = new ArrayList<>();
+				children.add(file.getRoot());
+				children.add(split.page);
+				root.build(keys, children);
+				root.write(file);
+				cache.put(root.page, root);
+				file.setRoot(root.page);
+				file.setHeight(file.getHeight() + 1);
+			}
+			file.writeHeader();
+		} finally {
+			unlock(path);
 		}
-		return index == list.size() ? -1 : index;
 	}
 	
 	/**
-	 * This method is used to search the ending point of the valid key.
-	 * @param dummy the node that is used for searching.
-	 * @param index the starting point of the search.
-	 * @param key the key used for checking.
-	 * @param result the array list that stores the table entries.
-	 * @return the index that is the ending point.
+	 * This method deletes the key with the position of the tuple from the
+	 * tree. When a node is less than a quarter full, it is merged with a
+	 * sibling or it borrows keys from the sibling. When the root has only
+	 * one child left, the child becomes the root.
+	 * @param key the key that will be deleted, followed by the values of
+	 * the included attributes.
+	 * @param value the position of the tuple.
+	 * @return true if the key is found and deleted.
 	 */
-	private int searchEnd(Node dummy, int index, DataType[] key,
-							List<int[]> result) {
-		List<DataType[]> list = dummy.keylist;
-		List<List<int[]>> entrylist = ((LeafNode)dummy).valuelist;
-		while(index < list.size()) {
-			DataType[] temp = list.get(index);
-			if(compare.compareArray(key,temp)!=0)
-				break;
-			for(int[] pair : entrylist.get(index))
-				result.add(pair);
-			index++;
+	public boolean delete(DataType[] key, int[] value) {
+		byte[] entry = LeafNode.getKey(normalize(key), value);
+		/* at first try to delete the key in the leaf only. */
+		int page = lockLeaf(entry);
+		try {
+			LeafNode leaf = (LeafNode)Node.read(file, page);
+			int index = find(leaf, entry);
+			if(index == -1)
+				return false;
+			ByteBuffer old = leaf.buffer;
+			List<byte[]> keys = leaf.getKeys();
+			keys.remove(index);
+			leaf.build(keys, null);
+			if(!leaf.isUnderflowed() || page == file.getRoot()) {
+				leaf.write(file);
+				return true;
+			}
+			leaf.buffer = old;
+		} finally {
+			latch(page).writeLock().unlock();
+		}
+		Path path = lockPath(entry, false);
+		try {
+			int last = path.pages.size() - 1;
+			LeafNode leaf = (LeafNode)Node.read(file, path.pages.get(last));
+			int index = find(leaf, entry);
+			if(index == -1)
+				return false;
+			List<byte[]> keys = leaf.getKeys();
+			keys.remove(index);
+			leaf.build(keys, null);
+			leaf.write(file);
+			boolean underflow = leaf.isUnderflowed();
+			for(int i=last-1;i>=0&&underflow;i--) {
+				IndexNode node = getIndexNode(path.pages.get(i));
+				fixChild(node, node.search(entry, true), i + 1 == last);
+				underflow = node.isUnderflowed();
+			}
+			/* the root with a single child is not needed any more. */
+			while(path.root && file.getHeight() > 0) {
+				IndexNode root = getIndexNode(file.getRoot());
+				if(root.getCount() > 0)
+					break;
+				cache.remove(root.page);
+				file.free(root.page);
+				file.setRoot(root.getChild(0));
+				file.setHeight(file.getHeight() - 1);
+			}
+			file.writeHeader();
+			return true;
+		} finally {
+			unlock(path);
 		}
-		return index;
 	}
 	
 	/**
-	 * This method is used to get the next Node of the current node which 
-	 * has the file location as the argument.
-	 * @param filelocation the file location of the current node.
-	 * @param height the current height of the node.
-	 * @return the Node which is the next node of the current node.
-	 * Null means there are no nodes available for the current one.
+	 * This method reads the keys of the leaf that are larger than a key,
+	 * the next leaf nodes are read when there is none in the leaf. It is
+	 * used by the cursor to read the keys one leaf at a time, so no latch
+	 * is held between two calls.
+	 * @param key the normalized key to start from.
+	 * @param inclusive true means the keys equal to the key are read too.
+	 * @return the list of keys of the leaf, an empty list means there is
+	 * no key left.
 	 */
-	private Node getNextNode(String filelocation, int height) {
-		/* this indicates we are at the upper bound of the root node, so
-		 * technically there are no nodes left, so simply return null. */
-		if(height==0) return null;
-		int index = filelocation.length() - 1;
-		String numberindex = "";
-		while(filelocation.charAt(index)!='/') {
-			numberindex = filelocation.charAt(index) + numberindex;
-			index--;
+	public List<byte[]> getLeafKeys(byte[] key, boolean inclusive) {
+		rootlatch.readLock().lock();
+		int page = file.getRoot(), height = file.getHeight();
+		latch(page).readLock().lock();
+		rootlatch.readLock().unlock();
+		for(int depth=0;depth<height;depth++) {
+			int child = getIndexNode(page).findChild(key);
+			latch(child).readLock().lock();
+			latch(page).readLock().unlock();
+			page = child;
 		}
-		int nextindex = Integer.parseInt(numberindex) + 1;
-		String residue = filelocation.substring(0,index);
-		String newfilelocation = residue + "/" + nextindex;
-		File checkfile = new File(newfilelocation+"/");
-		/* this indicates we have reach the end of the current node, 
-		 * move to the parent node and do the same thing recursively. */
-		if(!checkfile.exists()) 
-			return getNextNode(residue, height - 1);
-		else {
-			/* note if the height is not the same with the height of the 
-			 * B+ Tree, it means we do not reach a leaf node. iteratively
-			 * add "/0" until we reach the leaf node. */
-			while(this.height != height) {
-				newfilelocation += "/0";
-				height++;
+		List<byte[]> result = new ArrayList<>();
+		try {
+			LeafNode leaf = (LeafNode)Node.read(file, page);
+			int index = leaf.search(key, !inclusive);
+			while(index == leaf.getCount() && leaf.getNext() != -1) {
+				int next = leaf.getNext();
+				latch(next).readLock().lock();
+				latch(page).readLock().unlock();
+				page = next;
+				leaf = (LeafNode)Node.read(file, page);
+				index = 0;
 			}
-			return new LeafNode(newfilelocation);
+			for(;index<leaf.getCount();index++)
+				result.add(leaf.getKey(index));
+		} finally {
+			latch(page).readLock().unlock();
 		}
+		return result;
 	}
 	
 	/**
-	 * This method is used to insert a key/value pair into the BPlusTree
-	 * Note if there is an overflow coming from a node, we need to split
-	 * the node into two parts and push a key value up, do that recursively
-	 * if the index node is also overflowed.
-	 * @param key the key that will be inserted.
-	 * @param value an array of two integers that indicates the location of 
-	 * a tuple.
+	 * This method finds the exact key in the leaf.
+	 * @param leaf the leaf node.
+	 * @param entry the key of the leaf.
+	 * @return the index of the key, -1 means it is not found.
 	 */
-	public void insert(DataType[] key, int[] value) {
-        Node temp = root;
-        insert(temp,key,value, 0);
+	private int find(LeafNode leaf, byte[] entry) {
+		int index = leaf.search(entry, false);
+		if(index < leaf.getCount() && Arrays.equals(leaf.getKey(index), entry))
+			return index;
+		return -1;
 	}
-
+	
+	/**
+	 * This method puts the key in the leaf when there is enough room. The
+	 * key is put in the page in place when it shares the prefix, otherwise
+	 * the page is built again.
+	 * @param leaf the leaf node.
+	 * @param entry the key of the leaf.
+	 * @return true if the key is put in the leaf, false means the leaf 
+	 * should be split and it is not changed.
+	 */
+	private boolean putInLeaf(LeafNode leaf, byte[] entry) {
+		int index = leaf.search(entry, true);
+		if(!leaf.insert(index, entry, 0)) {
+			List<byte[]> keys = leaf.getKeys();
+			keys.add(index, entry);
+			if(!leaf.build(keys, null))
+				return false;
+		}
+		leaf.write(file);
+		return true;
+	}
+	
+	/**
+	 * This method puts the key that is moved up from a child in the index
+	 * node, the index node is split when there is no room.
+	 * @param node the index node.
+	 * @param index the index of the child that is split.
+	 * @param split the key and the new page from the child.
+	 * @return the key that should be put in the parent when the node
+	 * is split, null means the node is not split.
+	 */
+	private Split insertIndex(IndexNode node, int index, Split split) {
+		if(!node.insert(index, split.key, split.page)) {
+			List<byte[]> keys = node.getKeys();
+			List<Integer> children = node.getChildren();
+			keys.add(index, split.key);
+			children.add(index + 1, split.page);
+			if(!node.build(keys, children))
+				return splitIndexNode(node, keys, children);
+		}
+		node.write(file);
+		return null;
+	}
+	
 	/**
-	 * This helper method is used to insert a key in the tree.
-	 * @param temp the current node which is the target of modification.
-	 * @param key the key that will be inserted.
-	 * @param value an array of two integers that indicates the location of 
-	 * a tuple.
-	 * @param the depth of the current node.
-	 * @return the data type that needs to be inserted.
+	 * This method fixes the child that is too small. The child is merged
+	 * with its right sibling, or the left one when it is the last child,
+	 * if all the keys fit in a single page. Otherwise the keys of the two
+	 * nodes are shared evenly and the key between them in the parent is 
+	 * changed. When the new key does not fit in the parent, the nodes are
+	 * left as they are. The child is latched by the caller, the latch of
+	 * the sibling is taken here from the left to the right.
+	 * @param parent the parent of the child.
+	 * @param index the index of the child.
+	 * @param leaf true means the child is a leaf node.
 	 */
-	private Entry<DataType[], Node> insert(Node temp, DataType[] key,
-											int[] value, int depth) {
-		/* this usually indicates the root is empty, we should initialize
-		 * a leaf node and assign it to the root. */
-		if(temp==null){
-			initialize(key,value);
-			root = new LeafNode(location);
-			return null;
+	private void fixChild(IndexNode parent, int index, boolean leaf) {
+		if(parent.getCount() == 0)
+			return;
+		int left = index < parent.getCount() ? index : index - 1;
+		int leftpage = parent.getChild(left), rightpage = parent.getChild(left + 1);
+		int sibling = left == index ? rightpage : leftpage;
+		if(left != index) {
+			/* the child is on the right side, it is latched again after
+			 * the sibling. The parent is write latched so no other thread
+			 * could change the child in the meantime. */
+			latch(rightpage).writeLock().unlock();
+			latch(leftpage).writeLock().lock();
 		}
-		else if(depth == height){
-			LeafNode node = (LeafNode)temp;
-			node.insertSorted(key, value);
-			if(!node.isOverflowed()) {
-				node.writeFile();
-				return null;
+		latch(rightpage).writeLock().lock();
+		try {
+			Node leftnode = leaf ? Node.read(file, leftpage) : getIndexNode(leftpage);
+			Node rightnode = leaf ? Node.read(file, rightpage) : getIndexNode(rightpage);
+			List<byte[]> parentkeys = parent.getKeys();
+			List<Integer> parentchildren = parent.getChildren();
+			List<byte[]> keys = leftnode.getKeys();
+			List<Integer> children = null;
+			if(!leaf) {
+				keys.add(parentkeys.get(left));
+				children = ((IndexNode)leftnode).getChildren();
+				children.addAll(((IndexNode)rightnode).getChildren());
 			}
-			else{
-				Entry<DataType[], Node> enter = splitLeafNode(node);
-				if(temp!=root) return enter;
-				/* the root is overflowed, need to create a new root. */
-				else{
-					Node leftChild = new LeafNode(location + "/0",
-												node.keylist, node.valuelist);
-					List<DataType[]> keylist = new ArrayList<>();
-					keylist.add(enter.getKey());
-					root = new IndexNode(location, keylist);
-					height++;
-					return null;
-				}
+			keys.addAll(rightnode.getKeys());
+			ByteBuffer oldleft = leftnode.buffer, oldright = rightnode.buffer;
+			if(leftnode.build(keys, children)) {
+				/* all the keys fit in the left node, the right one is freed. */
+				if(leaf)
+					((LeafNode)leftnode).setNext(((LeafNode)rightnode).getNext());
+				parentkeys.remove(left);
+				parentchildren.remove(left + 1);
+				parent.build(parentkeys, parentchildren);
+				leftnode.write(file);
+				cache.remove(rightpage);
+				file.free(rightpage);
+				parent.write(file);
+				return;
 			}
-		}
-		else{
-			IndexNode node = (IndexNode)temp;
-			Node inserted = null;
-			int index = 0;
-			/* check the desired node to dive into. */
-			if(compare.compareArray(key, (temp.keylist.get(0)))<0)
-				inserted = node.getChild(0, depth + 1 == height);
-			else if(compare.compareArray(key, 
-					temp.keylist.get(temp.keylist.size()-1))>=0){
-				index = temp.keylist.size();
-				inserted = node.getChild(index, depth + 1 == height);
-			}else{
-				for(int i=0;i<temp.keylist.size()-1;i++){
-					if(compare.compareArray(key, temp.keylist.get(i))>=0
-							&&compare.compareArray(key, temp.keylist.get(i+1))<0){
-						index = i + 1;
-						break;
-					}
-				}
-				inserted = node.getChild(index, depth + 1 == height);
+			int middle = getMiddle(keys);
+			if(leaf) {
+				leftnode.build(keys.subList(0, middle), null);
+				rightnode.build(keys.subList(middle, keys.size()), null);
+				parentkeys.set(left, Compare.separator(keys.get(middle - 1), 
+						keys.get(middle)));
+			}else {
+				leftnode.build(keys.subList(0, middle), 
+							   children.subList(0, middle + 1));
+				rightnode.build(keys.subList(middle + 1, keys.size()), 
+								children.subList(middle + 1, children.size()));
+				parentkeys.set(left, keys.get(middle));
 			}
-			// insert the node recursively.
-			Entry<DataType[], Node> enter = insert(inserted,key,value,depth+1);
-			if(enter==null) return null;
-			else{
-				node.insertSorted(enter.getKey(),index);
-				// if the node is not overflowed anymore, set the return value to null.
-				if(!node.isOverflowed()) {
-					node.writeFile();
-					return null;
-				}
-				else{
-					enter = splitIndexNode(node);
-					if(temp!=root) return enter;
-					else{
-						Node<K,T> leftChild = node;
-						Node<K,T> rightChild = enter.getValue();
-						root = new IndexNode<K,T>(enter.getKey(),leftChild,rightChild);
-						return null;
-					}
-				}
+			if(!parent.build(parentkeys, parentchildren)) {
+				leftnode.buffer = oldleft;
+				rightnode.buffer = oldright;
+				return;
 			}
+			leftnode.write(file);
+			rightnode.write(file);
+			parent.write(file);
+		} finally {
+			latch(sibling).writeLock().unlock();
 		}
 	}
 	
 	/**
-	 * This method is used to initialize the key file for the root node.
-	 * Note the file should follow the format of the leaf node.
-	 * @param key the key that will be used to write a file.
-	 * @param value the pair of integers indicates the index of a tuple.
+	 * This method goes down to the leaf that may hold the key with the
+	 * read latches, the leaf is the only page that is write latched.
+	 * @param key the key that will be searched.
+	 * @return the page of the leaf, the caller should release its latch.
 	 */
-	private void initialize(DataType[] key, int[] value) {
-		File newkey = new File(location + "/keylist");
-		try {
-			FileOutputStream fout = new FileOutputStream(newkey);
-			FileChannel fc = fout.getChannel();
-			ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-			buffer.putInt(0, key.length);
-			int start = 4;
-			for(int i=0;i<key.length;i++) {
-				buffer.putInt(start, key[i].getType());
-				start += 4;
-			}
-			buffer.putInt(start, 1);
-			start = writeKey(buffer, start + 4, key);
-			buffer.putInt(start, value[0]);
-			buffer.putInt(start + 4, value[1]);
-			buffer.limit(buffer.capacity());
-			buffer.position(0);
-			fc.write(buffer);
-			fout.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+	private int lockLeaf(byte[] key) {
+		rootlatch.readLock().lock();
+		int page = file.getRoot(), height = file.getHeight();
+		Lock current = height == 0 ? latch(page).writeLock() : 
+									 latch(page).readLock();
+		current.lock();
+		rootlatch.readLock().unlock();
+		for(int depth=0;depth<height;depth++) {
+			int child = getIndexNode(page).findChild(key);
+			Lock next = depth == height - 1 ? latch(child).writeLock() : 
+											  latch(child).readLock();
+			next.lock();
+			current.unlock();
+			current = next;
+			page = child;
 		}
+		return page;
 	}
 	
 	/**
-	 * This method is used to write the key elements back to the byte buffer.
-	 * @param buffer the byte buffer that we put data in.
-	 * @param start the starting point of the buffer page.
-	 * @param key an array of key that will be inserted.
-	 * @return the ending point of the key in the buffer page.
+	 * This method goes down to the leaf that may hold the key with the 
+	 * write latches. When a node is safe, the latches above it are
+	 * released, including the latch of the root.
+	 * @param key the key that will be inserted or deleted.
+	 * @param insert true means this is an insertion, false means this is
+	 * a deletion.
+	 * @return the pages on the path that are still latched.
 	 */
-	private int writeKey(ByteBuffer buffer, int start, DataType[] key) {
-		for(int i=0;i<key.length;i++) {
-			DataType data = key[i];
-			int increment = 8;
-			if(key[i].getType()==1)
-				buffer.putLong(start, data.getLong());
-			else if(key[i].getType()==5)
-				buffer.putDouble(start, data.getDouble());
-			else if(key[i].getType()==2) {
-				String str = data.getString();
-				buffer.put(start, (byte)str.length());
-				start++;
-				for(char c : str.toCharArray()) {
-					buffer.put(start, (byte)c);
-					start++;
-				}
-				increment = 0;
+	private Path lockPath(byte[] key, boolean insert) {
+		Path path = new Path();
+		rootlatch.writeLock().lock();
+		path.root = true;
+		int page = file.getRoot(), height = file.getHeight();
+		latch(page).writeLock().lock();
+		path.pages.add(page);
+		for(int depth=0;depth<height;depth++) {
+			IndexNode node = getIndexNode(page);
+			if(isSafe(node, insert, depth == 0)) {
+				path.pages.remove(path.pages.size() - 1);
+				unlock(path);
+				path.pages.add(page);
 			}
-			start += increment;
+			page = node.findChild(key);
+			latch(page).writeLock().lock();
+			path.pages.add(page);
 		}
-		return start;
+		return path;
 	}
 	
 	/**
-	 * Split a leaf node and return the new right node and the splitting
-	 * key as an Entry<slitingKey, RightNode>
-	 * @param leaf, any other relevant data
-	 * @return the key/node pair as an Entry
+	 * This method checks whether the changes below the index node could 
+	 * not reach it. For an insertion, the node should have the room for
+	 * a key from the child. For a deletion, the node should not be too
+	 * small after a key is removed, and it should have the room for the
+	 * key that is changed when the children share their keys.
+	 * @param node the index node.
+	 * @param insert true means this is an insertion.
+	 * @param root true means the node is the root.
+	 * @return true if the node is safe.
 	 */
-	public Entry<DataType[], Node> splitLeafNode(LeafNode leaf) {
-		DataType[] key = leaf.keylist.get(KEY_LIMITS);
-        List<DataType[]> list1 = new ArrayList<>();
-        List<List<int[]>> list2 = new ArrayList<>();
-        for(int i=KEY_LIMITS;i<leaf.keylist.size();){
-        	list1.add(leaf.keylist.remove(KEY_LIMITS));
-        	list2.add(leaf.valuelist.remove(KEY_LIMITS));
-        }
-        /* we need to rewrite the file that is splited. */
-        leaf.writeFile();
-        Node result = moveLeafFiles(leaf.filelocation,list1,list2);
-        return new SimpleEntry(key, result);
+	private boolean isSafe(IndexNode node, boolean insert, boolean root) {
+		if(!node.hasRoom(room))
+			return false;
+		if(insert)
+			return true;
+		if(root)
+			return node.getCount() >= 2;
+		return node.getUsed() - room >= Node.MIN_OF_BYTES;
 	}
 	
 	/**
-	 * This method is used to move the files by having their indexes incremented.
-	 * @param location the location of the staring point.
-	 * @param list1 the key list that needs to be initialized.
-	 * @param list2 the value list that needs to be initialized.
-	 * @param return the right one of the modified node.
+	 * This method releases all the latches on the path.
+	 * @param path the pages that are latched.
 	 */
-	private Node moveLeafFiles(String location, List<DataType[]> list1,
-							List<List<int[]>> list2) {
-		/* notice we need to take care of the case when the root is the 
-		 * node that will be split. */
-		if(location.equals(this.location)) {
-			File leftchilddir = new File(location + "/0/");
-			if(!leftchilddir.mkdir())
-				System.out.println("Faild to create directories!");
-			File rightchilddir = new File(location + "/1/");
-			if(!rightchilddir.mkdir())
-				System.out.println("Faild to create directories!");
-			Node split = new LeafNode(location + "/1", list1, list2);
-			return split;
+	private void unlock(Path path) {
+		for(int page : path.pages)
+			latch(page).writeLock().unlock();
+		path.pages.clear();
+		if(path.root) {
+			rootlatch.writeLock().unlock();
+			path.root = false;
 		}
-		return moveFiles(list1,list2,true);
 	}
-
+	
 	/**
-	 * TODO split an indexNode and return the new right node and the splitting
-	 * key as an Entry<slitingKey, RightNode>
-	 * 
-	 * @param index, any other relevant data
-	 * @return new key/node pair as an Entry
+	 * This method returns the latch of the page.
+	 * @param page the ID of the page.
+	 * @return the latch of the page.
 	 */
-	public Entry<DataType[], Node> splitIndexNode(IndexNode index) {
-        DataType[] key = index.keylist.remove(KEY_LIMITS);
-        List<DataType[]> list1 = new ArrayList<>();
-        // get the right most one of the new entry out first.
-        for(int i=KEY_LIMITS;i<index.keylist.size();){
-        	list1.add(index.keylist.remove(KEY_LIMITS));
-        }
-        Node node = moveIndexFiles(index.filelocation, list1);
-        Entry<K, Node<K,T>> entry = new SimpleEntry<>(key,node);
-		return entry;
+	private ReentrantReadWriteLock latch(int page) {
+		return latches.computeIfAbsent(page, p -> new ReentrantReadWriteLock());
 	}
 	
 	/**
-	 * This method is similar to moving leaf files: by having their indices
-	 * incremented.
-	 * @param filelocation the location of the file.
-	 * @param keylist the list that stores the keys.
-	 * @return the right one of the modified node.
+	 * This method splits a leaf node in half by the number of bytes. The
+	 * right half goes to a new page which is linked after the node, and
+	 * the shortest key that tells the two halves apart goes to the parent.
+	 * @param leaf the leaf node that will be split.
+	 * @param keys the keys of the leaf node, including the new one.
+	 * @return the key that will be put in the parent.
 	 */
-	private Node moveIndexFiles(String location, List<DataType[]> keylist) {
-		/* As usual, we need to check if the node we manipulate is 
-		 * the root node. */
-		if(this.location.equals(location)) {
-			
-		}
-		
-		
+	private Split splitLeafNode(LeafNode leaf, List<byte[]> keys) {
+		int middle = getMiddle(keys);
+		LeafNode right = new LeafNode(file.allocate(), null);
+		right.setNext(leaf.getNext());
+		right.build(keys.subList(middle, keys.size()), null);
+		leaf.setNext(right.page);
+		leaf.build(keys.subList(0, middle), null);
+		right.write(file);
+		leaf.write(file);
+		return new Split(Compare.separator(keys.get(middle - 1), 
+				keys.get(middle)), right.page);
 	}
 	
-	private Node moveFiles(List<DataType[]> list1, List<List<int[]>> list2,
-							boolean isLeaf) {
-		int index = location.length() - 1;
-		String current = "";
-		while(location.charAt(index)!='/') {
-			current = location.charAt(index) + current;
-			index--;
-		}
-		int endMoving = Integer.parseInt(current) + 1;
-		String parent = location.substring(0, index);
-		Node parentnode = new IndexNode(parent);
-		int limit = parentnode.keylist.size() + 1;
-		for(int i=limit;i>endMoving;i--) {
-			String deport = parent + "/" + (i - 1) + "/";
-			String destination = parent + "/" + i + "/";
-			moveDir(deport, destination);
-		}
-		/* do not forget to assign the right part of the splitted node! */
-		Node split = new LeafNode(parent + "/" + endMoving, list1, list2);
-		return split;
+	/**
+	 * This method splits an index node in half by the number of bytes. 
+	 * The middle key is moved to the parent, the keys and the children
+	 * on its right side go to a new page.
+	 * @param index the index node that will be split.
+	 * @param keys the keys of the index node, including the new one.
+	 * @param children the children of the index node.
+	 * @return the key that will be put in the parent.
+	 */
+	private Split splitIndexNode(IndexNode index, List<byte[]> keys,
+								 List<Integer> children) {
+		int middle = getMiddle(keys);
+		IndexNode right = new IndexNode(file.allocate(), null);
+		right.build(keys.subList(middle + 1, keys.size()), 
+					children.subList(middle + 1, children.size()));
+		index.build(keys.subList(0, middle), children.subList(0, middle + 1));
+		right.write(file);
+		index.write(file);
+		cache.put(right.page, right);
+		return new Split(keys.get(middle), right.page);
 	}
 	
 	/**
-	 * This method is used to move the whole file directory from one location
-	 * to another. Basically we do this recursively to move all the files.
-	 * @param out the old location of the file.
-	 * @param in the new location of the file.
+	 * This method returns the index node of the page. The node is read
+	 * from the file only for the first time, after that the same node is
+	 * kept in the cache. The changes of the node are made on the cached 
+	 * one before it is written, so the cache is always up to date. The 
+	 * node is only read under the latch of the page.
+	 * @param page the ID of the page.
+	 * @return the index node of the page.
 	 */
-	private void moveDir(String out, String in) {
-		File filedir = new File(out);
-		File existdir = new File(in);
-		if(!existdir.exists())
-			if(!existdir.mkdirs())
-				System.out.println("Failed to create the directory!");
-		/* recall the format of the B+ tree: for a single node, only one file
-		 * that contains the key list and a list of directories starting from 0.
-		 * so we could move the single file first and move on to the directory 
-		 * by doing that recursively. */
-		int index = 0;
-		while(true) {
-			File keyfile = new File(out + "keylist");
-			if(!keyfile.renameTo(new File(in + "keylist")))
-				System.out.println("Failed to move the file!");
-			String newout = out + index + "/";
-			String newin = in + index + "/";
-			File indexdir = new File(newout);
-			if(indexdir.exists())
-				moveDir(newout, newin);
-			else break;
-			index++;
-		}
+	private IndexNode getIndexNode(int page) {
+		return cache.computeIfAbsent(page, p -> (IndexNode)Node.read(file, p));
 	}
-
+	
 	/**
-	 * TODO Delete a key/value pair from this B+Tree
-	 * 
-	 * @param key
+	 * This method finds the key in the middle of the list by the number 
+	 * of bytes, so the two halves have about the same size.
+	 * @param keys the list of keys.
+	 * @return the index of the middle key, which is never the first one.
 	 */
-	public void delete(K key) {
-        Node<K,T> temp = root;
-        delete(temp,null,null,null,key);
+	private int getMiddle(List<byte[]> keys) {
+		int total = 0;
+		for(byte[] key : keys)
+			total += key.length;
+		int sum = 0, middle = 0;
+		while(middle < keys.size() - 1 && sum + keys.get(middle).length <= total / 2) {
+			sum += keys.get(middle).length;
+			middle++;
+		}
+		return Math.max(middle, 1);
 	}
 	
-	private int delete(Node<K,T> temp, Node<K,T> left, Node<K,T> right, IndexNode<K,T> parent, K key) {
-		if(temp==null) return -1;
-		else if(temp.isLeafNode){
-			LeafNode<K,T> node = (LeafNode<K,T>)temp;
-			int index = temp.keys.indexOf(key);
-			if(index==-1) return -1; // handle the case when the key is not exist.
-			else{
-				temp.keys.remove(index);
-				node.values.remove(index);
-				if(!temp.isUnderflowed()) return -1;
-				else if(parent==null){
-					// we are at the root now and no keys left, set root to null.
-				    if(temp.keys.size()==0) root = null;
-				    return -1;
-				}else{
-					LeafNode<K,T> leftnode = (LeafNode<K,T>)left;
-					LeafNode<K,T> rightnode = (LeafNode<K,T>)right;
-					return handleLeafNodeUnderflow(leftnode,rightnode,parent);
-				}
-			}
-		}else{
-			IndexNode<K,T> node = (IndexNode<K,T>)temp;
-			Node<K,T> target = null;
-			Node<K,T> leftnode = null;
-			Node<K,T> rightnode = null;
-			int index = 0;
-			// get the desired nodes from the list.
-			if(key.compareTo(temp.keys.get(0))<0){
-				target = node.children.get(0);
-				rightnode = node.children.get(1);
-			}else if(key.compareTo(temp.keys.get(temp.keys.size()-1))>=0){
-				target = node.children.get(node.children.size()-1);
-				leftnode = node.children.get(node.children.size()-2);
-			}else{
-				for(int i=0;i<temp.keys.size()-1;i++){
-					if(key.compareTo(temp.keys.get(i))>=0&&key.compareTo(temp.keys.get(i+1))<0){
-						index = i + 1;
-						break;
-					}
-				}
-				target = node.children.get(index);
-				leftnode = node.children.get(index-1);
-			}
-			// delete the node recursively.
-			int delete = delete(target,leftnode,rightnode,node,key);
-			if(delete==-1) return -1;
-			else{
-				// there is a merge, need to delete a key.
-				node.keys.remove(delete);
-				node.children.remove(delete+1);
-				if(!node.isUnderflowed()) return -1;
-				else if(parent==null){
-					// we reach the root and there are no keys left. Reset the root.
-					if(node.keys.size()==0) root = node.children.get(0);
-					return -1;
-				}
-				else{
-					IndexNode<K,T> leftnood = (IndexNode<K,T>)left;
-					IndexNode<K,T> rightnood = (IndexNode<K,T>)right;
-					return handleIndexNodeUnderflow(leftnood,rightnood,parent);
-				}
-			}
-		}
+	/**
+	 * This method writes the header and closes the file of the tree.
+	 */
+	public void close() {
+		file.close();
 	}
-
+	
 	/**
-	 * TODO Handle LeafNode Underflow (merge or redistribution)
-	 * 
-	 * @param left
-	 *            : the smaller node
-	 * @param right
-	 *            : the bigger node
-	 * @param parent
-	 *            : their parent index node
-	 * @return the splitkey position in parent if merged so that parent can
-	 *         delete the splitkey later on. -1 otherwise
+	 * This class stores the entry that is moved up to the parent after
+	 * a node is split, with the page of the new node.
+	 * @author messfish
+	 *
 	 */
-	public int handleLeafNodeUnderflow(LeafNode<K,T> left, LeafNode<K,T> right,
-			IndexNode<K,T> parent) {
-        int dummy = 0;
-		if(left!=null&&left.keys.size()>D){
-			dummy = parent.children.indexOf(left) + 1;
-			LeafNode<K,T> mid = (LeafNode<K,T>)parent.children.get(dummy);
-			int temp = (left.keys.size()+D-1)-(left.keys.size()+D)/2;
-			// evenly handle the nodes.
-			for(int i = left.keys.size()-1;i>=temp;i--){
-				mid.keys.add(0,left.keys.remove(i));
-				mid.values.add(0,left.values.remove(i));
-			}
-			// set the new key value for the parent node.
-			parent.keys.set(dummy-1, mid.keys.get(0));
-			return -1;
-		}
-		else if(left!=null){
-			dummy = parent.children.indexOf(left) + 1;
-			LeafNode<K,T> mid = (LeafNode<K,T>)parent.children.get(dummy);
-			// merge the two nodes.
-			for(int i=0;i<mid.keys.size();){
-				left.keys.add(mid.keys.remove(0));
-				left.values.add(mid.values.remove(0));
-			}
-			return dummy - 1; // return the index that is gonna be deleted.
-		}
-		if(right!=null&&right.keys.size()>D){
-			dummy = parent.children.indexOf(right) - 1;
-			LeafNode<K,T> mid = (LeafNode<K,T>)parent.children.get(dummy);
-			int temp = (right.keys.size()+D-1)-(right.keys.size()+D)/2;
-			// evenly handle the nodes.
-			for(int i = mid.keys.size();i<temp;i++){
-				mid.keys.add(right.keys.remove(0));
-				mid.values.add(right.values.remove(0));
-			}
-			// set the new key value for the parent node.
-			parent.keys.set(dummy, right.keys.get(0));
-			return -1;
-		}		
-		else if(right!=null){
-			dummy = parent.children.indexOf(right) - 1;
-			LeafNode<K,T> mid = (LeafNode<K,T>)parent.children.get(dummy);
-			// merge the two nodes.
-			for(int i=0;i<right.keys.size();){
-				mid.keys.add(right.keys.remove(0));
-				mid.values.add(right.values.remove(0));
-			}
-			return dummy; // return the index that is gonna be deleted.
+	private static class Split {
+		
+		private byte[] key;
+		private int page; // the page of the new node on the right side.
+		
+		/**
+		 * Constructor: this constructor sets the arguments to their
+		 * global variables, respectively.
+		 */
+		private Split(byte[] key, int page) {
+			this.key = key;
+			this.page = page;
 		}
-		return -1;
-
+		
 	}
-
+	
 	/**
-	 * TODO Handle IndexNode Underflow (merge or redistribution)
-	 * 
-	 * @param left
-	 *            : the smaller node
-	 * @param right
-	 *            : the bigger node
-	 * @param parent
-	 *            : their parent index node
-	 * @return the splitkey position in parent if merged so that parent can
-	 *         delete the splitkey later on. -1 otherwise
+	 * This class stores the pages that are write latched on the way down
+	 * and whether the latch of the root is held.
+	 * @author messfish
+	 *
 	 */
-	public int handleIndexNodeUnderflow(IndexNode<K,T> leftIndex,
-			IndexNode<K,T> rightIndex, IndexNode<K,T> parent) {
-		int dummy = 0;
-		if(leftIndex!=null&&leftIndex.keys.size()>D){
-			dummy = parent.children.indexOf(leftIndex) + 1;
-			IndexNode<K,T> mid = (IndexNode<K,T>)parent.children.get(dummy);
-			mid.keys.add(0,parent.keys.get(dummy-1));
-			int temp = (leftIndex.keys.size()+D-1)-(leftIndex.keys.size()+D)/2;
-			// evenly handle the nodes.
-			for(int i = leftIndex.keys.size()-1;i>=temp;i--){
-				mid.keys.add(0,leftIndex.keys.remove(i));
-				mid.children.add(0,leftIndex.children.remove(i+1));
-				// pay attention on the difference of the index!
-			}
-			// set the new key value for the parent node.
-			parent.keys.set(dummy-1, mid.keys.remove(0));
-			return -1;
-		}
-		else if(leftIndex!=null){
-			dummy = parent.children.indexOf(leftIndex) + 1;
-			IndexNode<K,T> mid = (IndexNode<K,T>)parent.children.get(dummy);
-			leftIndex.keys.add(parent.keys.get(dummy-1));
-			leftIndex.children.add(mid.children.remove(0));
-			// merge the two nodes.
-			for(int i=0;i<mid.keys.size();){
-				leftIndex.keys.add(mid.keys.remove(0));
-				leftIndex.children.add(mid.children.remove(0));
-			}
-			return dummy - 1; // return the index that is gonna be deleted.
-		}
-		if(rightIndex!=null&&rightIndex.keys.size()>D){
-			dummy = parent.children.indexOf(rightIndex) - 1;
-			IndexNode<K,T> mid = (IndexNode<K,T>)parent.children.get(dummy);
-			mid.keys.add(parent.keys.get(dummy));
-			int temp = (rightIndex.keys.size()+D-1)-(rightIndex.keys.size()+D)/2;
-			// evenly handle the nodes.
-			for(int i = mid.keys.size();i<=temp;i++){
-				mid.keys.add(rightIndex.keys.remove(0));
-				mid.children.add(rightIndex.children.remove(0));
-			}
-			// set the new key value for the parent node.
-			parent.keys.set(dummy, mid.keys.remove(mid.keys.size()-1));
-			return -1;
-		}		
-		else if(rightIndex!=null){
-			dummy = parent.children.indexOf(rightIndex) - 1;
-			IndexNode<K,T> mid = (IndexNode<K,T>)parent.children.get(dummy);
-			mid.keys.add(parent.keys.get(dummy));
-			mid.children.add(rightIndex.children.remove(0));
-			// merge the two nodes.
-			for(int i=0;i<rightIndex.keys.size();){
-				mid.keys.add(rightIndex.keys.remove(0));
-				mid.children.add(rightIndex.children.remove(0));
-			}
-			return dummy; // return the index that is gonna be deleted.
-		}
-		return -1;
+	private static class Path {
+		
+		private List<Integer> pages = new ArrayList<>();
+		private boolean root; // this shows whether the root latch is held.
+		
 	}
 	
 }
@@ -0,0 +1,357 @@
+package BPlusTree;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import PhysicalOperators.Operator;
+import PhysicalOperators.ScanOperator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SmallSQLServer.Main;
+import Sorting.ExternalSort;
+import Sorting.TempOperator;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class builds the static B+ Tree of a table by bulk loading. The
+ * entries of the table are sorted by the external sort first, unless the
+ * table is already sorted on the key. The values of the included 
+ * attributes follow the key in the leaf nodes, so a query that only 
+ * reads the attributes of the index does not read the table. Then the 
+ * tree is built from bottom up in a single pass: the leaf nodes are 
+ * packed one after another to the fill factor, and the shortest key 
+ * between each node and the one before it is passed to the level above,
+ * which is packed in the same way. So each page is written only once and
+ * the pages are appended to the file in order, instead of reading and
+ * writing the nodes along a path for every single entry.
+ * @author messfish
+ *
+ */
+public class BulkLoader {
+
+	private BPlusTree tree; // the tree that is built.
+	private PageFile file;
+	private int limit; // the number of bytes a node is filled to.
+	private Level leaf; // the leaf node that is being filled.
+	private LeafNode pending;
+	// the last leaf node, it is written when the page of the next one is known.
+	private byte[] last; // the last key in the last leaf node.
+	private List<Level> levels;
+	// the index nodes that are being filled, one for each level.
+	
+	/**
+	 * Constructor: this constructor builds the B+ Tree on the attributes
+	 * of the table, the file of the tree is replaced if it exists.
+	 * @param table the file of the table in the binary form.
+	 * @param keys the list of attributes in the key.
+	 * @param location the location of the file of the tree.
+	 * @param fillfactor the fraction of a page that is filled by the
+	 * entries, the rest of the page is left for the future insertions.
+	 */
+	public BulkLoader(File table, List<String> keys, String location,
+					  double fillfactor) {
+		this(table, keys, new ArrayList<>(), location, fillfactor);
+	}
+	
+	/**
+	 * Constructor: this constructor builds the B+ Tree on the attributes
+	 * of the table, with the values of the included attributes stored in
+	 * the leaf nodes after the key. The file of the tree is replaced if 
+	 * it exists.
+	 * @param table the file of the table in the binary form.
+	 * @param keys the list of attributes in the key.
+	 * @param include the list of attributes that are only in the leaves.
+	 * @param location the location of the file of the tree.
+	 * @param fillfactor the fraction of a page that is filled by the
+	 * entries, the rest of the page is left for the future insertions.
+	 */
+	public BulkLoader(File table, List<String> keys, List<String> include,
+					  String location, double fillfactor) {
+		if(fillfactor <= 0 || fillfactor > 1)
+			throw new IllegalArgumentException("The fill factor should be "
+					+ "larger than 0 and not larger than 1!");
+		List<String> columns = new ArrayList<>(keys);
+		columns.addAll(include);
+		ScanOperator scan = new ScanOperator(table);
+		EntryOperator entries = new EntryOperator(scan, columns);
+		int[] datatype = new int[columns.size()];
+		for(int i=0;i<columns.size();i++) {
+			int type = scan.getSchema().get(columns.get(i)).getDataType();
+			/* the date and the time values are stored as double values. */
+			datatype[i] = type==1||type==2 ? type : 5;
+		}
+		new File(location).delete();
+		tree = new BPlusTree(location, datatype, keys.size());
+		file = tree.getPageFile();
+		/* the empty root of the new file is used as the first leaf. */
+		file.free(file.getRoot());
+		limit = (int)(PageFile.NUM_OF_BYTES * fillfactor);
+		leaf = new Level();
+		levels = new ArrayList<>();
+		Operator source = entries;
+		TempOperator temp = null;
+		List<String> order = scan.getOrder();
+		/* the included attributes are a part of the entries in the leaves, 
+		 * so the entries with the same key are sorted on them too. */
+		if(include.size() > 0 || order.size() < keys.size() ||
+				!order.subList(0, keys.size()).equals(keys)) {
+			/* the position is sorted as well so the entries with the 
+			 * same key are in the same order as in the tree. */
+			List<Expression> expressionlist = new ArrayList<>();
+			for(String s : columns)
+				expressionlist.add(new ColumnNode(s));
+			expressionlist.add(new ColumnNode("#page"));
+			expressionlist.add(new ColumnNode("#offset"));
+			ExternalSort ex = new ExternalSort(entries, expressionlist, 
+											   Main.getTempID());
+			if(ex.getResult() != null)
+				temp = new TempOperator(ex.getResult(), entries.getSchema(), true);
+			source = temp;
+		}
+		Tuple tuple = null;
+		while(source != null && (tuple = source.getNextTuple()) != null) {
+			DataType[] key = new DataType[columns.size()];
+			for(int i=0;i<key.length;i++)
+				key[i] = tuple.getData(i);
+			int[] value = {(int)tuple.getData(key.length).getLong(),
+					(int)tuple.getData(key.length + 1).getLong()};
+			add(LeafNode.getKey(tree.normalize(key), value));
+		}
+		/* the sorted file is only needed for building the tree. */
+		if(temp != null)
+			temp.delete();
+		scan.close();
+		finish();
+	}
+	
+	/**
+	 * This is the getter method of the tree.
+	 * @return the B+ Tree that is built.
+	 */
+	public BPlusTree getTree() {
+		return tree;
+	}
+	
+	/**
+	 * This method adds the next key to the current leaf node. When the
+	 * leaf node is filled, it is closed and a new one is started.
+	 * @param key the key of the leaf, which has the position of the tuple.
+	 */
+	private void add(byte[] key) {
+		if(!leaf.fits(key, true)) {
+			closeLeaf();
+			leaf.separator = Compare.separator(last, key);
+		}
+		leaf.add(key, null);
+	}
+	
+	/**
+	 * This method gives the current leaf node a page and passes it to the
+	 * level above. The leaf node before it is written since its right 
+	 * sibling is known now.
+	 */
+	private void closeLeaf() {
+		LeafNode node = new LeafNode(file.allocate(), null);
+		node.build(leaf.keys, null);
+		if(pending != null) {
+			pending.setNext(node.page);
+			pending.write(file);
+		}
+		pending = node;
+		if(leaf.keys.size() > 0) {
+			last = leaf.keys.get(leaf.keys.size() - 1);
+			addChild(0, leaf.separator, node.page);
+		}
+		leaf = new Level();
+	}
+	
+	/**
+	 * This method adds a child to the index node of the level. When the
+	 * index node is filled, it is closed and a new one is started with
+	 * the child.
+	 * @param level the level of the index node, 0 means the level right
+	 * above the leaf nodes.
+	 * @param separator the key between the child and the one before it.
+	 * @param page the page of the child.
+	 */
+	private void addChild(int level, byte[] separator, int page) {
+		if(level == levels.size())
+			levels.add(new Level());
+		Level node = levels.get(level);
+		if(node.children.size() > 0 && !node.fits(separator, false)) {
+			closeIndex(level);
+			node = levels.get(level);
+			node.separator = separator;
+		}
+		if(node.children.size() == 0)
+			node.children.add(page);
+		else node.add(separator, page);
+	}
+	
+	/**
+	 * This method writes the index node of the level to a new page and 
+	 * passes it to the level above.
+	 * @param level the level of the index node.
+	 */
+	private void closeIndex(int level) {
+		Level node = levels.get(level);
+		IndexNode index = new IndexNode(file.allocate(), null);
+		index.build(node.keys, node.children);
+		index.write(file);
+		levels.set(level, new Level());
+		addChild(level + 1, node.separator, index.page);
+	}
+	
+	/**
+	 * This method writes the nodes that are still open from bottom up.
+	 * The highest index node with a single child is not needed, the 
+	 * child becomes the root of the tree.
+	 */
+	private void finish() {
+		if(leaf.keys.size() > 0 || pending == null)
+			closeLeaf();
+		pending.write(file);
+		int root = pending.page, height = 0;
+		for(int i=0;i<levels.size();i++) {
+			Level node = levels.get(i);
+			if(i == levels.size() - 1 && node.keys.size() == 0) {
+				root = node.children.get(0);
+				height = i;
+				break;
+			}
+			closeIndex(i);
+		}
+		file.setRoot(root);
+		file.setHeight(height);
+		file.writeHeader();
+	}
+	
+	/**
+	 * This class holds the keys of a node that is being filled. The size
+	 * of the page is counted as the keys come in, the prefix of the keys
+	 * is the common prefix of the first key and the last key.
+	 * @author messfish
+	 *
+	 */
+	private class Level {
+		
+		private List<byte[]> keys = new ArrayList<>();
+		private List<Integer> children = new ArrayList<>();
+		private int total; // the number of bytes of all the keys.
+		private byte[] separator;
+		// the key between this node and the node before it.
+		
+		/**
+		 * This method checks whether the key could be added to the node
+		 * without going over the fill factor. A node always takes its
+		 * first key.
+		 * @param key the key that will be added.
+		 * @param leaf true means this is a leaf node.
+		 * @return true if the key could be added.
+		 */
+		private boolean fits(byte[] key, boolean leaf) {
+			if(keys.size() == 0)
+				return true;
+			int prefix = Compare.commonPrefix(keys.get(0), key);
+			return Node.getSize(keys.size() + 1, total + key.length, 
+								prefix, leaf) <= limit;
+		}
+		
+		/**
+		 * This method adds the key to the node.
+		 * @param key the key that will be added.
+		 * @param child the child on the right side of the key, null
+		 * for the leaf node.
+		 */
+		private void add(byte[] key, Integer child) {
+			keys.add(key);
+			total += key.length;
+			if(child != null)
+				children.add(child);
+		}
+		
+	}
+	
+	/**
+	 * This class reads the tuples of the table and returns the entries
+	 * of the index: the attributes in the key and the included attributes,
+	 * followed by the page and the offset of the tuple in the table.
+	 * @author messfish
+	 *
+	 */
+	private static class EntryOperator extends Operator {
+		
+		private ScanOperator scan;
+		private int[] keyindex; // the index of the key in the tuple.
+		private Map<String, Mule> schema;
+		
+		/**
+		 * Constructor: this constructor builds the schema of the entries.
+		 * @param scan the operator that reads the table.
+		 * @param keys the list of attributes in the entry.
+		 */
+		private EntryOperator(ScanOperator scan, List<String> keys) {
+			this.scan = scan;
+			keyindex = new int[keys.size()];
+			schema = new HashMap<>();
+			for(int i=0;i<keys.size();i++) {
+				Mule mule = scan.getSchema().get(keys.get(i));
+				keyindex[i] = mule.getIndex();
+				schema.put(keys.get(i), new Mule(i, mule.getDataType()));
+			}
+			schema.put("#page", new Mule(keys.size(), 1));
+			schema.put("#offset", new Mule(keys.size() + 1, 1));
+		}
+	
+		/**
+		 * This method is used to fetch the next entry from the table.
+		 * @return the next entry.
+		 */
+		@Override
+		public Tuple getNextTuple() {
+			Tuple tuple = scan.getNextTuple();
+			if(tuple == null)
+				return null;
+			Tuple result = new Tuple(keyindex.length + 2, 1);
+			for(int i=0;i<keyindex.length;i++)
+				result.setData(i, tuple.getData(keyindex[i]));
+			int[] position = scan.getPosition();
+			result.setData(keyindex.length, new DataType((long)position[0]));
+			result.setData(keyindex.length + 1, new DataType((long)position[1]));
+			return result;
+		}
+	
+		/**
+		 * This method is used to reset the operator back to the starting point.
+		 */
+		@Override
+		public void reset() {
+			scan.reset();
+		}
+	
+		/**
+		 * This method returns the schema of the entries.
+		 * @return the schema of the operator.
+		 */
+		@Override
+		public Map<String, Mule> getSchema() {
+			return schema;
+		}
+	
+		/**
+		 * This method returns the number of tables in the operator.
+		 * @return the number of tables.
+		 */
+		@Override
+		public int getNumOfTables() {
+			return 1;
+		}
+		
+	}
+	
+}
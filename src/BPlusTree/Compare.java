@@ -1,28 +1,44 @@
 package BPlusTree;
 
-import TableElement.DataType;
+import java.util.Arrays;
 
 /**
- * This class is mainly used for comparing the key node which will be 
- * used by virtually all the class in this package.
+ * This class is mainly used for comparing the keys which will be used
+ * by virtually all the class in this package. The keys are normalized 
+ * arrays of bytes built by the sort key, so they are compared byte by 
+ * byte, every byte is treated as an unsigned number.
  * @author messfish
  *
  */
 public class Compare {
 
 	/**
-	 * This method is used to compare the two key arrays.
-	 * @param key the search key used for comparison.
-	 * @param candidate the key that is used for checking.
-	 * @return an integer value interpreted as this: 1 means key is larger,
-	 * 0 means they are equal, -1 means candidate is larger.
+	 * This method returns the length of the common prefix of two keys.
+	 * @param key one of the keys.
+	 * @param candidate the other key.
+	 * @return the number of bytes at the beginning that are the same.
 	 */
-	protected int compareArray(DataType[] key, DataType[] candidate) {
-		for(int i=0;i<key.length;i++) {
-			int temp = key[i].compare(candidate[i]);
-			if(temp!=0) return temp;
-		}
-		return 0;
+	protected static int commonPrefix(byte[] key, byte[] candidate) {
+		int length = Math.min(key.length, candidate.length);
+		for(int i=0;i<length;i++)
+			if(key[i] != candidate[i])
+				return i;
+		return length;
+	}
+	
+	/**
+	 * This method returns the shortest key that is larger than the left
+	 * key and not larger than the right key, it is the key that is put
+	 * in the parent when a node is split. The rest of the right key is
+	 * not needed to tell the two nodes apart, so it is cut off and more
+	 * keys could be put in an index node.
+	 * @param left the last key in the left node.
+	 * @param right the first key in the right node.
+	 * @return the separator of the two nodes.
+	 */
+	protected static byte[] separator(byte[] left, byte[] right) {
+		int length = Math.min(commonPrefix(left, right) + 1, right.length);
+		return Arrays.copyOf(right, length);
 	}
 	
 }
@@ -1,121 +1,69 @@
 package BPlusTree;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.List;
 
-import TableElement.DataType;
-
 /**
- * This is the index node that stores the list of keys and a list of 
- * child entries. 
+ * This class is the index node of the B+ Tree. The link of the page is
+ * the first child, and each key is followed by the child on its right
+ * side, so the child i holds the keys that are not smaller than the key
+ * i - 1 and smaller than the key i. The keys in the index node are cut
+ * as short as possible when they are moved up from the leaf nodes.
  * @author messfish
  *
  */
 public class IndexNode extends Node {
-	
-	/**
-	 * Constructor: this constructor extends the constructor from the 
-	 * Node class. Note here is the format of the index node: Besides
-	 * from the first two bytes specified in the node class, there is
-	 * a number that tells how many keys are there in the key list, followed
-	 * by the actual keys. Note for the String type, we need to attach one
-	 * byte that indicates the length of the string. Also, for each page,
-	 * the first four bytes indicates how many keys are there in the single
-	 * page.
-	 * @param filelocation the location of the file.
-	 */
-	public IndexNode(String filelocation) {
-		super(filelocation);
-	}
 
 	/**
-	 * Constructors: this constructor is used to write a new 
-	 * @param location
-	 * @param keylist
+	 * Constructor: this constructor builds an index node on the page.
+	 * @param page the ID of the page.
+	 * @param buffer the byte buffer that holds the page, null means the
+	 * node is empty.
 	 */
-	public IndexNode(String location, List<DataType[]> keylist) {
-		super(location, keylist);
-		writeFile();
+	public IndexNode(int page, ByteBuffer buffer) {
+		super(page, buffer);
 	}
-
+	
 	/**
-	 * This is the method that extends from the Node class: fetch the
-	 * desired data out and 
+	 * This method returns the page of a child.
+	 * @param index the index of the child.
+	 * @return the ID of the page of the child.
 	 */
-	@Override
-	protected void assignData(ByteBuffer buffer) {
-		int start = 0;
-		/* for the first page, there is a flag shows whether the node is
-		 * index node or not, and an integer shows the type of the data.
-		 * As a result, we should start from 8. */
-		if(isFirst) start = firstkeyindex;
-		int numberofkeys = buffer.getInt(start);
-		start += 4;
-		for(int i=0;i<numberofkeys;i++) 
-			start = assignKey(buffer, start);
+	public int getChild(int index) {
+		if(index == 0)
+			return buffer.getInt(3);
+		int offset = getSlot(index - 1);
+		return buffer.getInt(offset + 2 + buffer.getShort(offset));
 	}
 	
 	/**
-	 * This method is used to write a single page of the file.
-	 * It return the index of the array list which the next 
-	 * Page should follow.
-	 * @param firstTime this variable is used to indicate whether this
-	 * is the first time we call the method.
-	 * @param fc the file channel that used to write the data.
-	 * @return the next index to start on the key list.
+	 * This method returns all the children of the node.
+	 * @return the list of pages of the children.
 	 */
-	protected int writePage(boolean firstTime, int index, FileChannel fc) {
-		int start = 4, numofkeys = 0, keyindex = 0;
-		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-		if(firstTime) {
-			buffer.putInt(0, datatype.length);
-			for(int i=0;i<datatype.length;i++) {
-				buffer.putInt(start, datatype[i]);
-				start += 4;
-			}
-			start += 4;
-			keyindex = 4 + datatype.length * 4;
-		}
-		while(index < keylist.size()) {
-			if(outofBound(start,index))
-				break;
-			start = writeKey(buffer,start,index);
-			index++;
-			numofkeys++;
-		}
-		buffer.putInt(keyindex, numofkeys);
-		buffer.limit(buffer.capacity());
-		buffer.position(0);
-		try {
-			fc.write(buffer);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return index;
+	public List<Integer> getChildren() {
+		List<Integer> result = new ArrayList<>();
+		for(int i=0;i<=getCount();i++)
+			result.add(getChild(i));
+		return result;
 	}
 	
 	/**
-	 * This method is used to get the child by using the index 
-	 * @param index the index of the child list.
-	 * @param isleaf tells whether the child is leaf or not.
-	 * @return the new Node which is the child from the given index.
+	 * This method returns the child that may hold the key.
+	 * @param key the key that will be searched.
+	 * @return the ID of the page of the child.
 	 */
-	protected Node getChild(int index, boolean isLeaf) {
-		String path = filelocation + "/" + index;
-		if(isLeaf) return new LeafNode(path);
-		else return new IndexNode(path);
+	public int findChild(byte[] key) {
+		return getChild(search(key, true));
 	}
 	
 	/**
-	 * This method is used to insert a key into the key list by
-	 * using the index specified.
-	 * @param key the key that will be inserted.
-	 * @param index the index where we insert the key.
+	 * This method returns whether the node is a leaf node.
+	 * @return false since this is an index node.
 	 */
-	public void insertSorted(DataType[] key, int index) {
-		keylist.add(index, key);
+	@Override
+	public boolean isLeaf() {
+		return false;
 	}
-	
+
 }
@@ -1,231 +1,336 @@
 package BPlusTree;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
-import TableElement.DataType;
-
 /**
  * This class is the super class of both the index node and the leaf
- * node. Basically the difference between the leaf node and the index
- * node is the leaf node only contains a file that stores a list of 
- * key and the pointer to the tuple. The index node, on the other hand,
- * may have a file that contains the list of keys. In addition, it 
- * has a list of file directory that serves as the children of the 
- * node. For each page, it will be a binary file which has a storage
- * as 4KB. 
+ * node. Each node is a single page in the file of the tree, which is
+ * addressed by the ID of the page. The keys are the normalized keys 
+ * built by the sort key, so they are searched right in the page by
+ * comparing the bytes, without being turned into the data types. Here
+ * is the format of a page: the first byte shows the kind of the node,
+ * 0 means a leaf node, 1 means an index node. Followed by that is a
+ * short integer of the number of keys, an integer of the link (the 
+ * next leaf node or the first child), a short integer of the start of
+ * the keys and a short integer of the length of the prefix. After that
+ * are the bytes of the prefix, which all the keys in the page start 
+ * with, so it is stored only once. Then comes the array of slots, each
+ * is a short integer of the offset of a key in the order of the keys.
+ * The keys are stored from the end of the page to the front: a short
+ * integer of the length and the bytes after the prefix, an index node 
+ * also has an integer of the child on the right side of the key.
  * @author messfish
  *
  */
 public abstract class Node {
 
-	protected static final int NUM_OF_BYTES = 4096;
-	protected String filelocation;
-	protected List<DataType[]> keylist;
-	protected int[] datatype;
-	// remember, 1 means the data is long integer, 2 means the data is a 
-	// string, 5 means the data is a double value.
-	protected boolean isFirst = true;
-	protected int numofkeys; 
-	protected int firstkeyindex;
-	
-	/**
-	 * Constructor: this constructor takes the path of the file as the
-	 * parameter. Note the single file in the path is always named as
-	 * "keylist". The format of the key file is as follows: The first
-	 * integer is a value that indicates how many attributes are used as key.
-	 * Followed by that is a list of the type of the data used
-	 * for index. The rest of the content will be discussed in the
-	 * index node and leaf node, respectively.
-	 * @param filelocation the location of the file.
-	 */
-	public Node(String filelocation) {
-		this.filelocation = filelocation;
-		File file = new File(filelocation + "/keylist");
-		keylist = new ArrayList<>();
-		try {
-			FileInputStream in = new FileInputStream(file);
-			FileChannel fc = in.getChannel();
-			ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-			int bufferlength = fc.read(buffer);
-			numofkeys = buffer.getInt(0);
-			datatype = new int[numofkeys];
-			firstkeyindex = 4;
-			for(int i=0;i<numofkeys;i++) {
-				datatype[i] = buffer.getInt(firstkeyindex);
-				firstkeyindex += 4;
-			}
-			while(bufferlength!=-1) {
-				assignData(buffer);
-				buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-				isFirst = false;
-				bufferlength = fc.read(buffer);
-			}
-			in.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+	protected static final int NUM_OF_BYTES = PageFile.NUM_OF_BYTES;
+	protected static final int HEADER = 11; // the number of bytes in the header.
+	protected static final int MIN_OF_BYTES = NUM_OF_BYTES / 4;
+	// a node that uses fewer bytes than this is too small.
+	protected int page; // the ID of the page that stores the node.
+	protected ByteBuffer buffer; // the byte buffer that holds the page.
+	
+	/**
+	 * Constructor: this constructor builds a node on the page.
+	 * @param page the ID of the page.
+	 * @param buffer the byte buffer that holds the page, null means the
+	 * node is empty.
+	 */
+	public Node(int page, ByteBuffer buffer) {
+		this.page = page;
+		if(buffer == null) {
+			buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+			buffer.put(0, (byte)(isLeaf() ? 0 : 1));
+			buffer.putInt(3, -1);
+			buffer.putShort(7, (short)NUM_OF_BYTES);
 		}
+		this.buffer = buffer;
 	}
 	
 	/**
-	 * Constructor: this constructor is used to build a single node
-	 * by scratch. assign the parameters to global variables.
-	 * @param filelocation the location of the node in the file system.
-	 * @param keylist the list of keys.
+	 * This method reads a node from the file.
+	 * @param file the file of the tree.
+	 * @param page the ID of the page.
+	 * @return the node stored in the page.
 	 */
-	public Node(String filelocation, List<DataType[]> keylist) {
-		this.filelocation = filelocation;
-		this.keylist = keylist;
-		datatype = new int[keylist.get(0).length];
-		for(int i=0;i<datatype.length;i++)
-			datatype[i] = keylist.get(0)[i].getType();
+	public static Node read(PageFile file, int page) {
+		ByteBuffer buffer = file.readPage(page);
+		if(buffer.get(0)==0)
+			return new LeafNode(page, buffer);
+		return new IndexNode(page, buffer);
 	}
 	
 	/**
-	 * This class is used for assigning the data into the list of
-	 * data type as lists. Since the format of the IndexNode and the format
-	 * of the LeafNode is not the same, I make this abstract.
-	 * @param buffer the byte bufffer that store the data.
+	 * This method writes the node back to its page.
+	 * @param file the file of the tree.
 	 */
-	protected abstract void assignData(ByteBuffer buffer);
+	public void write(PageFile file) {
+		file.writePage(page, buffer);
+	}
 	
 	/**
-	 * This method is used to check whether there is an overflow in
-	 * the B+ Tree. Basically it checks whether the order of the BPlusTree
-	 * times by 2 is smaller than the size of the key list.
-	 * @return the boolean value shows whether there is an overflow.
+	 * This method returns the number of keys in the node.
+	 * @return the number of keys.
 	 */
-	public boolean isOverflowed() {
-		return keylist.size() > 2 * BPlusTree.KEY_LIMITS;
+	public int getCount() {
+		return buffer.getShort(1);
 	}
 	
 	/**
-	 * This method is used to check whether there is an underflow in the 
-	 * B+ Tree. Basically it checks whether the order of the BPlusTree
-	 * is greater than the size of the key list. Note for the root, we
-	 * should allow the existence of underflow.
-	 * @return the boolean value shows whether there is an underflow.
+	 * This method returns the length of the prefix of the keys.
+	 * @return the number of bytes in the prefix.
 	 */
-	public boolean isUnderflowed() {
-		return keylist.size() < BPlusTree.KEY_LIMITS;
-	}
-	
-	/**
-	 * This method is used to write the new file. Note the format of the 
-	 * file should follow the format specified in the constructor. It will
-	 * be mentioned in the writePage() method implemented by the child classes.
-	 */
-	protected void writeFile() {
-		File file = new File(filelocation + "/keylist");
-		try {
-			FileOutputStream out = new FileOutputStream(file);
-			FileChannel fc = out.getChannel();
-			int index = 0;
-			boolean firstTime = true;
-			while(index!=keylist.size()) {
-				index = writePage(firstTime, index, fc);
-				firstTime = false;
-			}
-			out.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+	protected int getPrefixLength() {
+		return buffer.getShort(9);
+	}
+	
+	/**
+	 * This method returns the offset of a key in the page.
+	 * @param index the index of the key.
+	 * @return the offset of the key.
+	 */
+	protected int getSlot(int index) {
+		return buffer.getShort(HEADER + getPrefixLength() + index * 2);
+	}
+	
+	/**
+	 * This method returns the whole key, which is the prefix followed by
+	 * the bytes stored in the slot.
+	 * @param index the index of the key.
+	 * @return the array of bytes of the key.
+	 */
+	public byte[] getKey(int index) {
+		int prefix = getPrefixLength(), offset = getSlot(index);
+		byte[] result = new byte[prefix + buffer.getShort(offset)];
+		for(int i=0;i<prefix;i++)
+			result[i] = buffer.get(HEADER + i);
+		for(int i=prefix;i<result.length;i++)
+			result[i] = buffer.get(offset + 2 + i - prefix);
+		return result;
+	}
+	
+	/**
+	 * This method returns all the keys in the node.
+	 * @return the list of keys.
+	 */
+	public List<byte[]> getKeys() {
+		List<byte[]> result = new ArrayList<>();
+		for(int i=0;i<getCount();i++)
+			result.add(getKey(i));
+		return result;
+	}
+	
+	/**
+	 * This method finds the position of the key by the binary search.
+	 * The key is compared with the prefix only once, then the bytes in
+	 * the slots are compared in the page.
+	 * @param key the key that will be searched.
+	 * @param upper true means the keys that are equal to the key are
+	 * counted, false means they are not.
+	 * @return the number of keys that are smaller than the key, or not
+	 * larger than the key when the upper is true.
+	 */
+	public int search(byte[] key, boolean upper) {
+		int count = getCount(), prefix = getPrefixLength();
+		int length = Math.min(prefix, key.length);
+		for(int i=0;i<length;i++) {
+			int diff = (key[i] & 0xff) - (buffer.get(HEADER + i) & 0xff);
+			if(diff < 0) return 0;
+			if(diff > 0) return count;
+		}
+		/* the key is a prefix of all the keys, so it is smaller. */
+		if(key.length < prefix)
+			return 0;
+		int low = 0, high = count;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			int temp = compareSuffix(key, prefix, middle);
+			if(temp > 0 || (upper && temp == 0))
+				low = middle + 1;
+			else high = middle;
 		}
+		return low;
 	}
 	
 	/**
-	 * This abstract method is used to write a single buffer page.
-	 * It will be implemented differently by the two children.
-	 * @param firstTime a parameter indicates whether this is the first time
-	 * we used this method.
-	 * @param index the index to start at the key list.
-	 * @param fc the file channel.
-	 * @return the index of the key list.
-	 */
-	protected abstract int writePage(boolean firstTime, int index,
-									 FileChannel fc);
-	
-	/**
-	 * This helper method is used to put the key into the key list.
-	 * @param buffer the byte buffer that contains data.
-	 * @param start the starting point of the key.
-	 * @return the integer shows where the start should be after the reading.
-	 */
-	protected int assignKey(ByteBuffer buffer, int start) {
-		DataType[] datalist = new DataType[numofkeys];
-		for(int i=0;i<numofkeys;i++) {
-			int increment = 8;
-			if(datatype[i]==1) 
-				datalist[i] = new DataType(buffer.getLong(start));
-			else if(datatype[i]==5)
-				datalist[i] = new DataType(buffer.getDouble(start));
-			else if(datatype[i]==2) {
-				int length = buffer.get(start);
-				start++;
-				StringBuilder sb = new StringBuilder();
-				for(int j=0;j<length;j++) {
-					sb.append((char)buffer.get(start));
-					start++;
-				}
-				datalist[i] = new DataType(sb.toString());
-				increment = 0;
-			}
-			start += increment;
+	 * This method compares the key with the bytes stored in a slot.
+	 * @param key the key used for comparison.
+	 * @param prefix the length of the prefix, which is already compared.
+	 * @param index the index of the key in the node.
+	 * @return a negative number when the key is smaller, a positive number
+	 * when the key is larger, 0 means they are the same.
+	 */
+	private int compareSuffix(byte[] key, int prefix, int index) {
+		int offset = getSlot(index), length = buffer.getShort(offset);
+		int limit = Math.min(key.length - prefix, length);
+		for(int i=0;i<limit;i++) {
+			int diff = (key[prefix + i] & 0xff) - (buffer.get(offset + 2 + i) & 0xff);
+			if(diff != 0)
+				return diff;
 		}
-		return start;
+		return key.length - prefix - length;
 	}
 	
 	/**
-	 * This method is used to check whether the remaining space in the buffer
-	 * page could hold the key.
-	 * @param start the starting point in the buffer page.
-	 * @param index the index that points the position of the key list.
-	 * @return the boolean value shows whether we can put the key in it.
+	 * This method checks whether the key in the node starts with the key.
+	 * @param key the key used for checking.
+	 * @param index the index of the key in the node.
+	 * @return true if the key in the node starts with the key.
 	 */
-	protected boolean outofBound(int start, int index) {
-		for(int i=0;i<datatype.length;i++) {
-			if(datatype[i]==1||datatype[i]==5)
-				start += 8;
-			else if(datatype[i]==2) {
-				String str = keylist.get(index)[i].getString();
-				start += 1 + str.length();
-			}
+	public boolean startsWith(byte[] key, int index) {
+		int prefix = getPrefixLength(), offset = getSlot(index);
+		if(key.length > prefix + buffer.getShort(offset))
+			return false;
+		for(int i=0;i<key.length;i++) {
+			byte b = i < prefix ? buffer.get(HEADER + i) : 
+								  buffer.get(offset + 2 + i - prefix);
+			if(b != key[i])
+				return false;
 		}
-		return start <= NUM_OF_BYTES;
-	}
-	
-	/**
-	 * This method is used to write the key elements back to the byte buffer.
-	 * @param buffer the byte buffer that we put data in.
-	 * @param start the starting point of the buffer page.
-	 * @param index the index of the key list.
-	 * @return the ending point of the key in the buffer page.
-	 */
-	protected int writeKey(ByteBuffer buffer, int start, int index) {
-		for(int i=0;i<datatype.length;i++) {
-			DataType data = keylist.get(index)[i];
-			int increment = 8;
-			if(datatype[i]==1)
-				buffer.putLong(start, data.getLong());
-			else if(datatype[i]==5)
-				buffer.putDouble(start, data.getDouble());
-			else if(datatype[i]==2) {
-				String str = data.getString();
-				buffer.put(start, (byte)str.length());
-				start++;
-				for(char c : str.toCharArray()) {
-					buffer.put(start, (byte)c);
-					start++;
-				}
-				increment = 0;
-			}
-			start += increment;
+		return true;
+	}
+	
+	/**
+	 * This method puts a key in the page without changing the others.
+	 * It only works when the key starts with the prefix and there is 
+	 * enough room between the slots and the keys.
+	 * @param index the position of the new key.
+	 * @param key the new key.
+	 * @param child the child on the right side of the key, only used 
+	 * in the index node.
+	 * @return true if the key is put in the page, false means the page
+	 * should be built again.
+	 */
+	public boolean insert(int index, byte[] key, int child) {
+		int count = getCount(), prefix = getPrefixLength();
+		if(key.length < prefix)
+			return false;
+		for(int i=0;i<prefix;i++)
+			if(buffer.get(HEADER + i) != key[i])
+				return false;
+		int size = 2 + key.length - prefix + (isLeaf() ? 0 : 4);
+		int slots = HEADER + prefix + count * 2;
+		int start = buffer.getShort(7) - size;
+		if(start < slots + 2)
+			return false;
+		writeKey(start, key, prefix, child);
+		byte[] array = buffer.array();
+		int position = HEADER + prefix + index * 2;
+		System.arraycopy(array, position, array, position + 2, slots - position);
+		buffer.putShort(position, (short)start);
+		buffer.putShort(1, (short)(count + 1));
+		buffer.putShort(7, (short)start);
+		return true;
+	}
+	
+	/**
+	 * This method builds the page from the list of keys. The prefix is 
+	 * the common prefix of the first and the last key, since the keys 
+	 * are sorted, all the keys start with it.
+	 * @param keys the list of keys in the order.
+	 * @param children the list of children for the index node, the first
+	 * one is the link. It is null for the leaf node.
+	 * @return true if the keys fit in the page, false means the node 
+	 * should be split and the page is not changed.
+	 */
+	public boolean build(List<byte[]> keys, List<Integer> children) {
+		int prefix = keys.size() == 0 ? 0 : 
+			Compare.commonPrefix(keys.get(0), keys.get(keys.size() - 1));
+		int total = 0;
+		for(byte[] key : keys)
+			total += key.length;
+		if(getSize(keys.size(), total, prefix, isLeaf()) > NUM_OF_BYTES)
+			return false;
+		ByteBuffer result = ByteBuffer.allocate(NUM_OF_BYTES);
+		result.put(0, buffer.get(0));
+		result.putShort(1, (short)keys.size());
+		result.putInt(3, children == null ? buffer.getInt(3) : children.get(0));
+		result.putShort(9, (short)prefix);
+		for(int i=0;i<prefix;i++)
+			result.put(HEADER + i, keys.get(0)[i]);
+		buffer = result;
+		int start = NUM_OF_BYTES;
+		for(int i=0;i<keys.size();i++) {
+			byte[] key = keys.get(i);
+			start -= 2 + key.length - prefix + (isLeaf() ? 0 : 4);
+			writeKey(start, key, prefix, children == null ? 0 : children.get(i + 1));
+			buffer.putShort(HEADER + prefix + i * 2, (short)start);
 		}
-		return start;
+		buffer.putShort(7, (short)start);
+		return true;
+	}
+	
+	/**
+	 * This method returns the number of bytes a page needs for the keys.
+	 * @param count the number of keys.
+	 * @param total the number of bytes of all the keys.
+	 * @param prefix the length of the common prefix.
+	 * @param leaf true means this is a leaf node.
+	 * @return the number of bytes in the page.
+	 */
+	protected static int getSize(int count, int total, int prefix, boolean leaf) {
+		return HEADER + prefix + count * (leaf ? 4 : 8) + total - count * prefix;
+	}
+	
+	/**
+	 * This method returns the number of bytes that are used in the page.
+	 * @return the number of bytes used.
+	 */
+	public int getUsed() {
+		return HEADER + getPrefixLength() + getCount() * 2 + 
+			   NUM_OF_BYTES - buffer.getShort(7);
+	}
+	
+	/**
+	 * This method checks whether the node is less than a quarter full,
+	 * then it should be merged with a sibling or borrow keys from it.
+	 * @return true if the node is too small.
+	 */
+	public boolean isUnderflowed() {
+		return getUsed() < MIN_OF_BYTES;
 	}
 	
+	/**
+	 * This method checks whether the page has the room for a number of
+	 * bytes more, even when the prefix could not be shared any more.
+	 * @param bytes the number of bytes needed.
+	 * @return true if the page has enough room.
+	 */
+	public boolean hasRoom(int bytes) {
+		return getUsed() + (getCount() - 1) * getPrefixLength() + bytes 
+				<= NUM_OF_BYTES;
+	}
+	
+	/**
+	 * This method writes a key into the page without the prefix.
+	 * @param start the offset of the key.
+	 * @param key the key that will be written.
+	 * @param prefix the length of the prefix.
+	 * @param child the child on the right side of the key.
+	 */
+	private void writeKey(int start, byte[] key, int prefix, int child) {
+		buffer.putShort(start, (short)(key.length - prefix));
+		for(int i=prefix;i<key.length;i++)
+			buffer.put(start + 2 + i - prefix, key[i]);
+		if(!isLeaf())
+			buffer.putInt(start + 2 + key.length - prefix, child);
+	}
+	
+	/**
+	 * This method returns whether the node is a leaf node.
+	 * @return true if the node is a leaf node.
+	 */
+	public abstract boolean isLeaf();
+	
+	/**
+	 * This is the getter method of the page.
+	 * @return the ID of the page of the node.
+	 */
+	public int getPage() {
+		return page;
+	}
+
 }
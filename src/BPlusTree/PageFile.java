@@ -0,0 +1,242 @@
+package BPlusTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class manages the single file of a B+ Tree. The file is a list
+ * of pages with the same size, and a page is addressed by its ID, which
+ * is its position in the file, so a node is read by a single positional
+ * read instead of opening a file. The page 0 is the header page, its
+ * format is as follows: a magic number, the size of the page, the ID of
+ * the root, the height of the tree, the number of pages in the file,
+ * the first page in the free list, the number of attributes in the key,
+ * followed by the types of the attributes, and the number of attributes
+ * that are used for searching. The attributes after them are only kept
+ * in the leaf nodes so a query could read them without the table. A 
+ * page that is no longer used goes to the free list: the first byte 
+ * shows the page is free and the next four bytes are the ID of the next
+ * free page, so the pages are used again before the file grows. The pages are read and written
+ * with the positional methods of the channel, so several threads could
+ * use the file at the same time.
+ * @author messfish
+ *
+ */
+public class PageFile {
+
+	public static final int NUM_OF_BYTES = 4096;
+	// this is the number of bytes in a single page.
+	private static final int MAGIC = 0x42547265;
+	// this number marks the file as the file of a B+ Tree.
+	static final byte FREE_PAGE = 2; // the first byte of a free page.
+	private RandomAccessFile file;
+	private FileChannel fc;
+	private int root; // the ID of the root page.
+	private int height; // the height of the tree, 0 means the root is a leaf.
+	private int numofpages; // the number of pages in the file.
+	private int freelist; // the first free page, -1 means there is none.
+	private int[] datatype; // the types of the attributes in the key.
+	private int numofkeys; // the number of attributes used for searching.
+	
+	/**
+	 * Constructor: this constructor opens the file of a B+ Tree. When the
+	 * file does not exist, a new file is created with an empty leaf as
+	 * the root.
+	 * @param location the location of the file.
+	 * @param datatype the types of the attributes in the key, only used
+	 * when the file is created.
+	 * @param numofkeys the number of attributes used for searching, only
+	 * used when the file is created.
+	 */
+	public PageFile(String location, int[] datatype, int numofkeys) {
+		try {
+			boolean exists = new File(location).exists();
+			file = new RandomAccessFile(location, "rw");
+			fc = file.getChannel();
+			if(exists && file.length() > 0)
+				readHeader();
+			else {
+				this.datatype = datatype;
+				this.numofkeys = numofkeys;
+				numofpages = 1;
+				freelist = -1;
+				root = allocate();
+				new LeafNode(root, null).write(this);
+				writeHeader();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method reads the header page.
+	 */
+	private void readHeader() {
+		ByteBuffer buffer = readPage(0);
+		if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != NUM_OF_BYTES)
+			throw new IllegalArgumentException("This is not a B+ Tree file!");
+		root = buffer.getInt(8);
+		height = buffer.getInt(12);
+		numofpages = buffer.getInt(16);
+		freelist = buffer.getInt(20);
+		datatype = new int[buffer.getInt(24)];
+		for(int i=0;i<datatype.length;i++)
+			datatype[i] = buffer.getInt(28 + i * 4);
+		numofkeys = buffer.getInt(28 + datatype.length * 4);
+	}
+	
+	/**
+	 * This method writes the header page, it should be called whenever
+	 * the root, the height or the pages are changed.
+	 */
+	public synchronized void writeHeader() {
+		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, NUM_OF_BYTES);
+		buffer.putInt(8, root);
+		buffer.putInt(12, height);
+		buffer.putInt(16, numofpages);
+		buffer.putInt(20, freelist);
+		buffer.putInt(24, datatype.length);
+		for(int i=0;i<datatype.length;i++)
+			buffer.putInt(28 + i * 4, datatype[i]);
+		buffer.putInt(28 + datatype.length * 4, numofkeys);
+		writePage(0, buffer);
+	}
+	
+	/**
+	 * This method reads a page from the file.
+	 * @param ID the ID of the page.
+	 * @return the byte buffer that holds the page.
+	 */
+	public ByteBuffer readPage(int ID) {
+		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+		try {
+			long position = (long)ID * NUM_OF_BYTES;
+			while(buffer.hasRemaining()) {
+				if(fc.read(buffer, position + buffer.position()) == -1)
+					break;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * This method writes a page to the file.
+	 * @param ID the ID of the page.
+	 * @param buffer the byte buffer that holds the page.
+	 */
+	public void writePage(int ID, ByteBuffer buffer) {
+		buffer.clear();
+		try {
+			long position = (long)ID * NUM_OF_BYTES;
+			while(buffer.hasRemaining())
+				fc.write(buffer, position + buffer.position());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method gets a page for a new node. The free pages are used
+	 * first, otherwise the file grows by a page.
+	 * @return the ID of the page.
+	 */
+	public synchronized int allocate() {
+		if(freelist != -1) {
+			int ID = freelist;
+			freelist = readPage(ID).getInt(1);
+			return ID;
+		}
+		numofpages++;
+		return numofpages - 1;
+	}
+	
+	/**
+	 * This method puts a page into the free list.
+	 * @param ID the ID of the page.
+	 */
+	public synchronized void free(int ID) {
+		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+		buffer.put(0, FREE_PAGE);
+		buffer.putInt(1, freelist);
+		writePage(ID, buffer);
+		freelist = ID;
+	}
+	
+	/**
+	 * This is the getter method of the root.
+	 * @return the ID of the root page.
+	 */
+	public int getRoot() {
+		return root;
+	}
+	
+	/**
+	 * This is the setter method of the root.
+	 * @param root the ID of the new root page.
+	 */
+	public void setRoot(int root) {
+		this.root = root;
+	}
+	
+	/**
+	 * This is the getter method of the height.
+	 * @return the height of the tree.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * This is the setter method of the height.
+	 * @param height the new height of the tree.
+	 */
+	public void setHeight(int height) {
+		this.height = height;
+	}
+	
+	/**
+	 * This is the getter method of the number of pages.
+	 * @return the number of pages in the file.
+	 */
+	public int getNumOfPages() {
+		return numofpages;
+	}
+	
+	/**
+	 * This is the getter method of the types of the key.
+	 * @return the types of the attributes in the key.
+	 */
+	public int[] getDataType() {
+		return datatype;
+	}
+	
+	/**
+	 * This is the getter method of the number of keys.
+	 * @return the number of attributes used for searching.
+	 */
+	public int getNumOfKeys() {
+		return numofkeys;
+	}
+	
+	/**
+	 * This method writes the header and closes the file.
+	 */
+	public synchronized void close() {
+		writeHeader();
+		try {
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -2,6 +2,7 @@ package BPlusTree;
 
 import java.util.List;
 
+import Sorting.SortKey;
 import TableElement.DataType;
 
 /**
@@ -19,54 +20,52 @@ public class Printer {
 	 */
 	public String printTree(BPlusTree tree) {
 		StringBuilder sb = new StringBuilder();
-		print(tree.getLocation(),"",sb, tree.getHeight());
+		PageFile file = tree.getPageFile();
+		print(file, file.getRoot(), "", sb);
 		return sb.toString();
 	}
 	
 	/**
 	 * This method traverse the tree and store the pre-order traverse to
 	 * the result.
-	 * @param filelocation the location of the file.
-	 * @param start it is used to indicate the level of the B
+	 * @param file the file of the tree.
+	 * @param page the ID of the page of the node.
+	 * @param start it is used to indicate the level of the B+ Tree.
 	 * @param sb the String Builder that stores the data.
-	 * @param height the height of the tree.
 	 */
-	private void print(String filelocation, String start
-						, StringBuilder sb, int height) {
-		Node treenode = null;
-		/* remember all the leaf nodes are at the bottom, so if the length
-		 * of the start equals to the height, it means this is a leaf node. */
-		if(start.length()==height) {
-			treenode = new LeafNode(filelocation);
+	private void print(PageFile file, int page, String start, 
+						StringBuilder sb) {
+		Node treenode = Node.read(file, page);
+		int[] datatype = file.getDataType();
+		List<byte[]> keylist = treenode.getKeys();
+		if(treenode.isLeaf()) {
 			sb.append(start).append("This is a leaf node:").append("\n");
-			List<DataType[]> keylist = treenode.keylist;
-			List<List<int[]>> valuelist = ((LeafNode)treenode).valuelist;
-			for(int i=0;i<keylist.size();i++) {
+			for(byte[] key : keylist) {
 				StringBuilder temp = new StringBuilder();
 				temp.append(start).append("Key: ");
-				DataType[] datalist = keylist.get(i);
-				for(int j=0;j<datalist.length;j++)
-					temp.append(datalist[j].print()).append(" ");
-				temp.append("Values: ");
-				for(int[] tupleindex : valuelist.get(i))
-					temp.append("[").append(tupleindex[0]).append(",").
-						append(tupleindex[1]).append("],");
-				sb.append(temp.deleteCharAt(temp.length() - 1)).append("\n");
+				for(DataType data : SortKey.denormalize(key, datatype))
+					temp.append(data.print()).append(" ");
+				int[] tupleindex = LeafNode.getValue(key);
+				temp.append("Value: [").append(tupleindex[0]).append(",").
+					append(tupleindex[1]).append("]");
+				sb.append(temp).append("\n");
 			}
 		}else {
-			treenode = new IndexNode(filelocation);
 			sb.append(start).append("This is an index node:").append("\n");
-			List<DataType[]> keylist = treenode.keylist;
 			sb.append(start).append("Keys: ");
-			for(DataType[] datalist : keylist) {
+			/* the keys in the index node could be cut short, only the
+			 * values that are complete are printed. */
+			for(byte[] key : keylist) {
 				sb.append("[");
-				for(DataType data : datalist) 
+				for(DataType data : SortKey.denormalize(key, datatype)) 
 					sb.append(data.print()).append(",");
-				sb.deleteCharAt(sb.length() - 1).append("] ");
+				if(sb.charAt(sb.length() - 1) == ',')
+					sb.deleteCharAt(sb.length() - 1);
+				sb.append("] ");
 			}
 			sb.deleteCharAt(sb.length() - 1).append("\n");
 			for(int i=0;i<=keylist.size();i++)
-				print(filelocation+i+"/",start+"-",sb,height);
+				print(file, ((IndexNode)treenode).getChild(i), start + "-", sb);
 		}
 	}
 	
@@ -0,0 +1,115 @@
+package BPlusTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import Sorting.SortKey;
+import TableElement.DataType;
+
+/**
+ * This class reads the entries of the B+ Tree in the order of the keys,
+ * only the entries that start with the given values are returned. The
+ * entries are read one leaf at a time, and the next leaf is found by the
+ * last entry that is returned, so the cursor does not hold any latch
+ * between two leaves and the tree could be changed in the meantime.
+ * Since the values of all the attributes are in the entry, the values
+ * are decoded from the entry without reading the table.
+ * @author messfish
+ *
+ */
+public class TreeCursor {
+
+	private BPlusTree tree; // the tree that is read.
+	private byte[] prefix; // the normalized values every entry starts with.
+	private List<byte[]> keys; // the entries of the current leaf.
+	private int index; // the index of the next entry in the list.
+	private byte[] last; // the last entry that is returned.
+	private boolean isDone; // true means there is no entry left.
+	
+	/**
+	 * Constructor: this constructor sets the values the entries start
+	 * with, which are the values of the first few attributes in the key.
+	 * @param tree the tree that is read.
+	 * @param prefix the values of the first attributes, an empty array
+	 * means all the entries are read.
+	 */
+	public TreeCursor(BPlusTree tree, DataType[] prefix) {
+		if(prefix.length > tree.getNumOfKeys())
+			throw new IllegalArgumentException("There are more values than"
+					+ " the attributes in the key!");
+		this.tree = tree;
+		this.prefix = tree.normalize(prefix);
+		reset();
+	}
+	
+	/**
+	 * This method moves the cursor to the next entry.
+	 * @return true if there is an entry, false means the cursor reaches
+	 * the end.
+	 */
+	public boolean next() {
+		if(isDone)
+			return false;
+		if(index == keys.size()) {
+			keys = last == null ? tree.getLeafKeys(prefix, true) :
+				tree.getLeafKeys(last, false);
+			index = 0;
+			if(keys.size() == 0) {
+				isDone = true;
+				return false;
+			}
+		}
+		byte[] key = keys.get(index);
+		if(!startsWith(key)) {
+			isDone = true;
+			return false;
+		}
+		last = key;
+		index++;
+		return true;
+	}
+	
+	/**
+	 * This method returns the values of the current entry: the attributes
+	 * in the key followed by the included attributes.
+	 * @return the array of values.
+	 */
+	public DataType[] getValues() {
+		return SortKey.denormalize(Arrays.copyOf(last, last.length - 8),
+								   tree.getDataType());
+	}
+	
+	/**
+	 * This method returns the position of the tuple of the current entry.
+	 * @return the page and the offset of the tuple.
+	 */
+	public int[] getPosition() {
+		return LeafNode.getValue(last);
+	}
+	
+	/**
+	 * This method moves the cursor back to the first entry.
+	 */
+	public void reset() {
+		keys = new ArrayList<>();
+		index = 0;
+		last = null;
+		isDone = false;
+	}
+	
+	/**
+	 * This method checks whether the entry starts with the prefix.
+	 * @param key the entry of the leaf.
+	 * @return true if the entry starts with the prefix.
+	 */
+	private boolean startsWith(byte[] key) {
+		if(key.length < prefix.length)
+			return false;
+		for(int i=0;i<prefix.length;i++)
+			if(key[i] != prefix[i])
+				return false;
+		return true;
+	}
+
+}
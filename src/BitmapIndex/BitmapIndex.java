@@ -0,0 +1,421 @@
+package BitmapIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import PhysicalOperators.ScanOperator;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the bitmap index of a table. For every attribute in the
+ * index, each distinct value has a bitmap of the tuples that hold it, so
+ * it only works for the attributes with a few distinct values. The tuples
+ * are numbered by their order in the table, starting from 0. Since these
+ * numbers are dense and grow with the position of the tuples, the index
+ * keeps the number of the first tuple in each data page, so the page of
+ * a tuple could be found from its number, and only the pages that hold
+ * the tuples in a bitmap need to be read. The deleted tuples keep their
+ * numbers, they are kept in a bitmap of their own, which is taken out of
+ * the bitmaps of the queries. The format of the file is as follows: the
+ * number of tuples, the number of data pages and the number of the first
+ * tuple in each page, the bitmap of the deleted tuples, then the number
+ * of attributes. For
+ * each attribute there is its name, its type and the number of values,
+ * followed by each value and the size and the bytes of its bitmap. The
+ * values of an attribute are in ascending order. The file is small, so
+ * it is read into the memory as a whole, while the bitmaps are only
+ * decoded when they are used. When the tuples of the table are inserted
+ * or deleted, all the bitmaps are decoded, changed and written again.
+ * @author messfish
+ *
+ */
+public class BitmapIndex {
+
+	private static final int MAX_OF_VALUES = 1024;
+	// the largest number of distinct values of an attribute.
+	private static final int NUM_OF_BYTES = 16384;
+	// this is the number of bytes in a single page of the table.
+	private ByteBuffer buffer; // the content of the file.
+	private int numofrows; // the number of tuples in the table.
+	private int[] firstrow; // the number of the first tuple in each page.
+	private Map<String, List<DataType>> values;
+	// the values of each attribute, in ascending order.
+	private Map<String, List<Integer>> offsets;
+	// the offset of the bitmap of each value in the file.
+	private RoaringBitmap deleted; // the numbers of the deleted tuples.
+	private List<String> columns; // the attributes in the index.
+	private List<Integer> types; // the type of each attribute.
+	private List<TreeMap<DataType, RoaringBitmap>> maps;
+	// the bitmap of each value of each attribute, only when they are changed.
+	
+	/**
+	 * Constructor: this constructor reads the index from the file.
+	 * @param location the location of the file.
+	 */
+	public BitmapIndex(String location) {
+		values = new HashMap<>();
+		offsets = new HashMap<>();
+		columns = new ArrayList<>();
+		types = new ArrayList<>();
+		try {
+			RandomAccessFile file = new RandomAccessFile(location, "r");
+			FileChannel fc = file.getChannel();
+			buffer = ByteBuffer.allocate((int)fc.size());
+			while(buffer.hasRemaining() && fc.read(buffer) != -1);
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		buffer.position(0);
+		numofrows = buffer.getInt();
+		firstrow = new int[buffer.getInt()];
+		for(int i=0;i<firstrow.length;i++)
+			firstrow[i] = buffer.getInt();
+		deleted = RoaringBitmap.read(buffer);
+		int numofcolumns = buffer.getInt();
+		for(int i=0;i<numofcolumns;i++) {
+			String name = readString(buffer);
+			int type = buffer.get();
+			columns.add(name);
+			types.add(type);
+			int numofvalues = buffer.getInt();
+			List<DataType> valuelist = new ArrayList<>();
+			List<Integer> offsetlist = new ArrayList<>();
+			for(int j=0;j<numofvalues;j++) {
+				if(type == 1)
+					valuelist.add(new DataType(buffer.getLong()));
+				else if(type == 2)
+					valuelist.add(new DataType(readString(buffer)));
+				else valuelist.add(new DataType(buffer.getDouble()));
+				int size = buffer.getInt();
+				offsetlist.add(buffer.position());
+				buffer.position(buffer.position() + size);
+			}
+			values.put(name, valuelist);
+			offsets.put(name, offsetlist);
+		}
+	}
+	
+	/**
+	 * This method builds the bitmap index of a table by scanning the table
+	 * once. When an attribute has too many distinct values, the index is
+	 * not built.
+	 * @param table the binary file of the table.
+	 * @param keys the attributes in the index, such as "S.A".
+	 * @param location the location of the file of the index.
+	 * @return the index, null when it is not built.
+	 */
+	public static BitmapIndex build(File table, List<String> keys, String location) {
+		ScanOperator scan = new ScanOperator(table);
+		Map<String, Mule> schema = scan.getSchema();
+		List<TreeMap<DataType, RoaringBitmap>> maps = new ArrayList<>();
+		for(int i=0;i<keys.size();i++)
+			maps.add(new TreeMap<>((a, b) -> a.compare(b)));
+		int[] firstrow = new int[(int)(table.length() / NUM_OF_BYTES) - 1];
+		RoaringBitmap deleted = new RoaringBitmap();
+		int row = 0, page = 0;
+		Tuple tuple = null;
+		/* the deleted tuples are counted, so the numbers match the places
+		 * of the tuples in the pages. */
+		while((tuple=scan.getNextRow())!=null) {
+			int datapage = scan.getPosition()[0];
+			while(page <= datapage) {
+				firstrow[page] = row;
+				page++;
+			}
+			if(scan.isDeleted()) {
+				deleted.add(row);
+				row++;
+				continue;
+			}
+			for(int i=0;i<keys.size();i++) {
+				DataType data = tuple.getData(schema.get(keys.get(i)).getIndex());
+				TreeMap<DataType, RoaringBitmap> map = maps.get(i);
+				RoaringBitmap bitmap = map.get(data);
+				if(bitmap == null) {
+					if(map.size() == MAX_OF_VALUES) {
+						System.out.println("The attribute " + keys.get(i) +
+								" has too many values for a bitmap index!");
+						scan.close();
+						return null;
+					}
+					bitmap = new RoaringBitmap();
+					map.put(data, bitmap);
+				}
+				bitmap.add(row);
+			}
+			row++;
+		}
+		scan.close();
+		while(page < firstrow.length) {
+			firstrow[page] = row;
+			page++;
+		}
+		List<String> columns = new ArrayList<>();
+		List<Integer> types = new ArrayList<>();
+		for(String key : keys) {
+			columns.add(key.split("\\.")[1]);
+			int type = schema.get(key).getDataType();
+			types.add(type == 1 || type == 2 ? type : 5);
+		}
+		write(location, row, firstrow, deleted, columns, types, maps);
+		return new BitmapIndex(location);
+	}
+	
+	/**
+	 * This method writes the index to the file, which is replaced if it
+	 * exists. The format is defined in the class.
+	 * @param location the location of the file.
+	 * @param numofrows the number of tuples in the table.
+	 * @param firstrow the number of the first tuple in each page.
+	 * @param deleted the numbers of the deleted tuples.
+	 * @param columns the attributes in the index.
+	 * @param types the type of each attribute.
+	 * @param maps the bitmap of each value of each attribute.
+	 */
+	private static void write(String location, int numofrows, int[] firstrow,
+							  RoaringBitmap deleted, List<String> columns, List<Integer> types,
+							  List<TreeMap<DataType, RoaringBitmap>> maps) {
+		int size = 12 + 4 * firstrow.length + deleted.getSizeInBytes();
+		for(int i=0;i<columns.size();i++) {
+			size += 7 + columns.get(i).length();
+			for(Map.Entry<DataType, RoaringBitmap> entry : maps.get(i).entrySet()) {
+				DataType data = entry.getKey();
+				size += data.getType() == 2 ? 2 + data.getString().length() : 8;
+				size += 4 + entry.getValue().getSizeInBytes();
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(numofrows);
+		buffer.putInt(firstrow.length);
+		for(int number : firstrow)
+			buffer.putInt(number);
+		deleted.write(buffer);
+		buffer.putInt(columns.size());
+		for(int i=0;i<columns.size();i++) {
+			writeString(buffer, columns.get(i));
+			buffer.put((byte)(int)types.get(i));
+			buffer.putInt(maps.get(i).size());
+			for(Map.Entry<DataType, RoaringBitmap> entry : maps.get(i).entrySet()) {
+				DataType data = entry.getKey();
+				if(data.getType() == 1)
+					buffer.putLong(data.getLong());
+				else if(data.getType() == 2)
+					writeString(buffer, data.getString());
+				else buffer.putDouble(data.getDouble());
+				buffer.putInt(entry.getValue().getSizeInBytes());
+				entry.getValue().write(buffer);
+			}
+		}
+		try {
+			RandomAccessFile file = new RandomAccessFile(location, "rw");
+			file.setLength(0);
+			FileChannel fc = file.getChannel();
+			buffer.flip();
+			while(buffer.hasRemaining())
+				fc.write(buffer);
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This is the getter method of the bitmap of the deleted tuples.
+	 * @return the bitmap of the deleted tuples.
+	 */
+	public RoaringBitmap getDeleted() {
+		return deleted;
+	}
+	
+	/**
+	 * This method adds a tuple to the bitmaps. The tuples are added in the
+	 * order of their places, so a tuple in a new page is right after the
+	 * last tuple of the table.
+	 * @param page the data page of the tuple.
+	 * @param slot the place of the tuple in the page.
+	 * @param row the values of the attributes in the index, in the order
+	 * of the attributes.
+	 */
+	public void insert(int page, int slot, DataType[] row) {
+		decode();
+		if(page >= firstrow.length) {
+			int length = firstrow.length;
+			firstrow = Arrays.copyOf(firstrow, page + 1);
+			for(int i=length;i<=page;i++)
+				firstrow[i] = numofrows;
+		}
+		int number = firstrow[page] + slot;
+		numofrows = Math.max(numofrows, number + 1);
+		for(int i=0;i<row.length;i++) {
+			RoaringBitmap bitmap = maps.get(i).get(row[i]);
+			if(bitmap == null) {
+				bitmap = new RoaringBitmap();
+				maps.get(i).put(row[i], bitmap);
+			}
+			bitmap.add(number);
+		}
+	}
+	
+	/**
+	 * This method marks a tuple as deleted.
+	 * @param page the data page of the tuple.
+	 * @param slot the place of the tuple in the page.
+	 */
+	public void delete(int page, int slot) {
+		decode();
+		deleted.add(firstrow[page] + slot);
+	}
+	
+	/**
+	 * This method writes the changed index to the file.
+	 * @param location the location of the file.
+	 */
+	public void save(String location) {
+		if(maps != null)
+			write(location, numofrows, firstrow, deleted, columns, types, maps);
+	}
+	
+	/**
+	 * This method decodes all the bitmaps, so they could be changed.
+	 */
+	private void decode() {
+		if(maps != null)
+			return;
+		maps = new ArrayList<>();
+		for(String column : columns) {
+			TreeMap<DataType, RoaringBitmap> map = new TreeMap<>((a, b) -> a.compare(b));
+			for(int i=0;i<values.get(column).size();i++) {
+				ByteBuffer bitmap = buffer.duplicate();
+				bitmap.position(offsets.get(column).get(i));
+				map.put(values.get(column).get(i), RoaringBitmap.read(bitmap));
+			}
+			maps.add(map);
+		}
+	}
+	
+	/**
+	 * This is the getter method of the number of tuples in the table.
+	 * @return the number of tuples.
+	 */
+	public int getNumOfRows() {
+		return numofrows;
+	}
+	
+	/**
+	 * This method checks whether an attribute is in the index.
+	 * @param column the name of the attribute, such as "A".
+	 * @return true if the attribute has its bitmaps.
+	 */
+	public boolean hasColumn(String column) {
+		return values.containsKey(column);
+	}
+	
+	/**
+	 * This method returns the data page that holds a tuple, which is the
+	 * last page whose first tuple is not after it.
+	 * @param row the number of the tuple.
+	 * @return the data page of the tuple.
+	 */
+	public int getPage(int row) {
+		int low = 0, high = firstrow.length - 1;
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(firstrow[middle] <= row)
+				low = middle;
+			else high = middle - 1;
+		}
+		return low;
+	}
+	
+	/**
+	 * This method returns the number of the first tuple in a data page.
+	 * @param page the data page.
+	 * @return the number of the first tuple.
+	 */
+	public int getFirstRow(int page) {
+		return firstrow[page];
+	}
+	
+	/**
+	 * This method returns the bitmap of the tuples whose value of the
+	 * attribute compares with the given value in the way asked for. For
+	 * example, "A >= 3" is asked for by the values greater than or equal
+	 * to 3, the bitmaps of all these values are merged.
+	 * @param column the name of the attribute, such as "A".
+	 * @param value the value to be compared with.
+	 * @param isLess true means the smaller values are taken.
+	 * @param isEqual true means the equal value is taken.
+	 * @param isGreater true means the larger values are taken.
+	 * @return the bitmap of the tuples.
+	 */
+	public RoaringBitmap select(String column, DataType value, boolean isLess,
+								boolean isEqual, boolean isGreater) {
+		List<DataType> valuelist = values.get(column);
+		RoaringBitmap result = new RoaringBitmap();
+		for(int i=0;i<valuelist.size();i++) {
+			int compare = compare(valuelist.get(i), value);
+			if((compare < 0 && isLess) || (compare == 0 && isEqual) ||
+					(compare > 0 && isGreater)) {
+				ByteBuffer bitmap = buffer.duplicate();
+				bitmap.position(offsets.get(column).get(i));
+				result = result.or(RoaringBitmap.read(bitmap));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * This method compares two values, the long integers and the double
+	 * values are compared by their numbers.
+	 * @param first one of the values.
+	 * @param second another value.
+	 * @return the result of the comparison.
+	 */
+	private static int compare(DataType first, DataType second) {
+		if(first.getType() == second.getType() || first.getType() == 2 ||
+				second.getType() == 2)
+			return first.compare(second);
+		double number1 = first.getType() == 1 ? first.getLong() : first.getDouble(),
+			   number2 = second.getType() == 1 ? second.getLong() : second.getDouble();
+		return number1 < number2 ? -1 : number1 > number2 ? 1 : 0;
+	}
+	
+	/**
+	 * This method reads a string, which is a short integer of the length
+	 * followed by the characters.
+	 * @param buffer the buffer to be read.
+	 * @return the string.
+	 */
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getShort();
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<length;i++)
+			sb.append((char)buffer.get());
+		return sb.toString();
+	}
+	
+	/**
+	 * This method writes a string, which is a short integer of the length
+	 * followed by the characters.
+	 * @param buffer the buffer to be written.
+	 * @param str the string.
+	 */
+	private static void writeString(ByteBuffer buffer, String str) {
+		buffer.putShort((short)str.length());
+		for(char c : str.toCharArray())
+			buffer.put((byte)c);
+	}
+
+}
@@ -0,0 +1,312 @@
+package BitmapIndex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class holds the lower 16 bits of the numbers in a bitmap that
+ * share the same higher 16 bits. When there are only a few numbers, they
+ * are kept in a sorted array of characters, which takes two bytes for a
+ * number. When there are more than 4096 of them, the array would be
+ * larger than a bitset of all the 65536 numbers, so they are kept in an
+ * array of 1024 long integers instead. The operations always return the
+ * smaller form of the result.
+ * @author messfish
+ *
+ */
+class Container {
+
+	static final int MAX_OF_ARRAY = 4096;
+	// the largest number of values kept in the array.
+	private static final int NUM_OF_WORDS = 1024;
+	// the number of long integers in the bitset.
+	private char[] array; // the sorted values, null for the bitset.
+	private long[] words; // the bitset, null for the array.
+	private int cardinality; // the number of values in the container.
+	
+	/**
+	 * Constructor: this constructor builds an empty container.
+	 */
+	Container() {
+		array = new char[4];
+	}
+	
+	/**
+	 * Constructor: this constructor builds the container from an array.
+	 * @param array the sorted values.
+	 * @param cardinality the number of values in the array.
+	 */
+	private Container(char[] array, int cardinality) {
+		this.array = array;
+		this.cardinality = cardinality;
+	}
+	
+	/**
+	 * Constructor: this constructor builds the container from a bitset,
+	 * which is turned into an array when there are only a few values.
+	 * @param words the bitset.
+	 * @param cardinality the number of bits set.
+	 */
+	private Container(long[] words, int cardinality) {
+		this.cardinality = cardinality;
+		if(cardinality > MAX_OF_ARRAY) {
+			this.words = words;
+			return;
+		}
+		array = new char[cardinality];
+		int index = 0;
+		for(int i=0;i<words.length;i++) {
+			long word = words[i];
+			while(word != 0) {
+				array[index] = (char)(i * 64 + Long.numberOfTrailingZeros(word));
+				index++;
+				word &= word - 1;
+			}
+		}
+	}
+	
+	/**
+	 * This method builds the container with all the values smaller than
+	 * the limit.
+	 * @param limit the number of values, at most 65536.
+	 * @return the container.
+	 */
+	static Container range(int limit) {
+		long[] words = new long[NUM_OF_WORDS];
+		for(int i=0;i<limit/64;i++)
+			words[i] = -1L;
+		if(limit % 64 != 0)
+			words[limit / 64] = (1L << (limit % 64)) - 1;
+		return new Container(words, limit);
+	}
+	
+	/**
+	 * This is the getter method of the number of values.
+	 * @return the number of values in the container.
+	 */
+	int getCardinality() {
+		return cardinality;
+	}
+	
+	/**
+	 * This method adds a value to the container. The values are usually
+	 * added in order, so the array is checked from its end.
+	 * @param value the lower 16 bits of the number.
+	 */
+	void add(char value) {
+		if(words != null) {
+			if((words[value >>> 6] & (1L << value)) == 0) {
+				words[value >>> 6] |= 1L << value;
+				cardinality++;
+			}
+			return;
+		}
+		int index = cardinality;
+		if(cardinality > 0 && array[cardinality - 1] >= value) {
+			index = Arrays.binarySearch(array, 0, cardinality, value);
+			if(index >= 0)
+				return;
+			index = -index - 1;
+		}
+		if(cardinality == MAX_OF_ARRAY) {
+			words = toWords();
+			array = null;
+			add(value);
+			return;
+		}
+		if(cardinality == array.length)
+			array = Arrays.copyOf(array, Math.min(MAX_OF_ARRAY, array.length * 2));
+		System.arraycopy(array, index, array, index + 1, cardinality - index);
+		array[index] = value;
+		cardinality++;
+	}
+	
+	/**
+	 * This method returns the smallest value not less than a value.
+	 * @param from the lower bound of the value.
+	 * @return the value, -1 if there is none.
+	 */
+	int next(int from) {
+		if(words == null) {
+			int index = Arrays.binarySearch(array, 0, cardinality, (char)from);
+			if(index < 0)
+				index = -index - 1;
+			return index < cardinality ? array[index] : -1;
+		}
+		int index = from >>> 6;
+		long word = words[index] & (-1L << from);
+		while(word == 0) {
+			index++;
+			if(index == NUM_OF_WORDS)
+				return -1;
+			word = words[index];
+		}
+		return index * 64 + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * This method returns the values in both containers.
+	 * @param that the other container.
+	 * @return the intersection of the containers.
+	 */
+	Container and(Container that) {
+		if(words != null && that.words != null) {
+			long[] result = new long[NUM_OF_WORDS];
+			int count = 0;
+			for(int i=0;i<NUM_OF_WORDS;i++) {
+				result[i] = words[i] & that.words[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new Container(result, count);
+		}
+		if(words != null)
+			return that.and(this);
+		char[] result = new char[cardinality];
+		int count = 0;
+		for(int i=0;i<cardinality;i++)
+			if(that.contains(array[i])) {
+				result[count] = array[i];
+				count++;
+			}
+		return new Container(result, count);
+	}
+	
+	/**
+	 * This method returns the values in either container.
+	 * @param that the other container.
+	 * @return the union of the containers.
+	 */
+	Container or(Container that) {
+		if(words == null && that.words == null &&
+				cardinality + that.cardinality <= MAX_OF_ARRAY) {
+			char[] result = new char[cardinality + that.cardinality];
+			int i = 0, j = 0, count = 0;
+			while(i < cardinality || j < that.cardinality) {
+				char value;
+				if(j == that.cardinality || (i < cardinality && array[i] < that.array[j]))
+					value = array[i++];
+				else if(i == cardinality || that.array[j] < array[i])
+					value = that.array[j++];
+				else {
+					value = array[i++];
+					j++;
+				}
+				result[count] = value;
+				count++;
+			}
+			return new Container(result, count);
+		}
+		long[] result = toWords();
+		if(that.words != null)
+			for(int i=0;i<NUM_OF_WORDS;i++)
+				result[i] |= that.words[i];
+		else for(int i=0;i<that.cardinality;i++)
+			result[that.array[i] >>> 6] |= 1L << that.array[i];
+		return new Container(result, count(result));
+	}
+	
+	/**
+	 * This method returns the values in this container but not in the other.
+	 * @param that the other container.
+	 * @return the difference of the containers.
+	 */
+	Container andNot(Container that) {
+		if(words == null) {
+			char[] result = new char[cardinality];
+			int count = 0;
+			for(int i=0;i<cardinality;i++)
+				if(!that.contains(array[i])) {
+					result[count] = array[i];
+					count++;
+				}
+			return new Container(result, count);
+		}
+		long[] result = words.clone();
+		if(that.words != null)
+			for(int i=0;i<NUM_OF_WORDS;i++)
+				result[i] &= ~that.words[i];
+		else for(int i=0;i<that.cardinality;i++)
+			result[that.array[i] >>> 6] &= ~(1L << that.array[i]);
+		return new Container(result, count(result));
+	}
+	
+	/**
+	 * This method checks whether a value is in the container.
+	 * @param value the lower 16 bits of the number.
+	 * @return true if the value is in the container.
+	 */
+	private boolean contains(char value) {
+		if(words != null)
+			return (words[value >>> 6] & (1L << value)) != 0;
+		return Arrays.binarySearch(array, 0, cardinality, value) >= 0;
+	}
+	
+	/**
+	 * This method returns the values of the container as a bitset.
+	 * @return the bitset of the values.
+	 */
+	private long[] toWords() {
+		if(words != null)
+			return words.clone();
+		long[] result = new long[NUM_OF_WORDS];
+		for(int i=0;i<cardinality;i++)
+			result[array[i] >>> 6] |= 1L << array[i];
+		return result;
+	}
+	
+	/**
+	 * This method counts the bits set in a bitset.
+	 * @param words the bitset.
+	 * @return the number of bits set.
+	 */
+	private static int count(long[] words) {
+		int result = 0;
+		for(long word : words)
+			result += Long.bitCount(word);
+		return result;
+	}
+	
+	/**
+	 * This method returns the number of bytes the container takes when it
+	 * is written to the file.
+	 * @return the number of bytes.
+	 */
+	int getSizeInBytes() {
+		return 4 + (words != null ? NUM_OF_WORDS * 8 : cardinality * 2);
+	}
+	
+	/**
+	 * This method writes the container to the buffer: the number of values
+	 * followed by either the array or the bitset, which could be told by
+	 * the number of values.
+	 * @param buffer the buffer to be written.
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(cardinality);
+		if(words != null)
+			for(long word : words)
+				buffer.putLong(word);
+		else for(int i=0;i<cardinality;i++)
+			buffer.putChar(array[i]);
+	}
+	
+	/**
+	 * This method reads the container from the buffer.
+	 * @param buffer the buffer to be read.
+	 * @return the container.
+	 */
+	static Container read(ByteBuffer buffer) {
+		int cardinality = buffer.getInt();
+		if(cardinality > MAX_OF_ARRAY) {
+			long[] words = new long[NUM_OF_WORDS];
+			for(int i=0;i<NUM_OF_WORDS;i++)
+				words[i] = buffer.getLong();
+			return new Container(words, cardinality);
+		}
+		char[] array = new char[cardinality];
+		for(int i=0;i<cardinality;i++)
+			array[i] = buffer.getChar();
+		return new Container(array, cardinality);
+	}
+
+}
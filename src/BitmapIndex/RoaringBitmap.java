@@ -0,0 +1,244 @@
+package BitmapIndex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is a compressed bitmap of non negative integers, which is
+ * split the way the Roaring bitmap does: the numbers are grouped by
+ * their higher 16 bits, and the lower 16 bits of each group are kept in
+ * a container, which is either a sorted array or a bitset, whichever is
+ * smaller. So a sparse bitmap takes about two bytes for a number and a
+ * dense one takes one bit, and "AND", "OR" and "NOT" only touch the
+ * groups that are in the bitmaps.
+ * @author messfish
+ *
+ */
+public class RoaringBitmap {
+
+	private char[] keys; // the higher 16 bits of the groups, in order.
+	private Container[] containers; // the lower 16 bits of each group.
+	private int size; // the number of groups.
+	
+	/**
+	 * Constructor: this constructor builds an empty bitmap.
+	 */
+	public RoaringBitmap() {
+		this(4);
+	}
+	
+	/**
+	 * Constructor: this constructor builds an empty bitmap with room for
+	 * the number of groups.
+	 * @param capacity the number of groups.
+	 */
+	private RoaringBitmap(int capacity) {
+		keys = new char[Math.max(1, capacity)];
+		containers = new Container[keys.length];
+	}
+	
+	/**
+	 * This method builds the bitmap of all the numbers smaller than the limit.
+	 * @param limit the number of values.
+	 * @return the bitmap.
+	 */
+	public static RoaringBitmap range(int limit) {
+		RoaringBitmap result = new RoaringBitmap((limit >>> 16) + 1);
+		for(int high=0;high*65536<limit;high++)
+			result.append((char)high, Container.range(Math.min(65536, limit - high * 65536)));
+		return result;
+	}
+	
+	/**
+	 * This method adds a number to the bitmap. The numbers are usually
+	 * added in order, so the last group is checked first.
+	 * @param value the number to be added.
+	 */
+	public void add(int value) {
+		if(value < 0)
+			throw new IllegalArgumentException("The bitmap only holds non negative numbers!");
+		char high = (char)(value >>> 16);
+		int index = size - 1;
+		if(size == 0 || keys[size - 1] != high) {
+			index = Arrays.binarySearch(keys, 0, size, high);
+			if(index < 0) {
+				index = -index - 1;
+				ensureCapacity(size + 1);
+				System.arraycopy(keys, index, keys, index + 1, size - index);
+				System.arraycopy(containers, index, containers, index + 1, size - index);
+				keys[index] = high;
+				containers[index] = new Container();
+				size++;
+			}
+		}
+		containers[index].add((char)value);
+	}
+	
+	/**
+	 * This method returns the number of values in the bitmap.
+	 * @return the number of values.
+	 */
+	public long getCardinality() {
+		long result = 0;
+		for(int i=0;i<size;i++)
+			result += containers[i].getCardinality();
+		return result;
+	}
+	
+	/**
+	 * This method returns the smallest number in the bitmap that is not
+	 * less than a number, so the numbers could be read in order.
+	 * @param from the lower bound of the number.
+	 * @return the number, -1 if there is none.
+	 */
+	public int next(int from) {
+		if(from < 0)
+			return -1;
+		char high = (char)(from >>> 16);
+		int index = Arrays.binarySearch(keys, 0, size, high);
+		int low = from & 0xFFFF;
+		if(index < 0) {
+			index = -index - 1;
+			low = 0;
+		}
+		for(;index<size;index++) {
+			int value = containers[index].next(keys[index] == high ? low : 0);
+			if(value != -1)
+				return (keys[index] << 16) | value;
+		}
+		return -1;
+	}
+	
+	/**
+	 * This method returns the numbers in both bitmaps.
+	 * @param that the other bitmap.
+	 * @return the intersection of the bitmaps.
+	 */
+	public RoaringBitmap and(RoaringBitmap that) {
+		RoaringBitmap result = new RoaringBitmap(Math.min(size, that.size));
+		int i = 0, j = 0;
+		while(i < size && j < that.size) {
+			if(keys[i] < that.keys[j])
+				i++;
+			else if(keys[i] > that.keys[j])
+				j++;
+			else {
+				result.append(keys[i], containers[i].and(that.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * This method returns the numbers in either bitmap.
+	 * @param that the other bitmap.
+	 * @return the union of the bitmaps.
+	 */
+	public RoaringBitmap or(RoaringBitmap that) {
+		RoaringBitmap result = new RoaringBitmap(size + that.size);
+		int i = 0, j = 0;
+		while(i < size || j < that.size) {
+			if(j == that.size || (i < size && keys[i] < that.keys[j])) {
+				result.append(keys[i], containers[i]);
+				i++;
+			}else if(i == size || that.keys[j] < keys[i]) {
+				result.append(that.keys[j], that.containers[j]);
+				j++;
+			}else {
+				result.append(keys[i], containers[i].or(that.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * This method returns the numbers in this bitmap but not in the other.
+	 * @param that the other bitmap.
+	 * @return the difference of the bitmaps.
+	 */
+	public RoaringBitmap andNot(RoaringBitmap that) {
+		RoaringBitmap result = new RoaringBitmap(size);
+		int j = 0;
+		for(int i=0;i<size;i++) {
+			while(j < that.size && that.keys[j] < keys[i])
+				j++;
+			if(j < that.size && that.keys[j] == keys[i])
+				result.append(keys[i], containers[i].andNot(that.containers[j]));
+			else result.append(keys[i], containers[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * This method appends a group after the last one, the empty groups are
+	 * left out. The containers are never changed after they are built by
+	 * the operations, so they could be shared by several bitmaps.
+	 * @param key the higher 16 bits of the group.
+	 * @param container the lower 16 bits of the group.
+	 */
+	private void append(char key, Container container) {
+		if(container.getCardinality() == 0)
+			return;
+		ensureCapacity(size + 1);
+		keys[size] = key;
+		containers[size] = container;
+		size++;
+	}
+	
+	/**
+	 * This method makes sure the arrays could hold the number of groups.
+	 * @param capacity the number of groups.
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity <= keys.length)
+			return;
+		int length = Math.max(capacity, keys.length * 2);
+		keys = Arrays.copyOf(keys, length);
+		containers = Arrays.copyOf(containers, length);
+	}
+	
+	/**
+	 * This method returns the number of bytes the bitmap takes when it is
+	 * written to the file.
+	 * @return the number of bytes.
+	 */
+	public int getSizeInBytes() {
+		int result = 4;
+		for(int i=0;i<size;i++)
+			result += 2 + containers[i].getSizeInBytes();
+		return result;
+	}
+	
+	/**
+	 * This method writes the bitmap to the buffer: the number of groups,
+	 * followed by the key and the container of each group.
+	 * @param buffer the buffer to be written.
+	 */
+	public void write(ByteBuffer buffer) {
+		buffer.putInt(size);
+		for(int i=0;i<size;i++) {
+			buffer.putChar(keys[i]);
+			containers[i].write(buffer);
+		}
+	}
+	
+	/**
+	 * This method reads the bitmap from the buffer.
+	 * @param buffer the buffer to be read.
+	 * @return the bitmap.
+	 */
+	public static RoaringBitmap read(ByteBuffer buffer) {
+		int size = buffer.getInt();
+		RoaringBitmap result = new RoaringBitmap(size);
+		for(int i=0;i<size;i++) {
+			char key = buffer.getChar();
+			result.append(key, Container.read(buffer));
+		}
+		return result;
+	}
+
+}
@@ -608,11 +608,13 @@ public class Evaluator implements ExpressionVisitor {
 	 * This method is used to deal with the date value in the expression.
 	 * convert the date value type into a double value and
 	 * store that value into a data type and push that into stack1.
+	 * The parser keeps the double quotes around the date, so they are
+	 * removed before the conversion.
 	 * @param value the date value in an expression.
 	 */
 	@Override
 	public void visit(DateValue value) {
-		double data = convert.fromDateToNumber(value.getData());
+		double data = convert.fromDateToNumber(value.getData().replace("\"", ""));
 		stack1.push(new DataType(data));
 	}
 
@@ -620,11 +622,13 @@ public class Evaluator implements ExpressionVisitor {
 	 * This method is used to deal with the time value in the expression.
 	 * convert the time value type into a double value and
 	 * store that value into a data type and push that into stack1.
+	 * The parser keeps the double quotes around the time, so they are
+	 * removed before the conversion.
 	 * @param value the time value in an expression.
 	 */
 	@Override
 	public void visit(TimeValue value) {
-		double data = convert.fromTimeToNumber(value.getData());
+		double data = convert.fromTimeToNumber(value.getData().replace("\"", ""));
 		stack1.push(new DataType(data));
 	}
 
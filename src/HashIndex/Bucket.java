@@ -0,0 +1,120 @@
+package HashIndex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import BPlusTree.PageFile;
+
+/**
+ * This class is a bucket of the hash index, which is a single page in
+ * the file of the index. The format of the page is as follows: the first
+ * byte shows the page is a bucket, the next byte is the local depth of
+ * the bucket, followed by a short integer of the number of entries, an
+ * integer of the overflow page and a short integer of the number of
+ * bytes in use. Then the entries come one after another, each of them is
+ * a short integer of its length followed by the bytes of the entry. When
+ * the entries with the same hash value could not fit into the page, the
+ * rest of them go to the overflow pages, which are linked one by one.
+ * @author messfish
+ *
+ */
+class Bucket {
+
+	static final byte BUCKET = 3; // the first byte of a bucket page.
+	private static final int HEADER = 10; // the number of bytes in the header.
+	int page; // the page of the bucket.
+	int localdepth; // the number of bits of the hash value in common.
+	int overflow; // the overflow page, -1 means there is none.
+	List<byte[]> entries; // the entries in the bucket.
+	private int size; // the number of bytes in use.
+	
+	/**
+	 * Constructor: this constructor builds an empty bucket.
+	 * @param page the page of the bucket.
+	 * @param localdepth the local depth of the bucket.
+	 */
+	Bucket(int page, int localdepth) {
+		this.page = page;
+		this.localdepth = localdepth;
+		overflow = -1;
+		entries = new ArrayList<>();
+		size = HEADER;
+	}
+	
+	/**
+	 * This method reads the bucket from its page.
+	 * @param file the file of the index.
+	 * @param page the page of the bucket.
+	 * @return the bucket in the page.
+	 */
+	static Bucket read(PageFile file, int page) {
+		ByteBuffer buffer = file.readPage(page);
+		Bucket bucket = new Bucket(page, buffer.get(1));
+		bucket.overflow = buffer.getInt(4);
+		int count = buffer.getShort(2), index = HEADER;
+		for(int i=0;i<count;i++) {
+			byte[] entry = new byte[buffer.getShort(index)];
+			buffer.position(index + 2);
+			buffer.get(entry);
+			bucket.add(entry);
+			index += 2 + entry.length;
+		}
+		return bucket;
+	}
+	
+	/**
+	 * This method writes the bucket to its page.
+	 * @param file the file of the index.
+	 */
+	void write(PageFile file) {
+		ByteBuffer buffer = ByteBuffer.allocate(PageFile.NUM_OF_BYTES);
+		buffer.put(0, BUCKET);
+		buffer.put(1, (byte)localdepth);
+		buffer.putShort(2, (short)entries.size());
+		buffer.putInt(4, overflow);
+		buffer.putShort(8, (short)size);
+		buffer.position(HEADER);
+		for(byte[] entry : entries) {
+			buffer.putShort((short)entry.length);
+			buffer.put(entry);
+		}
+		file.writePage(page, buffer);
+	}
+	
+	/**
+	 * This method checks whether the entry could fit into the bucket.
+	 * @param entry the entry to be added.
+	 * @return true if there is enough room.
+	 */
+	boolean fits(byte[] entry) {
+		return size + 2 + entry.length <= PageFile.NUM_OF_BYTES;
+	}
+	
+	/**
+	 * This method adds an entry to the bucket.
+	 * @param entry the entry to be added.
+	 */
+	void add(byte[] entry) {
+		entries.add(entry);
+		size += 2 + entry.length;
+	}
+	
+	/**
+	 * This method removes an entry from the bucket.
+	 * @param entry the entry to be removed.
+	 * @return true if the entry is found and removed.
+	 */
+	boolean remove(byte[] entry) {
+		for(int i=0;i<entries.size();i++) {
+			if(Arrays.equals(entries.get(i), entry)) {
+				entries.remove(i);
+				size -= 2 + entry.length;
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,446 @@
+package HashIndex;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import BPlusTree.PageFile;
+import PhysicalOperators.ScanOperator;
+import Sorting.SortKey;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is the extendible hash index, which finds the tuples with
+ * the same key as a given one. It uses the same page file as the B+ Tree:
+ * the entry is the normalized key followed by the page and the offset of
+ * the tuple, and the entries are put into the buckets by the hash value
+ * of the normalized key. The directory holds a bucket for each value of
+ * the last few bits of the hash value, the number of bits is the global
+ * depth. Several entries of the directory could share a bucket, whose
+ * local depth is the number of bits they have in common. When a bucket
+ * is full, it is split into two by one more bit, and the directory is
+ * doubled when the bucket already uses all the bits. When all the
+ * entries of a full bucket have the same hash value, the split does not
+ * help, so the new entry goes to an overflow page. So a search only
+ * reads a single bucket in most cases, instead of a path from the root.
+ * The directory is kept in the memory, it is written to the directory
+ * pages when the index is closed. The root in the header of the file is
+ * the first directory page and the height is the global depth.
+ * @author messfish
+ *
+ */
+public class HashIndex {
+
+	private static final int MAX_DEPTH = 24;
+	// the largest global depth, the directory has at most 2^24 entries.
+	private static final byte DIRECTORY = 4; // the first byte of a directory page.
+	private static final int NUM_OF_SLOTS = (PageFile.NUM_OF_BYTES - 8) / 4;
+	// the number of entries of the directory in a single page.
+	private PageFile file; // the file that holds the pages of the index.
+	private int[] directory; // the page of the bucket for each hash value.
+	private int depth; // the global depth of the directory.
+	private List<Integer> dirpages; // the pages that hold the directory.
+	private boolean isDirty; // true means the directory is changed.
+	private ReentrantReadWriteLock lock;
+	// the searches share the index, an insertion or a deletion holds it alone.
+	
+	/**
+	 * Constructor: this constructor is used to open an existing index.
+	 * @param location the location of the file.
+	 */
+	public HashIndex(String location) {
+		this(location, null);
+	}
+	
+	/**
+	 * Constructor: this constructor is used to open the hash index, an
+	 * empty index is created when the file does not exist.
+	 * @param location the location of the file.
+	 * @param datatype the types of the attributes in the key.
+	 */
+	public HashIndex(String location, int[] datatype) {
+		File exist = new File(location);
+		boolean isNew = !exist.exists() || exist.length() == 0;
+		file = new PageFile(location, datatype,
+				datatype == null ? 0 : datatype.length);
+		lock = new ReentrantReadWriteLock();
+		dirpages = new ArrayList<>();
+		if(isNew) {
+			/* the empty root of the new file is used as the first bucket. */
+			Bucket bucket = new Bucket(file.getRoot(), 0);
+			bucket.write(file);
+			directory = new int[]{bucket.page};
+			depth = 0;
+			isDirty = true;
+			flush();
+		}else readDirectory();
+	}
+	
+	/**
+	 * This method builds the hash index of the attributes of a table. The
+	 * file of the index is replaced if it exists.
+	 * @param table the file of the table in the binary form.
+	 * @param keys the list of attributes in the key.
+	 * @param location the location of the file of the index.
+	 * @return the hash index that is built.
+	 */
+	public static HashIndex build(File table, List<String> keys, String location) {
+		ScanOperator scan = new ScanOperator(table);
+		int[] keyindex = new int[keys.size()], datatype = new int[keys.size()];
+		for(int i=0;i<keys.size();i++) {
+			keyindex[i] = scan.getSchema().get(keys.get(i)).getIndex();
+			int type = scan.getSchema().get(keys.get(i)).getDataType();
+			/* the date and the time values are stored as double values. */
+			datatype[i] = type==1||type==2 ? type : 5;
+		}
+		new File(location).delete();
+		HashIndex index = new HashIndex(location, datatype);
+		Tuple tuple = null;
+		while((tuple = scan.getNextTuple()) != null) {
+			DataType[] key = new DataType[keyindex.length];
+			for(int i=0;i<key.length;i++)
+				key[i] = tuple.getData(keyindex[i]);
+			index.insert(key, scan.getPosition());
+		}
+		scan.close();
+		return index;
+	}
+	
+	/**
+	 * This method returns the types of the attributes in the key.
+	 * @return the types of the attributes.
+	 */
+	public int[] getDataType() {
+		return file.getDataType();
+	}
+	
+	/**
+	 * This method returns the global depth of the directory.
+	 * @return the global depth.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * This method finds the positions of the tuples with the key. The
+	 * positions are sorted, so the pages of the table are read in order.
+	 * @param key the values of all the attributes in the key.
+	 * @return the list of positions, null when there is none.
+	 */
+	public List<int[]> search(DataType[] key) {
+		byte[] normkey = normalize(key);
+		List<int[]> result = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			int page = directory[hash(normkey) & ((1 << depth) - 1)];
+			while(page != -1) {
+				Bucket bucket = Bucket.read(file, page);
+				for(byte[] entry : bucket.entries)
+					if(isKey(entry, normkey))
+						result.add(getValue(entry));
+				page = bucket.overflow;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if(result.size() == 0)
+			return null;
+		result.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) :
+			Integer.compare(a[1], b[1]));
+		return result;
+	}
+	
+	/**
+	 * This method inserts the key and the position of the tuple into the
+	 * index. When the bucket and its overflow pages are full, the bucket
+	 * is split until there is room, or an overflow page is added when
+	 * all the entries have the same hash value.
+	 * @param key the values of all the attributes in the key.
+	 * @param value the page and the offset of the tuple.
+	 */
+	public void insert(DataType[] key, int[] value) {
+		byte[] normkey = normalize(key);
+		byte[] entry = ByteBuffer.allocate(normkey.length + 8).put(normkey)
+				.putInt(value[0]).putInt(value[1]).array();
+		int hash = hash(normkey);
+		lock.writeLock().lock();
+		try {
+			while(true) {
+				int slot = hash & ((1 << depth) - 1);
+				List<Bucket> chain = readChain(directory[slot]);
+				for(Bucket bucket : chain) {
+					if(bucket.fits(entry)) {
+						bucket.add(entry);
+						bucket.write(file);
+						return;
+					}
+				}
+				Bucket first = chain.get(0);
+				if(first.localdepth == MAX_DEPTH || isSameHash(chain, hash)) {
+					Bucket last = chain.get(chain.size() - 1);
+					Bucket overflow = new Bucket(file.allocate(), first.localdepth);
+					overflow.add(entry);
+					overflow.write(file);
+					last.overflow = overflow.page;
+					last.write(file);
+					return;
+				}
+				split(slot, chain);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * This method deletes the key with the position of the tuple from the
+	 * index. An overflow page that becomes empty is freed.
+	 * @param key the values of all the attributes in the key.
+	 * @param value the page and the offset of the tuple.
+	 * @return true if the entry is found and deleted.
+	 */
+	public boolean delete(DataType[] key, int[] value) {
+		byte[] normkey = normalize(key);
+		byte[] entry = ByteBuffer.allocate(normkey.length + 8).put(normkey)
+				.putInt(value[0]).putInt(value[1]).array();
+		lock.writeLock().lock();
+		try {
+			List<Bucket> chain = readChain(directory[hash(normkey) &
+			                                         ((1 << depth) - 1)]);
+			for(int i=0;i<chain.size();i++) {
+				Bucket bucket = chain.get(i);
+				if(!bucket.remove(entry))
+					continue;
+				if(i > 0 && bucket.entries.size() == 0) {
+					Bucket previous = chain.get(i - 1);
+					previous.overflow = bucket.overflow;
+					previous.write(file);
+					file.free(bucket.page);
+				}else bucket.write(file);
+				return true;
+			}
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * This method writes the directory and the header to the file.
+	 */
+	public void flush() {
+		lock.writeLock().lock();
+		try {
+			if(!isDirty)
+				return;
+			int needed = (directory.length + NUM_OF_SLOTS - 1) / NUM_OF_SLOTS;
+			while(dirpages.size() < needed)
+				dirpages.add(file.allocate());
+			for(int i=0;i<needed;i++) {
+				ByteBuffer buffer = ByteBuffer.allocate(PageFile.NUM_OF_BYTES);
+				int start = i * NUM_OF_SLOTS;
+				int count = Math.min(NUM_OF_SLOTS, directory.length - start);
+				buffer.put(0, DIRECTORY);
+				buffer.putInt(1, i + 1 < needed ? dirpages.get(i + 1) : -1);
+				buffer.putShort(5, (short)count);
+				for(int j=0;j<count;j++)
+					buffer.putInt(8 + j * 4, directory[start + j]);
+				file.writePage(dirpages.get(i), buffer);
+			}
+			file.setRoot(dirpages.get(0));
+			file.setHeight(depth);
+			file.writeHeader();
+			isDirty = false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * This method writes the directory and closes the file.
+	 */
+	public void close() {
+		flush();
+		file.close();
+	}
+	
+	/**
+	 * This method reads the directory from the directory pages.
+	 */
+	private void readDirectory() {
+		depth = file.getHeight();
+		directory = new int[1 << depth];
+		int page = file.getRoot(), index = 0;
+		while(page != -1) {
+			ByteBuffer buffer = file.readPage(page);
+			dirpages.add(page);
+			int count = buffer.getShort(5);
+			for(int i=0;i<count;i++)
+				directory[index++] = buffer.getInt(8 + i * 4);
+			page = buffer.getInt(1);
+		}
+	}
+	
+	/**
+	 * This method splits a full bucket by one more bit of the hash value.
+	 * The directory is doubled when the bucket uses all the bits. The
+	 * entries of the bucket and its overflow pages are put into the two
+	 * buckets again, the overflow pages are reused when they are needed.
+	 * @param slot the entry of the directory that points to the bucket.
+	 * @param chain the bucket and its overflow pages.
+	 */
+	private void split(int slot, List<Bucket> chain) {
+		Bucket first = chain.get(0);
+		if(first.localdepth == depth) {
+			directory = Arrays.copyOf(directory, directory.length * 2);
+			System.arraycopy(directory, 0, directory, directory.length / 2,
+							 directory.length / 2);
+			depth++;
+		}
+		int bit = 1 << first.localdepth, newpage = file.allocate();
+		List<byte[]> low = new ArrayList<>(), high = new ArrayList<>();
+		for(Bucket bucket : chain)
+			for(byte[] entry : bucket.entries)
+				((hash(Arrays.copyOf(entry, entry.length - 8)) & bit) == 0 ?
+						low : high).add(entry);
+		for(int i=0;i<directory.length;i++)
+			if(directory[i] == first.page && (i & bit) != 0)
+				directory[i] = newpage;
+		List<Integer> pages = new ArrayList<>();
+		for(int i=1;i<chain.size();i++)
+			pages.add(chain.get(i).page);
+		writeChain(first.page, first.localdepth + 1, low, pages);
+		writeChain(newpage, first.localdepth + 1, high, pages);
+		for(int page : pages)
+			file.free(page);
+		isDirty = true;
+	}
+	
+	/**
+	 * This method writes the entries to a bucket and its overflow pages.
+	 * @param page the page of the bucket.
+	 * @param localdepth the local depth of the bucket.
+	 * @param entries the entries of the bucket.
+	 * @param spare the pages that could be used as the overflow pages,
+	 * the ones that are used are removed from the list.
+	 */
+	private void writeChain(int page, int localdepth, List<byte[]> entries,
+							List<Integer> spare) {
+		Bucket bucket = new Bucket(page, localdepth);
+		for(byte[] entry : entries) {
+			if(!bucket.fits(entry)) {
+				int next = spare.size() > 0 ? spare.remove(0) : file.allocate();
+				bucket.overflow = next;
+				bucket.write(file);
+				bucket = new Bucket(next, localdepth);
+			}
+			bucket.add(entry);
+		}
+		bucket.write(file);
+	}
+	
+	/**
+	 * This method reads a bucket and all of its overflow pages.
+	 * @param page the page of the bucket.
+	 * @return the list of buckets in the chain.
+	 */
+	private List<Bucket> readChain(int page) {
+		List<Bucket> result = new ArrayList<>();
+		while(page != -1) {
+			Bucket bucket = Bucket.read(file, page);
+			result.add(bucket);
+			page = bucket.overflow;
+		}
+		return result;
+	}
+	
+	/**
+	 * This method checks whether all the entries in the chain have the
+	 * same hash value as the new entry in all the bits the directory
+	 * could use, so the split could not help.
+	 * @param chain the bucket and its overflow pages.
+	 * @param hash the hash value of the new entry.
+	 * @return true if all the hash values are the same.
+	 */
+	private boolean isSameHash(List<Bucket> chain, int hash) {
+		for(Bucket bucket : chain)
+			for(byte[] entry : bucket.entries)
+				if(((hash(Arrays.copyOf(entry, entry.length - 8)) ^ hash) &
+						((1 << MAX_DEPTH) - 1)) != 0)
+					return false;
+		return true;
+	}
+	
+	/**
+	 * This method builds the normalized key of the values. The values are
+	 * changed to the types of the key first, so a long integer could be
+	 * found in a key of double values.
+	 * @param key the values of all the attributes in the key.
+	 * @return the normalized key.
+	 */
+	private byte[] normalize(DataType[] key) {
+		int[] datatype = file.getDataType();
+		if(key.length != datatype.length)
+			throw new IllegalArgumentException("The hash index needs the "
+					+ "values of all the attributes in the key!");
+		DataType[] values = new DataType[key.length];
+		for(int i=0;i<key.length;i++) {
+			values[i] = key[i];
+			if(datatype[i]==5 && key[i].getType()==1)
+				values[i] = new DataType((double)key[i].getLong());
+		}
+		return SortKey.normalize(values);
+	}
+	
+	/**
+	 * This method computes the hash value of a normalized key, it is the
+	 * FNV-1a hash with the bits mixed at the end, so the last bits used
+	 * by the directory depend on all the bytes.
+	 * @param key the normalized key.
+	 * @return the hash value.
+	 */
+	private static int hash(byte[] key) {
+		int hash = 0x811c9dc5;
+		for(byte b : key) {
+			hash ^= b & 0xff;
+			hash *= 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+	
+	/**
+	 * This method checks whether the entry has the normalized key.
+	 * @param entry the entry in the bucket.
+	 * @param key the normalized key.
+	 * @return true if the entry is the key followed by a position.
+	 */
+	private static boolean isKey(byte[] entry, byte[] key) {
+		if(entry.length != key.length + 8)
+			return false;
+		for(int i=0;i<key.length;i++)
+			if(entry[i] != key[i])
+				return false;
+		return true;
+	}
+	
+	/**
+	 * This method returns the position of the tuple in an entry.
+	 * @param entry the entry in the bucket.
+	 * @return the page and the offset of the tuple.
+	 */
+	private static int[] getValue(byte[] entry) {
+		ByteBuffer wrap = ByteBuffer.wrap(entry, entry.length - 8, 8);
+		return new int[]{wrap.getInt(), wrap.getInt()};
+	}
+
+}
@@ -24,4 +24,12 @@ public interface OperatorVisitor {
 	
 	void visit(CartesianOperators cart);
 	
+	void visit(TopNOperators topn);
+	
+	void visit(LimitOperators limit);
+	
+	void visit(WindowOperators window);
+	
+	void visit(SetOperators set);
+	
 }
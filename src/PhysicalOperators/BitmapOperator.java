@@ -0,0 +1,156 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import BitmapIndex.BitmapIndex;
+import BitmapIndex.RoaringBitmap;
+import Support.Catalog;
+import Support.Mule;
+import TableElement.Tuple;
+
+/**
+ * This class reads the tuples of a table that are in a bitmap, which is
+ * built from the bitmap indexes of the table by the where expression.
+ * The tuples are read in the order of the table, the pages without any
+ * tuple in the bitmap are skipped. When the bitmap is exactly the tuples
+ * that satisfy the where expression, the expression does not need to be
+ * checked again, and the number of tuples is known without reading them.
+ * @author messfish
+ *
+ */
+public class BitmapOperator extends Operator {
+
+	private ScanOperator scan; // the operator that reads the table.
+	private BitmapIndex index; // the index that knows the pages of the tuples.
+	private RoaringBitmap rows; // the numbers of the tuples to be read.
+	private boolean isExact;
+	// true means the bitmap is exactly the result of the where expression.
+	private Map<String, Mule> schema;
+	private List<String> order; // the attributes the table is sorted on.
+	private int next; // the smallest number of the next tuple.
+	private int page; // the data page being read, -1 means none.
+	private int row; // the number of the next tuple read by the scan.
+	
+	/**
+	 * Constructor: this constructor opens the table.
+	 * @param table the name of the table.
+	 * @param alias the alias of the table in the query.
+	 * @param catalog the list of schemas available.
+	 * @param index a bitmap index of the table.
+	 * @param rows the numbers of the tuples to be read.
+	 * @param isExact true means the bitmap is exactly the result of the
+	 * where expression.
+	 */
+	public BitmapOperator(String table, String alias, Catalog catalog,
+						  BitmapIndex index, RoaringBitmap rows, boolean isExact) {
+		scan = new ScanOperator(new File(catalog.getFileLocation(table)));
+		this.index = index;
+		this.rows = rows;
+		this.isExact = isExact;
+		page = -1;
+		schema = new HashMap<>();
+		for(Map.Entry<String, Mule> entry : scan.getSchema().entrySet()) {
+			String part = entry.getKey().split("\\.")[1];
+			Mule mule = entry.getValue();
+			schema.put(alias + "." + part, new Mule(mule.getIndex(),
+					mule.getDataType()));
+		}
+		order = new ArrayList<>();
+		for(String str : scan.getOrder())
+			order.add(alias + "." + str.split("\\.")[1]);
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple in the bitmap. When the
+	 * tuple is in another page, the scan skips to that page, otherwise the
+	 * tuples before it in the same page are read and thrown away.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		int target = rows.next(next);
+		if(target == -1)
+			return null;
+		int targetpage = index.getPage(target);
+		if(targetpage != page) {
+			scan.skipTo(targetpage);
+			page = targetpage;
+			row = index.getFirstRow(targetpage);
+		}
+		Tuple tuple = null;
+		/* the deleted tuples are counted, but they are never in the bitmap. */
+		while(row <= target) {
+			tuple = scan.getNextRow();
+			row++;
+		}
+		next = target + 1;
+		return tuple;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		next = 0;
+		page = -1;
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method returns the order of the tuples, which are read in the
+	 * order of the table.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return new ArrayList<>(order);
+	}
+	
+	/**
+	 * This method checks whether the bitmap is exactly the result of the
+	 * where expression.
+	 * @return true if the where expression need not be checked.
+	 */
+	public boolean isExact() {
+		return isExact;
+	}
+	
+	/**
+	 * This method returns the number of tuples in the bitmap.
+	 * @return the number of tuples.
+	 */
+	public long getCount() {
+		return rows.getCardinality();
+	}
+	
+	/**
+	 * This method is used to close the file of the table.
+	 */
+	@Override
+	public void close() {
+		scan.close();
+	}
+
+}
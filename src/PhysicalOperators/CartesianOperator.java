@@ -1,17 +1,26 @@
 package PhysicalOperators;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import SmallSQLServer.Main;
+import Support.BloomFilter;
 import Support.Catalog;
 import Support.Mule;
+import TableElement.DataType;
 import TableElement.Table;
 import TableElement.Tuple;
 
 /**
  * This class is used to handle the Cartesian product from several
  * table elements. Generally we use a pipeline theory to fetch all combinations.
+ * The filters that skip the pages and the tuples without a match in the
+ * where expression could be set to the scans of the tables.
  * @author messfish
  *
  */
@@ -20,6 +29,12 @@ public class CartesianOperator extends Operator {
 	private ScanOperator[] scanlist;
 	private int size; // this indicates how many attributes in the table.
 	private Map<String, Mule> schema;
+	private String[] aliasarray; // the alias of every table.
+	private File[] files; // the binary file of every table.
+	private int[] starts; // the index of the first attribute of every table.
+	private static final int MAX_OF_HASHES = 1024;
+	// the largest number of values that are checked in the Bloom filters
+	// of the pages, more values would hardly skip any page.
 	
 	/**
 	 * Constructor: this constructor takes the map from the from list 
@@ -31,16 +46,24 @@ public class CartesianOperator extends Operator {
 		scanlist = new ScanOperator[map.size()];
 		schema = new HashMap<>();
 		int index = 0, previous = 0;
-		String[] aliasarray = new String[map.size()];
+		aliasarray = new String[map.size()];
+		files = new File[map.size()];
+		starts = new int[map.size()];
 		for(Map.Entry<String, Table> entry : map.entrySet()) {
 			String locate = entry.getKey();
 			String tablename = entry.getValue().getName();
 			File scanfile = new File(catalog.getFileLocation(tablename));
 			aliasarray[index] = locate;
-			scanlist[index++] = new ScanOperator(scanfile);
+			files[index] = scanfile;
+			long[] watermark = catalog.getWatermark(tablename);
+			if(watermark == null)
+				scanlist[index++] = new ScanOperator(scanfile);
+			else scanlist[index++] = new ScanOperator(scanfile,
+					(int)watermark[0], watermark[1]);
 			size += scanlist[index-1].getSchema().size();
 		}
 		for(int i=0;i<scanlist.length;i++) {
+			starts[i] = previous;
 			Map<String, Mule> schema = scanlist[i].getSchema();
 			for(Map.Entry<String, Mule> entry : schema.entrySet()) {
 				String part = entry.getKey().split("\\.")[1];
@@ -53,6 +76,124 @@ public class CartesianOperator extends Operator {
 		}
 	}
 	
+	/**
+	 * This method sets the values an attribute is equal to in the where
+	 * expression, so the pages whose Bloom filters have none of them are
+	 * skipped by the scan of the table.
+	 * @param column the attribute, such as "S.A" with the alias.
+	 * @param values the values of the attribute.
+	 */
+	public void setFilter(String column, List<DataType> values) {
+		int index = getTable(column);
+		long[] hashes = new long[values.size()];
+		for(int i=0;i<hashes.length;i++)
+			hashes[i] = BloomFilter.hash(values.get(i));
+		scanlist[index].setFilter(getAttribute(index, column), hashes);
+	}
+	
+	/**
+	 * This method sets the filters of a join of two attributes that are
+	 * equal in the where expression. The values of each table are put
+	 * into a Bloom filter, which is checked by the scan of the other one:
+	 * the tuples of the first table without a match are skipped, so the 
+	 * other tables are scanned fewer times, and the tuples of the tables
+	 * that are scanned again and again are skipped every time.
+	 * @param first an attribute, such as "S.A" with the alias.
+	 * @param second the other attribute.
+	 */
+	public void setJoinFilter(String first, String second) {
+		setJoinFilter(getTable(first), first, getTable(second), second);
+		setJoinFilter(getTable(second), second, getTable(first), first);
+	}
+	
+	/**
+	 * This method puts the values of an attribute of a table into a Bloom
+	 * filter, which is checked by the scan of the other table. When there
+	 * are only a few values, they are also checked by the Bloom filters
+	 * of its pages. The filter is not built when it does not fit in the
+	 * memory.
+	 * @param build the index of the table whose values are in the filter.
+	 * @param first the attribute of that table.
+	 * @param probe the index of the table that checks the filter.
+	 * @param second the attribute of that table.
+	 */
+	private void setJoinFilter(int build, String first, int probe, String second) {
+		int index = schema.get(first).getIndex() - starts[build];
+		/* the tuples are counted first, so the filter gets its size. */
+		long count = 0;
+		Set<Long> hashes = new HashSet<>();
+		ScanOperator scan = new ScanOperator(files[build]);
+		Tuple tuple = null;
+		while((tuple=scan.getNextTuple())!=null) {
+			count++;
+			if(hashes != null && hashes.add(BloomFilter.hash(tuple.getData(index)))
+					&& hashes.size() > MAX_OF_HASHES)
+				hashes = null;
+		}
+		scan.close();
+		if(BloomFilter.getSize(count) > Main.getMemory())
+			return;
+		BloomFilter filter = new BloomFilter(count);
+		if(hashes != null)
+			for(long hash : hashes)
+				filter.add(hash);
+		else {
+			scan = new ScanOperator(files[build]);
+			while((tuple=scan.getNextTuple())!=null)
+				filter.add(BloomFilter.hash(tuple.getData(index)));
+			scan.close();
+		}
+		scanlist[probe].setJoinFilter(schema.get(second).getIndex() - starts[probe], 
+				filter);
+		if(hashes != null) {
+			long[] array = new long[hashes.size()];
+			int point = 0;
+			for(long hash : hashes) {
+				array[point] = hash;
+				point++;
+			}
+			scanlist[probe].setFilter(getAttribute(probe, second), array);
+		}
+	}
+	
+	/**
+	 * This method returns the scan of a table.
+	 * @param alias the alias of the table.
+	 * @return the scan operator, null if there is no such table.
+	 */
+	public ScanOperator getScan(String alias) {
+		int index = getTable(alias + ".");
+		return index == -1 ? null : scanlist[index];
+	}
+	
+	/**
+	 * This method finds the table of an attribute.
+	 * @param column the attribute, such as "S.A" with the alias.
+	 * @return the index of the table in the array.
+	 */
+	private int getTable(String column) {
+		String alias = column.split("\\.")[0];
+		for(int i=0;i<aliasarray.length;i++)
+			if(aliasarray[i].equals(alias))
+				return i;
+		return -1;
+	}
+	
+	/**
+	 * This method returns the name of an attribute in the file of a table,
+	 * which has the name of the table instead of the alias.
+	 * @param index the index of the table in the array.
+	 * @param column the attribute, such as "S.A" with the alias.
+	 * @return the name of the attribute in the file.
+	 */
+	private String getAttribute(int index, String column) {
+		String part = column.split("\\.")[1];
+		for(String str : scanlist[index].getSchema().keySet())
+			if(str.split("\\.")[1].equals(part))
+				return str;
+		return null;
+	}
+	
 	/**
 	 * This method is used to fetch the next tuple available for the 
 	 * operator. I use a pipeline method for this method which will
@@ -66,6 +207,9 @@ public class CartesianOperator extends Operator {
 			int index = 0;
 			for(int i=0;i<scanlist.length;i++) {
 				Tuple tuple = scanlist[i].getNextTuple();
+				/* one of the tables is empty, so is the product. */
+				if(tuple==null)
+					return null;
 				for(int j=0;j<tuple.datasize();j++) {
 					result.setData(index, tuple.getData(j));
 					index++;
@@ -89,6 +233,16 @@ public class CartesianOperator extends Operator {
 			scanlist[i].reset();
 	}
 
+	/**
+	 * This method is used to close the child scans when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		for(ScanOperator scan : scanlist)
+			scan.close();
+	}
+	
 	/**
 	 * This method is used to retrieve the schema from the table.
 	 * @return a hash map with the attribute as the key and a combination
@@ -109,6 +263,20 @@ public class CartesianOperator extends Operator {
 		return scanlist.length;
 	}
 	
+	/**
+	 * This method returns the order of the tuples. The first table 
+	 * changes the slowest in the pipeline, so the tuples are in the 
+	 * order of the first table.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		List<String> order = new ArrayList<>();
+		for(String str : scanlist[0].getOrder())
+			order.add(aliasarray[0] + "." + str.split("\\.")[1]);
+		return order;
+	}
+	
 	/**
 	 * This method recursively go through the tuple list and when the
 	 * during the post traverse, check whether the table is running out
@@ -0,0 +1,102 @@
+package PhysicalOperators;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Aggregation.AggregateCall;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class answers "COUNT(*)" without a "GROUP BY" when the number of
+ * tuples is already known, such as the cardinality of the bitmap built
+ * from the bitmap indexes, so no tuple is read. Its schema is the same
+ * as the one of the other aggregations. Like them, the group is returned
+ * even when there is no tuple, with the count of 0.
+ * @author messfish
+ *
+ */
+public class CountOperator extends Operator {
+
+	private Map<String, Mule> schema;
+	private int size; // the number of aggregates.
+	private long count; // the number of tuples.
+	private boolean isDone; // true means the group has been returned.
+	
+	/**
+	 * Constructor: this constructor builds the schema of the aggregates.
+	 * @param calls the list of aggregates, which are all "COUNT(*)".
+	 * @param count the number of tuples.
+	 */
+	public CountOperator(List<AggregateCall> calls, long count) {
+		schema = new HashMap<>();
+		for(int i=0;i<calls.size();i++)
+			schema.put(calls.get(i).getName(), new Mule(i, 1));
+		size = calls.size();
+		this.count = count;
+	}
+	
+	/**
+	 * This method checks whether the aggregates could be answered by the
+	 * number of tuples alone.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 * @return true when there is no group attribute and all the aggregates
+	 * are "COUNT(*)".
+	 */
+	public static boolean isCount(List<String> grouplist, List<AggregateCall> calls) {
+		if(grouplist.size() != 0 || calls.size() == 0)
+			return false;
+		for(AggregateCall call : calls)
+			if(!call.getFunction().equals("COUNT") || call.isDistinct() ||
+					!call.getAttribute().equals("*"))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * This method returns the only group, which holds the number of tuples
+	 * for every aggregate.
+	 * @return the tuple of the group, null when it has been returned.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(isDone)
+			return null;
+		isDone = true;
+		Tuple tuple = new Tuple(size, 1);
+		for(int i=0;i<size;i++)
+			tuple.setData(i, new DataType(count));
+		tuple.setTupleID(0, 1);
+		return tuple;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		isDone = false;
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+
+}
@@ -1,15 +1,16 @@
 package PhysicalOperators;
 
+import java.util.List;
 import java.util.Map;
 
 import Support.Mule;
-import TableElement.DataType;
 import TableElement.Tuple;
 
 /**
  * This class is mainly used for handling the distinct operation.
  * Basically it will take the source from a sort operator. Doing 
  * this may let us leave out the duplicated tuple more efficiently.
+ * When the tuples are not sorted, use the hash distinct operator.
  * 
  * @author messfish
  *
@@ -27,18 +28,14 @@ public class DistinctOperator extends Operator {
 	 */
 	public DistinctOperator(Operator op) {
 		this.op = op;
-		/* notice the distinct operator always deals the work after
-		 * projection operator, so the number of tupleID should be 1. */
-		tuple = new Tuple(op.getSchema().size(), 1);
-		for(int i=0;i<tuple.datasize();i++)
-			tuple.setData(i, new DataType(""));
 	}
 
 	/**
 	 * This method is used to get the next valid tuple. get the next tuple
 	 * from the operator until we find the tuple that does not match the 
 	 * tuple in the global variable. Store that tuple into the global variable
-	 * and return that tuple back.
+	 * and return that tuple back. Note the values of the tuples are 
+	 * compared, not the tuple objects.
 	 * @return the next tuple available.
 	 */
 	@Override
@@ -46,7 +43,7 @@ public class DistinctOperator extends Operator {
 		Tuple temp = null;
 		while(true) {
 			temp = op.getNextTuple();
-			if(!tuple.equals(temp))
+			if(temp == null || tuple == null || !tuple.isEqual(temp))
 				break;
 		}
 		tuple = temp;
@@ -59,11 +56,18 @@ public class DistinctOperator extends Operator {
 	@Override
 	public void reset() {
 		op.reset();
-		tuple = new Tuple(op.getSchema().size(), 1);
-		for(int i=0;i<tuple.datasize();i++)
-			tuple.setData(i, new DataType(""));
+		tuple = null;
 	}
 
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		op.close();
+	}
+	
 	/**
 	 * This is the getter method of the schema of the table.
 	 * @return the schema of the table.
@@ -82,5 +86,15 @@ public class DistinctOperator extends Operator {
 	public int getNumOfTables() {
 		return op.getNumOfTables();
 	}
+	
+	/**
+	 * This method returns the order of the tuples, dropping the same
+	 * tuples keeps the order of the tuples from the child.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return op.getOrder();
+	}
 
 }
@@ -1,79 +1,63 @@
 package PhysicalOperators;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import Aggregation.AggregateCall;
 import SQLExpression.ColumnNode;
 import SQLExpression.Expression;
 import SmallSQLServer.Main;
 import Sorting.ExternalSort;
 import Sorting.TempOperator;
 import Support.Mule;
-import TableElement.DataType;
 import TableElement.Tuple;
 
 /**
  * This class is mainly used for grouping the attributes that has the 
- * same value. It will be used for the having expression.
+ * same value. It will be used for the having expression. The tuples
+ * are sorted by the group attributes, so the tuples of a group come one
+ * after another, and the sorted file is aggregated by the stream 
+ * aggregation, which returns a group as soon as it is done. Only the 
+ * aggregates that appear in the query are computed.
  * @author messfish
  *
  */
 public class GroupByOperator extends Operator {
 
-	private Operator op;
-	private TempOperator operator;
-	private List<Map.Entry<String, Mule>> residuelist;
-	// this list is used to store the attributes that does not appear
-	// in the attribute list. It will be used for the statistics.
-	private List<Integer> groupindexlist;
-	private static final int NUM_OF_BYTES = 16384;
-	private Tuple tempstore;
-	// this variable is used for storing the tuple that cannot be fit
-	// into the current byte buffer page.
-	private Tuple dummystore;
-	// this variable is used for storing the tuple that will be compared
-	// for equalness when we execute the writeTuple() method.
-	private Map<String, Mule> schema;
-	private int tupleID;
+	private TempOperator temp; // this operator reads the sorted file.
+	private StreamAggregateOperator operator;
+	// this operator builds the groups from the sorted tuples.
+	private List<String> grouplist;
 	
 	/**
 	 * Constructor: This constructor is used to set the operator
 	 * to the global variables and use the external sort to sort
-	 * the operators. Generate a TempOperator to get the tuples out.
-	 * Note we need to perform some statistics for the data that
-	 * will be handy for both projecting the aggregated columns out
-	 * and used for the having clauses.
-	 * @param op
-	 * @param grouplist
+	 * the operators. Generate a TempOperator to get the tuples out,
+	 * which are aggregated group by group. When there is a 
+	 * COUNT(DISTINCT) of an attribute, the attribute of the first one is
+	 * sorted right after the group attributes so the same values are next
+	 * to each other, the others keep the values of the group.
+	 * @param op the operator that used for getting source.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
 	 */
-	public GroupByOperator(Operator op, List<String> grouplist) {
-		tupleID = 1;
-		groupindexlist = new ArrayList<>();
-		residuelist = new ArrayList<>();
-		for(String s: grouplist) 
-			groupindexlist.add(op.getSchema().get(s).getIndex());
-		for(Map.Entry<String, Mule> entry : op.getSchema().entrySet()) {
-			if(grouplist.indexOf(entry.getKey())==-1)
-				residuelist.add(entry);
-		}
-		schema = new HashMap<>();
-		buildSchema(grouplist);
-		this.op = op;
+	public GroupByOperator(Operator op, List<String> grouplist,
+						   List<AggregateCall> calls) {
+		this.grouplist = grouplist;
 		/* we need to change the list of strings to list of expressions
 		 * first so it could be used for the external sort. */
 		List<Expression> expressionlist = new ArrayList<>(grouplist.size());
 		for(String s : grouplist) 
 			expressionlist.add(new ColumnNode(s));
-		ExternalSort ex = new ExternalSort(op, expressionlist, 1);
-		TempOperator temp = new TempOperator(ex.getResult(), op.getSchema());
-		File file = getStatistics(temp);
-		operator = new TempOperator(file, schema);
+		String sorted = AggregateCall.getSortedAttribute(calls);
+		if(sorted != null)
+			expressionlist.add(new ColumnNode(sorted));
+		ExternalSort ex = new ExternalSort(op, expressionlist, Main.getTempID());
+		if(ex.getResult() != null)
+			temp = new TempOperator(ex.getResult(), op.getSchema());
+		operator = new StreamAggregateOperator(temp == null ? op : temp,
+											   grouplist, calls, sorted);
 	}
 
 	/**
@@ -82,6 +66,10 @@ public class GroupByOperator extends Operator {
 	 */
 	@Override
 	public Tuple getNextTuple() {
+		/* when the sort gets no tuple, there is no group at all, unless
+		 * there is no group attribute, then the only group is empty. */
+		if(temp == null && grouplist.size() != 0)
+			return null;
 		return operator.getNextTuple();
 	}
 
@@ -90,7 +78,8 @@ public class GroupByOperator extends Operator {
 	 */
 	@Override
 	public void reset() {
-		operator.reset();
+		if(temp != null || grouplist.size() == 0)
+			operator.reset();
 	}
 
 	/**
@@ -99,7 +88,7 @@ public class GroupByOperator extends Operator {
 	 */
 	@Override
 	public Map<String, Mule> getSchema() {
-		return schema;
+		return operator.getSchema();
 	}
 
 	/**
@@ -113,209 +102,25 @@ public class GroupByOperator extends Operator {
 	}
 	
 	/**
-	 * This method is used to close the file stream in the operator.
+	 * This method returns the order of the groups, which are sorted on
+	 * the group attributes.
+	 * @return the list of attributes the groups are sorted on.
 	 */
-	public void close() {
-		operator.close();
-	}
-	
-	/**
-	 * This method is used for building the schema of the operator.
-	 * The order should be like this: First are the elements from
-	 * the group list, next is the counting of the number of tuples
-	 * and the number of distinct tuples. Next are the aggregate 
-	 * functions of each attributes that does not appear in the group
-	 * list. Store the results in the schema global variable.
-	 * @param grouplist the list of attributes used for grouping.
-	 */
-	private void buildSchema(List<String> grouplist) {
-		for(int i=0;i<grouplist.size();i++) {
-			Mule mule = op.getSchema().get(grouplist.get(i));
-			mule.setIndex(i);
-			schema.put(grouplist.get(i), mule);
-		}
-		int index = grouplist.size();
-		schema.put("COUNT(*)", new Mule(index, 1));
-		schema.put("COUNT(DISTINCT*)", new Mule(index + 1, 1));
-		index += 2;
-		for(Map.Entry<String, Mule> entry : residuelist) {
-			String attribute = entry.getKey();
-			int type = entry.getValue().getDataType();
-			if(type==1||type==5) {
-				schema.put("SUM("+attribute+")", new Mule(index, type));
-				schema.put("AVG("+attribute+")", new Mule(index + 1, type));
-				index += 2;
-			}
-			schema.put("MAX("+attribute+")", new Mule(index, type));
-			schema.put("MIN("+attribute+")", new Mule(index + 1, type));
-			schema.put("COUNT("+attribute+")", new Mule(index + 2, type));
-			index += 3;
-		}
-	}
-	
-	/**
-	 * This method is used to get all kinds of statistics available for
-	 * the attributes that does not appear in the group by array list.
-	 * Note in addition, we will count the number of tuples and the the
-	 * number of distinct tuples for the grouped tuples. For the attributes
-	 * which types are numeric, we have five aggregate options: COUNT
-	 * SUM MAX MIN AVG. But for the attributes that are not numeric, 
-	 * only three aggregate options are available: COUNT MAX MIN.
-	 * @param temp the operator that will be used to extract tuples.
-	 * @return the file that contains the statistics.
-	 */
-	private File getStatistics(TempOperator temp) {
-		File result = new File(Main.getTemp() + "/statistics");
-		try {
-			FileOutputStream out = new FileOutputStream(result);
-			FileChannel fc = out.getChannel();
-			ByteBuffer buffer = null;
-			while((buffer=writePage(temp))!=null) {
-				buffer.limit(buffer.capacity());
-				buffer.position(0);
-				fc.write(buffer);
-			}
-			out.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return result;
-	}
-	
-	/**
-	 * This method is used for generating a buffer page.
-	 * @param temp the operator used for extracting data out.
-	 * @return the buffer page that will be written by file channel.
-	 */
-	private ByteBuffer writePage(TempOperator temp) {
-		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-		int index = 4, numoftuples = 0;
-		if(tempstore != null) {
-			writeTuple(buffer, tempstore, index);
-			index += checkSize(tempstore);
-			numoftuples++;
-		}
-		dummystore = temp.getNextTuple(); 
-		while(true) {
-			Tuple tuple = getTuple(temp);
-			int size = checkSize(tuple);
-			if(index + size > NUM_OF_BYTES) {
-				tempstore = tuple;
-				break;
-			}
-			numoftuples++;
-		}
-		buffer.putInt(0, numoftuples);
-		return buffer;
-	}
-	
-	/**
-	 * This method is used for generating the single tuple available
-	 * which will be written to the ByteBuffer.
-	 * @param temp the operator that will be used for extracting data.
-	 * @return the tuple that contains all the data needed.
-	 */
-	private Tuple getTuple(TempOperator temp) {
-		Tuple result = new Tuple(getSchema().size(), getNumOfTables());
-		constructTuple(temp, result);
-		Tuple proceed = temp.getNextTuple();
-		long numoftuples = 1, numofdistuples = 1;
-		while(proceed!=null&&dummystore.isEqual(proceed, groupindexlist)) {
-			numoftuples++;
-			if(!dummystore.isEqual(proceed)) {
-				numofdistuples++;
-				dummystore = proceed;
-			}
-			changeTuple(temp,proceed,result);
-			proceed = temp.getNextTuple();
-		}
-		result.setData(groupindexlist.size(), new DataType(numoftuples));
-		result.setData(groupindexlist.size()+1, new DataType(numofdistuples));
-		setlast(result, numoftuples);
-		result.setTupleID(0, tupleID);
-		tupleID++;
-		dummystore = proceed;
-		return result;
-	}
-	
-	/**
-	 * This question sets the initial data for the result tuple.
-	 * Notice for the aggregation, the order is: SUM, AVG, MAX, MIN, COUNT. 
-	 * @param temp the operator that pass values.
-	 * @param result the result tuple that stores the whole data.
-	 */
-	private void constructTuple(TempOperator temp, Tuple result) {
-		for(Map.Entry<String, Mule> entry : temp.getSchema().entrySet()) {
-			String attribute = entry.getKey();
-			DataType data = dummystore.getData(entry.getValue().getIndex());
-			if(schema.containsKey(attribute)) 
-				result.setData(schema.get(attribute).getIndex(), data);
-		}
-		int start = groupindexlist.size() + 2;
-		for(Map.Entry<String, Mule> entry : residuelist) {
-			DataType data = dummystore.getData(entry.getValue().getIndex());
-			int type = entry.getValue().getDataType();
-			if(type==1||type==5) {
-				result.setData(start, data);
-				result.setData(start + 1, data);
-				start += 2;
-			}
-			result.setData(start, data);
-			result.setData(start + 1, data);
-			start += 3;
-		}
-	}
-	
-	/**
-	 * This method is used for the comparison between the two tuples and
-	 * store the desired data into the result tuple.
-	 * Notice for the aggregation, the order is: SUM, AVG, MAX, MIN, COUNT.
-	 * @param temp the operator used for extracting data.
-	 * @param proceed the tuple used for comparison.
-	 * @param result the result tuple used for storing the desired data.
-	 */
-	private void changeTuple(TempOperator temp, Tuple proceed, Tuple result) {
-		int start = groupindexlist.size() + 2;
-		for(Map.Entry<String, Mule> entry : residuelist) {
-			int index = temp.getSchema().get(entry.getKey()).getIndex();
-			DataType paradata = proceed.getData(index);
-			int type = entry.getValue().getDataType();
-			if(type==1||type==5) {
-				result.setData(start, result.getData(start).add(paradata));
-				result.setData(start+1, result.getData(start+1).add(paradata));
-				start += 2;
-			}
-			DataType target = result.getData(start).compare(paradata) >= 0 ?
-							  result.getData(start) : paradata;
-			result.setData(start, target);
-			start++;
-			target = result.getData(start).compare(paradata) <= 0 ?
-					  result.getData(start) : paradata;
-			result.setData(start, target);
-			start += 2;
-		}
+	@Override
+	public List<String> getOrder() {
+		return new ArrayList<>(grouplist);
 	}
 	
 	/**
-	 * This is the last step of setting the tuple: it will do the 
-	 * division for the AVG aggregation and set the number of tuples
-	 * to the COUNT operator.
-	 * @param result the result tuple that will be modified.
-	 * @param numoftuples the number of tuples used for COUNT.
+	 * This method is used to close the file stream in the operator,
+	 * which is the sorted file or the child operator. The sorted file
+	 * is deleted as well.
 	 */
-	private void setlast(Tuple result, long numoftuples) {
-		int start = groupindexlist.size() + 2;
-		for(Map.Entry<String, Mule> entry : residuelist) {
-			int type = entry.getValue().getIndex();
-			if(type==1||type==5) {
-				DataType temp = result.getData(start + 1);
-				result.setData(start + 1, temp.divide(numoftuples));
-				start += 2;
-			}
-			result.setData(start + 2, new DataType(numoftuples));
-			start += 3;
-		}
+	@Override
+	public void close() {
+		operator.close();
+		if(temp != null)
+			temp.delete();
 	}
 	
 }
-
@@ -0,0 +1,312 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Aggregation.Accumulator;
+import Aggregation.AggregateCall;
+import Aggregation.GroupTable;
+import SmallSQLServer.Main;
+import Sorting.PageWriter;
+import Sorting.TempOperator;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the "Group by" language by hashing instead of
+ * sorting. Every tuple finds its group in an open addressing hash table
+ * keyed on the group attributes, and the aggregates of that group are
+ * updated in place by the accumulators. Since the input is never sorted,
+ * it only reads the tuples once, which is much cheaper than the sort when
+ * there are only a few groups in a large table. The schema of the result
+ * is the group attributes followed by the aggregates, named the way they
+ * appear in the query, such as "SUM(S.A)".
+ * When the groups do not fit into the memory grant, the table stops
+ * taking new groups: the tuples of the groups in the table are still
+ * aggregated, while the others are split into partitions by their hash
+ * and written to the temporary files. After the groups in the table are
+ * returned, each partition is aggregated by another hash aggregation,
+ * which may split its partition again when it is still too large. A
+ * partition is deleted as soon as it is aggregated, so resetting the
+ * operator after a split aggregates the input again.
+ * @author messfish
+ *
+ */
+public class HashAggregateOperator extends Operator {
+
+	private static final int NUM_OF_BYTES = 16384;
+	private static final int NUM_OF_PARTITIONS = 16;
+	// this is the largest number of partitions for a single split.
+	private Operator op;
+	private Map<String, Mule> schema;
+	private Map<String, Mule> childschema; // the schema of the input.
+	private List<String> grouplist;
+	private List<AggregateCall> calls;
+	private int[] keyindex; // the index of the group attributes.
+	private GroupTable table; // this table maps the tuple to its group.
+	private Accumulator[] accumulators; // one for each aggregate.
+	private int slotsize; // the number of bytes of the slots of a group.
+	private int index; // the index of the next group to return.
+	private long memory; // the number of bytes the groups could take.
+	private int level; // the number of splits before this aggregation.
+	private int ID; // the ID used for naming the partitions.
+	private File[] partitions; // null when nothing is written to disk.
+	private int partitionindex; // the index of the partition being read.
+	private HashAggregateOperator operator;
+	// this operator aggregates the partition being read.
+	private long tupleID; // the ID of the next tuple.
+	
+	/**
+	 * Constructor: this constructor aggregates the tuples with the memory
+	 * grant of the query.
+	 * @param op the operator that used for getting source.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 */
+	public HashAggregateOperator(Operator op, List<String> grouplist,
+								 List<AggregateCall> calls) {
+		this(op, grouplist, calls, Main.getMemory(), 0);
+	}
+	
+	/**
+	 * Constructor: this constructor reads all the tuples from the operator
+	 * and puts them into their groups. The tuples which could not get
+	 * into the table are written into the partitions.
+	 * @param op the operator that used for getting source.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 * @param memory the number of bytes the groups could take.
+	 * @param level the number of splits before this aggregation.
+	 */
+	public HashAggregateOperator(Operator op, List<String> grouplist,
+			List<AggregateCall> calls, long memory, int level) {
+		this.op = op;
+		this.grouplist = grouplist;
+		this.calls = calls;
+		this.memory = memory;
+		this.level = level;
+		childschema = op.getSchema();
+		schema = new HashMap<>();
+		keyindex = new int[grouplist.size()];
+		for(int i=0;i<keyindex.length;i++) {
+			Mule mule = childschema.get(grouplist.get(i));
+			keyindex[i] = mule.getIndex();
+			schema.put(grouplist.get(i), new Mule(i, mule.getDataType()));
+		}
+		accumulators = new Accumulator[calls.size()];
+		slotsize = GroupTable.getSlotSize();
+		for(int i=0;i<accumulators.length;i++) {
+			accumulators[i] = calls.get(i).newAccumulator(childschema);
+			slotsize += accumulators[i].getSlotSize();
+			schema.put(calls.get(i).getName(), new Mule(keyindex.length + i,
+						accumulators[i].getDataType()));
+		}
+		aggregate();
+	}
+	
+	/**
+	 * This method reads all the tuples from the operator and puts them 
+	 * into their groups. The tuples which could not get into the table
+	 * are written into the partitions.
+	 */
+	private void aggregate() {
+		table = new GroupTable(keyindex);
+		partitions = null;
+		PageWriter[] writers = null;
+		long used = 0; // the number of bytes taken by the groups.
+		Tuple tuple = null;
+		while((tuple=op.getNextTuple())!=null) {
+			int hash = table.hash(tuple);
+			int group = table.find(tuple, hash);
+			if(group != -1) {
+				for(Accumulator acc : accumulators)
+					acc.add(group, tuple);
+			}else if(writers == null) {
+				group = table.add(tuple, hash);
+				for(Accumulator acc : accumulators) {
+					acc.ensureCapacity(group + 1);
+					acc.init(group, tuple);
+				}
+				used += slotsize + getKeySize(table.getKey(group));
+				/* the table is full, the new groups go to the partitions. */
+				if(used > memory && table.size() > 1)
+					writers = openPartitions();
+			}else writers[getPartition(hash)].write(tuple);
+		}
+		/* without a group attribute, there is a group even with no tuple. */
+		if(keyindex.length == 0 && table.size() == 0) {
+			Tuple empty = new Tuple(0, 1);
+			int group = table.add(empty, table.hash(empty));
+			for(Accumulator acc : accumulators) {
+				acc.ensureCapacity(group + 1);
+				acc.clear(group);
+			}
+		}
+		if(writers != null)
+			for(PageWriter writer : writers)
+				writer.close();
+	}
+	
+	/**
+	 * This method is used to fetch the next group. The groups in the table
+	 * come first, followed by the groups in the partitions.
+	 * @return the next tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		Tuple tuple = null;
+		if(index < table.size()) {
+			tuple = buildTuple(index);
+			index++;
+		}else {
+			while(partitions != null && partitionindex < partitions.length) {
+				/* the partition is read at once, so it could be deleted. */
+				if(operator == null) {
+					TempOperator temp = new TempOperator(
+							partitions[partitionindex], childschema);
+					operator = new HashAggregateOperator(temp, grouplist,
+							calls, memory, level + 1);
+					temp.close();
+					partitions[partitionindex].delete();
+				}
+				tuple = operator.getNextTuple();
+				if(tuple != null)
+					break;
+				operator = null;
+				partitionindex++;
+			}
+			if(tuple == null)
+				return null;
+		}
+		tupleID++;
+		tuple.setTupleID(0, tupleID);
+		return tuple;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the first group.
+	 * When the partitions are deleted, the input is aggregated again.
+	 */
+	@Override
+	public void reset() {
+		if(partitions != null) {
+			deletePartitions();
+			op.reset();
+			aggregate();
+		}
+		index = 0;
+		partitionindex = 0;
+		operator = null;
+		tupleID = 0;
+	}
+	
+	/**
+	 * This method is used to delete the partitions which have not been
+	 * aggregated and close the child operator, when the groups are not
+	 * needed anymore.
+	 */
+	@Override
+	public void close() {
+		deletePartitions();
+		op.close();
+	}
+	
+	/**
+	 * This method is used to delete the partitions which have not been
+	 * aggregated, the partition being aggregated is closed as well.
+	 */
+	private void deletePartitions() {
+		if(operator != null)
+			operator.close();
+		if(partitions != null)
+			for(int i=partitionindex;i<partitions.length;i++)
+				partitions[i].delete();
+	}
+	
+	/**
+	 * This is the getter method of the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since the tables are merged after this operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method builds the tuple of a group from the values of the 
+	 * group attributes and the results of the aggregates.
+	 * @param group the index of the group.
+	 * @return the tuple of the group.
+	 */
+	private Tuple buildTuple(int group) {
+		DataType[] key = table.getKey(group);
+		Tuple tuple = new Tuple(key.length + accumulators.length, 1);
+		for(int i=0;i<key.length;i++)
+			tuple.setData(i, key[i]);
+		for(int i=0;i<accumulators.length;i++)
+			tuple.setData(key.length + i, accumulators[i].getResult(group));
+		return tuple;
+	}
+	
+	/**
+	 * This method creates the partitions when the table is full. Every
+	 * partition needs a buffer page, so the number of partitions is 
+	 * limited by the memory grant as well.
+	 * @return the writers of the partitions.
+	 */
+	private PageWriter[] openPartitions() {
+		int number = (int)Math.max(2, Math.min(NUM_OF_PARTITIONS,
+					 memory / NUM_OF_BYTES / 2));
+		ID = Main.getTempID();
+		partitions = new File[number];
+		PageWriter[] writers = new PageWriter[number];
+		for(int i=0;i<number;i++) {
+			partitions[i] = new File(Main.getTemp() + "/" + ID + " " + i);
+			writers[i] = new PageWriter(partitions[i], this);
+		}
+		return writers;
+	}
+	
+	/**
+	 * This method finds the partition of a tuple by its hash. The hash is
+	 * mixed with the level, so the tuples of a partition are spread out
+	 * again when the partition is split for another time.
+	 * @param hash the hash of the tuple.
+	 * @return the index of the partition.
+	 */
+	private int getPartition(int hash) {
+		int mixed = (hash + level * 0x9e3779b9) * 0xc2b2ae35;
+		mixed ^= mixed >>> 15;
+		return Math.floorMod(mixed, partitions.length);
+	}
+	
+	/**
+	 * This method estimates the number of bytes taken by the values of
+	 * the group attributes, including the objects which hold them.
+	 * @param key the values of the group attributes.
+	 * @return the number of bytes of the values.
+	 */
+	private long getKeySize(DataType[] key) {
+		long size = 16;
+		for(DataType data : key) {
+			if(data.getType() == 2)
+				size += 40 + data.getString().length() * 2;
+			else size += 24;
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,250 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.Map;
+
+import Aggregation.GroupTable;
+import SmallSQLServer.Main;
+import Sorting.PageWriter;
+import Sorting.TempOperator;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the "DISTINCT" language by hashing, so the tuples
+ * do not need to be sorted. Every tuple is looked up in a group table 
+ * keyed on all the attributes: the table compares the hash of the tuple
+ * first and only checks the values of the tuples with the same hash, so
+ * the tuples are verified without being compared one by one. A tuple is
+ * returned right away when it is not in the table, so the order of the
+ * input is kept.
+ * When the tuples do not fit into the memory grant, the table stops
+ * taking new tuples: the tuples in the table are still dropped, while
+ * the others are split into partitions by their hash and written to the
+ * temporary files. After the input runs out, each partition is handled
+ * by another hash distinct, which may split its partition again, and
+ * it is deleted once all of its tuples are returned. Note
+ * the tuples in the partitions come after the others, so the order of
+ * the input is only kept when nothing is written to disk.
+ * @author messfish
+ *
+ */
+public class HashDistinctOperator extends Operator {
+
+	private static final int NUM_OF_BYTES = 16384;
+	private static final int NUM_OF_PARTITIONS = 16;
+	// this is the largest number of partitions for a single split.
+	private Operator op;
+	private Map<String, Mule> schema;
+	private int[] keyindex; // the index of all the attributes.
+	private GroupTable table; // this table holds the tuples returned.
+	private long memory; // the number of bytes the tuples could take.
+	private long used; // the number of bytes taken by the tuples.
+	private int level; // the number of splits before this operator.
+	private File[] partitions; // null when nothing is written to disk.
+	private PageWriter[] writers;
+	private int partitionindex; // the index of the partition being read.
+	private HashDistinctOperator operator;
+	// this operator handles the partition being read.
+	private boolean isFinished; // whether the operator runs out of tuples.
+	private long tupleID; // the ID of the next tuple.
+	
+	/**
+	 * Constructor: this constructor drops the duplicated tuples with the
+	 * memory grant of the query.
+	 * @param op the operator that used for getting source.
+	 */
+	public HashDistinctOperator(Operator op) {
+		this(op, Main.getMemory(), 0);
+	}
+	
+	/**
+	 * Constructor: this constructor sets up the table on all the 
+	 * attributes of the operator.
+	 * @param op the operator that used for getting source.
+	 * @param memory the number of bytes the tuples could take.
+	 * @param level the number of splits before this operator.
+	 */
+	public HashDistinctOperator(Operator op, long memory, int level) {
+		this.op = op;
+		this.memory = memory;
+		this.level = level;
+		schema = op.getSchema();
+		keyindex = new int[schema.size()];
+		for(int i=0;i<keyindex.length;i++)
+			keyindex[i] = i;
+		table = new GroupTable(keyindex);
+	}
+	
+	/**
+	 * This method is used to get the next tuple which has not been 
+	 * returned before. The tuples from the operator come first, followed
+	 * by the tuples in the partitions.
+	 * @return the next tuple available.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		Tuple tuple = null;
+		while(!isFinished && (tuple=op.getNextTuple())!=null) {
+			int hash = table.hash(tuple);
+			if(table.find(tuple, hash) != -1)
+				continue;
+			if(writers == null) {
+				int index = table.add(tuple, hash);
+				used += GroupTable.getSlotSize() + getKeySize(table.getKey(index));
+				/* the table is full, the new tuples go to the partitions. */
+				if(used > memory && table.size() > 1)
+					openPartitions();
+				return buildTuple(tuple);
+			}
+			writers[getPartition(hash)].write(tuple);
+		}
+		isFinished = true;
+		if(writers != null) {
+			for(PageWriter writer : writers)
+				writer.close();
+			writers = null;
+		}
+		while(partitions != null && partitionindex < partitions.length) {
+			if(operator == null)
+				operator = new HashDistinctOperator(new TempOperator(
+						partitions[partitionindex], schema), memory, level + 1);
+			tuple = operator.getNextTuple();
+			if(tuple != null)
+				return buildTuple(tuple);
+			operator.close();
+			partitions[partitionindex].delete();
+			operator = null;
+			partitionindex++;
+		}
+		return null;
+	}
+	
+	/**
+	 * This method is used to rest the operator back to the starting point.
+	 * The tuples are read from the operator again.
+	 */
+	@Override
+	public void reset() {
+		deletePartitions();
+		op.reset();
+		table = new GroupTable(keyindex);
+		used = 0;
+		partitions = null;
+		writers = null;
+		partitionindex = 0;
+		operator = null;
+		isFinished = false;
+		tupleID = 0;
+	}
+	
+	/**
+	 * This method is used to delete the partitions which have not been
+	 * read and close the child operator, when the tuples are not needed
+	 * anymore.
+	 */
+	@Override
+	public void close() {
+		deletePartitions();
+		op.close();
+	}
+	
+	/**
+	 * This method is used to delete the partitions which have not been
+	 * read, the partition being read is closed as well.
+	 */
+	private void deletePartitions() {
+		if(writers != null) {
+			for(PageWriter writer : writers)
+				writer.close();
+			writers = null;
+		}
+		if(operator != null)
+			operator.close();
+		if(partitions != null)
+			for(int i=partitionindex;i<partitions.length;i++)
+				partitions[i].delete();
+	}
+	
+	/**
+	 * This is the getter method of the schema of the table.
+	 * @return the schema of the table.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since every tuple gets a new ID.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method copies the values of the tuple into a new tuple with
+	 * a new ID, since the tuples from the partitions have no ID.
+	 * @param source the tuple to be returned.
+	 * @return the tuple with the new ID.
+	 */
+	private Tuple buildTuple(Tuple source) {
+		Tuple tuple = new Tuple(source.datasize(), 1);
+		for(int i=0;i<source.datasize();i++)
+			tuple.setData(i, source.getData(i));
+		tupleID++;
+		tuple.setTupleID(0, tupleID);
+		return tuple;
+	}
+	
+	/**
+	 * This method creates the partitions when the table is full. Every
+	 * partition needs a buffer page, so the number of partitions is 
+	 * limited by the memory grant as well.
+	 */
+	private void openPartitions() {
+		int number = (int)Math.max(2, Math.min(NUM_OF_PARTITIONS,
+					 memory / NUM_OF_BYTES / 2));
+		int ID = Main.getTempID();
+		partitions = new File[number];
+		writers = new PageWriter[number];
+		for(int i=0;i<number;i++) {
+			partitions[i] = new File(Main.getTemp() + "/" + ID + " " + i);
+			writers[i] = new PageWriter(partitions[i], this);
+		}
+	}
+	
+	/**
+	 * This method finds the partition of a tuple by its hash. The hash is
+	 * mixed with the level, so the tuples of a partition are spread out
+	 * again when the partition is split for another time.
+	 * @param hash the hash of the tuple.
+	 * @return the index of the partition.
+	 */
+	private int getPartition(int hash) {
+		int mixed = (hash + level * 0x9e3779b9) * 0xc2b2ae35;
+		mixed ^= mixed >>> 15;
+		return Math.floorMod(mixed, partitions.length);
+	}
+	
+	/**
+	 * This method estimates the number of bytes taken by the values of
+	 * a tuple, including the objects which hold them.
+	 * @param key the values of the tuple.
+	 * @return the number of bytes of the values.
+	 */
+	private long getKeySize(DataType[] key) {
+		long size = 16;
+		for(DataType data : key) {
+			if(data.getType() == 2)
+				size += 40 + data.getString().length() * 2;
+			else size += 24;
+		}
+		return size;
+	}
+
+}
@@ -0,0 +1,119 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import HashIndex.HashIndex;
+import Support.Catalog;
+import Support.IndexDefinition;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class reads the tuples of a table with the given keys by the hash
+ * index, instead of scanning the whole table. The positions of all the
+ * keys are found first and sorted, so the pages of the table are read
+ * in order and every page is read at most once. The where expression is
+ * still checked on the tuples by the Select operator above.
+ * @author messfish
+ *
+ */
+public class HashLookupOperator extends Operator {
+
+	private ScanOperator scan; // the operator that reads the table.
+	private HashIndex index; // the hash index of the table.
+	private List<int[]> positions; // the positions of the tuples.
+	private int point; // the index of the next position in the list.
+	private Map<String, Mule> schema;
+	
+	/**
+	 * Constructor: this constructor finds the positions of the tuples
+	 * with the keys in the index.
+	 * @param definition the definition of the hash index.
+	 * @param alias the alias of the table in the query.
+	 * @param catalog the list of schemas available.
+	 * @param keys the list of keys, each of them has the values of all
+	 * the attributes in the key of the index.
+	 */
+	public HashLookupOperator(IndexDefinition definition, String alias,
+							  Catalog catalog, List<DataType[]> keys) {
+		scan = new ScanOperator(new File(catalog.getFileLocation(
+				definition.getTable())));
+		index = new HashIndex(catalog.getIndexLocation(definition.getName()));
+		List<int[]> list = new ArrayList<>();
+		for(DataType[] key : keys) {
+			List<int[]> result = index.search(key);
+			if(result != null)
+				list.addAll(result);
+		}
+		list.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) :
+			Integer.compare(a[1], b[1]));
+		/* the same key could be given twice, the tuple is returned once. */
+		positions = new ArrayList<>();
+		for(int[] position : list) {
+			int[] last = positions.size() == 0 ? null : positions.get(positions.size() - 1);
+			if(last == null || last[0] != position[0] || last[1] != position[1])
+				positions.add(position);
+		}
+		schema = new HashMap<>();
+		for(Map.Entry<String, Mule> entry : scan.getSchema().entrySet()) {
+			String part = entry.getKey().split("\\.")[1];
+			Mule mule = entry.getValue();
+			schema.put(alias + "." + part, new Mule(mule.getIndex(),
+					mule.getDataType()));
+		}
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple from the table.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(point == positions.size())
+			return null;
+		int[] position = positions.get(point);
+		point++;
+		return scan.getTuple(position[0], position[1]);
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		point = 0;
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method is used to close the files of the table and the index.
+	 */
+	@Override
+	public void close() {
+		scan.close();
+		index.close();
+	}
+
+}
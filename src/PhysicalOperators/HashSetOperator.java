@@ -0,0 +1,353 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import Aggregation.GroupTable;
+import SmallSQLServer.Main;
+import Sorting.PageWriter;
+import Sorting.TempOperator;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the "UNION", "INTERSECT" and "EXCEPT" languages,
+ * with or without "ALL", by hashing. Every distinct tuple gets a group
+ * in a group table keyed on all the attributes, and the group keeps two
+ * counters: how many times the tuple shows up in the left query and
+ * in the right query. After both queries are read, each group is 
+ * returned as many times as the type of the set operation asks for.
+ * The attributes of the two queries are matched by their positions,
+ * and the result takes the names of the left query.
+ * When the groups do not fit into the memory grant, the table stops
+ * taking new groups: the tuples of the groups in the table are still
+ * counted, while the others are split into partitions by their hash.
+ * The tuples of the two queries use the same partitions, so a tuple
+ * and its duplicates always meet in the same partition, which is 
+ * handled by another hash set operator after the table is done, and
+ * deleted once all of its tuples are returned.
+ * @author messfish
+ *
+ */
+public class HashSetOperator extends Operator {
+
+	private static final int NUM_OF_BYTES = 16384;
+	private static final int NUM_OF_PARTITIONS = 16;
+	// this is the largest number of partitions for a single split.
+	private Operator left, right; // the operators of the two queries.
+	private int type; // the type of the set operation, see getCount().
+	private Map<String, Mule> schema;
+	private int[] keyindex; // the index of all the attributes.
+	private GroupTable table; // this table holds the distinct tuples.
+	private long[][] counters = new long[2][16];
+	// the number of times each group shows up in the two queries.
+	private long memory; // the number of bytes the tuples could take.
+	private long used; // the number of bytes taken by the tuples.
+	private int level; // the number of splits before this operator.
+	private File[][] partitions; // null when nothing is written to disk.
+	private PageWriter[][] writers;
+	private boolean isBuilt; // whether the two queries have been read.
+	private int group; // the index of the group being returned.
+	private long remain; // the number of copies of the group left.
+	private int partitionindex; // the index of the partition being read.
+	private HashSetOperator operator;
+	// this operator handles the partition being read.
+	private TempOperator[] temps; // these operators read the partition.
+	private long tupleID; // the ID of the next tuple.
+	
+	/**
+	 * Constructor: this constructor combines the two queries with the
+	 * memory grant of the query.
+	 * @param left the operator of the left query.
+	 * @param right the operator of the right query.
+	 * @param type the type of the set operation, see getCount().
+	 */
+	public HashSetOperator(Operator left, Operator right, int type) {
+		this(left, right, type, Main.getMemory(), 0);
+	}
+	
+	/**
+	 * Constructor: this constructor sets up the table on all the 
+	 * attributes of the operators.
+	 * @param left the operator of the left query.
+	 * @param right the operator of the right query.
+	 * @param type the type of the set operation, see getCount().
+	 * @param memory the number of bytes the tuples could take.
+	 * @param level the number of splits before this operator.
+	 */
+	public HashSetOperator(Operator left, Operator right, int type,
+						   long memory, int level) {
+		this.left = left;
+		this.right = right;
+		this.type = type;
+		this.memory = memory;
+		this.level = level;
+		schema = left.getSchema();
+		keyindex = new int[schema.size()];
+		for(int i=0;i<keyindex.length;i++)
+			keyindex[i] = i;
+		table = new GroupTable(keyindex);
+	}
+	
+	/**
+	 * This method returns the number of times a tuple is returned.
+	 * Here is a table that shows the type and the number:
+	 * Type     Operation          Number
+	 *  1        UNION          1 if l + r > 0
+	 *  2      UNION ALL            l + r
+	 *  3      INTERSECT       1 if l > 0 and r > 0
+	 *  4    INTERSECT ALL        min(l, r)
+	 *  5       EXCEPT         1 if l > 0 and r = 0
+	 *  6     EXCEPT ALL        max(l - r, 0)
+	 * @param type the type of the set operation.
+	 * @param l the number of times the tuple shows up in the left query.
+	 * @param r the number of times the tuple shows up in the right query.
+	 * @return the number of times the tuple is returned.
+	 */
+	static long getCount(int type, long l, long r) {
+		switch(type) {
+		case 1: return l + r > 0 ? 1 : 0;
+		case 2: return l + r;
+		case 3: return l > 0 && r > 0 ? 1 : 0;
+		case 4: return Math.min(l, r);
+		case 5: return l > 0 && r == 0 ? 1 : 0;
+		default: return Math.max(l - r, 0);
+		}
+	}
+	
+	/**
+	 * This method is used to get the next tuple of the set operation.
+	 * The groups in the table come first, followed by the tuples in
+	 * the partitions.
+	 * @return the next tuple available.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(!isBuilt) {
+			build(left, 0);
+			build(right, 1);
+			isBuilt = true;
+			if(writers != null) {
+				for(PageWriter[] list : writers)
+					for(PageWriter writer : list)
+						writer.close();
+				writers = null;
+			}
+		}
+		while(remain == 0 && group < table.size()) {
+			remain = getCount(type, counters[0][group], counters[1][group]);
+			if(remain == 0) group++;
+		}
+		if(remain > 0) {
+			remain--;
+			DataType[] key = table.getKey(group);
+			if(remain == 0) group++;
+			return buildTuple(key);
+		}
+		while(partitions != null && partitionindex < partitions[0].length) {
+			if(operator == null) {
+				temps = new TempOperator[]{
+						new TempOperator(partitions[0][partitionindex], schema),
+						new TempOperator(partitions[1][partitionindex],
+								right.getSchema())};
+				operator = new HashSetOperator(temps[0], temps[1], type,
+											   memory, level + 1);
+			}
+			Tuple tuple = operator.getNextTuple();
+			if(tuple != null)
+				return buildTuple(tuple);
+			for(int i=0;i<2;i++) {
+				temps[i].close();
+				partitions[i][partitionindex].delete();
+			}
+			operator = null;
+			partitionindex++;
+		}
+		return null;
+	}
+	
+	/**
+	 * This method reads all the tuples of a query and counts them in
+	 * the table, or writes them to the partitions when their groups are
+	 * not in the table.
+	 * @param op the operator of the query.
+	 * @param side 0 for the left query, 1 for the right query.
+	 */
+	private void build(Operator op, int side) {
+		Tuple tuple = null;
+		while((tuple=op.getNextTuple())!=null) {
+			int hash = table.hash(tuple);
+			int index = table.find(tuple, hash);
+			if(index == -1 && writers != null) {
+				writers[side][getPartition(hash)].write(tuple);
+				continue;
+			}
+			if(index == -1) {
+				index = table.add(tuple, hash);
+				if(index == counters[0].length) {
+					counters[0] = Arrays.copyOf(counters[0], index * 2);
+					counters[1] = Arrays.copyOf(counters[1], index * 2);
+				}
+				used += GroupTable.getSlotSize() + 16 + getKeySize(table.getKey(index));
+				/* the table is full, the new groups go to the partitions. */
+				if(used > memory && table.size() > 1)
+					openPartitions();
+			}
+			counters[side][index]++;
+		}
+	}
+	
+	/**
+	 * This method is used to rest the operator back to the starting point.
+	 * The tuples are read from the operators again.
+	 */
+	@Override
+	public void reset() {
+		deletePartitions();
+		left.reset();
+		right.reset();
+		table = new GroupTable(keyindex);
+		counters = new long[2][16];
+		used = 0;
+		partitions = null;
+		writers = null;
+		isBuilt = false;
+		group = 0;
+		remain = 0;
+		partitionindex = 0;
+		operator = null;
+		tupleID = 0;
+	}
+	
+	/**
+	 * This method is used to delete the partitions which have not been
+	 * read and close the operators of the two queries, when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		deletePartitions();
+		left.close();
+		right.close();
+	}
+	
+	/**
+	 * This method is used to delete the partitions which have not been
+	 * read, the partitions being read are closed as well.
+	 */
+	private void deletePartitions() {
+		if(writers != null) {
+			for(PageWriter[] list : writers)
+				for(PageWriter writer : list)
+					writer.close();
+			writers = null;
+		}
+		if(operator != null) {
+			operator.close();
+			for(TempOperator temp : temps)
+				temp.close();
+		}
+		if(partitions != null)
+			for(File[] list : partitions)
+				for(int i=partitionindex;i<list.length;i++)
+					list[i].delete();
+	}
+	
+	/**
+	 * This is the getter method of the schema of the table.
+	 * @return the schema of the table.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since every tuple gets a new ID.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method copies the values of the tuple into a new tuple with
+	 * a new ID, since the tuples from the partitions have no ID.
+	 * @param source the tuple to be returned.
+	 * @return the tuple with the new ID.
+	 */
+	private Tuple buildTuple(Tuple source) {
+		DataType[] key = new DataType[source.datasize()];
+		for(int i=0;i<key.length;i++)
+			key[i] = source.getData(i);
+		return buildTuple(key);
+	}
+	
+	/**
+	 * This method builds a new tuple with a new ID from the values.
+	 * @param key the values of the tuple.
+	 * @return the tuple with the new ID.
+	 */
+	private Tuple buildTuple(DataType[] key) {
+		Tuple tuple = new Tuple(key.length, 1);
+		for(int i=0;i<key.length;i++)
+			tuple.setData(i, key[i]);
+		tupleID++;
+		tuple.setTupleID(0, tupleID);
+		return tuple;
+	}
+	
+	/**
+	 * This method creates the partitions of the two queries when the 
+	 * table is full. Every partition needs a buffer page, so the number
+	 * of partitions is limited by the memory grant as well.
+	 */
+	private void openPartitions() {
+		int number = (int)Math.max(2, Math.min(NUM_OF_PARTITIONS,
+					 memory / NUM_OF_BYTES / 4));
+		int ID = Main.getTempID();
+		partitions = new File[2][number];
+		writers = new PageWriter[2][number];
+		for(int i=0;i<number;i++) {
+			partitions[0][i] = new File(Main.getTemp() + "/" + ID + " " + i);
+			writers[0][i] = new PageWriter(partitions[0][i], this);
+			partitions[1][i] = new File(Main.getTemp() + "/" + ID + " " 
+						+ (number + i));
+			writers[1][i] = new PageWriter(partitions[1][i], this);
+		}
+	}
+	
+	/**
+	 * This method finds the partition of a tuple by its hash. The hash is
+	 * mixed with the level, so the tuples of a partition are spread out
+	 * again when the partition is split for another time.
+	 * @param hash the hash of the tuple.
+	 * @return the index of the partition.
+	 */
+	private int getPartition(int hash) {
+		int mixed = (hash + level * 0x9e3779b9) * 0xc2b2ae35;
+		mixed ^= mixed >>> 15;
+		return Math.floorMod(mixed, partitions[0].length);
+	}
+	
+	/**
+	 * This method estimates the number of bytes taken by the values of
+	 * a tuple, including the objects which hold them.
+	 * @param key the values of the tuple.
+	 * @return the number of bytes of the values.
+	 */
+	private long getKeySize(DataType[] key) {
+		long size = 16;
+		for(DataType data : key) {
+			if(data.getType() == 2)
+				size += 40 + data.getString().length() * 2;
+			else size += 24;
+		}
+		return size;
+	}
+
+}
@@ -1,5 +1,6 @@
 package PhysicalOperators;
 
+import java.util.List;
 import java.util.Map;
 
 import Evaluator.Evaluator;
@@ -63,6 +64,15 @@ public class HavingOperator extends Operator {
 		op.reset();
 	}
 
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		op.close();
+	}
+	
 	/**
 	 * This method is used to get the schema of the table. Basically
 	 * it just returns the schema from the Operator.
@@ -82,5 +92,15 @@ public class HavingOperator extends Operator {
 	public int getNumOfTables() {
 		return 1;
 	}
+	
+	/**
+	 * This method returns the order of the tuples, the having operator keeps
+	 * the order of the tuples from the child.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return op.getOrder();
+	}
 
 }
@@ -0,0 +1,191 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import HashIndex.HashIndex;
+import Support.Catalog;
+import Support.IndexDefinition;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Table;
+import TableElement.Tuple;
+
+/**
+ * This class joins a table to the other tables by the index nested loop
+ * join: the tuples of the other tables are read one by one, and the
+ * tuples of the table whose key is equal to the attributes of the outer
+ * tuple are found by the hash index of the table. So the table is never
+ * scanned, only the tuples that match are read. The attributes of the
+ * tables are in the same order as in the Cartesian operator, and the
+ * where expression is still checked on the tuples by the Select operator
+ * above.
+ * @author messfish
+ *
+ */
+public class IndexJoinOperator extends Operator {
+
+	private Operator outer; // the operator that reads the other tables.
+	private ScanOperator scan; // the operator that reads the inner table.
+	private HashIndex index; // the hash index of the inner table.
+	private Map<String, Mule> schema;
+	private int[] keyindex;
+	// the index in the outer tuple of the attribute for each key.
+	private int[] outerpos; // the index in the result of the outer attributes.
+	private int innerstart; // the index in the result of the inner attributes.
+	private int innerslot; // the order of the inner table in the tables.
+	private int size; // the number of attributes in the result.
+	private int numoftables; // the number of tables in the result.
+	private Tuple current; // the current outer tuple.
+	private List<int[]> positions; // the positions of the matching tuples.
+	private int point; // the index of the next position in the list.
+	
+	/**
+	 * Constructor: this constructor builds the operator of the other
+	 * tables and opens the inner table with its hash index.
+	 * @param map the hash map originated from the from list.
+	 * @param inner the alias of the table read by the index.
+	 * @param definition the definition of the hash index.
+	 * @param columns the attributes of the other tables that are equal to
+	 * the attributes in the key, in the order of the key.
+	 * @param catalog the list of schemas available.
+	 */
+	public IndexJoinOperator(Map<String, Table> map, String inner,
+							 IndexDefinition definition, List<String> columns,
+							 Catalog catalog) {
+		Map<String, Table> others = new LinkedHashMap<>();
+		for(Map.Entry<String, Table> entry : map.entrySet())
+			if(!entry.getKey().equals(inner))
+				others.put(entry.getKey(), entry.getValue());
+		outer = new CartesianOperator(others, catalog);
+		scan = new ScanOperator(new File(catalog.getFileLocation(
+				map.get(inner).getName())));
+		index = new HashIndex(catalog.getIndexLocation(definition.getName()));
+		Map<String, Mule> outerschema = outer.getSchema();
+		schema = new HashMap<>();
+		outerpos = new int[outerschema.size()];
+		int start = 0, slot = 0;
+		for(String alias : map.keySet()) {
+			if(alias.equals(inner)) {
+				innerstart = start;
+				innerslot = slot;
+				for(Map.Entry<String, Mule> entry : scan.getSchema().entrySet()) {
+					Mule mule = entry.getValue();
+					schema.put(alias + "." + entry.getKey().split("\\.")[1],
+							new Mule(start + mule.getIndex(), mule.getDataType()));
+				}
+				start += scan.getSchema().size();
+			}else {
+				/* the attributes of a table are next to each other in the
+				 * outer tuple, so they are moved as a block. */
+				int first = Integer.MAX_VALUE, count = 0;
+				for(Map.Entry<String, Mule> entry : outerschema.entrySet())
+					if(entry.getKey().startsWith(alias + ".")) {
+						first = Math.min(first, entry.getValue().getIndex());
+						count++;
+					}
+				for(Map.Entry<String, Mule> entry : outerschema.entrySet())
+					if(entry.getKey().startsWith(alias + ".")) {
+						Mule mule = entry.getValue();
+						int position = start + mule.getIndex() - first;
+						outerpos[mule.getIndex()] = position;
+						schema.put(entry.getKey(), new Mule(position,
+								mule.getDataType()));
+					}
+				start += count;
+			}
+			slot++;
+		}
+		size = start;
+		numoftables = map.size();
+		keyindex = new int[columns.size()];
+		for(int i=0;i<keyindex.length;i++)
+			keyindex[i] = outerschema.get(columns.get(i)).getIndex();
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple of the join. When the
+	 * matching tuples of the current outer tuple run out, the next outer
+	 * tuple is read and its key is looked up in the index.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		while(positions == null || point == positions.size()) {
+			current = outer.getNextTuple();
+			if(current == null)
+				return null;
+			DataType[] key = new DataType[keyindex.length];
+			for(int i=0;i<key.length;i++)
+				key[i] = current.getData(keyindex[i]);
+			positions = index.search(key);
+			point = 0;
+		}
+		int[] position = positions.get(point);
+		point++;
+		Tuple tuple = scan.getTuple(position[0], position[1]);
+		Tuple result = new Tuple(size, numoftables);
+		for(int i=0;i<outerpos.length;i++)
+			result.setData(outerpos[i], current.getData(i));
+		for(int i=0;i<tuple.datasize();i++)
+			result.setData(innerstart + i, tuple.getData(i));
+		int ID = 0;
+		for(int i=0;i<numoftables;i++)
+			result.setTupleID(i, i == innerslot ? tuple.getTupleID(0) :
+				current.getTupleID(ID++));
+		return result;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		outer.reset();
+		current = null;
+		positions = null;
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return numoftables;
+	}
+	
+	/**
+	 * This method returns the order of the tuples, the outer tuples come
+	 * in their order and the matching tuples follow each of them.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return outer.getOrder();
+	}
+	
+	/**
+	 * This method is used to close the outer operator, the files of the
+	 * inner table and the index.
+	 */
+	@Override
+	public void close() {
+		outer.close();
+		scan.close();
+		index.close();
+	}
+
+}
@@ -0,0 +1,133 @@
+package PhysicalOperators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import BPlusTree.BPlusTree;
+import BPlusTree.TreeCursor;
+import Support.Catalog;
+import Support.IndexDefinition;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class reads the tuples of a table from a covering index instead
+ * of the table. The entries of the index hold the values of the key and
+ * the included attributes, so when a query only reads these attributes,
+ * the tuples are built from the leaves of the B+ Tree alone and the
+ * table is never read. When the values of the first few attributes in
+ * the key are fixed by the where expression, only the entries that start
+ * with them are read. The tuples come in the order of the key.
+ * @author messfish
+ *
+ */
+public class IndexScanOperator extends Operator {
+
+	private BPlusTree tree; // the B+ Tree of the index.
+	private TreeCursor cursor; // the cursor that reads the entries.
+	private Map<String, Mule> schema;
+	private int[] position;
+	// the index in the tuple of each attribute of the entry.
+	private List<String> order; // the attributes the tuples are sorted on.
+	private long tupleID; // this is used to trace the tuple ID.
+	
+	/**
+	 * Constructor: this constructor opens the index and builds the schema,
+	 * the attributes of the index are in the same order as in the table.
+	 * @param index the definition of the index.
+	 * @param alias the alias of the table in the query.
+	 * @param catalog the list of schemas available.
+	 * @param prefix the values of the first attributes in the key, an
+	 * empty array means all the entries are read.
+	 */
+	public IndexScanOperator(IndexDefinition index, String alias,
+							 Catalog catalog, DataType[] prefix) {
+		String table = index.getTable();
+		tree = new BPlusTree(catalog.getIndexLocation(index.getName()));
+		cursor = new TreeCursor(tree, prefix);
+		List<String> columns = index.getAttributes();
+		Map<String, Mule> tableschema = catalog.getSchema(table);
+		schema = new HashMap<>();
+		int point = 0;
+		for(String str : catalog.getAttributesList(table)) {
+			if(!columns.contains(str))
+				continue;
+			int type = tableschema.get(table + "." + str).getDataType();
+			schema.put(alias + "." + str, new Mule(point, type));
+			point++;
+		}
+		position = new int[columns.size()];
+		for(int i=0;i<position.length;i++)
+			position[i] = schema.get(alias + "." + columns.get(i)).getIndex();
+		order = new ArrayList<>();
+		for(String str : index.getKeys())
+			order.add(alias + "." + str);
+		tupleID = 1;
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple from the index.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(!cursor.next())
+			return null;
+		DataType[] values = cursor.getValues();
+		Tuple tuple = new Tuple(values.length, 1);
+		for(int i=0;i<values.length;i++)
+			tuple.setData(position[i], values[i]);
+		tuple.setTupleID(0, tupleID);
+		tupleID++;
+		return tuple;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		cursor.reset();
+		tupleID = 1;
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method returns the order of the tuples, which is the order of
+	 * the attributes in the key.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return new ArrayList<>(order);
+	}
+	
+	/**
+	 * This method is used to close the file of the index.
+	 */
+	@Override
+	public void close() {
+		tree.close();
+	}
+
+}
@@ -0,0 +1,106 @@
+package PhysicalOperators;
+
+import java.util.List;
+import java.util.Map;
+
+import Support.Mule;
+import TableElement.Tuple;
+
+/**
+ * This class is used to handle the "LIMIT" and the "TOP" language when
+ * there is no need to sort the tuples. It skips the tuples before the
+ * starting point, and stops fetching from the child operator as soon as
+ * the ending point is reached.
+ * @author messfish
+ *
+ */
+public class LimitOperator extends Operator {
+	
+	private Operator op;
+	private int startpoint, endpoint;
+	// the tuples from the starting point to the ending point(exclusive)
+	// will be returned.
+	private int index; // the index of the next tuple from the child.
+	
+	/**
+	 * Constructor: this constructor is used to build the operator based
+	 * on the operator from the argument.
+	 * @param op the operator that will be used for passing data.
+	 * @param startpoint the index of the first tuple to return.
+	 * @param endpoint the index after the last tuple to return.
+	 */
+	public LimitOperator(Operator op, int startpoint, int endpoint) {
+		this.op = op;
+		this.startpoint = startpoint;
+		this.endpoint = endpoint;
+	}
+	
+	/**
+	 * This method is used to get the next valid tuple. The tuples before
+	 * the starting point are thrown away, after the ending point, the 
+	 * child operator will not be called any more.
+	 * @return the next tuple available.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		while(index < endpoint) {
+			Tuple tuple = op.getNextTuple();
+			if(tuple == null) {
+				index = endpoint;
+				return null;
+			}
+			index++;
+			if(index > startpoint)
+				return tuple;
+		}
+		return null;
+	}
+	
+	/**
+	 * This method is used to rest the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		op.reset();
+		index = 0;
+	}
+	
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		op.close();
+	}
+	
+	/**
+	 * This is the getter method of the schema of the table.
+	 * @return the schema of the table.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return op.getSchema();
+	}
+	
+	/**
+	 * This abstract method is used to fetch the number of tables in
+	 * the single operator.
+	 * @return the number of tables in this operator.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return op.getNumOfTables();
+	}
+	
+	/**
+	 * This method returns the order of the tuples, the limit keeps
+	 * the order of the tuples from the child.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return op.getOrder();
+	}
+
+}
@@ -45,6 +45,16 @@ public abstract class Operator {
 	 */
 	public abstract void reset();
 	
+	/**
+	 * This method is used to release the files held by the operator when
+	 * the tuples are not needed anymore, such as the partitions on disk.
+	 * The query calls it on the root after the tuples are written, even
+	 * when a limit stops fetching early. The operators with children
+	 * close them as well. By default, there is nothing to release.
+	 */
+	public void close() {
+	}
+	
 	/**
 	 * This abstract method is used to get the schema of the table
 	 * and store the result in a map, which has the string attribute
@@ -61,6 +71,18 @@ public abstract class Operator {
 	 */
 	public abstract int getNumOfTables();
 	
+	/**
+	 * This method returns the order of the tuples from this operator,
+	 * which is the list of attributes the tuples are sorted on, all
+	 * of them ascending. The operators above could make use of it, such
+	 * as the aggregation which does not need to sort the tuples again.
+	 * By default, the tuples are not in any order.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	public List<String> getOrder() {
+		return new ArrayList<>();
+	}
+	
 	/**
 	 * This method is used to get all the tuples available and store them
 	 * into a file. Notice we need to get the data that has the largest 
@@ -68,12 +90,24 @@ public abstract class Operator {
 	 * @param index the 
 	 */
 	public int[] dump(int index) {
-		File file = new File(Main.getOutput() + "/" + index);
+		return dump(new File(Main.getOutput() + "/" + index), null);
+	}
+	
+	/**
+	 * This method works just like the one above, except that the tuples
+	 * are written to the given file, and the header line could be given
+	 * as well, so the file could be converted into a binary table.
+	 * @param file the file to be written.
+	 * @param head the header line, null means the names of the attributes.
+	 * @return the array of the largest length of each column.
+	 */
+	public int[] dump(File file, String head) {
 		int[] result = new int[getSchema().size()];
 		int[] datatype = new int[getSchema().size()];
 		try {
 			StringBuilder sb = new StringBuilder();
-			sb.append(writeHead(getSchema(), datatype, result)).append("\n");
+			String line = writeHead(getSchema(), datatype, result);
+			sb.append(head == null ? line : head).append("\n");
 			Tuple tuple = null;
 			while((tuple=getNextTuple())!=null) 
 				sb.append(writeLine(tuple, datatype, result)).append("\n");
@@ -0,0 +1,246 @@
+package PhysicalOperators;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Aggregation.AggregateCall;
+import Aggregation.GroupTable;
+import Aggregation.MergeableAccumulator;
+import SmallSQLServer.Main;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class combines the tuples of the same group before they reach the
+ * final aggregation. It keeps a small hash table of a fixed number of
+ * groups, so the table stays in the cache. When a new group does not fit,
+ * the groups in the table are returned and the table starts over. The 
+ * tuples returned do not hold the results but the states of the 
+ * aggregates, such as the sum and the count for "AVG(S.A)", which are
+ * named "AVG(S.A)[0]" and "AVG(S.A)[1]". The final aggregation finds 
+ * the states in the schema and merges them instead of the attributes.
+ * When the table is full with only a few tuples for each group, the
+ * input is hardly reduced, so the rest of the tuples are passed through
+ * with the states of a single tuple, which saves the work of hashing.
+ * The state of a sketch is split into several tuples of the same group,
+ * and the table holds fewer groups when their sketches do not fit into
+ * the memory grant.
+ * @author messfish
+ *
+ */
+public class PartialAggregateOperator extends Operator {
+
+	private static final int NUM_OF_GROUPS = 1024;
+	// this is the largest number of groups the table could hold.
+	private static final int MIN_REDUCTION = 2;
+	// this is the least number of tuples for each group in a full table.
+	private Operator op;
+	private Map<String, Mule> schema;
+	private int[] keyindex; // the index of the group attributes.
+	private int[] stateindex; // the index of the state of each aggregate.
+	private int numofattributes; // the number of attributes of the result.
+	private GroupTable table; // this table maps the tuple to its group.
+	private MergeableAccumulator[] accumulators; // one for each aggregate.
+	private int numoftuples; // the number of tuples put into the table.
+	private int index; // the index of the next group to return.
+	private boolean isFlushing; // whether the groups are being returned.
+	private boolean isPassing; // whether the tuples are passed through.
+	private boolean isFinished; // whether the operator runs out of tuples.
+	private Tuple pending; // the tuple which does not fit into the table.
+	private long tupleID; // the ID of the next tuple.
+	private int numofgroups; // the number of groups the table could hold.
+	private DataType[] key; // the group attributes of the group being returned.
+	private int slot; // the slot of the group being returned.
+	private int piece; // the index of the next piece of the states.
+	private int numofpieces; // the number of pieces of the states of the group.
+	
+	/**
+	 * Constructor: this constructor builds the schema of the result, which
+	 * is the group attributes followed by the states of the aggregates.
+	 * Note all the aggregates must be mergeable, so none of them could be
+	 * COUNT(DISTINCT).
+	 * @param op the operator that used for getting source.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 */
+	public PartialAggregateOperator(Operator op, List<String> grouplist,
+									List<AggregateCall> calls) {
+		this.op = op;
+		Map<String, Mule> childschema = op.getSchema();
+		schema = new HashMap<>();
+		keyindex = new int[grouplist.size()];
+		for(int i=0;i<keyindex.length;i++) {
+			Mule mule = childschema.get(grouplist.get(i));
+			keyindex[i] = mule.getIndex();
+			schema.put(grouplist.get(i), new Mule(i, mule.getDataType()));
+		}
+		numofattributes = keyindex.length;
+		accumulators = new MergeableAccumulator[calls.size()];
+		stateindex = new int[calls.size()];
+		long slotsize = 1;
+		for(int i=0;i<accumulators.length;i++) {
+			accumulators[i] = (MergeableAccumulator)calls.get(i)
+							  .newAccumulator(childschema);
+			slotsize += accumulators[i].getSlotSize();
+		}
+		numofgroups = (int)Math.max(1, Math.min(NUM_OF_GROUPS,
+				Main.getMemory() / slotsize));
+		for(int i=0;i<accumulators.length;i++) {
+			accumulators[i].ensureCapacity(numofgroups);
+			stateindex[i] = numofattributes;
+			int[] types = accumulators[i].getStateTypes();
+			for(int j=0;j<types.length;j++) {
+				schema.put(calls.get(i).getStateName(j), 
+						   new Mule(numofattributes, types[j]));
+				numofattributes++;
+			}
+		}
+		table = new GroupTable(keyindex);
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple. The tuples are put
+	 * into the table until a new group does not fit, then the groups
+	 * in the table are returned one by one, each of them in as many
+	 * tuples as the pieces of its states.
+	 * @return the next tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		while(true) {
+			if(piece < numofpieces) {
+				piece++;
+				return buildTuple(piece - 1);
+			}
+			if(isFlushing) {
+				if(index < table.size()) {
+					setGroup(table.getKey(index), index);
+					index++;
+					continue;
+				}
+				isFlushing = false;
+				table = new GroupTable(keyindex);
+				numoftuples = 0;
+				if(isFinished)
+					return null;
+			}
+			Tuple tuple = pending;
+			pending = null;
+			if(tuple == null)
+				tuple = op.getNextTuple();
+			if(tuple == null) {
+				isFinished = true;
+				isFlushing = true;
+				index = 0;
+				continue;
+			}
+			/* the state of a single tuple is put into slot 0 directly. */
+			if(isPassing) {
+				for(MergeableAccumulator acc : accumulators)
+					acc.init(0, tuple);
+				DataType[] array = new DataType[keyindex.length];
+				for(int i=0;i<keyindex.length;i++)
+					array[i] = tuple.getData(keyindex[i]);
+				setGroup(array, 0);
+				continue;
+			}
+			int hash = table.hash(tuple);
+			int group = table.find(tuple, hash);
+			if(group != -1) {
+				for(MergeableAccumulator acc : accumulators)
+					acc.add(group, tuple);
+			}else if(table.size() < numofgroups) {
+				group = table.add(tuple, hash);
+				for(MergeableAccumulator acc : accumulators)
+					acc.init(group, tuple);
+			}else {
+				if(numoftuples < numofgroups * MIN_REDUCTION)
+					isPassing = true;
+				pending = tuple;
+				isFlushing = true;
+				index = 0;
+				continue;
+			}
+			numoftuples++;
+		}
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the first tuple.
+	 * The table is cleared and the tuples are aggregated again.
+	 */
+	@Override
+	public void reset() {
+		op.reset();
+		table = new GroupTable(keyindex);
+		numoftuples = 0;
+		index = 0;
+		isFlushing = isPassing = isFinished = false;
+		pending = null;
+		tupleID = 0;
+		piece = numofpieces = 0;
+	}
+	
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		op.close();
+	}
+	
+	/**
+	 * This is the getter method of the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since the tables are merged after this operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method sets the group whose states are returned next. The 
+	 * group takes the largest number of pieces of its states.
+	 * @param key the group attributes.
+	 * @param slot the slot that holds the states of the group.
+	 */
+	private void setGroup(DataType[] key, int slot) {
+		this.key = key;
+		this.slot = slot;
+		piece = 0;
+		numofpieces = 1;
+		for(MergeableAccumulator acc : accumulators)
+			numofpieces = Math.max(numofpieces, acc.getNumOfPieces(slot));
+	}
+	
+	/**
+	 * This method builds the tuple of a piece of the states of the group,
+	 * and gives the tuple a new ID.
+	 * @param piece the index of the piece.
+	 * @return the tuple with the states.
+	 */
+	private Tuple buildTuple(int piece) {
+		Tuple tuple = new Tuple(numofattributes, 1);
+		for(int i=0;i<key.length;i++)
+			tuple.setData(i, key[i]);
+		for(int i=0;i<accumulators.length;i++)
+			accumulators[i].writeState(slot, tuple, stateindex[i], piece);
+		tupleID++;
+		tuple.setTupleID(0, tupleID);
+		return tuple;
+	}
+
+}
@@ -3,19 +3,65 @@ package PhysicalOperators;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import Aggregation.AggregateCall;
+import Aggregation.GroupTable;
+import BitmapIndex.BitmapIndex;
+import BitmapIndex.RoaringBitmap;
 
 import LogicalOperators.CartesianOperators;
 import LogicalOperators.DistinctOperators;
 import LogicalOperators.GroupByOperators;
 import LogicalOperators.HavingOperators;
 import LogicalOperators.JoinOperators;
+import LogicalOperators.LimitOperators;
 import LogicalOperators.OperatorVisitor;
 import LogicalOperators.OrderByOperators;
 import LogicalOperators.ProjectOperators;
 import LogicalOperators.SelectOperators;
+import LogicalOperators.SetOperators;
+import LogicalOperators.TopNOperators;
+import LogicalOperators.WindowOperators;
+import SQLExpression.AbstractVisitor;
+import SQLExpression.AndOperator;
+import SQLExpression.BinaryExpression;
+import SQLExpression.ColumnNode;
+import SQLExpression.DoubleValue;
+import SQLExpression.Equals;
+import SQLExpression.Expression;
+import SQLExpression.GreaterThan;
+import SQLExpression.GreaterThanOrEquals;
+import SQLExpression.LessThan;
+import SQLExpression.LessThanOrEquals;
+import SQLExpression.LongValue;
+import SQLExpression.MultiAndOperator;
+import SQLExpression.MultiOrOperator;
+import SQLExpression.MultipleExpression;
+import SQLExpression.NotEquals;
+import SQLExpression.NotOperator;
+import SQLExpression.OrOperator;
+import SQLExpression.Parenthesis;
+import SQLExpression.StringValue;
+import SQLExpression.Subselect;
+import SQLExpression.UnaryExpression;
 import SQLParser.PlainSelect;
+import SQLParser.WindowFunction;
 import SmallSQLServer.Main;
+import SmallSQLServer.WriteHandler;
 import Support.Catalog;
+import Support.IndexDefinition;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Table;
+import TableElement.Tuple;
 
 /**
  * This class is mainly used for building the query plan tree: It uses the
@@ -28,6 +74,11 @@ public class PhysicalVisitor implements OperatorVisitor {
 	private PlainSelect ps;
 	private Operator op;
 	private Catalog catalog;
+	private static final int NUM_OF_SAMPLES = 4096;
+	// this is the number of tuples used to estimate the number of groups.
+	private long samplesize; // the average size of the sampled tuples.
+	private static final int MAX_OF_KEYS = 1024;
+	// the largest number of keys looked up in a hash index.
 	
 	/**
 	 * Constructor: this constructor is used to pass the argument 
@@ -41,18 +92,100 @@ public class PhysicalVisitor implements OperatorVisitor {
 	}
 	
 	/**
-	 * This is the visiting method of the order by Operators.
+	 * This is the getter method of the physical operator built from
+	 * the logical query plan tree.
+	 * @return the root of the physical operators.
+	 */
+	public Operator getOperator() {
+		return op;
+	}
+	
+	/**
+	 * This is the visiting method of the order by Operators. When the
+	 * tuples are already in the order asked for, they are not sorted.
+	 * For "DISTINCT", the tuples are sorted on the projected attributes
+	 * after the ones in the "ORDER BY", so the same tuples after the 
+	 * projection are next to each other and the distinct is streamed.
 	 * @param cart the logical Order By Operators that needs to be visited.
 	 */
 	@Override
 	public void visit(OrderByOperators order) {
 		order.getChild().accept(this);
-		op = new SortOperator(op, ps.getOrderByElements(), ps.isDescList());
+		List<Expression> sortlist = new ArrayList<>(ps.getOrderByElements());
+		int[] desclist = ps.isDescList();
+		if(ps.isDistinct()) {
+			List<Expression> projected = ps.getSelectElements();
+			if(projected.size()==0) {
+				projected = new ArrayList<>();
+				for(String str : op.getSchema().keySet())
+					projected.add(new ColumnNode(str));
+			}
+			sortlist.addAll(projected);
+			desclist = Arrays.copyOf(desclist, sortlist.size());
+			Arrays.fill(desclist, ps.getOrderByElements().size(), 
+						desclist.length, 1);
+		}
+		List<String> orderlist = SortOperator.getOrder(sortlist, desclist);
+		List<String> current = op.getOrder();
+		if(orderlist.size() == sortlist.size() && 
+				current.size() >= orderlist.size() &&
+				current.subList(0, orderlist.size()).equals(orderlist))
+			return;
+		op = new SortOperator(op, sortlist, desclist);
 	}
 
+	/**
+	 * This is the visiting method of the Group By Operators. Only the
+	 * aggregates in the query are passed to the operator. When the tuples
+	 * are already sorted on the group attributes (and the attribute of the
+	 * first COUNT(DISTINCT)), they are aggregated as a stream. When the
+	 * groups are estimated to fit into the memory grant, the hash 
+	 * aggregation is used, otherwise the tuples are sorted by the group
+	 * attributes. Since the hash aggregation does not keep the tuples,
+	 * COUNT(DISTINCT) always goes to the sort. Before the sort, the 
+	 * tuples of the same group are partially aggregated, so fewer tuples
+	 * are sorted and the sort only merges the states of the groups. The
+	 * sketches of the approximate aggregates are larger than a tuple, so
+	 * their states are split into several tuples. When the query only counts
+	 * the tuples of an exact bitmap, the count is the size of the bitmap.
+	 * @param group the logical Group By Operators that needs to be visited.
+	 */
 	@Override
 	public void visit(GroupByOperators group) {
-		
+		group.getChild().accept(this);
+		List<String> grouplist = ps.getGroupByElements();
+		List<AggregateCall> calls = AggregateCall.collect(ps);
+		/* the tuples in the bitmap are exactly the ones to be counted. */
+		if(op instanceof BitmapOperator && ((BitmapOperator)op).isExact() &&
+				CountOperator.isCount(grouplist, calls)) {
+			long count = ((BitmapOperator)op).getCount();
+			((BitmapOperator)op).close();
+			op = new CountOperator(calls, count);
+			return;
+		}
+		boolean isDistinct = false, isMergeable = true;
+		List<String> sortlist = new ArrayList<>(grouplist);
+		String sorted = AggregateCall.getSortedAttribute(calls);
+		if(sorted != null)
+			sortlist.add(sorted);
+		for(AggregateCall call : calls) {
+			isDistinct |= call.isDistinct();
+			isMergeable &= call.isMergeable();
+		}
+		List<String> order = op.getOrder();
+		if(StreamAggregateOperator.isOrdered(order, grouplist) &&
+				StreamAggregateOperator.isOrdered(order, sortlist)) {
+			op = new StreamAggregateOperator(op, grouplist, calls);
+			return;
+		}
+		if(!isDistinct && estimateGroups(grouplist) <=
+				Main.getMemory() / getGroupSize(grouplist, calls))
+			op = new HashAggregateOperator(op, grouplist, calls);
+		else {
+			if(isMergeable)
+				op = new PartialAggregateOperator(op, grouplist, calls);
+			op = new GroupByOperator(op, grouplist, calls);
+		}
 	}
 
 	/**
@@ -66,13 +199,22 @@ public class PhysicalVisitor implements OperatorVisitor {
 	}
 
 	/**
-	 * This is the visiting method of the Distinct Operators.
-	 * @param cart the logical Distinct Operators that needs to be visited.
+	 * This is the visiting method of the Distinct Operators. When the
+	 * tuples are sorted on all the attributes, the same tuples are next
+	 * to each other, otherwise the hash distinct is used. When there is
+	 * an "ORDER BY", the sort below is also on all the projected 
+	 * attributes, which are the ones the "ORDER BY" must come from, so 
+	 * the distinct is streamed and the order of the sort is kept.
+	 * @param distinct the logical Distinct Operators that needs to be visited.
 	 */
 	@Override
 	public void visit(DistinctOperators distinct) {
 		distinct.getChild().accept(this);
-		op = new DistinctOperator(op);
+		List<String> attributes = new ArrayList<>(op.getSchema().keySet());
+		if(StreamAggregateOperator.isOrdered(op.getOrder(), attributes) ||
+				ps.getOrderByElements().size()!=0)
+			op = new DistinctOperator(op);
+		else op = new HashDistinctOperator(op);
 	}
 
 	@Override
@@ -80,37 +222,761 @@ public class PhysicalVisitor implements OperatorVisitor {
 		
 	}
 
+	/**
+	 * This is the visiting method of the Having Operators. The having
+	 * expression is checked on the tuples of the groups.
+	 * @param having the logical Having Operators that needs to be visited.
+	 */
 	@Override
 	public void visit(HavingOperators having) {
-		
+		having.getChild().accept(this);
+		op = new SelectOperator(op, ps.getHavingExpression());
 	}
 
 	/**
-	 * This is the visiting method of the Select Operators.
+	 * This is the visiting method of the Select Operators. When the tuples
+	 * come from an exact bitmap, they all satisfy the where expression.
 	 * @param cart the logical Select Operators that needs to be visited.
 	 */
 	@Override
 	public void visit(SelectOperators select) {
 		select.getChild().accept(this);
+		if(op instanceof BitmapOperator && ((BitmapOperator)op).isExact())
+			return;
 		op = new SelectOperator(op, ps.getWhereExpression());
 	}
 
 	/**
-	 * This is the visiting method of the Cartesian Operators.
+	 * This is the visiting method of the Cartesian Operators. When the
+	 * query reads a single table, the index that covers the query and
+	 * whose first attributes in the key are fixed by the where expression
+	 * is used first, then the hash index whose key is fixed by the where
+	 * expression, then the bitmap indexes, then the index that covers the
+	 * query. When the query
+	 * reads several tables and the attributes in the key of a hash index 
+	 * are equal to the attributes of the other tables, the table is joined 
+	 * by the index. Otherwise the tables are scanned, with the filters
+	 * from the equalities in the where expression.
 	 * @param cart the logical Cartesian Operators that needs to be visited.
 	 */
 	@Override
 	public void visit(CartesianOperators cart) {
-		op = new CartesianOperator(ps.getFromList(), catalog);
+		List<Expression> conjuncts = new ArrayList<>();
+		if(ps.getWhereExpression() != null)
+			getConjuncts(ps.getWhereExpression(), conjuncts);
+		for(Table table : ps.getFromList().values())
+			if(catalog.getWatermark(table.getName()) != null)
+				conjuncts = null;
+		if(conjuncts != null && ps.getFromList().size() == 1) {
+			op = getIndexScan(conjuncts, true);
+			if(op == null)
+				op = getHashLookup(conjuncts);
+			if(op == null)
+				op = getBitmapScan();
+			if(op == null)
+				op = getIndexScan(conjuncts, false);
+		}else if(conjuncts != null)
+			op = getIndexJoin(conjuncts);
+		if(op == null) {
+			CartesianOperator cartesian = new CartesianOperator(ps.getFromList(), catalog);
+			if(conjuncts != null)
+				setFilters(cartesian, conjuncts);
+			op = cartesian;
+		}
+	}
+	
+	/**
+	 * This method sets the filters of the tables that are scanned. When 
+	 * an attribute is equal to constants, the pages whose Bloom filters
+	 * have none of them are skipped. When two attributes of different
+	 * tables are equal, the tuples of one table that could not be joined
+	 * are skipped by a Bloom filter of the values of the other table.
+	 * The numbers are hashed as double values, so a long integer could
+	 * be joined with a double value, but not with a string.
+	 * @param cartesian the operator that scans the tables.
+	 * @param conjuncts the expressions connected by "AND".
+	 */
+	private void setFilters(CartesianOperator cartesian, List<Expression> conjuncts) {
+		for(Expression express : conjuncts) {
+			if(express instanceof Equals &&
+					((Equals)express).getLeftChild() instanceof ColumnNode &&
+					((Equals)express).getRightChild() instanceof ColumnNode) {
+				String first = ((ColumnNode)((Equals)express).getLeftChild())
+						.getWholeColumnName(),
+					   second = ((ColumnNode)((Equals)express).getRightChild())
+						.getWholeColumnName();
+				int lefttype = getColumnType(first), righttype = getColumnType(second);
+				if(lefttype != -1 && righttype != -1 && (lefttype == 2) == (righttype == 2)
+						&& !first.split("\\.")[0].equals(second.split("\\.")[0]))
+					cartesian.setJoinFilter(first, second);
+				continue;
+			}
+			for(Map.Entry<String, Table> entry : ps.getFromList().entrySet()) {
+				String alias = entry.getKey(), table = entry.getValue().getName();
+				for(String str : catalog.getAttributesList(table)) {
+					String name = alias + "." + str;
+					List<DataType> values = getValues(express, name, getColumnType(name));
+					if(values != null)
+						cartesian.setFilter(name, values);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * This method returns the type an attribute of a table in the from
+	 * list is stored as.
+	 * @param column the attribute, such as "S.A" with the alias.
+	 * @return the type, -1 if the attribute is not in the from list.
+	 */
+	private int getColumnType(String column) {
+		String[] array = column.split("\\.");
+		Table table = ps.getFromList().get(array[0]);
+		if(array.length != 2 || table == null)
+			return -1;
+		Mule mule = catalog.getSchema(table.getName()).get(
+				table.getName() + "." + array[1]);
+		return mule == null ? -1 : getStoredType(mule.getDataType());
+	}
+	
+	/**
+	 * This method finds the index that covers the query. Among the ones
+	 * that cover it, the index with the most attributes in the key fixed
+	 * by the equality of the where expression is used, since fewer entries
+	 * are read, then the one with fewer attributes, which is smaller.
+	 * @param conjuncts the expressions connected by "AND".
+	 * @param isSeek true means the first attribute in the key should be 
+	 * fixed by the where expression.
+	 * @return the operator that reads the index, null if there is none.
+	 */
+	private Operator getIndexScan(List<Expression> conjuncts, boolean isSeek) {
+		Map.Entry<String, Table> entry = ps.getFromList().entrySet().iterator().next();
+		String alias = entry.getKey(), table = entry.getValue().getName();
+		if(catalog.getIndexes(table).size() == 0)
+			return null;
+		Set<String> columns = getColumns();
+		if(columns == null)
+			return null;
+		if(ps.getSelectElements().size() == 0)
+			for(String str : catalog.getAttributesList(table))
+				columns.add(alias + "." + str);
+		IndexDefinition best = null;
+		DataType[] prefix = null;
+		for(IndexDefinition index : catalog.getIndexes(table)) {
+			if(!index.getType().equals(IndexDefinition.BTREE))
+				continue;
+			Set<String> covered = new HashSet<>();
+			for(String str : index.getAttributes())
+				covered.add(alias + "." + str);
+			if(!covered.containsAll(columns))
+				continue;
+			DataType[] values = getPrefix(index, alias, conjuncts);
+			if(best == null || values.length > prefix.length ||
+					(values.length == prefix.length && index.getAttributes().size()
+					< best.getAttributes().size())) {
+				best = index;
+				prefix = values;
+			}
+		}
+		if(best == null || (isSeek && prefix.length == 0))
+			return null;
+		return new IndexScanOperator(best, alias, catalog, prefix);
+	}
+	
+	/**
+	 * This method finds the hash index whose attributes in the key are 
+	 * all fixed by the where expression, either by an equality or by 
+	 * several equalities connected by "OR", which works like "IN". 
+	 * @param conjuncts the expressions connected by "AND".
+	 * @return the operator that looks up the index, null if there is none.
+	 */
+	private Operator getHashLookup(List<Expression> conjuncts) {
+		Map.Entry<String, Table> entry = ps.getFromList().entrySet().iterator().next();
+		String alias = entry.getKey(), table = entry.getValue().getName();
+		Map<String, Mule> schema = catalog.getSchema(table);
+		for(IndexDefinition index : catalog.getIndexes(table)) {
+			if(!index.isHash())
+				continue;
+			List<DataType[]> keys = new ArrayList<>();
+			keys.add(new DataType[0]);
+			for(String key : index.getKeys()) {
+				int type = schema.get(table + "." + key).getDataType();
+				List<DataType> values = null;
+				for(Expression express : conjuncts) {
+					values = getValues(express, alias + "." + key, type);
+					if(values != null)
+						break;
+				}
+				if(values == null || keys.size() * values.size() > MAX_OF_KEYS) {
+					keys = null;
+					break;
+				}
+				List<DataType[]> next = new ArrayList<>();
+				for(DataType[] array : keys)
+					for(DataType value : values) {
+						DataType[] extend = Arrays.copyOf(array, array.length + 1);
+						extend[array.length] = value;
+						next.add(extend);
+					}
+				keys = next;
+			}
+			if(keys != null)
+				return new HashLookupOperator(index, alias, catalog, keys);
+		}
+		return null;
+	}
+	
+	/**
+	 * This method builds the bitmap of the tuples to be read from the 
+	 * bitmap indexes of the table. The comparisons of the attributes in
+	 * the indexes with the constants are answered by the bitmaps of their
+	 * values, and they are connected by "AND", "OR" and "NOT" the same way
+	 * as in the where expression, before any tuple is read.
+	 * @return the operator that reads the tuples in the bitmap, null if
+	 * the bitmap indexes could not be used.
+	 */
+	private Operator getBitmapScan() {
+		Map.Entry<String, Table> entry = ps.getFromList().entrySet().iterator().next();
+		String alias = entry.getKey(), table = entry.getValue().getName();
+		if(ps.getWhereExpression() == null)
+			return null;
+		Map<String, BitmapIndex> bitmaps = new HashMap<>();
+		BitmapIndex first = null;
+		for(IndexDefinition index : catalog.getIndexes(table)) {
+			if(!index.isBitmap())
+				continue;
+			first = new BitmapIndex(catalog.getIndexLocation(index.getName()));
+			for(String key : index.getKeys())
+				bitmaps.put(alias + "." + key, first);
+		}
+		if(first == null)
+			return null;
+		boolean[] isExact = {true};
+		RoaringBitmap rows = getBitmap(ps.getWhereExpression(), table, bitmaps,
+				first.getNumOfRows(), isExact);
+		if(rows == null)
+			return null;
+		/* the deleted tuples are still in the bitmaps of their values. */
+		rows = rows.andNot(first.getDeleted());
+		return new BitmapOperator(table, alias, catalog, first, rows, isExact[0]);
+	}
+	
+	/**
+	 * This method builds the bitmap of the tuples that satisfy an expression.
+	 * The expressions connected by "AND" that could not be answered are left
+	 * out, so the bitmap has more tuples than the result, and it is no longer
+	 * exact. The expressions connected by "OR" must all be answered, and the
+	 * one under "NOT" must be exact.
+	 * @param express the expression.
+	 * @param table the name of the table.
+	 * @param bitmaps the bitmap index of each attribute in the indexes.
+	 * @param numofrows the number of tuples in the table.
+	 * @param isExact the first element is set to false when the bitmap has
+	 * more tuples than the result.
+	 * @return the bitmap of the tuples, null when it could not be answered.
+	 */
+	private RoaringBitmap getBitmap(Expression express, String table, 
+			Map<String, BitmapIndex> bitmaps, int numofrows, boolean[] isExact) {
+		if(express instanceof Parenthesis)
+			return getBitmap(((Parenthesis)express).getChild(), table, bitmaps,
+					numofrows, isExact);
+		if(express instanceof MultiAndOperator || express instanceof AndOperator) {
+			List<Expression> list = new ArrayList<>();
+			getConjuncts(express, list);
+			RoaringBitmap result = null;
+			for(Expression child : list) {
+				RoaringBitmap bitmap = getBitmap(child, table, bitmaps, numofrows, isExact);
+				if(bitmap == null)
+					isExact[0] = false;
+				else result = result == null ? bitmap : result.and(bitmap);
+			}
+			return result;
+		}
+		if(express instanceof MultiOrOperator || express instanceof OrOperator) {
+			List<Expression> list = express instanceof OrOperator ?
+				Arrays.asList(((OrOperator)express).getLeftChild(), 
+							  ((OrOperator)express).getRightChild()) :
+				((MultiOrOperator)express).getList();
+			RoaringBitmap result = new RoaringBitmap();
+			for(Expression child : list) {
+				RoaringBitmap bitmap = getBitmap(child, table, bitmaps, numofrows, isExact);
+				if(bitmap == null)
+					return null;
+				result = result.or(bitmap);
+			}
+			return result;
+		}
+		if(express instanceof NotOperator) {
+			boolean[] isChildExact = {true};
+			RoaringBitmap bitmap = getBitmap(((NotOperator)express).getChild(),
+					table, bitmaps, numofrows, isChildExact);
+			if(bitmap == null || !isChildExact[0])
+				return null;
+			return RoaringBitmap.range(numofrows).andNot(bitmap);
+		}
+		boolean isLess = express instanceof LessThan || express instanceof LessThanOrEquals
+				|| express instanceof NotEquals,
+				isEqual = express instanceof Equals || express instanceof LessThanOrEquals
+				|| express instanceof GreaterThanOrEquals,
+				isGreater = express instanceof GreaterThan || 
+				express instanceof GreaterThanOrEquals || express instanceof NotEquals;
+		if(!isLess && !isEqual && !isGreater)
+			return null;
+		Expression left = ((BinaryExpression)express).getLeftChild(),
+				   right = ((BinaryExpression)express).getRightChild();
+		/* the constant is moved to the right, so is the comparison. */
+		if(right instanceof ColumnNode) {
+			Expression temp = left;
+			left = right;
+			right = temp;
+			boolean flag = isLess;
+			isLess = isGreater;
+			isGreater = flag;
+		}
+		if(!(left instanceof ColumnNode))
+			return null;
+		String name = ((ColumnNode)left).getWholeColumnName();
+		BitmapIndex bitmap = bitmaps.get(name);
+		if(bitmap == null)
+			return null;
+		String column = name.split("\\.")[1];
+		int type = catalog.getSchema(table).get(table + "." + column).getDataType();
+		DataType value = getValue(right, getStoredType(type));
+		if(value == null)
+			return null;
+		return bitmap.select(column, value, isLess, isEqual, isGreater);
+	}
+	
+	/**
+	 * This method finds the values an attribute could be equal to by an
+	 * expression, which is an equality or several equalities on the same
+	 * attribute connected by "OR".
+	 * @param express the expression.
+	 * @param name the name of the attribute.
+	 * @param type the type of the attribute.
+	 * @return the list of values, null when the expression could not be used.
+	 */
+	private List<DataType> getValues(Expression express, String name, int type) {
+		List<DataType> result = new ArrayList<>();
+		if(express instanceof MultiOrOperator) {
+			for(Expression child : ((MultiOrOperator)express).getList()) {
+				List<DataType> values = getValues(child, name, type);
+				if(values == null)
+					return null;
+				result.addAll(values);
+			}
+			return result;
+		}
+		if(express instanceof OrOperator) {
+			List<DataType> left = getValues(((OrOperator)express).getLeftChild(), name, type),
+						   right = getValues(((OrOperator)express).getRightChild(), name, type);
+			if(left == null || right == null)
+				return null;
+			result.addAll(left);
+			result.addAll(right);
+			return result;
+		}
+		if(!(express instanceof Equals))
+			return null;
+		Expression left = ((Equals)express).getLeftChild(),
+				   right = ((Equals)express).getRightChild();
+		if(right instanceof ColumnNode) {
+			Expression temp = left;
+			left = right;
+			right = temp;
+		}
+		if(!(left instanceof ColumnNode) || 
+				!((ColumnNode)left).getWholeColumnName().equals(name))
+			return null;
+		DataType value = getValue(right, type);
+		if(value == null)
+			return null;
+		result.add(value);
+		return result;
+	}
+	
+	/**
+	 * This method finds a table whose hash index could be used to join it
+	 * with the other tables: every attribute in the key is equal to an
+	 * attribute of another table. When there are several of them, the
+	 * largest table is looked up, so the most tuples are not read.
+	 * @param conjuncts the expressions connected by "AND".
+	 * @return the operator that joins the tables, null if there is none.
+	 */
+	private Operator getIndexJoin(List<Expression> conjuncts) {
+		String inner = null;
+		IndexDefinition best = null;
+		List<String> bestcolumns = null;
+		long largest = -1;
+		for(Map.Entry<String, Table> entry : ps.getFromList().entrySet()) {
+			String alias = entry.getKey(), table = entry.getValue().getName();
+			long length = new File(catalog.getFileLocation(table)).length();
+			if(length <= largest)
+				continue;
+			for(IndexDefinition index : catalog.getIndexes(table)) {
+				if(!index.isHash())
+					continue;
+				List<String> columns = new ArrayList<>();
+				for(String key : index.getKeys()) {
+					String column = getJoinColumn(alias, table, key, conjuncts);
+					if(column == null)
+						break;
+					columns.add(column);
+				}
+				if(columns.size() == index.getKeys().size()) {
+					inner = alias;
+					best = index;
+					bestcolumns = columns;
+					largest = length;
+					break;
+				}
+			}
+		}
+		if(best == null)
+			return null;
+		return new IndexJoinOperator(ps.getFromList(), inner, best, 
+									 bestcolumns, catalog);
+	}
+	
+	/**
+	 * This method finds the attribute of another table that is equal to
+	 * an attribute of a table. The values of the attribute are used as
+	 * the key of the table, so a long integer could be used for a key of
+	 * double values, but not the other way round.
+	 * @param alias the alias of the table.
+	 * @param table the name of the table.
+	 * @param key the attribute of the table.
+	 * @param conjuncts the expressions connected by "AND".
+	 * @return the name of the attribute, null if there is none.
+	 */
+	private String getJoinColumn(String alias, String table, String key,
+								 List<Expression> conjuncts) {
+		String name = alias + "." + key;
+		int type = getStoredType(catalog.getSchema(table).get(table + "." + key)
+				.getDataType());
+		for(Expression express : conjuncts) {
+			if(!(express instanceof Equals))
+				continue;
+			Expression left = ((Equals)express).getLeftChild(),
+					   right = ((Equals)express).getRightChild();
+			if(!(left instanceof ColumnNode) || !(right instanceof ColumnNode))
+				continue;
+			String first = ((ColumnNode)left).getWholeColumnName(),
+				   second = ((ColumnNode)right).getWholeColumnName();
+			if(second.equals(name)) {
+				second = first;
+				first = name;
+			}
+			if(!first.equals(name))
+				continue;
+			String[] array = second.split("\\.");
+			Table other = ps.getFromList().get(array[0]);
+			if(array[0].equals(alias) || other == null)
+				continue;
+			Mule mule = catalog.getSchema(other.getName()).get(
+					other.getName() + "." + array[1]);
+			if(mule == null)
+				continue;
+			int othertype = getStoredType(mule.getDataType());
+			if(othertype == type || (type == 5 && othertype == 1))
+				return second;
+		}
+		return null;
+	}
+	
+	/**
+	 * This method returns the type an attribute is stored as in the index,
+	 * the date and the time values are stored as double values.
+	 * @param type the type of the attribute.
+	 * @return the type in the index.
+	 */
+	private int getStoredType(int type) {
+		return type == 1 || type == 2 ? type : 5;
+	}
+	
+	/**
+	 * This method collects the attributes the query reads, including the 
+	 * attributes in the aggregates and the window functions.
+	 * @return the set of attributes, null when there is a sub query, whose
+	 * attributes could not be told.
+	 */
+	private Set<String> getColumns() {
+		Set<String> result = new HashSet<>();
+		boolean[] isSubquery = new boolean[1];
+		AbstractVisitor visitor = new AbstractVisitor() {
+			@Override
+			public void visit(Expression express) {
+				if(express instanceof Subselect)
+					isSubquery[0] = true;
+				if(!(express instanceof ColumnNode))
+					return;
+				String name = ((ColumnNode)express).getWholeColumnName();
+				if(AggregateCall.isAggregate(name))
+					name = new AggregateCall(name).getAttribute();
+				if(!name.equals("*"))
+					result.add(name);
+			}
+			@Override
+			public void visit(BinaryExpression express) {
+				express.getLeftChild().accept(this);
+				express.getRightChild().accept(this);
+			}
+			@Override
+			public void visit(UnaryExpression express) {
+				express.getChild().accept(this);
+			}
+			@Override
+			public void visit(MultipleExpression express) {
+				for(Expression child : express.getList())
+					child.accept(this);
+			}
+		};
+		List<Expression> list = new ArrayList<>(ps.getSelectElements());
+		list.add(ps.getWhereExpression());
+		list.add(ps.getHavingExpression());
+		list.addAll(ps.getOrderByElements());
+		for(WindowFunction function : ps.getWindowFunctions()) {
+			list.addAll(function.getOrderList());
+			for(String str : function.getPartitionList())
+				result.add(str);
+			if(!function.getAttribute().equals("*"))
+				result.add(function.getAttribute());
+		}
+		for(Expression express : list)
+			if(express != null)
+				express.accept(visitor);
+		for(WindowFunction function : ps.getWindowFunctions())
+			result.remove(function.getName());
+		result.addAll(ps.getGroupByElements());
+		return isSubquery[0] ? null : result;
+	}
+	
+	/**
+	 * This method puts the expressions connected by "AND" into a list.
+	 * @param express the expression.
+	 * @param list the list of the expressions.
+	 */
+	private void getConjuncts(Expression express, List<Expression> list) {
+		if(express instanceof MultiAndOperator) {
+			for(Expression child : ((MultiAndOperator)express).getList())
+				getConjuncts(child, list);
+		}else if(express instanceof AndOperator) {
+			getConjuncts(((AndOperator)express).getLeftChild(), list);
+			getConjuncts(((AndOperator)express).getRightChild(), list);
+		}else list.add(express);
+	}
+	
+	/**
+	 * This method finds the values of the first attributes in the key of
+	 * an index that are fixed by the equality of the where expression.
+	 * It stops at the first attribute that is not fixed.
+	 * @param index the definition of the index.
+	 * @param alias the alias of the table in the query.
+	 * @param conjuncts the expressions connected by "AND".
+	 * @return the array of values of the first attributes.
+	 */
+	private DataType[] getPrefix(IndexDefinition index, String alias,
+								 List<Expression> conjuncts) {
+		Map<String, Mule> schema = catalog.getSchema(index.getTable());
+		List<DataType> result = new ArrayList<>();
+		for(String key : index.getKeys()) {
+			String name = alias + "." + key;
+			int type = schema.get(index.getTable() + "." + key).getDataType();
+			DataType value = null;
+			for(Expression express : conjuncts) {
+				if(!(express instanceof Equals))
+					continue;
+				Expression left = ((Equals)express).getLeftChild(),
+						   right = ((Equals)express).getRightChild();
+				if(right instanceof ColumnNode) {
+					Expression temp = left;
+					left = right;
+					right = temp;
+				}
+				if(!(left instanceof ColumnNode) || 
+						!((ColumnNode)left).getWholeColumnName().equals(name))
+					continue;
+				value = getValue(right, type);
+				if(value != null)
+					break;
+			}
+			if(value == null)
+				break;
+			result.add(value);
+		}
+		return result.toArray(new DataType[result.size()]);
+	}
+	
+	/**
+	 * This method returns the value of a constant that could be compared
+	 * with the entries of an attribute in the index.
+	 * @param express the constant in the expression.
+	 * @param type the type of the attribute.
+	 * @return the value, null when it could not be used.
+	 */
+	private DataType getValue(Expression express, int type) {
+		if(express instanceof LongValue && (type == 1 || type == 5))
+			return new DataType(((LongValue)express).getData());
+		if(express instanceof DoubleValue && type == 5)
+			return new DataType(((DoubleValue)express).getData());
+		if(express instanceof StringValue && type == 2)
+			return new DataType(((StringValue)express).getData());
+		return null;
+	}
+
+	/**
+	 * This is the visiting method of the Top N Operators. The heap keeps
+	 * N tuples in memory, so when N tuples could not fit into the memory
+	 * grant, the tuples are sorted instead, which could spill to the disk,
+	 * and the limit is taken after the sort.
+	 * @param topn the logical Top N Operators that needs to be visited.
+	 */
+	@Override
+	public void visit(TopNOperators topn) {
+		topn.getChild().accept(this);
+		long size = 16;
+		for(Mule mule : op.getSchema().values())
+			/* no tuple is read yet, so the strings take the longest length
+			 * a table could keep. */
+			size += mule.getDataType() == 2 ? 40 + WriteHandler.MAX_OF_LENGTH * 2 : 24;
+		/* the heap keeps the tuple and its sort key. */
+		if(ps.getEndPoint() > Main.getMemory() / (2 * size + 16)) {
+			op = new SortOperator(op, ps.getOrderByElements(), ps.isDescList());
+			op = new LimitOperator(op, ps.getStartPoint(), ps.getEndPoint());
+			return;
+		}
+		op = new TopNOperator(op, ps.getOrderByElements(), ps.isDescList(),
+				ps.getStartPoint(), ps.getEndPoint());
+	}
+
+	/**
+	 * This is the visiting method of the Limit Operators.
+	 * @param limit the logical Limit Operators that needs to be visited.
+	 */
+	@Override
+	public void visit(LimitOperators limit) {
+		limit.getChild().accept(this);
+		op = new LimitOperator(op, ps.getStartPoint(), ps.getEndPoint());
+	}
+
+	/**
+	 * This is the visiting method of the Set Operators. Each sub query
+	 * is visited by its own physical visitor. "UNION ALL" simply returns
+	 * the tuples of both queries. The others are merged when both queries
+	 * are sorted on all the attributes in the same order, otherwise they
+	 * are done by hashing.
+	 * @param set the logical Set Operators that needs to be visited.
+	 */
+	@Override
+	public void visit(SetOperators set) {
+		PlainSelect[] subs = ps.getSubQueries();
+		Operator[] children = new Operator[set.length()];
+		for(int i=0;i<children.length;i++) {
+			PhysicalVisitor visitor = new PhysicalVisitor(subs[i], catalog);
+			set.getChild(i).accept(visitor);
+			children[i] = visitor.op;
+		}
+		int type = ps.getUnionType();
+		int[] leftorder = SortedSetOperator.getOrderIndex(children[0]);
+		int[] rightorder = SortedSetOperator.getOrderIndex(children[1]);
+		if(type == 2)
+			op = new UnionAllOperator(children[0], children[1]);
+		else if(leftorder != null && Arrays.equals(leftorder, rightorder))
+			op = new SortedSetOperator(children[0], children[1], type, leftorder);
+		else op = new HashSetOperator(children[0], children[1], type);
+	}
+	
+	/**
+	 * This is the visiting method of the Window Operators. The window 
+	 * functions with the same partition and order share a window operator,
+	 * so the tuples are only sorted once for them.
+	 * @param window the logical Window Operators that needs to be visited.
+	 */
+	@Override
+	public void visit(WindowOperators window) {
+		window.getChild().accept(this);
+		Map<String, List<WindowFunction>> map = new LinkedHashMap<>();
+		for(WindowFunction function : ps.getWindowFunctions()) {
+			if(!map.containsKey(function.getSpec()))
+				map.put(function.getSpec(), new ArrayList<>());
+			map.get(function.getSpec()).add(function);
+		}
+		for(List<WindowFunction> functions : map.values())
+			op = new WindowOperator(op, functions);
+	}
+	
+	/**
+	 * This method is used to estimate the number of groups. It puts the 
+	 * first few tuples of the operator into a group table. When the 
+	 * operator runs out of tuples, the number of groups is exact. Otherwise,
+	 * if few groups only show up once in the sample, the groups are seen
+	 * again and again, so we take the number of groups in the sample. If
+	 * many groups only show up once, the number of groups keeps growing
+	 * with the input, so we could not tell and return the largest value.
+	 * The operator will be reset after sampling.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @return the estimated number of groups.
+	 */
+	private long estimateGroups(List<String> grouplist) {
+		int[] keyindex = new int[grouplist.size()];
+		for(int i=0;i<keyindex.length;i++)
+			keyindex[i] = op.getSchema().get(grouplist.get(i)).getIndex();
+		GroupTable table = new GroupTable(keyindex);
+		int[] counts = new int[NUM_OF_SAMPLES];
+		int numofsamples = 0;
+		long numofbytes = 0;
+		Tuple tuple = null;
+		while(numofsamples<NUM_OF_SAMPLES&&(tuple=op.getNextTuple())!=null) {
+			int hash = table.hash(tuple);
+			int index = table.find(tuple, hash);
+			if(index == -1)
+				index = table.add(tuple, hash);
+			counts[index]++;
+			numofsamples++;
+			numofbytes += op.checkSize(tuple);
+		}
+		op.reset();
+		samplesize = numofbytes / Math.max(1, numofsamples);
+		if(numofsamples < NUM_OF_SAMPLES)
+			return table.size();
+		int numofsingles = 0;
+		for(int i=0;i<table.size();i++)
+			if(counts[i] == 1) numofsingles++;
+		if(numofsingles * 16 < numofsamples)
+			return table.size();
+		return Long.MAX_VALUE;
+	}
+	
+	/**
+	 * This method estimates the number of bytes a group takes in the hash
+	 * aggregation: the values of the group attributes, the entry in the
+	 * group table and the slots of the accumulators.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 * @return the number of bytes of a single group.
+	 */
+	private long getGroupSize(List<String> grouplist, List<AggregateCall> calls) {
+		long size = GroupTable.getSlotSize();
+		for(AggregateCall call : calls)
+			size += call.newAccumulator(op.getSchema()).getSlotSize();
+		for(String str : grouplist) {
+			int type = op.getSchema().get(str).getDataType();
+			/* the string is counted by the average size of the tuples. */
+			size += type == 2 ? samplesize : 8;
+			size += 16;
+		}
+		return size;
 	}
 	
 	/**
 	 * This method is used to get all the tuples available and print all
-	 * the valid tuples out in the ordered format.
+	 * the valid tuples out in the ordered format. The operators are closed
+	 * once the tuples are written, so no file of the query is left behind.
 	 * @param index the index of the query.
 	 */
 	public void dump(int index) {
 		int[] datasize = op.dump(index);
+		op.close();
 		int numofplus = datasize.length + 1;
 		for(int i=0;i<datasize.length;i++) {
 			datasize[i] += 2;
@@ -1,5 +1,6 @@
 package PhysicalOperators;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,8 @@ public class ProjectOperator extends Operator {
 	private Map<String, Mule> schema;
 	private Evaluator eva;
 	private long tupleID; // this is used to trace the tuple ID.
+	private Map<String, String> rename;
+	// this map stores the name of an attribute after the projection.
 	
 	/**
 	 * Constructor: this constructor is mainly used to pass the arguments
@@ -34,6 +37,7 @@ public class ProjectOperator extends Operator {
 		eva = new Evaluator(op.getSchema());
 		operator = op;
 		this.list = list;
+		rename = new HashMap<>();
 		/* this indicates there is only an '*' for SELECT part. */
 		if(list.size()==0)
 			schema = op.getSchema();
@@ -45,16 +49,16 @@ public class ProjectOperator extends Operator {
 					ColumnNode node = (ColumnNode)express;
 					String str = node.getWholeColumnName();
 					Mule mule = op.getSchema().get(str);
-					mule.setIndex(i);
-					schema.put(str, mule);
+					schema.put(str, new Mule(i, mule.getDataType()));
+					rename.put(str, str);
 				}else {
 					/* check whether there is only one elements in the tree. */
 					Mule mule = null;
 					if(express.isLeaf()) {
 						ColumnNode node = (ColumnNode)express;
 						String str = node.getWholeColumnName();
-						mule = op.getSchema().get(str);
-						mule.setIndex(i);
+						mule = new Mule(i, op.getSchema().get(str).getDataType());
+						rename.put(str, alias_list.get(i));
 					}else {
 						/* check whether there is a double type in the tree. */
 						int datatype = 5;
@@ -103,6 +107,15 @@ public class ProjectOperator extends Operator {
 		operator.reset();
 	}
 
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		operator.close();
+	}
+	
 	/**
 	 * This is the getter method of the schema of the operator.
 	 * @return the schema of the operator.
@@ -122,4 +135,22 @@ public class ProjectOperator extends Operator {
 		return 1;
 	}
 	
+	/**
+	 * This method returns the order of the tuples. The order of the child
+	 * is kept until an attribute of the order is not projected.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		if(list.size()==0)
+			return operator.getOrder();
+		List<String> order = new ArrayList<>();
+		for(String str : operator.getOrder()) {
+			if(!rename.containsKey(str))
+				break;
+			order.add(rename.get(str));
+		}
+		return order;
+	}
+	
 }
@@ -11,6 +11,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import Support.BloomFilter;
+import Support.FilterFile;
 import Support.Mule;
 import TableElement.DataType;
 import TableElement.Tuple;
@@ -18,6 +20,9 @@ import TableElement.Tuple;
 /**
  * This operator is used to scan the whole tables and fetch the 
  * whole tuples out. Notice the tuple should be a list of data.
+ * The tuples whose valid byte is 0 are deleted, they are skipped but 
+ * still take their places in the pages, so the positions of the other
+ * tuples never change.
  * @author messfish
  *
  */
@@ -40,6 +45,28 @@ public class ScanOperator extends Operator {
 	private List<Integer> typelist;
 	// this integer stores the index of each attributes in the table.
 	private Tuple current; // this variable stores the current tuple.
+	private List<String> order;
+	// this list stores the attributes the table is sorted on.
+	private int startpage; // the first data page to be read.
+	private long lastID = Long.MIN_VALUE;
+	// the tuples with an ID not larger than this are skipped.
+	private int datapage = -1; // the data page that is being read.
+	private int offset; // the offset of the current tuple in the page.
+	private int end; // the offset right after the decoded tuple.
+	private ByteBuffer fetched; // the data page read by the position.
+	private int fetchpage = -1; // the data page in the fetched buffer.
+	private boolean isDeleted; // true means the current tuple is deleted.
+	private FilterFile filters; // the Bloom filters of the pages.
+	private List<Integer> pagecolumns;
+	// the attributes in the Bloom filters of the pages that are checked.
+	private List<long[]> pagehashes;
+	// the hashes of the values, a page is read when it might have one.
+	private List<Integer> joinindex;
+	// the index of the attributes checked by the join filters.
+	private List<BloomFilter> joinfilters;
+	// the filters built from the other side of the joins.
+	private int pagesread; // the number of data pages that are read.
+	private long pruned; // the number of tuples skipped by the join filters.
 	
 	/**
 	 * Constructor: this constructor consumes a file and stores 
@@ -84,11 +111,69 @@ public class ScanOperator extends Operator {
 				typelist.add(datatype);
 				schema.put(sb.toString(), mule);
 			}
+			/* after the end of the table list, there is a byte of the 
+			 * number of attributes the table is sorted on, followed by
+			 * the names of these attributes. */
+			order = new ArrayList<>();
+			index++;
+			int numoforders = buffer.get(index);
+			index++;
+			for(int i=0;i<numoforders;i++) {
+				int size = buffer.get(index);
+				index++;
+				StringBuilder sb = new StringBuilder();
+				for(int j=0;j<size;j++) {
+					sb.append((char)buffer.get(index));
+					index++;
+				}
+				order.add(sb.toString());
+			}
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Constructor: this constructor only returns the tuples after a
+	 * watermark. Since the tuples are appended to the end of the table
+	 * with increasing IDs, the pages before the one of the watermark 
+	 * are skipped without being read.
+	 * @param file the file in the binary form.
+	 * @param page the data page that holds the tuple of the watermark.
+	 * @param ID the ID of the last tuple that should not be returned.
+	 */
+	public ScanOperator(File file, int page, long ID) {
+		this(file);
+		startpage = page;
+		lastID = ID;
+		seek(startpage);
+	}
+	
+	/**
+	 * This method moves the file pointer to a data page, the next tuple
+	 * to be read is the first tuple of that page.
+	 * @param page the data page to be read.
+	 */
+	private void seek(int page) {
+		datapage = page - 1;
+		try {
+			fc.position((long)(page + 1) * NUM_OF_BYTES);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method skips to a data page, so the pages before it are never
+	 * read. It is used by the indexes that know the pages of the tuples.
+	 * @param page the data page to be read.
+	 */
+	public void skipTo(int page) {
+		currentpoint = 0;
+		pagelimit = 0;
+		seek(page);
+	}
+	
 	/**
 	 * This method is used to get the next tuple available in the
 	 * table. return null if there is no tuple left.
@@ -96,40 +181,231 @@ public class ScanOperator extends Operator {
 	 */
 	@Override
 	public Tuple getNextTuple() {
+		Tuple result = readTuple();
+		/* the tuples before the watermark have been read before, and
+		 * the tuples without a match in the joins are never used. */
+		while(result!=null && (isDeleted || result.getTupleID(0)<=lastID ||
+				!isJoined(result)))
+			result = readTuple();
+		return result;
+	}
+	
+	/**
+	 * This method returns the next tuple in the pages, including the
+	 * deleted ones, which is used when the tuples are counted by their
+	 * places in the pages.
+	 * @return the tuple or a null value.
+	 */
+	public Tuple getNextRow() {
+		return readTuple();
+	}
+	
+	/**
+	 * This method checks whether the current tuple is deleted.
+	 * @return true if the tuple is deleted.
+	 */
+	public boolean isDeleted() {
+		return isDeleted;
+	}
+	
+	/**
+	 * This method returns the place of the current tuple in its page,
+	 * the deleted tuples before it are counted as well.
+	 * @return the place of the tuple, starting from 0.
+	 */
+	public int getSlot() {
+		return currentpoint - 1;
+	}
+	
+	/**
+	 * This method sets the values an attribute should have, so the pages
+	 * whose Bloom filters have none of them are skipped. It only works
+	 * when the table has a Bloom filter for the attribute.
+	 * @param attribute the attribute, such as "S.A".
+	 * @param hashes the hashes of the values.
+	 * @return true if the pages will be skipped by the filters.
+	 */
+	public boolean setFilter(String attribute, long[] hashes) {
+		if(filters == null) {
+			filters = FilterFile.read(file);
+			if(filters == null)
+				return false;
+			pagecolumns = new ArrayList<>();
+			pagehashes = new ArrayList<>();
+		}
+		int column = filters.getColumns().indexOf(attribute);
+		if(column == -1)
+			return false;
+		pagecolumns.add(column);
+		pagehashes.add(hashes);
+		return true;
+	}
+	
+	/**
+	 * This method sets a filter built from the values of the other side
+	 * of a join, the tuples whose value of the attribute is not in the
+	 * filter are skipped, since they could not be joined.
+	 * @param index the index of the attribute in the tuple.
+	 * @param filter the filter of the values.
+	 */
+	public void setJoinFilter(int index, BloomFilter filter) {
+		if(joinfilters == null) {
+			joinindex = new ArrayList<>();
+			joinfilters = new ArrayList<>();
+		}
+		joinindex.add(index);
+		joinfilters.add(filter);
+	}
+	
+	/**
+	 * This method checks whether a tuple passes all the join filters.
+	 * @param tuple the tuple to be checked.
+	 * @return false means the tuple could not be joined for sure.
+	 */
+	private boolean isJoined(Tuple tuple) {
+		if(joinfilters == null)
+			return true;
+		for(int i=0;i<joinfilters.size();i++)
+			if(!joinfilters.get(i).mightContain(
+					BloomFilter.hash(tuple.getData(joinindex.get(i))))) {
+				pruned++;
+				return false;
+			}
+		return true;
+	}
+	
+	/**
+	 * This method returns the number of data pages that are read, the
+	 * pages skipped by the Bloom filters are not counted.
+	 * @return the number of pages.
+	 */
+	public int getNumOfPagesRead() {
+		return pagesread;
+	}
+	
+	/**
+	 * This method returns the number of tuples that are skipped by the
+	 * filters built from the other side of the joins.
+	 * @return the number of tuples.
+	 */
+	public long getNumOfPruned() {
+		return pruned;
+	}
+	
+	/**
+	 * This method skips the data pages whose Bloom filters do not have
+	 * any of the values of an attribute. The pages after the ones in the
+	 * file of the filters are always read.
+	 */
+	private void skipPages() {
+		if(filters == null || pagecolumns.isEmpty())
+			return;
+		int page = datapage + 1;
+		while(page < filters.getNumOfPages() && !mightContain(page))
+			page++;
+		if(page != datapage + 1)
+			seek(page);
+	}
+	
+	/**
+	 * This method checks whether a page might have the tuples we want.
+	 * @param page the data page.
+	 * @return false means the page could be skipped.
+	 */
+	private boolean mightContain(int page) {
+		for(int i=0;i<pagecolumns.size();i++) {
+			boolean found = false;
+			for(long hash : pagehashes.get(i))
+				if(filters.mightContain(page, pagecolumns.get(i), hash)) {
+					found = true;
+					break;
+				}
+			if(!found)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * This method reads the next tuple in the pages.
+	 * @return the tuple or a null value.
+	 */
+	private Tuple readTuple() {
 		/* this indicates we need to fetch a new page from the disk. */
 		if(currentpoint==pagelimit) {
+			skipPages();
 			buffer = readPage();
 			if(buffer==null) return null;
+			pagesread++;
 			pagelimit = buffer.getInt(0);
 			currentpoint = 0;
 			index = 4;
+			datapage++;
+		}
+		offset = index;
+		Tuple result = decode(buffer, index);
+		index = end;
+		currentpoint++;
+		current = result;
+		return result;
+	}
+	
+	/**
+	 * This method reads the tuple at the offset of a data page, which is
+	 * the position of the tuple kept in the indexes. The page is kept, so
+	 * the tuples in the same page are read without reading it again.
+	 * @param page the data page of the tuple.
+	 * @param offset the offset of the tuple in the page.
+	 * @return the tuple at the position.
+	 */
+	public Tuple getTuple(int page, int offset) {
+		if(page != fetchpage) {
+			fetched = ByteBuffer.allocate(NUM_OF_BYTES);
+			try {
+				fc.read(fetched, (long)(page + 1) * NUM_OF_BYTES);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			fetchpage = page;
 		}
-		/* this byte indicates whether the tuple is valid, skip it. */
-		index++;
+		return decode(fetched, offset);
+	}
+	
+	/**
+	 * This method decodes the tuple that starts at the offset of a page,
+	 * the offset right after the tuple is kept in the variable end.
+	 * @param page the buffer of the data page.
+	 * @param start the offset of the tuple in the page.
+	 * @return the tuple.
+	 */
+	private Tuple decode(ByteBuffer page, int start) {
+		/* this byte indicates whether the tuple is valid. */
+		isDeleted = page.get(start) == 0;
+		int index = start + 1;
 		Tuple result = new Tuple(schema.size(), numoftables);
 		int point = 0, IDpoint = 0;
 		for(int i=0;i<typelist.size();i++) {
 			int dummy = typelist.get(i);
 			/* this means this is the order of the sub tuple. */
 			if(dummy==-1){
-				result.setTupleID(IDpoint, buffer.getLong(index));
+				result.setTupleID(IDpoint, page.getLong(index));
 				IDpoint++;
 				index += 8;
 				point--;
 			}
 			/* this means this is a long integer value. */
 			else if(dummy==1) {
-				DataType data = new DataType(buffer.getLong(index));
+				DataType data = new DataType(page.getLong(index));
 				result.setData(point, data);
 				index += 8;
 			}
 			/* this means this is a string value. */
 			else if(dummy==2) {
-				int length = buffer.get(index);
+				int length = page.get(index);
 				index++;
 				StringBuilder sb = new StringBuilder();
 				for(int j=0;j<length;j++) {
-					char c = (char)buffer.get(index);
+					char c = (char)page.get(index);
 					index++;
 					sb.append(c);
 				}
@@ -139,32 +415,36 @@ public class ScanOperator extends Operator {
 			/* this means this is a double value. It could be a time value
 			 * , date value or just a plain double value.*/
 			else {
-				DataType data = new DataType(buffer.getDouble(index));
+				DataType data = new DataType(page.getDouble(index));
 				result.setData(point, data);
 				index += 8;
 			}
 			point++; // do not forget to increment the index of the tuple array!
 		}
-		currentpoint++;
-		current = result;
+		end = index;
 		return result;
 	}
-
+	
 	/**
 	 * this method is used to reset the file pointer back to the starting point.
 	 */
 	@Override
 	public void reset() {
 		current = null;
+		/* the next call of getNextTuple() reads the first data page. */
+		currentpoint = 0;
+		pagelimit = 0;
 		try {
+			output.close();
 			output = new RandomAccessFile(file, "r");
 			fc = output.getChannel();
 			buffer = readPage();
+			seek(startpage);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
-
+	
 	/**
 	 * This method is used to retrieve the schema from the table.
 	 * @return a hash map with the attribute as the key and a combination
@@ -185,6 +465,16 @@ public class ScanOperator extends Operator {
 		return numoftables;
 	}
 	
+	/**
+	 * This method returns the attributes the table is sorted on, which
+	 * is kept in the header of the file.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return order;
+	}
+	
 	/**
 	 * This private method reads a page from the file and stores
 	 * that page into the byte buffer.
@@ -202,6 +492,16 @@ public class ScanOperator extends Operator {
 		return buffer;
 	}
 	
+	/**
+	 * This method returns the position of the current tuple, which is
+	 * the data page and the offset of the tuple in that page. It is 
+	 * used as the pointer to the tuple in the indexes.
+	 * @return the page and the offset of the current tuple.
+	 */
+	public int[] getPosition() {
+		return new int[]{datapage, offset};
+	}
+	
 	/**
 	 * This method is used to get the current tuple.
 	 * @return the current tuple.
@@ -209,10 +509,11 @@ public class ScanOperator extends Operator {
 	public Tuple getCurrentTuple() {
 		return current;
 	}
-
+	
 	/**
 	 * This method is used to close the file out put stream.
 	 */
+	@Override
 	public void close() {
 		try {
 			output.close();
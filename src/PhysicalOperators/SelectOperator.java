@@ -1,5 +1,6 @@
 package PhysicalOperators;
 
+import java.util.List;
 import java.util.Map;
 
 import Evaluator.Evaluator;
@@ -64,6 +65,15 @@ public class SelectOperator extends Operator{
 		scan.reset();
 	}
 
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		scan.close();
+	}
+	
 	/**
 	 * This method is used to get the schema of the table. Basically
 	 * it just returns the schema from the Operator.
@@ -84,4 +94,14 @@ public class SelectOperator extends Operator{
 		return scan.getNumOfTables();
 	}
 	
+	/**
+	 * This method returns the order of the tuples, the selection keeps
+	 * the order of the tuples from the child.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return scan.getOrder();
+	}
+
 }
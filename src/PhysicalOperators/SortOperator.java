@@ -2,20 +2,26 @@ package PhysicalOperators;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
-import Evaluator.Evaluator;
+import SQLExpression.ColumnNode;
 import SQLExpression.Expression;
+import SmallSQLServer.Main;
+import Sorting.ExternalSort;
+import Sorting.HeapData;
+import Sorting.SortKey;
+import Sorting.TempOperator;
 import Support.Mule;
-import TableElement.DataType;
 import TableElement.Tuple;
 
 /** 
- * This class is used to handle the "Order by" language, note this
- * class mainly performs an in memory sort. So it is only used to deal
- * with the case when the file sorted does not exceed 100MB. 
+ * This class is used to handle the "Order by" language. It starts with
+ * an in memory sort, and keeps track of the size of the tuples it holds.
+ * When the size exceeds the memory grant of the query, the tuples held
+ * so far and the rest of the tuples are handed to the external sort, 
+ * and the sorted file is read by a temp operator. So an order by query
+ * never holds more tuples than the memory grant.
  * @author messfish
  *
  */
@@ -25,72 +31,119 @@ public class SortOperator extends Operator {
 	private Map<String, Mule> schema;
 	private int index; // the current index of the tuple list.
 	private int numoftables;
+	private TempOperator operator;
+	// this operator reads the sorted file when the tuples are spilled.
+	private List<String> order; // the attributes the tuples are sorted on.
 	
 	/**
-	 * Constructor: this constructor gets all the tuples from an operator
+	 * Constructor: this constructor gets the tuples from an operator
 	 * and stores then in a list of tuples. Next we will sort the tuples by
 	 * using the orders from the order by list. For the attributes who does
 	 * not show up in the order by list. Order them by using the appearance
-	 * of the tuple list. Doing this will be handy for debugging. 
+	 * of the tuple list. Doing this will be handy for debugging. The 
+	 * order is kept in the normalized key of every tuple.
 	 * @param op the operator that used for getting source.
 	 * @param orderlist the list of expression for sorting.
 	 * @param desclist the array checks whether the expression is ascending
 	 * or descending by showing whether it is 1 or -1.
 	 */
 	public SortOperator(Operator op, List<Expression> orderlist, int[] desclist) {
+		this(op, orderlist, desclist, Main.getMemory());
+	}
+	
+	/**
+	 * Constructor: this constructor works just like the one above, except
+	 * that the memory grant is given in the argument.
+	 * @param op the operator that used for getting source.
+	 * @param orderlist the list of expression for sorting.
+	 * @param desclist the array checks whether the expression is ascending
+	 * or descending by showing whether it is 1 or -1.
+	 * @param memory the number of bytes of tuples this sort could hold.
+	 */
+	public SortOperator(Operator op, List<Expression> orderlist, int[] desclist,
+						long memory) {
 		numoftables = op.getNumOfTables();
-		tuplelist = new ArrayList<>();
-		Tuple tuple = null;
 		schema = op.getSchema();
-		while((tuple=op.getNextTuple())!=null)
-			tuplelist.add(tuple);
-		Collections.sort(tuplelist, new Comparator<Tuple>(){
-			@Override
-			public int compare(Tuple tuple1, Tuple tuple2) {
-				for(int i=0;i<orderlist.size();i++) {
-					Expression exp = orderlist.get(i);
-					Evaluator eva1 = new Evaluator(tuple1, exp, schema);
-					DataType data1 = eva1.getData();
-					Evaluator eva2 = new Evaluator(tuple2, exp, schema);
-					DataType data2 = eva2.getData();
-					int result = data1.compare(data2);
-					if(result!=0) 
-						return result * desclist[i];
-				}
-				for(int i=0;i<tuple1.datasize();i++) {
-					DataType data1 = tuple1.getData(i);
-					DataType data2 = tuple2.getData(i);
-					int result = data1.compare(data2);
-					if(result!=0) return result;
-				}
-				/* this means the two tuples are equal, return 0. */
-				return 0;
+		order = getOrder(orderlist, desclist);
+		/* the normalized key of each tuple is built only once, so the
+		 * comparisons below do not need to evaluate any expression. */
+		SortKey sortkey = new SortKey(orderlist, desclist, schema);
+		List<HeapData> keylist = new ArrayList<>();
+		Tuple tuple = null;
+		long used = 0; // the number of bytes of the tuples held.
+		while((tuple=op.getNextTuple())!=null) {
+			keylist.add(new HeapData(0, tuple, sortkey.build(tuple)));
+			used += checkSize(tuple);
+			if(used > memory) {
+				spill(op, keylist, orderlist, desclist, memory);
+				op.close();
+				return;
 			}
-		});
+		}
+		op.close();
+		Collections.sort(keylist, (a,b)->SortKey.compare(a.getKey(), b.getKey()));
+		tuplelist = new ArrayList<>(keylist.size());
+		for(HeapData data : keylist)
+			tuplelist.add(data.getTuple());
 	}
-
+	
+	/**
+	 * This method is called when the tuples do not fit into the memory
+	 * grant. The tuples held in the list are passed to the external sort
+	 * before the rest of the tuples in the operator, the list gives up
+	 * its tuples while they are passed, so the memory could be reused by
+	 * the external sort. At last, the sorted file is read by a temp operator.
+	 * @param op the operator that used for getting source.
+	 * @param keylist the list of tuples that are held in the memory.
+	 * @param orderlist the list of expression for sorting.
+	 * @param desclist the array checks whether the expression is ascending
+	 * or descending by showing whether it is 1 or -1.
+	 * @param memory the number of bytes of tuples this sort could hold.
+	 */
+	private void spill(Operator op, List<HeapData> keylist, 
+			List<Expression> orderlist, int[] desclist, long memory) {
+		Operator replay = new ReplayOperator(op, keylist);
+		ExternalSort ex = new ExternalSort(replay, orderlist, desclist,
+										  Main.getTempID(), memory);
+		operator = new TempOperator(ex.getResult(), schema, true);
+	}
+	
 	/**
 	 * This method is used to fetch the next tuple available.
 	 * @return the next tuple.
 	 */
 	@Override
 	public Tuple getNextTuple() {
+		if(operator != null)
+			return operator.getNextTuple();
 		if(index == tuplelist.size())
 			return null;
 		Tuple tuple = tuplelist.get(index);
 		index++;
 		return tuple;
 	}
-
+	
 	/**
 	 * This method is used to reset the tuple back to the starting point.
 	 * for this operator, the index will be set to zero.
 	 */
 	@Override
 	public void reset() {
+		if(operator != null)
+			operator.reset();
 		index = 0;
 	}
-
+	
+	/**
+	 * This method is used to close and delete the sorted file when the
+	 * tuples are spilled. The child operator is closed once it is used up.
+	 */
+	@Override
+	public void close() {
+		if(operator != null)
+			operator.delete();
+	}
+	
 	/**
 	 * This is the getter method of the schema of the operator.
 	 */
@@ -108,5 +161,102 @@ public class SortOperator extends Operator {
 	public int getNumOfTables() {
 		return numoftables;
 	}
+	
+	/**
+	 * This method returns the order of the tuples after the sort.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return order;
+	}
+	
+	/**
+	 * This method finds the attributes the tuples are sorted on from the
+	 * list of expressions: it stops at the first expression which is
+	 * not a single attribute or is descending.
+	 * @param orderlist the list of expression for sorting.
+	 * @param desclist the array checks whether the expression is ascending
+	 * or descending by showing whether it is 1 or -1.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	static List<String> getOrder(List<Expression> orderlist, int[] desclist) {
+		List<String> order = new ArrayList<>();
+		for(int i=0;i<orderlist.size();i++) {
+			Expression express = orderlist.get(i);
+			if(!(express instanceof ColumnNode) || desclist[i] == -1)
+				break;
+			order.add(((ColumnNode)express).getWholeColumnName());
+		}
+		return order;
+	}
+	
+	/**
+	 * This class returns the tuples held by the sort operator first,
+	 * and then the tuples left in the child operator. It is only used
+	 * for passing all the tuples to the external sort once.
+	 * @author messfish
+	 *
+	 */
+	private static class ReplayOperator extends Operator {
+		
+		private Operator op;
+		private List<HeapData> keylist;
+		private int index; // the current index of the list.
+		
+		/**
+		 * Constructor: this constructor takes the tuples held in memory
+		 * and the operator which provides the rest of the tuples.
+		 * @param op the operator that used for getting source.
+		 * @param keylist the list of tuples that are held in the memory.
+		 */
+		private ReplayOperator(Operator op, List<HeapData> keylist) {
+			this.op = op;
+			this.keylist = keylist;
+		}
+	
+		/**
+		 * This method is used to fetch the next tuple available. The 
+		 * slot of the list is cleared so the tuple could be collected.
+		 * @return the next tuple.
+		 */
+		@Override
+		public Tuple getNextTuple() {
+			if(index < keylist.size()) {
+				Tuple tuple = keylist.get(index).getTuple();
+				keylist.set(index, null);
+				index++;
+				return tuple;
+			}
+			return op.getNextTuple();
+		}
+	
+		/**
+		 * The tuples are only passed once, so this method does nothing.
+		 */
+		@Override
+		public void reset() {
+			
+		}
+	
+		/**
+		 * This is the getter method of the schema of the operator.
+		 */
+		@Override
+		public Map<String, Mule> getSchema() {
+			return op.getSchema();
+		}
+	
+		/**
+		 * This method is used to fetch the number of tables in
+		 * the single operator.
+		 * @return the number of tables in this operator.
+		 */
+		@Override
+		public int getNumOfTables() {
+			return op.getNumOfTables();
+		}
+		
+	}
 
 }
@@ -0,0 +1,180 @@
+package PhysicalOperators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the "UNION", "INTERSECT" and "EXCEPT" languages 
+ * when the tuples of both queries are already sorted on all the
+ * attributes in the same order. The two queries are merged just like
+ * the last step of the external sort: the smallest tuple of the two is
+ * picked, and the copies of it in both queries are counted, which 
+ * decides the number of times it is returned. Nothing but the current
+ * tuple is held, and the result keeps the order of the queries.
+ * @author messfish
+ *
+ */
+public class SortedSetOperator extends Operator {
+
+	private Operator left, right; // the operators of the two queries.
+	private int type; // the type of the set operation.
+	private int[] orderindex;
+	// the indexes of the attributes in the order they are sorted on.
+	private Tuple lefttuple, righttuple; // the next tuples of the queries.
+	private boolean isStarted; // whether the first tuples have been read.
+	private DataType[] key; // the values of the tuple being returned.
+	private long remain; // the number of copies of the tuple left.
+	private long tupleID; // the ID of the next tuple.
+	
+	/**
+	 * Constructor: this constructor stores the two operators. Note the
+	 * tuples of both of them must be sorted on the given indexes.
+	 * @param left the operator of the left query.
+	 * @param right the operator of the right query.
+	 * @param type the type of the set operation, which is the same
+	 * with the one of the hash set operator.
+	 * @param orderindex the indexes of the attributes in the sort order.
+	 */
+	public SortedSetOperator(Operator left, Operator right, int type,
+							 int[] orderindex) {
+		this.left = left;
+		this.right = right;
+		this.type = type;
+		this.orderindex = orderindex;
+	}
+	
+	/**
+	 * This method returns the indexes of the attributes in the order the
+	 * tuples of an operator are sorted on, when the order covers all
+	 * the attributes.
+	 * @param op the operator to be checked.
+	 * @return the array of indexes, null when the tuples are not sorted
+	 * on all the attributes.
+	 */
+	static int[] getOrderIndex(Operator op) {
+		Map<String, Mule> schema = op.getSchema();
+		List<String> order = op.getOrder();
+		if(!StreamAggregateOperator.isOrdered(order, 
+				new ArrayList<>(schema.keySet())))
+			return null;
+		int[] result = new int[schema.size()];
+		for(int i=0;i<result.length;i++)
+			result[i] = schema.get(order.get(i)).getIndex();
+		return result;
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple from the table.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(!isStarted) {
+			lefttuple = left.getNextTuple();
+			righttuple = right.getNextTuple();
+			isStarted = true;
+		}
+		while(remain == 0) {
+			if(lefttuple == null && righttuple == null)
+				return null;
+			Tuple smallest = lefttuple;
+			if(lefttuple == null || (righttuple != null && 
+					compare(righttuple, lefttuple) < 0))
+				smallest = righttuple;
+			key = new DataType[smallest.datasize()];
+			for(int i=0;i<key.length;i++)
+				key[i] = smallest.getData(i);
+			long l = 0, r = 0;
+			while(lefttuple != null && compare(lefttuple, smallest) == 0) {
+				l++;
+				lefttuple = left.getNextTuple();
+			}
+			while(righttuple != null && compare(righttuple, smallest) == 0) {
+				r++;
+				righttuple = right.getNextTuple();
+			}
+			remain = HashSetOperator.getCount(type, l, r);
+		}
+		remain--;
+		Tuple result = new Tuple(key.length, 1);
+		for(int i=0;i<key.length;i++)
+			result.setData(i, key[i]);
+		tupleID++;
+		result.setTupleID(0, tupleID);
+		return result;
+	}
+	
+	/**
+	 * This method compares two tuples on the attributes in the sort order.
+	 * @param t1 one of the tuples to be compared.
+	 * @param t2 one of the tuples to be compared.
+	 * @return a negative number when t1 comes first, a positive number
+	 * when t2 comes first, 0 means they are the same.
+	 */
+	private int compare(Tuple t1, Tuple t2) {
+		for(int index : orderindex) {
+			int result = t1.getData(index).compare(t2.getData(index));
+			if(result != 0)
+				return result;
+		}
+		return 0;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		left.reset();
+		right.reset();
+		isStarted = false;
+		remain = 0;
+		tupleID = 0;
+	}
+	
+	/**
+	 * This method is used to close the child operators when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		left.close();
+		right.close();
+	}
+	
+	/**
+	 * This method returns the schema of the operator, which is the
+	 * schema of the left query.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return left.getSchema();
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since every tuple gets a new ID.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method returns the order of the tuples, which is the same
+	 * with the order of the left query.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return left.getOrder();
+	}
+
+}
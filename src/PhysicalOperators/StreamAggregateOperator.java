@@ -0,0 +1,210 @@
+package PhysicalOperators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import Aggregation.Accumulator;
+import Aggregation.AggregateCall;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the "Group by" language when the tuples are 
+ * already sorted on the group attributes, so the tuples of a group come
+ * one after another. A group is returned as soon as the values of the
+ * group attributes change, so nothing is held but the group being built,
+ * and the first group comes out before the rest of the input is read.
+ * Since only one group is built at a time, all the accumulators use the
+ * slot 0. The schema of the result is the group attributes followed by
+ * the aggregates, just like the other aggregations.
+ * @author messfish
+ *
+ */
+public class StreamAggregateOperator extends Operator {
+
+	private Operator op;
+	private int[] keyindex;
+	// this array stores the indexes of the group attributes in the input.
+	private Accumulator[] accumulators; // one for each aggregate.
+	private Tuple dummystore;
+	// this variable is used for storing the first tuple of the next group.
+	private boolean isStarted; // whether the first tuple has been read.
+	private Map<String, Mule> schema;
+	private List<String> order; // the attributes the groups are sorted on.
+	private long tupleID;
+	
+	/**
+	 * Constructor: this constructor builds the schema of the result and
+	 * the accumulators of the aggregates. Note the tuples from the 
+	 * operator should be sorted on the group attributes.
+	 * @param op the operator that used for getting source.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 */
+	public StreamAggregateOperator(Operator op, List<String> grouplist,
+								   List<AggregateCall> calls) {
+		this(op, grouplist, calls, AggregateCall.getSortedAttribute(calls));
+	}
+	
+	/**
+	 * Constructor: this constructor works just like the one above, except
+	 * that the attribute the tuples of a group are sorted on is given,
+	 * since the order of the sorted file is not told by the operator.
+	 * @param op the operator that used for getting source.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates to be computed.
+	 * @param sorted the attribute the tuples of a group are sorted on,
+	 * which is the one of the first COUNT(DISTINCT), or null.
+	 */
+	public StreamAggregateOperator(Operator op, List<String> grouplist,
+								   List<AggregateCall> calls, String sorted) {
+		this.op = op;
+		schema = new HashMap<>();
+		keyindex = new int[grouplist.size()];
+		for(int i=0;i<keyindex.length;i++) {
+			Mule mule = op.getSchema().get(grouplist.get(i));
+			keyindex[i] = mule.getIndex();
+			schema.put(grouplist.get(i), new Mule(i, mule.getDataType()));
+		}
+		accumulators = new Accumulator[calls.size()];
+		for(int i=0;i<accumulators.length;i++) {
+			accumulators[i] = calls.get(i).newAccumulator(op.getSchema(), sorted);
+			accumulators[i].ensureCapacity(1);
+			schema.put(calls.get(i).getName(), new Mule(keyindex.length + i,
+						accumulators[i].getDataType()));
+		}
+		/* the groups come in the order of the input when the input tells
+		 * its order, otherwise in the order of the group attributes. */
+		order = new ArrayList<>(grouplist);
+		List<String> input = op.getOrder();
+		if(isOrdered(input, grouplist))
+			order = new ArrayList<>(input.subList(0, grouplist.size()));
+	}
+	
+	/**
+	 * This method is used for generating the tuple of the next group.
+	 * The first tuple of the group is in the dummystore, the tuples
+	 * after it are added to the accumulators until the values of the
+	 * group attributes change. Without a group attribute, the only group
+	 * is returned even when there is no tuple.
+	 * @return the tuple of the next group.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(!isStarted) {
+			dummystore = op.getNextTuple();
+			isStarted = true;
+		}
+		Tuple first = dummystore, proceed = null;
+		if(first == null) {
+			if(keyindex.length != 0 || tupleID != 0)
+				return null;
+			for(Accumulator acc : accumulators)
+				acc.clear(0);
+		}else {
+			for(Accumulator acc : accumulators)
+				acc.init(0, first);
+			proceed = op.getNextTuple();
+			while(proceed!=null&&isSameGroup(first, proceed)) {
+				for(Accumulator acc : accumulators)
+					acc.add(0, proceed);
+				proceed = op.getNextTuple();
+			}
+		}
+		Tuple result = new Tuple(keyindex.length + accumulators.length, 1);
+		for(int i=0;i<keyindex.length;i++)
+			result.setData(i, first.getData(keyindex[i]));
+		for(int i=0;i<accumulators.length;i++)
+			result.setData(keyindex.length + i, accumulators[i].getResult(0));
+		tupleID++;
+		result.setTupleID(0, tupleID);
+		dummystore = proceed;
+		return result;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the first group.
+	 */
+	@Override
+	public void reset() {
+		op.reset();
+		isStarted = false;
+		dummystore = null;
+		tupleID = 0;
+	}
+	
+	/**
+	 * This method is used to close the child operator when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		op.close();
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since the tables are merged after this operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method returns the order of the groups.
+	 * @return the list of attributes the groups are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return order;
+	}
+	
+	/**
+	 * This method checks whether the tuples in an order are sorted on
+	 * the attributes, that is, the attributes are the first ones in the
+	 * order, no matter how they are arranged. So the tuples with the same
+	 * values on the attributes come one after another.
+	 * @param order the list of attributes the tuples are sorted on.
+	 * @param attributes the list of attributes to be checked.
+	 * @return the boolean value shows whether the tuples are sorted.
+	 */
+	public static boolean isOrdered(List<String> order, List<String> attributes) {
+		if(order.size() < attributes.size())
+			return false;
+		Set<String> set = new HashSet<>(order.subList(0, attributes.size()));
+		return set.equals(new HashSet<>(attributes));
+	}
+	
+	/**
+	 * This method checks whether two tuples have the same values on all
+	 * the group attributes.
+	 * @param t1 one of the tuples to be checked.
+	 * @param t2 one of the tuples to be checked.
+	 * @return the boolean value shows whether they are in the same group.
+	 */
+	private boolean isSameGroup(Tuple t1, Tuple t2) {
+		for(int index : keyindex) {
+			DataType data1 = t1.getData(index), data2 = t2.getData(index);
+			if(data1.compare(data2) != 0)
+				return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,144 @@
+package PhysicalOperators;
+
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import SQLExpression.Expression;
+import Sorting.HeapData;
+import Sorting.SortKey;
+import Support.Mule;
+import TableElement.Tuple;
+
+/**
+ * This class is used to handle the "Order by" language when it comes
+ * with a "LIMIT" or a "TOP". Instead of sorting all the tuples, it keeps
+ * a heap with at most N tuples, where N is the ending point of the limit.
+ * The top of the heap is the largest tuple kept so far, a new tuple
+ * only goes into the heap when it is smaller than the top. So the time
+ * is O(n log N) and the memory only depends on N. The heap starts small
+ * and grows with the tuples, so a large N on a small input costs nothing.
+ * @author messfish
+ *
+ */
+public class TopNOperator extends Operator {
+	
+	private Tuple[] tuplearray;
+	// this array stores the tuples kept by the heap in the sorted order.
+	private Map<String, Mule> schema;
+	private int startpoint; // the index of the first tuple to return.
+	private int index; // the current index of the tuple array.
+	private int numoftables;
+	private Operator op; // the child operator, kept until it is closed.
+	private List<String> order; // the attributes the tuples are sorted on.
+	private static final int NUM_OF_SLOTS = 1024;
+	// the number of tuples the heap has room for at the beginning.
+	
+	/**
+	 * Constructor: this constructor gets all the tuples from an operator
+	 * and only keeps the smallest N tuples in the heap, the order is the
+	 * same as the one used in the sort operator. After that, the tuples
+	 * are polled out of the heap into the array from the back to the front.
+	 * @param op the operator that used for getting source.
+	 * @param orderlist the list of expression for sorting.
+	 * @param desclist the array checks whether the expression is ascending
+	 * or descending by showing whether it is 1 or -1.
+	 * @param startpoint the index of the first tuple to return.
+	 * @param endpoint the index after the last tuple to return.
+	 */
+	public TopNOperator(Operator op, List<Expression> orderlist, int[] desclist,
+						int startpoint, int endpoint) {
+		numoftables = op.getNumOfTables();
+		schema = op.getSchema();
+		order = SortOperator.getOrder(orderlist, desclist);
+		this.startpoint = startpoint;
+		index = startpoint;
+		if(endpoint <= 0) {
+			tuplearray = new Tuple[0];
+			this.op = op;
+			return;
+		}
+		SortKey sortkey = new SortKey(orderlist, desclist, schema);
+		PriorityQueue<HeapData> heap = new PriorityQueue<>(Math.min(endpoint, 
+				NUM_OF_SLOTS),
+				(a,b)->SortKey.compare(b.getKey(), a.getKey()));
+		Tuple tuple = null;
+		while((tuple=op.getNextTuple())!=null) {
+			byte[] key = sortkey.build(tuple);
+			if(heap.size() < endpoint)
+				heap.offer(new HeapData(0, tuple, key));
+			else if(SortKey.compare(key, heap.peek().getKey()) < 0) {
+				heap.poll();
+				heap.offer(new HeapData(0, tuple, key));
+			}
+		}
+		op.close();
+		tuplearray = new Tuple[heap.size()];
+		for(int i=tuplearray.length-1;i>=0;i--)
+			tuplearray[i] = heap.poll().getTuple();
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple available.
+	 * @return the next tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(index >= tuplearray.length)
+			return null;
+		Tuple tuple = tuplearray[index];
+		index++;
+		return tuple;
+	}
+	
+	/**
+	 * This method is used to reset the tuple back to the starting point.
+	 * for this operator, the index will be set to the starting point.
+	 */
+	@Override
+	public void reset() {
+		index = startpoint;
+	}
+	
+	/**
+	 * This method is used to close the child operator when no tuple
+	 * has been read from it. Otherwise the child is closed already
+	 * once all its tuples are put into the heap.
+	 */
+	@Override
+	public void close() {
+		if(op != null) {
+			op.close();
+			op = null;
+		}
+	}
+	
+	/**
+	 * This is the getter method of the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This abstract method is used to fetch the number of tables in
+	 * the single operator.
+	 * @return the number of tables in this operator.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return numoftables;
+	}
+	
+	/**
+	 * This method returns the order of the tuples, which is the same as
+	 * the one of the sort operator.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return order;
+	}
+
+}
@@ -0,0 +1,99 @@
+package PhysicalOperators;
+
+import java.util.Map;
+
+import Support.Mule;
+import TableElement.Tuple;
+
+/**
+ * This class handles the "UNION ALL" language. Since the duplicated
+ * tuples are kept, the tuples of the left query are returned first,
+ * followed by the tuples of the right query, and nothing is held in
+ * the memory. The attributes of the two queries are matched by their
+ * positions, and the result takes the names of the left query.
+ * @author messfish
+ *
+ */
+public class UnionAllOperator extends Operator {
+
+	private Operator left, right; // the operators of the two queries.
+	private boolean isLeftDone; // whether the left operator runs out.
+	private long tupleID; // the ID of the next tuple.
+	
+	/**
+	 * Constructor: this constructor stores the two operators.
+	 * @param left the operator of the left query.
+	 * @param right the operator of the right query.
+	 */
+	public UnionAllOperator(Operator left, Operator right) {
+		this.left = left;
+		this.right = right;
+		tupleID = 1;
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple from the table.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		Tuple tuple = null;
+		if(!isLeftDone) {
+			tuple = left.getNextTuple();
+			if(tuple == null)
+				isLeftDone = true;
+		}
+		if(isLeftDone)
+			tuple = right.getNextTuple();
+		if(tuple == null)
+			return null;
+		Tuple result = new Tuple(tuple.datasize(), 1);
+		for(int i=0;i<tuple.datasize();i++)
+			result.setData(i, tuple.getData(i));
+		result.setTupleID(0, tupleID);
+		tupleID++;
+		return result;
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		left.reset();
+		right.reset();
+		isLeftDone = false;
+		tupleID = 1;
+	}
+	
+	/**
+	 * This method is used to close the child operators when the tuples
+	 * are not needed anymore.
+	 */
+	@Override
+	public void close() {
+		left.close();
+		right.close();
+	}
+	
+	/**
+	 * This method returns the schema of the operator, which is the
+	 * schema of the left query.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return left.getSchema();
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since every tuple gets a new ID.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+
+}
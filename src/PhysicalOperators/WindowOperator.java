@@ -0,0 +1,839 @@
+package PhysicalOperators;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Aggregation.SegmentTree;
+import Evaluator.Evaluator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SQLParser.WindowFunction;
+import SmallSQLServer.Main;
+import Sorting.ExternalSort;
+import Sorting.PageWriter;
+import Sorting.TempOperator;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class computes the window functions that share the same partition
+ * and the same order. The tuples are sorted on the partition attributes
+ * followed by the order, unless they already come in that order, so the
+ * tuples of a partition are next to each other. A partition is held in
+ * the memory, every window function is computed for all of its tuples,
+ * and the tuples are returned with the values appended. The running
+ * COUNT, SUM and AVG use the prefix sums of the partition, so any frame
+ * takes the same time. MIN and MAX use a segment tree, since the frame
+ * could lose its smallest value when it slides. The frames of "RANGE"
+ * are found by a binary search on the value of the first order attribute.
+ * When a partition does not fit into the memory grant, it is written to
+ * a temporary file instead, and the values are computed while the file
+ * is read again. Every frame keeps a cursor on its first tuple and one
+ * after its last tuple, both of them only move forward, so the sums are
+ * updated as the frame slides. MIN and MAX keep the values that could
+ * still be the answer in a queue, which is never larger than the frame.
+ * @author messfish
+ *
+ */
+public class WindowOperator extends Operator {
+
+	private Operator op; // the operator that returns the sorted tuples.
+	private TempOperator temp; // this operator reads the sorted file.
+	private List<WindowFunction> functions;
+	private Map<String, Mule> schema;
+	private Map<String, Mule> childschema;
+	private int[] partitionindex;
+	// this array stores the indexes of the partition attributes.
+	private List<Expression> orderlist; // the order in the partition.
+	private int[] desclist;
+	private List<String> order; // the attributes the tuples are sorted on.
+	private List<Tuple> partition = new ArrayList<>();
+	// the tuples in the current partition.
+	private DataType[][] results;
+	// the values of the window functions for every tuple in the partition.
+	private DataType[][] orderdata; // the values of the order of the tuples.
+	private int index; // the index of the next tuple in the partition.
+	private Tuple dummystore;
+	// this variable is used for storing the first tuple of the next partition.
+	private boolean isStarted; // whether the first tuple has been read.
+	private boolean isEmpty; // whether there is no tuple at all.
+	private long tupleID;
+	private long memory; // the number of bytes a partition could take.
+	private File spill; // the file of the partition that does not fit.
+	private Cursor rows; // the cursor of the tuples of that partition.
+	private Frame[] frames; // the frames of the functions of that partition.
+	
+	/**
+	 * Constructor: this constructor sorts the tuples when it is needed and
+	 * builds the schema, which is the attributes of the child followed by
+	 * the window functions.
+	 * @param op the operator that used for getting source.
+	 * @param functions the window functions with the same partition and order.
+	 */
+	public WindowOperator(Operator op, List<WindowFunction> functions) {
+		this.functions = functions;
+		childschema = op.getSchema();
+		WindowFunction first = functions.get(0);
+		List<String> partitionlist = first.getPartitionList();
+		orderlist = first.getOrderList();
+		desclist = first.getDescList();
+		List<Expression> sortlist = new ArrayList<>();
+		for(String str : partitionlist)
+			sortlist.add(new ColumnNode(str));
+		sortlist.addAll(orderlist);
+		int[] sortdesc = new int[sortlist.size()];
+		for(int i=0;i<sortdesc.length;i++)
+			sortdesc[i] = i < partitionlist.size() ? 1 :
+				desclist[i - partitionlist.size()];
+		order = new ArrayList<>(partitionlist);
+		order.addAll(SortOperator.getOrder(orderlist, desclist));
+		List<String> current = op.getOrder();
+		/* the tuples are already in the order when the partition attributes
+		 * come first in any order, followed by the order attributes. */
+		if(StreamAggregateOperator.isOrdered(current, partitionlist) &&
+				order.size() == sortlist.size() &&
+				current.size() >= order.size() && current.subList(
+				partitionlist.size(), order.size()).equals(
+				order.subList(partitionlist.size(), order.size()))) {
+			this.op = op;
+			order = new ArrayList<>(current.subList(0, order.size()));
+		}else {
+			ExternalSort ex = new ExternalSort(op, sortlist, sortdesc,
+					Main.getTempID(), Main.getMemory());
+			if(ex.getResult() == null)
+				isEmpty = true;
+			else {
+				temp = new TempOperator(ex.getResult(), childschema);
+				this.op = temp;
+			}
+		}
+		partitionindex = new int[partitionlist.size()];
+		for(int i=0;i<partitionindex.length;i++)
+			partitionindex[i] = childschema.get(partitionlist.get(i)).getIndex();
+		schema = new HashMap<>();
+		for(Map.Entry<String, Mule> entry : childschema.entrySet())
+			schema.put(entry.getKey(), new Mule(entry.getValue().getIndex(),
+					entry.getValue().getDataType()));
+		for(int i=0;i<functions.size();i++)
+			schema.put(functions.get(i).getName(), new Mule(childschema.size()
+					+ i, getDataType(functions.get(i))));
+		tupleID = 1;
+		memory = Main.getMemory();
+	}
+	
+	/**
+	 * This method returns the type of the value of a window function.
+	 * @param function the window function.
+	 * @return the type of the value.
+	 */
+	private int getDataType(WindowFunction function) {
+		String name = function.getFunction();
+		if(name.equals("ROW_NUMBER") || name.equals("RANK") ||
+				name.equals("DENSE_RANK") || name.equals("COUNT"))
+			return 1;
+		if(name.equals("AVG"))
+			return 5;
+		int type = childschema.get(function.getAttribute()).getDataType();
+		if(name.equals("SUM"))
+			return type == 1 ? 1 : 5;
+		/* the date and the time are stored as double values. */
+		return type == 3 || type == 4 ? 5 : type;
+	}
+	
+	/**
+	 * This method is used to fetch the next tuple from the table.
+	 * @return the next valid tuple.
+	 */
+	@Override
+	public Tuple getNextTuple() {
+		if(isEmpty)
+			return null;
+		Tuple tuple = null;
+		DataType[] values = new DataType[functions.size()];
+		while(true) {
+			if(rows != null && (tuple = rows.next()) != null) {
+				DataType[] order = getOrderData(tuple);
+				for(int i=0;i<functions.size();i++)
+					values[i] = frames[i].next(index, order);
+				break;
+			}
+			if(rows == null && index < partition.size()) {
+				tuple = partition.get(index);
+				for(int i=0;i<functions.size();i++)
+					values[i] = results[i][index];
+				break;
+			}
+			readPartition();
+			if(rows == null && partition.size() == 0)
+				return null;
+		}
+		Tuple result = new Tuple(tuple.datasize() + functions.size(), 1);
+		for(int i=0;i<tuple.datasize();i++)
+			result.setData(i, tuple.getData(i));
+		for(int i=0;i<functions.size();i++)
+			result.setData(tuple.datasize() + i, values[i]);
+		result.setTupleID(0, tupleID);
+		tupleID++;
+		index++;
+		return result;
+	}
+	
+	/**
+	 * This method reads all the tuples of the next partition and computes
+	 * the window functions for them. When the tuples take more bytes than
+	 * the memory grant, they are written to a file, and the values are
+	 * computed by the frames when the tuples are returned.
+	 */
+	private void readPartition() {
+		partition.clear();
+		index = 0;
+		closePartition();
+		if(!isStarted) {
+			dummystore = op.getNextTuple();
+			isStarted = true;
+		}
+		if(dummystore == null)
+			return;
+		partition.add(dummystore);
+		long used = getSize(dummystore);
+		PageWriter writer = null;
+		Tuple tuple = null;
+		while((tuple = op.getNextTuple()) != null && samePartition(dummystore, tuple)) {
+			if(writer != null) {
+				writer.write(tuple);
+				continue;
+			}
+			partition.add(tuple);
+			used += getSize(tuple);
+			if(used > memory) {
+				spill = new File(Main.getTemp() + "/" + Main.getTempID());
+				writer = new PageWriter(spill, this);
+				for(Tuple stored : partition)
+					writer.write(stored);
+				partition.clear();
+			}
+		}
+		dummystore = tuple;
+		if(writer != null) {
+			writer.close();
+			rows = new Cursor();
+			frames = new Frame[functions.size()];
+			for(int i=0;i<frames.length;i++)
+				frames[i] = new Frame(functions.get(i));
+			return;
+		}
+		int size = partition.size();
+		orderdata = new DataType[size][];
+		for(int i=0;i<size;i++)
+			orderdata[i] = getOrderData(partition.get(i));
+		/* the peers of a tuple are the tuples with the same order values. */
+		int[] peerstart = new int[size], peerend = new int[size];
+		for(int i=0;i<size;i++)
+			peerstart[i] = i > 0 && isPeer(i - 1, i) ? peerstart[i - 1] : i;
+		for(int i=size-1;i>=0;i--)
+			peerend[i] = i < size - 1 && isPeer(i, i + 1) ? peerend[i + 1] : i;
+		results = new DataType[functions.size()][];
+		for(int i=0;i<functions.size();i++)
+			results[i] = compute(functions.get(i), peerstart, peerend);
+	}
+	
+	/**
+	 * This method estimates the number of bytes a tuple of the partition
+	 * takes, including the values of the order and the window functions
+	 * computed for it.
+	 * @param tuple the tuple of the partition.
+	 * @return the number of bytes of the tuple.
+	 */
+	private long getSize(Tuple tuple) {
+		long size = 16 + 32 * (orderlist.size() + functions.size());
+		for(int i=0;i<tuple.datasize();i++) {
+			DataType data = tuple.getData(i);
+			if(data.getType() == 2)
+				size += 40 + data.getString().length() * 2;
+			else size += 24;
+		}
+		return size;
+	}
+	
+	/**
+	 * This method computes the values of the order of a tuple.
+	 * @param tuple the tuple of the partition.
+	 * @return the values of the order.
+	 */
+	private DataType[] getOrderData(Tuple tuple) {
+		DataType[] result = new DataType[orderlist.size()];
+		for(int j=0;j<orderlist.size();j++)
+			result[j] = new Evaluator(tuple, orderlist.get(j), childschema).getData();
+		return result;
+	}
+	
+	/**
+	 * This method closes the cursors of the partition in the file and
+	 * deletes the file.
+	 */
+	private void closePartition() {
+		if(rows == null)
+			return;
+		rows.close();
+		for(Frame frame : frames)
+			frame.close();
+		spill.delete();
+		rows = null;
+		frames = null;
+	}
+	
+	/**
+	 * This method checks whether the two tuples are in the same partition.
+	 * @param first one of the tuples.
+	 * @param second one of the tuples.
+	 * @return the boolean value shows whether they are in the same partition.
+	 */
+	private boolean samePartition(Tuple first, Tuple second) {
+		for(int i : partitionindex)
+			if(first.getData(i).compare(second.getData(i)) != 0)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * This method checks whether the two tuples of the partition have
+	 * the same values on the order.
+	 * @param first the index of one of the tuples.
+	 * @param second the index of one of the tuples.
+	 * @return the boolean value shows whether they are peers.
+	 */
+	private boolean isPeer(int first, int second) {
+		return isPeer(orderdata[first], orderdata[second]);
+	}
+	
+	/**
+	 * This method checks whether the two tuples have the same values on
+	 * the order.
+	 * @param first the values of the order of one of the tuples.
+	 * @param second the values of the order of one of the tuples.
+	 * @return the boolean value shows whether they are peers.
+	 */
+	private boolean isPeer(DataType[] first, DataType[] second) {
+		for(int j=0;j<orderlist.size();j++)
+			if(first[j].compare(second[j]) != 0)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * This method computes a window function for all the tuples in the
+	 * partition.
+	 * @param function the window function to be computed.
+	 * @param peerstart the index of the first peer of every tuple.
+	 * @param peerend the index of the last peer of every tuple.
+	 * @return the values of the window function.
+	 */
+	private DataType[] compute(WindowFunction function, int[] peerstart,
+							   int[] peerend) {
+		String name = function.getFunction();
+		int size = partition.size();
+		DataType[] result = new DataType[size];
+		if(name.equals("ROW_NUMBER") || name.equals("RANK") ||
+				name.equals("DENSE_RANK")) {
+			long dense = 0;
+			for(int i=0;i<size;i++) {
+				if(peerstart[i] == i) dense++;
+				if(name.equals("ROW_NUMBER")) result[i] = new DataType((long)i + 1);
+				else if(name.equals("RANK")) 
+					result[i] = new DataType((long)peerstart[i] + 1);
+				else result[i] = new DataType(dense);
+			}
+			return result;
+		}
+		int column = -1;
+		if(!function.getAttribute().equals("*"))
+			column = childschema.get(function.getAttribute()).getIndex();
+		DataType empty = getDefault(function);
+		if(name.equals("LAG") || name.equals("LEAD")) {
+			int offset = name.equals("LAG") ? -function.getOffset() :
+				function.getOffset();
+			for(int i=0;i<size;i++) {
+				int j = i + offset;
+				result[i] = j >= 0 && j < size ? 
+						partition.get(j).getData(column) : empty;
+			}
+			return result;
+		}
+		/* the aggregates are computed from the bounds of the frames. */
+		int[] low = new int[size], high = new int[size];
+		getFrames(function, peerstart, peerend, low, high);
+		if(name.equals("MIN") || name.equals("MAX")) {
+			DataType[] values = new DataType[size];
+			for(int i=0;i<size;i++)
+				values[i] = partition.get(i).getData(column);
+			SegmentTree tree = new SegmentTree(values, name.equals("MAX"));
+			for(int i=0;i<size;i++) {
+				DataType data = low[i] <= high[i] ? 
+						tree.query(low[i], high[i] + 1) : null;
+				result[i] = data == null ? empty : data;
+			}
+			return result;
+		}
+		boolean isLong = column == -1 || 
+				partition.get(0).getData(column).getType() == 1;
+		long[] longsum = new long[size + 1];
+		double[] doublesum = new double[size + 1];
+		for(int i=0;i<size;i++) {
+			if(column == -1) longsum[i + 1] = longsum[i] + 1;
+			else if(isLong) longsum[i + 1] = longsum[i] + 
+					partition.get(i).getData(column).getLong();
+			else doublesum[i + 1] = doublesum[i] +
+					partition.get(i).getData(column).getDouble();
+		}
+		for(int i=0;i<size;i++) {
+			long count = Math.max(0, high[i] - low[i] + 1);
+			if(name.equals("COUNT")) {
+				result[i] = new DataType(count);
+				continue;
+			}
+			if(count == 0) {
+				result[i] = empty;
+				continue;
+			}
+			double sum = isLong ? longsum[high[i] + 1] - longsum[low[i]] :
+				doublesum[high[i] + 1] - doublesum[low[i]];
+			if(name.equals("AVG")) result[i] = new DataType(sum / count);
+			else if(isLong) 
+				result[i] = new DataType(longsum[high[i] + 1] - longsum[low[i]]);
+			else result[i] = new DataType(sum);
+		}
+		return result;
+	}
+	
+	/**
+	 * This method finds the first and the last tuple in the frame of
+	 * every tuple in the partition. When the frame is empty, the first
+	 * index is larger than the last one.
+	 * @param function the window function.
+	 * @param peerstart the index of the first peer of every tuple.
+	 * @param peerend the index of the last peer of every tuple.
+	 * @param low the array that stores the first index of the frames.
+	 * @param high the array that stores the last index of the frames.
+	 */
+	private void getFrames(WindowFunction function, int[] peerstart,
+						   int[] peerend, int[] low, int[] high) {
+		int size = partition.size();
+		double start = function.getStart(), end = function.getEnd();
+		double[] key = null;
+		/* the offsets of "RANGE" are compared with the first order value,
+		 * which is turned around for the descending order. */
+		if(!function.isRows() && (isOffset(start) || isOffset(end))) {
+			key = new double[size];
+			for(int i=0;i<size;i++)
+				key[i] = getKey(orderdata[i]);
+		}
+		for(int i=0;i<size;i++) {
+			if(start == Double.NEGATIVE_INFINITY) low[i] = 0;
+			else if(start == Double.POSITIVE_INFINITY) low[i] = size;
+			else if(function.isRows())
+				low[i] = (int)Math.max(0, Math.min(size, i + start));
+			else if(start == 0) low[i] = peerstart[i];
+			else low[i] = search(key, key[i] + start);
+			if(end == Double.POSITIVE_INFINITY) high[i] = size - 1;
+			else if(end == Double.NEGATIVE_INFINITY) high[i] = -1;
+			else if(function.isRows())
+				high[i] = (int)Math.min(size - 1, Math.max(-1, i + end));
+			else if(end == 0) high[i] = peerend[i];
+			else high[i] = search(key, Math.nextUp(key[i] + end)) - 1;
+		}
+	}
+	
+	/**
+	 * This method returns the key of a tuple that the offsets of "RANGE"
+	 * are compared with, which is the first value of the order, turned
+	 * around for the descending order.
+	 * @param order the values of the order of the tuple.
+	 * @return the key of the tuple.
+	 */
+	private double getKey(DataType[] order) {
+		DataType data = order[0];
+		if(data.getType() == 2)
+			throw new IllegalArgumentException(
+					"RANGE with an offset needs a number to order by!");
+		double key = data.getType() == 1 ? data.getLong() : data.getDouble();
+		return desclist[0] == -1 ? -key : key;
+	}
+	
+	/**
+	 * This method checks whether a bound of the frame is an offset.
+	 * @param bound the bound of the frame.
+	 * @return the boolean value shows whether it is an offset.
+	 */
+	private boolean isOffset(double bound) {
+		return bound != 0 && !Double.isInfinite(bound);
+	}
+	
+	/**
+	 * This method finds the first tuple whose key is not smaller than
+	 * the target by a binary search.
+	 * @param key the sorted keys of the tuples.
+	 * @param target the value to be searched.
+	 * @return the index of the tuple, the size of the partition means none.
+	 */
+	private int search(double[] key, double target) {
+		int low = 0, high = key.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(key[middle] < target) low = middle + 1;
+			else high = middle;
+		}
+		return low;
+	}
+	
+	/**
+	 * This method returns the value of a window function when there is 
+	 * no tuple in the frame, or LAG and LEAD go out of the partition.
+	 * Since there is no null value, it is the default value of LAG and
+	 * LEAD, otherwise a 0 or an empty string.
+	 * @param function the window function.
+	 * @return the value for an empty frame.
+	 */
+	private DataType getDefault(WindowFunction function) {
+		int type = getDataType(function);
+		String value = function.getDefaultValue();
+		if(type == 2)
+			return new DataType(value == null ? "" : value);
+		if(type == 1)
+			return new DataType(value == null ? 0L : Long.parseLong(value));
+		return new DataType(value == null ? 0.0 : Double.parseDouble(value));
+	}
+	
+	/**
+	 * This method is used to reset the operator back to the starting point.
+	 */
+	@Override
+	public void reset() {
+		if(isEmpty)
+			return;
+		closePartition();
+		op.reset();
+		partition.clear();
+		index = 0;
+		isStarted = false;
+		dummystore = null;
+		tupleID = 1;
+	}
+	
+	/**
+	 * This method returns the schema of the operator.
+	 * @return the schema of the operator.
+	 */
+	@Override
+	public Map<String, Mule> getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * This method is used to return the number of tables in the operator.
+	 * Here, I simply return 1 since the tables are merged after this operator.
+	 * @return the number of tables.
+	 */
+	@Override
+	public int getNumOfTables() {
+		return 1;
+	}
+	
+	/**
+	 * This method returns the order of the tuples, which are sorted on
+	 * the partition attributes followed by the order.
+	 * @return the list of attributes the tuples are sorted on.
+	 */
+	@Override
+	public List<String> getOrder() {
+		return new ArrayList<>(order);
+	}
+	
+	/**
+	 * This method is used to close the file stream in the operator,
+	 * which is the sorted file or the child operator. The sorted file
+	 * is deleted as well.
+	 */
+	@Override
+	public void close() {
+		closePartition();
+		if(temp != null)
+			temp.delete();
+		else if(op != null)
+			op.close();
+	}
+	
+	/**
+	 * This class reads the tuples of the partition in the file one by one,
+	 * it knows the place of the next tuple in the partition and the values
+	 * of its order.
+	 * @author messfish
+	 *
+	 */
+	private class Cursor {
+		
+		private TempOperator reader; // the operator that reads the file.
+		private Tuple next; // the next tuple, null when there is none.
+		private DataType[] order; // the values of the order of the next tuple.
+		private int position; // the place of the next tuple in the partition.
+		
+		/**
+		 * Constructor: this constructor opens the file at the first tuple.
+		 */
+		public Cursor() {
+			reader = new TempOperator(spill, childschema);
+			next = reader.getNextTuple();
+		}
+		
+		/**
+		 * This method returns the next tuple without moving the cursor.
+		 * @return the next tuple, null when there is none.
+		 */
+		public Tuple peek() {
+			return next;
+		}
+		
+		/**
+		 * This method returns the values of the order of the next tuple.
+		 * @return the values of the order.
+		 */
+		public DataType[] getOrder() {
+			if(order == null)
+				order = getOrderData(next);
+			return order;
+		}
+		
+		/**
+		 * This is the getter method of the place of the next tuple.
+		 * @return the place of the next tuple, starting from 0.
+		 */
+		public int getPosition() {
+			return position;
+		}
+		
+		/**
+		 * This method returns the next tuple and moves the cursor after it.
+		 * @return the next tuple, null when there is none.
+		 */
+		public Tuple next() {
+			Tuple result = next;
+			if(result != null) {
+				next = reader.getNextTuple();
+				order = null;
+				position++;
+			}
+			return result;
+		}
+		
+		/**
+		 * This method closes the file.
+		 */
+		public void close() {
+			reader.close();
+		}
+		
+	}
+	
+	/**
+	 * This class computes a window function for the tuples of a partition
+	 * in the file, one tuple after another. The frame of an aggregate is
+	 * the tuples between its two cursors: the values are added when the
+	 * cursor of the end moves over them and removed when the cursor of 
+	 * the start does. LAG and LEAD keep a cursor the offset before or 
+	 * after the current tuple.
+	 * @author messfish
+	 *
+	 */
+	private class Frame {
+		
+		private WindowFunction function; // the window function.
+		private String name; // the name of the function.
+		private int column; // the index of the attribute, -1 for "*".
+		private boolean isLong; // whether the sum is a long integer.
+		private DataType empty; // the value for an empty frame.
+		private Cursor low, high;
+		// the cursors of the first tuple and the one after the last tuple.
+		private long count; // the number of tuples in the frame.
+		private long longsum; // the sum of the long integers in the frame.
+		private double doublesum; // the sum of the double values in the frame.
+		private ArrayDeque<DataType> values = new ArrayDeque<>();
+		// the values that could be the minimum or the maximum of the frame.
+		private ArrayDeque<Integer> positions = new ArrayDeque<>();
+		// the places of these values in the partition.
+		private DataType[] previous; // the values of the order of the last tuple.
+		private int peerstart; // the place of the first peer of the last tuple.
+		private long dense; // the dense rank of the last tuple.
+		
+		/**
+		 * Constructor: this constructor opens the cursors of the function.
+		 * @param function the window function.
+		 */
+		public Frame(WindowFunction function) {
+			this.function = function;
+			name = function.getFunction();
+			if(name.equals("ROW_NUMBER") || name.equals("RANK") ||
+					name.equals("DENSE_RANK"))
+				return;
+			column = function.getAttribute().equals("*") ? -1 :
+				childschema.get(function.getAttribute()).getIndex();
+			isLong = column == -1 || childschema.get(
+					function.getAttribute()).getDataType() == 1;
+			empty = getDefault(function);
+			low = new Cursor();
+			/* the cursor of LEAD starts the offset after the first tuple. */
+			if(name.equals("LEAD"))
+				for(int i=0;i<function.getOffset();i++)
+					low.next();
+			else if(!name.equals("LAG"))
+				high = new Cursor();
+		}
+		
+		/**
+		 * This method computes the value of the function for the next tuple.
+		 * @param current the place of the tuple in the partition.
+		 * @param order the values of the order of the tuple.
+		 * @return the value of the window function.
+		 */
+		public DataType next(int current, DataType[] order) {
+			if(low == null) {
+				if(previous == null || !isPeer(previous, order)) {
+					peerstart = current;
+					dense++;
+				}
+				previous = order;
+				if(name.equals("ROW_NUMBER"))
+					return new DataType((long)current + 1);
+				if(name.equals("RANK"))
+					return new DataType((long)peerstart + 1);
+				return new DataType(dense);
+			}
+			if(name.equals("LAG")) {
+				if(current < function.getOffset())
+					return empty;
+				return low.next().getData(column);
+			}
+			if(name.equals("LEAD")) {
+				Tuple tuple = low.next();
+				return tuple == null ? empty : tuple.getData(column);
+			}
+			while(high.peek() != null && 
+					isIncluded(high, current, order, function.getEnd())) {
+				add(high.getPosition(), high.peek());
+				high.next();
+			}
+			while(low.peek() != null &&
+					isExcluded(low, current, order, function.getStart())) {
+				/* the tuple is not in the frame yet, so it is skipped. */
+				if(low.getPosition() == high.getPosition())
+					high.next();
+				else remove(low.getPosition());
+				low.next();
+			}
+			if(name.equals("COUNT"))
+				return new DataType(count);
+			if(count == 0)
+				return empty;
+			if(name.equals("MIN") || name.equals("MAX"))
+				return values.peekFirst();
+			if(name.equals("AVG"))
+				return new DataType((isLong ? longsum : doublesum) / count);
+			return isLong ? new DataType(longsum) : new DataType(doublesum);
+		}
+		
+		/**
+		 * This method checks whether the next tuple of a cursor is not after
+		 * the last tuple in the frame of the current tuple.
+		 * @param cursor the cursor of the end of the frame.
+		 * @param current the place of the current tuple.
+		 * @param order the values of the order of the current tuple.
+		 * @param end the end of the frame.
+		 * @return true if the tuple is before the end of the frame.
+		 */
+		private boolean isIncluded(Cursor cursor, int current, DataType[] order,
+								   double end) {
+			if(Double.isInfinite(end))
+				return end > 0;
+			if(function.isRows())
+				return cursor.getPosition() <= current + end;
+			if(end == 0)
+				return cursor.getPosition() <= current || isPeer(cursor.getOrder(), order);
+			return getKey(cursor.getOrder()) <= getKey(order) + end;
+		}
+		
+		/**
+		 * This method checks whether the next tuple of a cursor is before
+		 * the first tuple in the frame of the current tuple.
+		 * @param cursor the cursor of the start of the frame.
+		 * @param current the place of the current tuple.
+		 * @param order the values of the order of the current tuple.
+		 * @param start the start of the frame.
+		 * @return true if the tuple is before the start of the frame.
+		 */
+		private boolean isExcluded(Cursor cursor, int current, DataType[] order,
+								   double start) {
+			if(Double.isInfinite(start))
+				return start > 0;
+			if(function.isRows())
+				return cursor.getPosition() < current + start;
+			if(start == 0)
+				return cursor.getPosition() < current && !isPeer(cursor.getOrder(), order);
+			return getKey(cursor.getOrder()) < getKey(order) + start;
+		}
+		
+		/**
+		 * This method adds a tuple to the frame. The values before it which
+		 * are not better than its value could never be the answer again.
+		 * @param position the place of the tuple in the partition.
+		 * @param tuple the tuple to be added.
+		 */
+		private void add(int position, Tuple tuple) {
+			count++;
+			if(column == -1)
+				return;
+			DataType data = tuple.getData(column);
+			if(name.equals("MIN") || name.equals("MAX")) {
+				int sign = name.equals("MAX") ? 1 : -1;
+				while(!values.isEmpty() && values.peekLast().compare(data) * sign <= 0) {
+					values.pollLast();
+					positions.pollLast();
+				}
+				values.addLast(data);
+				positions.addLast(position);
+			}else if(isLong) longsum += data.getLong();
+			else doublesum += data.getDouble();
+		}
+		
+		/**
+		 * This method removes the first tuple of the frame.
+		 * @param position the place of the tuple in the partition.
+		 */
+		private void remove(int position) {
+			count--;
+			if(column == -1)
+				return;
+			if(name.equals("MIN") || name.equals("MAX")) {
+				if(!positions.isEmpty() && positions.peekFirst() == position) {
+					values.pollFirst();
+					positions.pollFirst();
+				}
+			}else if(isLong) longsum -= low.peek().getData(column).getLong();
+			else doublesum -= low.peek().getData(column).getDouble();
+		}
+		
+		/**
+		 * This method closes the cursors of the function.
+		 */
+		public void close() {
+			if(low != null)
+				low.close();
+			if(high != null)
+				high.close();
+		}
+		
+	}
+
+}
@@ -1,6 +1,7 @@
 package SQLParser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -49,6 +50,8 @@ public class PlainSelect {
 	private int startpoint, endpoint;
 	// this two value indicates the starting point and the ending point
 	// of the order by query.
+	private boolean isLimited;
+	// this value indicates whether the query has a "LIMIT" or a "TOP".
 	private boolean isDistinct;
 	// this value indicates whether the select query pick out distinct tuples.
 	private int uniontype;
@@ -57,6 +60,8 @@ public class PlainSelect {
 	private PlainSelect[] sub = new PlainSelect[2];
 	// this variable is used to store the two sub query if there is a
 	// union key word presenting. 
+	private List<WindowFunction> windowlist = new ArrayList<>();
+	// this list stores the window functions in the select part.
 	
 	/**
 	 * Constructor: It takes a query as argument and divide it into 
@@ -77,6 +82,13 @@ public class PlainSelect {
 		query = s;
 		String[] array = s.split("\\s+");
 		int state = 0, index = 0;
+		/* the "LIMIT" language is always at the end of the query, so
+		 * handle it first and cut it off from the rest of the query. */
+		int[] limit = findNext(array, "LIMIT", 0, -1);
+		if(limit != null) {
+			parseLimitPart(array, limit[0]);
+			array = Arrays.copyOf(array, limit[0]);
+		}
 		/* Basically, a left parenthesis may usually indicate there will
 		 * be a logical group operator "UNION" "INTERSECT" "EXCEPT", In
 		 * this case, create two Subselect and use a integer to indicate
@@ -254,8 +266,19 @@ public class PlainSelect {
 	 * @param s the select string which will be parsed.
 	 */
 	private void parseSelectPart(String s) {
-		String[] expressionlist = s.split(",");
-		String[] reserved = {"COUNT", "AVG", "SUM", "MIN", "MAX"};
+		/* pick out the "TOP" language, it could be either the first word
+		 * or the word after the "DISTINCT". */
+		String[] words = s.split("\\s+");
+		int top = words[0].equals("DISTINCT") ? 1 : 0;
+		if(words.length > top + 2 && words[top].equals("TOP")) {
+			endpoint = Integer.parseInt(words[top + 1]);
+			isLimited = true;
+			s = BuildString(words, top + 2, words.length);
+			if(top == 1) s = "DISTINCT " + s;
+		}
+		String[] expressionlist = splitByComma(s);
+		String[] reserved = {"COUNT", "AVG", "SUM", "MIN", "MAX",
+				"APPROX_COUNT_DISTINCT", "APPROX_PERCENTILE", "APPROX_MEDIAN"};
 		Set<String> set = new HashSet<>();
 		/* this indicates the select query only contains an "*", simply return. */
 		if(expressionlist[0].equals("*")) 
@@ -278,6 +301,22 @@ public class PlainSelect {
 				temp = dummy;
 				isDistinct = true;
 			}
+			/* this is a window function, the select list takes the name
+			 * of the attribute the window operator appends to the tuple. */
+			if(Arrays.asList(temp).contains("OVER")) {
+				int length = temp.length;
+				String alias = "";
+				if(temp[length-2].equals("AS")) {
+					alias = temp[length-1];
+					length -= 2;
+				}
+				WindowFunction window = new WindowFunction(
+						Arrays.copyOf(temp, length), windowlist.size() + 1);
+				windowlist.add(window);
+				selectlist.add(new ColumnNode(window.getName()));
+				select_alias.add(alias);
+				continue;
+			}
 			/* this will handle the case when an "AS" exists. */
 			if(temp.length > 1 && temp[temp.length-2].equals("AS")){
 				/* left expression is a column name. */
@@ -321,6 +360,29 @@ public class PlainSelect {
 		}
 	}
 	
+	/**
+	 * This method splits the select string by the ',' characters which
+	 * are not in the parentheses, since an aggregate such as 
+	 * APPROX_PERCENTILE ( S.A , 0.9 ) has a ',' in its arguments.
+	 * @param s the select string which will be split.
+	 * @return the array of the expressions.
+	 */
+	private String[] splitByComma(String s) {
+		List<String> list = new ArrayList<>();
+		int depth = 0, start = 0;
+		for(int i=0;i<s.length();i++) {
+			char c = s.charAt(i);
+			if(c == '(') depth++;
+			else if(c == ')') depth--;
+			else if(c == ',' && depth == 0) {
+				list.add(s.substring(start, i));
+				start = i + 1;
+			}
+		}
+		list.add(s.substring(start));
+		return list.toArray(new String[list.size()]);
+	}
+	
 	/**
 	 * This method parse the FROM part of the query and put the tables
 	 * and their aliases into a list. split the from clause with the ","
@@ -404,7 +466,8 @@ public class PlainSelect {
 		String[] str = s.split("\\s+");
 		List<String> list = new ArrayList<>();
 		/* The list of aggregation words. */
-		String[] regrouplist = {"COUNT", "MIN", "MAX", "AVG", "SUM"};
+		String[] regrouplist = {"COUNT", "MIN", "MAX", "AVG", "SUM",
+				"APPROX_COUNT_DISTINCT", "APPROX_PERCENTILE", "APPROX_MEDIAN"};
 		Set<String> set = new HashSet<>();
 		for(String string : regrouplist)
 			set.add(string);
@@ -484,16 +547,26 @@ public class PlainSelect {
 			}
 			else list.add(array[index]);
 		}
-		if(index!=array.length&&array[index].equals("LIMIT")) {
-			String get1 = array[index+1], get2 = array[index+3];
-			startpoint = Integer.parseInt(get1);
-			endpoint = Integer.parseInt(get2);
-		}
 		desclist = new int[arraylist.size()];
 		for(int i=0;i<desclist.length;i++)
 			desclist[i] = arraylist.get(i);
 	}
 	
+	/**
+	 * This method parse the LIMIT part of the query. There are two forms
+	 * of it: "LIMIT n" picks out the first n tuples, "LIMIT a , b" picks
+	 * out the tuples starting from the index a and ends before the index b.
+	 * @param array the array represent the query string.
+	 * @param index the index of the "LIMIT" in the array.
+	 */
+	private void parseLimitPart(String[] array, int index) {
+		isLimited = true;
+		if(index + 3 < array.length && array[index+2].equals(",")) {
+			startpoint = Integer.parseInt(array[index+1]);
+			endpoint = Integer.parseInt(array[index+3]);
+		}else endpoint = Integer.parseInt(array[index+1]);
+	}
+	
 	/**
 	 * this is the getter method of the query string.
 	 * @return the query string.
@@ -510,6 +583,14 @@ public class PlainSelect {
 		return selectlist;
 	}
 	
+	/**
+	 * this is the getter method for the window functions.
+	 * @return the list of window functions in the select part.
+	 */
+	public List<WindowFunction> getWindowFunctions() {
+		return windowlist;
+	}
+	
 	/**
 	 * this is the getter method for the select alias list.
 	 * @return the select alias list.
@@ -584,6 +665,16 @@ public class PlainSelect {
 		return endpoint;
 	}
 	
+	/**
+	 * this is the getter method of whether the query has a limit or not.
+	 * when it is true, only the tuples from the starting point to the
+	 * ending point (exclusive) will be returned.
+	 * @return the boolean value shows the query has a limit.
+	 */
+	public boolean isLimited() {
+		return isLimited;
+	}
+	
 	/**
 	 * this is the getter method of whether the query is distinct or not.
 	 * @return the boolean value shows the query is distinct.
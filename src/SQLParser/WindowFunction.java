@@ -0,0 +1,240 @@
+package SQLParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import SQLExpression.Expression;
+
+/**
+ * This class describes a single window function in the select part,
+ * such as SUM ( S.A ) OVER ( PARTITION BY S.B ORDER BY S.C ROWS BETWEEN
+ * 2 PRECEDING AND CURRENT ROW ). Unlike the aggregates, the tuples are not
+ * merged into groups: every tuple gets the value computed from the tuples
+ * of its partition that fall into its frame. The functions are ROW_NUMBER,
+ * RANK, DENSE_RANK, LAG, LEAD and the aggregates COUNT, SUM, AVG, MIN
+ * and MAX. The frame is either "ROWS", which counts the tuples, or 
+ * "RANGE", which compares the value of the first order attribute. When
+ * there is no frame, it is RANGE BETWEEN UNBOUNDED PRECEDING AND CURRENT
+ * ROW, which is the whole partition when there is no order.
+ * @author messfish
+ *
+ */
+public class WindowFunction {
+
+	private String name; 
+	// the name of the attribute in the schema, such as "SUM(S.A)#1".
+	private String function; // the name of the function, such as "SUM".
+	private String attribute = "*"; // the argument, "*" means none.
+	private int offset = 1; // the number of tuples LAG and LEAD go.
+	private String defaultvalue;
+	// the value of LAG and LEAD when the tuple is out of the partition.
+	private List<String> partitionlist = new ArrayList<>();
+	// the list of attributes used for partitioning.
+	private List<Expression> orderlist = new ArrayList<>();
+	// the list of expressions used for ordering in the partition.
+	private int[] desclist; // 1 means ascending, -1 means descending.
+	private boolean isRows; // whether the frame is "ROWS" or "RANGE".
+	private double start = Double.NEGATIVE_INFINITY, end = 0;
+	// the bounds of the frame, a negative number is the number of the
+	// tuples or the values before the current one, 0 is the current row.
+	private String spec = "";
+	// the partition and the order in a single string.
+	private int index; // the index of the token being parsed.
+	
+	/**
+	 * Constructor: this constructor parses the tokens of a window function.
+	 * @param tokens the tokens of the function, which ends with the ")"
+	 * of the "OVER" language.
+	 * @param number the number of the window function in the query, which
+	 * makes the name of the function unique.
+	 */
+	public WindowFunction(String[] tokens, int number) {
+		function = tokens[0];
+		/* the arguments are between the "(" and the ")" before "OVER". */
+		List<String> arguments = new ArrayList<>();
+		String argument = "";
+		for(index=2;!tokens[index].equals("OVER");index++) {
+			if(tokens[index].equals(",") || tokens[index].equals(")")) {
+				if(!argument.equals("")) arguments.add(argument);
+				argument = "";
+			}else argument += tokens[index];
+		}
+		if(arguments.size() > 0) attribute = arguments.get(0);
+		if(arguments.size() > 1) offset = Integer.parseInt(arguments.get(1));
+		if(arguments.size() > 2) defaultvalue = arguments.get(2);
+		name = function + "(" + String.join(",", arguments) + ")#" + number;
+		index += 2;
+		if(tokens[index].equals("PARTITION")) {
+			index += 2;
+			while(!isEnd(tokens[index]) && !tokens[index].equals("ORDER")) {
+				if(!tokens[index].equals(","))
+					partitionlist.add(tokens[index]);
+				spec += tokens[index] + " ";
+				index++;
+			}
+		}
+		spec += "|";
+		List<Integer> desc = new ArrayList<>();
+		if(tokens[index].equals("ORDER")) {
+			index += 2;
+			List<String> list = new ArrayList<>();
+			while(true) {
+				String token = tokens[index];
+				if(token.equals(",") || isEnd(token)) {
+					int flag = 1;
+					if(list.get(list.size() - 1).equals("DESC")) flag = -1;
+					if(list.get(list.size() - 1).equals("DESC") ||
+							list.get(list.size() - 1).equals("ASC"))
+						list.remove(list.size() - 1);
+					CalculationParser cal = new CalculationParser(
+							list.toArray(new String[list.size()]));
+					orderlist.add(cal.parse());
+					desc.add(flag);
+					list = new ArrayList<>();
+					if(isEnd(token)) break;
+				}else list.add(token);
+				spec += token + " ";
+				index++;
+			}
+		}
+		desclist = new int[desc.size()];
+		for(int i=0;i<desclist.length;i++)
+			desclist[i] = desc.get(i);
+		if(!tokens[index].equals(")")) {
+			isRows = tokens[index].equals("ROWS");
+			index++;
+			if(tokens[index].equals("BETWEEN")) {
+				index++;
+				start = parseBound(tokens);
+				index++;
+				end = parseBound(tokens);
+			}else start = parseBound(tokens);
+		}
+	}
+	
+	/**
+	 * This method checks whether the token ends the partition and the
+	 * order of the window.
+	 * @param token the token to be checked.
+	 * @return the boolean value shows whether it is the end.
+	 */
+	private boolean isEnd(String token) {
+		return token.equals(")") || token.equals("ROWS") || token.equals("RANGE");
+	}
+	
+	/**
+	 * This method parses a bound of the frame, such as "2 PRECEDING", 
+	 * "UNBOUNDED FOLLOWING" or "CURRENT ROW".
+	 * @param tokens the tokens of the function.
+	 * @return the bound of the frame.
+	 */
+	private double parseBound(String[] tokens) {
+		String first = tokens[index], second = tokens[index + 1];
+		index += 2;
+		if(first.equals("CURRENT"))
+			return 0;
+		if(first.equals("UNBOUNDED"))
+			return second.equals("PRECEDING") ? Double.NEGATIVE_INFINITY :
+					Double.POSITIVE_INFINITY;
+		double value = Double.parseDouble(first);
+		return second.equals("PRECEDING") ? -value : value;
+	}
+	
+	/**
+	 * This is the getter method of the name of the attribute.
+	 * @return the name of the window function in the schema.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * This is the getter method of the function name.
+	 * @return the name of the function.
+	 */
+	public String getFunction() {
+		return function;
+	}
+	
+	/**
+	 * This is the getter method of the argument.
+	 * @return the attribute in the argument, "*" means none.
+	 */
+	public String getAttribute() {
+		return attribute;
+	}
+	
+	/**
+	 * This is the getter method of the offset of LAG and LEAD.
+	 * @return the number of tuples to go.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * This is the getter method of the default value of LAG and LEAD.
+	 * @return the default value, null means there is none.
+	 */
+	public String getDefaultValue() {
+		return defaultvalue;
+	}
+	
+	/**
+	 * This is the getter method of the partition attributes.
+	 * @return the list of attributes used for partitioning.
+	 */
+	public List<String> getPartitionList() {
+		return partitionlist;
+	}
+	
+	/**
+	 * This is the getter method of the order in the partition.
+	 * @return the list of expressions used for ordering.
+	 */
+	public List<Expression> getOrderList() {
+		return orderlist;
+	}
+	
+	/**
+	 * This is the getter method of the descending array.
+	 * @return the array shows whether the order is descending.
+	 */
+	public int[] getDescList() {
+		return desclist;
+	}
+	
+	/**
+	 * This method checks whether the frame counts the tuples.
+	 * @return true for "ROWS", false for "RANGE".
+	 */
+	public boolean isRows() {
+		return isRows;
+	}
+	
+	/**
+	 * This is the getter method of the start of the frame.
+	 * @return the start of the frame.
+	 */
+	public double getStart() {
+		return start;
+	}
+	
+	/**
+	 * This is the getter method of the end of the frame.
+	 * @return the end of the frame.
+	 */
+	public double getEnd() {
+		return end;
+	}
+	
+	/**
+	 * This method returns the partition and the order as a string, the
+	 * functions with the same string could share the same sort.
+	 * @return the string of the partition and the order.
+	 */
+	public String getSpec() {
+		return spec;
+	}
+
+}
@@ -0,0 +1,200 @@
+package SmallSQLServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import BPlusTree.BulkLoader;
+import BitmapIndex.BitmapIndex;
+import HashIndex.HashIndex;
+import Support.Catalog;
+import Support.FilterFile;
+import Support.IndexDefinition;
+
+/**
+ * This class handles the indexes of the tables. An index is created by
+ * "CREATE INDEX name ON table ( a , b ) INCLUDE ( c , d )", which builds
+ * a B+ Tree on the attributes a and b by bulk loading, the values of c
+ * and d are stored in the leaves after the key. The "INCLUDE" part is
+ * optional. "CREATE INDEX name ON table USING HASH ( a )" builds a hash
+ * index instead, which finds the tuples with a given key in a single
+ * bucket, but could not be scanned in order. "USING BITMAP" builds the
+ * bitmaps of the values of each attribute, which only works for the 
+ * attributes with a few values. "USING BLOOM" keeps a Bloom filter of
+ * the values of each attribute for every data page of the table, so the
+ * scans that look for a value or join on the attribute skip the pages 
+ * without it, the filters are rebuilt when the table is written again.
+ * "DROP INDEX name" removes the index. 
+ * The definitions of the indexes are kept in the index file, and a query
+ * on a single table that only reads the attributes of an index is 
+ * answered by the index.
+ * @author messfish
+ *
+ */
+public class IndexHandler {
+
+	private static final String indexes = "/db/indexes.txt";
+	// this is the location of the file of the indexes.
+	private static final double FILL_FACTOR = 0.9;
+	// the fraction of a page filled by the bulk loading.
+	
+	/**
+	 * This method handles the queries of the indexes.
+	 * @param query the SQL query.
+	 * @param catalog the list of schemas available.
+	 * @return the boolean value shows whether the query is about the
+	 * indexes, false means it should be handled as usual.
+	 */
+	public static boolean handle(String query, Catalog catalog) {
+		String[] array = query.replaceAll("([(),])", " $1 ").trim().split("\\s+");
+		if(array.length < 3 || !array[1].equals("INDEX"))
+			return false;
+		if(array[0].equals("CREATE") && array.length > 5 && array[3].equals("ON")) {
+			create(array, catalog);
+			return true;
+		}
+		if(array[0].equals("DROP")) {
+			drop(array[2], catalog);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * This method creates an index: it checks the attributes, builds the
+	 * B+ Tree of the table and registers the index.
+	 * @param array the tokens of the query.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void create(String[] array, Catalog catalog) {
+		String name = array[2], table = array[4];
+		if(catalog.getIndexes().containsKey(name)) {
+			System.out.println("The index " + name + " already exists!");
+			return;
+		}
+		if(catalog.getFileLocation(table) == null) {
+			System.out.println("There is no table called " + table + "!");
+			return;
+		}
+		List<String> keys = new ArrayList<>(), include = new ArrayList<>();
+		String type = IndexDefinition.BTREE;
+		int index = 5;
+		if(array.length > 6 && array[5].equals("USING")) {
+			type = array[6];
+			index = 7;
+		}
+		index = getList(array, index, keys);
+		if(index < array.length && array[index].equals("INCLUDE"))
+			index = getList(array, index + 1, include);
+		if(index != array.length || keys.size() == 0 || 
+				!(type.equals(IndexDefinition.BTREE) || type.equals(IndexDefinition.HASH) ||
+				type.equals(IndexDefinition.BITMAP) || type.equals(IndexDefinition.BLOOM))) {
+			System.out.println("The index should be like CREATE INDEX name "
+					+ "ON table USING BTREE ( a , b ) INCLUDE ( c )!");
+			return;
+		}
+		if(!type.equals(IndexDefinition.BTREE) && include.size() > 0) {
+			System.out.println("The " + type.toLowerCase() + 
+					" index could not include attributes!");
+			return;
+		}
+		List<String> attributes = catalog.getAttributesList(table);
+		Set<String> set = new HashSet<>();
+		List<String> all = new ArrayList<>(keys);
+		all.addAll(include);
+		for(String str : all) {
+			if(!attributes.contains(str) || !set.add(str)) {
+				System.out.println("The attribute " + str + " is not valid!");
+				return;
+			}
+		}
+		List<String> keylist = new ArrayList<>(), includelist = new ArrayList<>();
+		for(String str : keys)
+			keylist.add(table + "." + str);
+		for(String str : include)
+			includelist.add(table + "." + str);
+		File file = new File(catalog.getFileLocation(table));
+		if(type.equals(IndexDefinition.BLOOM)) {
+			catalog.getIndexes().put(name, new IndexDefinition(name, table,
+					keys, include, type));
+			FilterFile.build(file, catalog.getFilterColumns(table));
+			saveIndexes(catalog);
+			return;
+		}
+		if(type.equals(IndexDefinition.HASH))
+			HashIndex.build(file, keylist, catalog.getIndexLocation(name)).close();
+		else if(type.equals(IndexDefinition.BITMAP)) {
+			if(BitmapIndex.build(file, keylist, catalog.getIndexLocation(name)) == null)
+				return;
+		}else new BulkLoader(file, keylist, includelist, 
+				catalog.getIndexLocation(name), FILL_FACTOR).getTree().close();
+		catalog.getIndexes().put(name, new IndexDefinition(name, table,
+				keys, include, type));
+		saveIndexes(catalog);
+	}
+	
+	/**
+	 * This method removes an index and its file. The Bloom filters of the
+	 * table are built again with the attributes of the other "BLOOM" 
+	 * indexes, or removed when there is none.
+	 * @param name the name of the index.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void drop(String name, Catalog catalog) {
+		IndexDefinition index = catalog.getIndexes().remove(name);
+		if(index == null) {
+			System.out.println("There is no index called " + name + "!");
+			return;
+		}
+		if(index.isBloom())
+			FilterFile.build(new File(catalog.getFileLocation(index.getTable())),
+					catalog.getFilterColumns(index.getTable()));
+		else new File(catalog.getIndexLocation(name)).delete();
+		saveIndexes(catalog);
+	}
+	
+	/**
+	 * This method reads a list of attributes in the parenthesis.
+	 * @param array the tokens of the query.
+	 * @param index the index of the left parenthesis.
+	 * @param list the list that the attributes are added to.
+	 * @return the index of the token after the right parenthesis, the
+	 * value larger than the length of the array when it is not valid.
+	 */
+	private static int getList(String[] array, int index, List<String> list) {
+		if(index >= array.length || !array[index].equals("("))
+			return array.length + 1;
+		for(index++;index<array.length;index+=2) {
+			list.add(array[index]);
+			if(index + 1 == array.length)
+				break;
+			if(array[index + 1].equals(")"))
+				return index + 2;
+			if(!array[index + 1].equals(","))
+				break;
+		}
+		return array.length + 1;
+	}
+	
+	/**
+	 * This method writes the definitions of all the indexes to the index file.
+	 * @param catalog the catalog that holds the indexes.
+	 */
+	private static void saveIndexes(Catalog catalog) {
+		try {
+			BufferedWriter write = new BufferedWriter(new FileWriter(
+					Main.getInput() + indexes));
+			for(IndexDefinition index : catalog.getIndexes().values())
+				write.write(index.toString() + "\n");
+			write.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
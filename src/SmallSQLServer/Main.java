@@ -25,6 +25,11 @@ public class Main {
 	// this string is the testing file directory of the file system.
 	private static int index = 1;
 	// this index is used to tell the order of the query.
+	private static long memory = Runtime.getRuntime().maxMemory() / 16;
+	// this is the memory grant of a query in bytes, it is measured by the
+	// size of the tuples in the buffer pages, not by the size of the objects.
+	private static int tempindex = 1000;
+	// this index is used to name the temporary files of an operator.
 	
 	/**
 	 * this function is the setter method of the input directory string.
@@ -50,6 +55,14 @@ public class Main {
 		return input_dir;
 	}
 	
+	/**
+	 * this function is the setter method of the output directory string.
+	 * @param s the output directory.
+	 */
+	public static void setOutput(String s) {
+		output_dir = s;
+	}
+	
 	/**
 	 * this function is the getter method of the output directory string.
 	 * @return the output directory.
@@ -82,6 +95,32 @@ public class Main {
 		return test_dir;
 	}
 	
+	/**
+	 * this function is the setter method of the memory grant of a query.
+	 * @param bytes the number of bytes a query could hold in memory.
+	 */
+	public static void setMemory(long bytes) {
+		memory = bytes;
+	}
+	
+	/**
+	 * this function is the getter method of the memory grant of a query.
+	 * @return the number of bytes a query could hold in memory.
+	 */
+	public static long getMemory() {
+		return memory;
+	}
+	
+	/**
+	 * this function is used to get a new ID for the temporary files of
+	 * an operator, so the files of different operators never collide.
+	 * @return the ID that has not been used before.
+	 */
+	public static synchronized int getTempID() {
+		tempindex++;
+		return tempindex;
+	}
+	
 	/**
 	 * This method is used to handle the string as the query. Generate
 	 * the PlainSelect object and call the method from the QueryHandler
@@ -92,8 +131,15 @@ public class Main {
 	 */
 	public static void handleQuery(String query, int index, Catalog catalog) {
 		long start = System.currentTimeMillis();
-		PlainSelect plain = new PlainSelect(query);
-		QueryHandler.handle(plain, index, catalog);
+		/* the queries on the materialized views and the indexes, and the
+		 * ones that change the tuples are handled separately, and a query
+		 * could be answered by a view instead. */
+		if(!ViewHandler.handle(query, catalog) && 
+				!IndexHandler.handle(query, catalog) &&
+				!WriteHandler.handle(query, catalog)) {
+			PlainSelect plain = ViewHandler.rewrite(new PlainSelect(query), catalog);
+			QueryHandler.handle(plain, index, catalog);
+		}
 		long end = System.currentTimeMillis();
 		long timeused = end - start;
 		long numofseconds = timeused / 1000;
@@ -1,13 +1,21 @@
 package SmallSQLServer;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import Aggregation.AggregateCall;
 import LogicalOperators.CartesianOperators;
 import LogicalOperators.DistinctOperators;
 import LogicalOperators.GroupByOperators;
 import LogicalOperators.HavingOperators;
+import LogicalOperators.LimitOperators;
 import LogicalOperators.Operators;
 import LogicalOperators.OrderByOperators;
 import LogicalOperators.ProjectOperators;
 import LogicalOperators.SelectOperators;
+import LogicalOperators.SetOperators;
+import LogicalOperators.TopNOperators;
+import LogicalOperators.WindowOperators;
 import PhysicalOperators.PhysicalVisitor;
 import SQLParser.PlainSelect;
 import Support.Catalog;
@@ -41,26 +49,65 @@ public class QueryHandler {
 	 * speaking, the logical query plan may generally be like this:
 	 * The Cartesian operators is usually the leaf node, Followed by a 
 	 * Select operators, then we have the Group By and Having operator.
+	 * The window functions are computed after the groups are done.
 	 * Finally we use the Order by operator and Project operator, and follows
 	 * by a distinct operator. Note that besides Cartesian operator, 
 	 * every else operators are optional and we only create it when
-	 * we need it.
+	 * we need it. When there is a limit, the Order by operator becomes a
+	 * Top N operator below the Project operator, so only N tuples are
+	 * kept instead of sorting all of them. Since the distinct operator
+	 * may throw some tuples away, the query with "DISTINCT" puts a 
+	 * Limit operator at the top instead.
 	 * @param plain the object we use to extract valuable information out.
 	 * @return the root of the logical query plan tree.
 	 */
-	private static Operators BuildQueryPlan(PlainSelect plain) {
+	static Operators BuildQueryPlan(PlainSelect plain) {
+		if(plain.getUnionType()!=0)
+			return BuildSetPlan(plain);
 		Operators result = new CartesianOperators();
 		if(plain.getWhereExpression()!=null)
 			result = new SelectOperators(result);
-		if(plain.getGroupByElements().size()!=0)
+		/* the aggregates without a group by language make a single group. */
+		if(plain.getGroupByElements().size()!=0||
+				AggregateCall.collect(plain).size()!=0)
 			result = new GroupByOperators(result);
 		if(plain.getHavingExpression()!=null)
 			result = new HavingOperators(result);
-		if(plain.getOrderByElements().size()!=0)
-			result = new OrderByOperators(result);
+		if(plain.getWindowFunctions().size()!=0)
+			result = new WindowOperators(result);
+		boolean topn = plain.isLimited() && !plain.isDistinct();
+		if(plain.getOrderByElements().size()!=0) {
+			if(topn) result = new TopNOperators(result);
+			else result = new OrderByOperators(result);
+		}else topn = false;
 		result = new ProjectOperators(result);
 		if(plain.isDistinct())
 			result = new DistinctOperators(result);
+		if(plain.isLimited() && !topn)
+			result = new LimitOperators(result);
+		return result;
+	}
+	
+	/**
+	 * This method builds the logical query plan tree of the query with
+	 * "UNION", "INTERSECT" or "EXCEPT". The plans of the two sub queries
+	 * are the children of the Set operators, followed by the Order by
+	 * operator and the Limit operator of the whole query.
+	 * @param plain the object we use to extract valuable information out.
+	 * @return the root of the logical query plan tree.
+	 */
+	private static Operators BuildSetPlan(PlainSelect plain) {
+		List<Operators> children = new ArrayList<>();
+		for(PlainSelect sub : plain.getSubQueries())
+			children.add(BuildQueryPlan(sub));
+		Operators result = new SetOperators(children);
+		boolean topn = plain.isLimited();
+		if(plain.getOrderByElements().size()!=0) {
+			if(topn) result = new TopNOperators(result);
+			else result = new OrderByOperators(result);
+		}else topn = false;
+		if(plain.isLimited() && !topn)
+			result = new LimitOperators(result);
 		return result;
 	}
 	
@@ -0,0 +1,589 @@
+package SmallSQLServer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import Aggregation.AggregateCall;
+import Aggregation.GroupTable;
+import PhysicalOperators.Operator;
+import PhysicalOperators.PhysicalVisitor;
+import PhysicalOperators.ScanOperator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SQLParser.CheckEquals;
+import SQLParser.PlainSelect;
+import Support.Catalog;
+import Support.HumanToBinary;
+import Support.Mule;
+import Support.ViewDefinition;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the materialized views. A view is created by 
+ * "CREATE MATERIALIZED VIEW name AS SELECT ...", the result of the query
+ * is stored as a regular table in the data directory and added to the 
+ * schema file, so it could be read like any other table. The query and
+ * the watermark of its base table are kept in the view file.
+ * "REFRESH MATERIALIZED VIEW name" brings the view up to date. Since the
+ * tuples are only appended to a table, when the view only groups a 
+ * single table and computes SUM, COUNT, MIN and MAX, only the tuples 
+ * after the watermark are aggregated, and the groups are merged into
+ * the groups of the view. Otherwise the query runs again. When the tuples
+ * of the base table are deleted or updated, the watermark is dropped and
+ * the next refresh runs the query again.
+ * A query on the same table with the same where expression, whose group
+ * attributes are a part of the ones of the view, is rewritten to read 
+ * the view instead, and the groups of the view are grouped again when
+ * the query has fewer group attributes. Only the views that are up to
+ * date with their base tables are used this way.
+ * @author messfish
+ *
+ */
+public class ViewHandler {
+
+	private static final int NUM_OF_BYTES = 16384;
+	// this is the number of bytes in a single page.
+	private static final String base = "/db/data/";
+	// this is the location of the data directory.
+	private static final String schema = "/db/schema.txt";
+	// this is the location of the schema file.
+	private static final String views = "/db/views.txt";
+	// this is the location of the file of the materialized views.
+	
+	/**
+	 * This method handles the queries of the materialized views.
+	 * @param query the SQL query.
+	 * @param catalog the list of schemas available.
+	 * @return the boolean value shows whether the query is about the 
+	 * materialized views, false means it should be handled as usual.
+	 */
+	public static boolean handle(String query, Catalog catalog) {
+		String[] array = query.trim().split("\\s+");
+		if(array.length < 4 || !array[1].equals("MATERIALIZED") ||
+				!array[2].equals("VIEW"))
+			return false;
+		if(array[0].equals("CREATE") && array.length > 5 && array[4].equals("AS")) {
+			StringBuilder sb = new StringBuilder();
+			for(int i=5;i<array.length;i++)
+				sb.append(array[i]).append(" ");
+			create(array[3], sb.toString().trim(), catalog);
+			return true;
+		}
+		if(array[0].equals("REFRESH")) {
+			refresh(array[3], catalog);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * This method creates a materialized view: it runs the query, writes
+	 * the result as a table and registers the table and the view.
+	 * @param name the name of the view.
+	 * @param query the query that builds the view.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void create(String name, String query, Catalog catalog) {
+		if(catalog.getFileLocation(name) != null) {
+			System.out.println("The table " + name + " already exists!");
+			return;
+		}
+		PlainSelect plain = new PlainSelect(query);
+		if(plain.getUnionType() != 0 || plain.getFromList().size() != 1) {
+			System.out.println("A materialized view could only read a single table!");
+			return;
+		}
+		String table = plain.getFromList().values().iterator().next().getName();
+		Operator op = buildPlan(plain, catalog);
+		String[] names = getAttributes(plain, op);
+		if(names == null) {
+			System.out.println("Every expression of a materialized view needs an alias!");
+			return;
+		}
+		write(op, name, names, catalog);
+		/* the view is a table in the schema file as well. */
+		StringBuilder sb = new StringBuilder(name);
+		for(int i=0;i<names.length;i++)
+			sb.append(" ").append(names[i]).append(" ").append(getType(op, i));
+		try {
+			File file = new File(Main.getInput() + schema);
+			String content = new String(Files.readAllBytes(file.toPath()));
+			BufferedWriter write = new BufferedWriter(new FileWriter(file, true));
+			if(content.length() > 0 && !content.endsWith("\n"))
+				write.write("\n");
+			write.write(sb.append("\n").toString());
+			write.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		/* the later queries with the same catalog could read the view. */
+		catalog.addTable(sb.toString().trim());
+		long[] watermark = getWatermark(new File(catalog.getFileLocation(table)));
+		catalog.getViews().put(name, new ViewDefinition(name, table,
+				(int)watermark[0], watermark[1], query));
+		saveViews(catalog);
+	}
+	
+	/**
+	 * This method brings a materialized view up to date. When the view
+	 * could be refreshed incrementally, only the tuples appended after
+	 * the watermark are aggregated and merged into the view.
+	 * @param name the name of the view.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void refresh(String name, Catalog catalog) {
+		ViewDefinition view = catalog.getView(name);
+		if(view == null) {
+			System.out.println("There is no materialized view called " + name + "!");
+			return;
+		}
+		PlainSelect plain = new PlainSelect(view.getQuery());
+		long[] watermark = getWatermark(new File(catalog.getFileLocation(view.getTable())));
+		if(watermark[1] == view.getLastID())
+			return;
+		if(view.getLastID() < 0 || !isIncremental(plain)) {
+			Operator op = buildPlan(plain, catalog);
+			write(op, name, getAttributes(plain, op), catalog);
+		}else {
+			Operator merged = null;
+			String[] names = null;
+			/* the watermark only applies to the plan of the new tuples, it
+			 * is dropped as soon as they are read, even on a failure. */
+			catalog.setWatermark(view.getTable(), view.getPage(), view.getLastID());
+			try {
+				Operator delta = buildPlan(plain, catalog);
+				ScanOperator scan = new ScanOperator(new File(catalog.getFileLocation(name)));
+				merged = merge(plain, scan, delta);
+				names = getAttributes(plain, delta);
+				scan.close();
+				delta.close();
+			} finally {
+				catalog.removeWatermark(view.getTable());
+			}
+			write(merged, name, names, catalog);
+		}
+		catalog.getViews().put(name, new ViewDefinition(name, view.getTable(),
+				(int)watermark[0], watermark[1], view.getQuery()));
+		saveViews(catalog);
+	}
+	
+	/**
+	 * This method drops the watermarks of the views on a table whose
+	 * tuples are deleted or updated, since the groups of the views could
+	 * not be merged with them.
+	 * @param table the name of the base table.
+	 * @param catalog the list of schemas available.
+	 */
+	static void invalidate(String table, Catalog catalog) {
+		boolean isChanged = false;
+		for(ViewDefinition view : new ArrayList<>(catalog.getViews().values())) {
+			if(!view.getTable().equals(table) || view.getLastID() < 0)
+				continue;
+			catalog.getViews().put(view.getName(), new ViewDefinition(view.getName(),
+					table, view.getPage(), -1, view.getQuery()));
+			isChanged = true;
+		}
+		if(isChanged)
+			saveViews(catalog);
+	}
+	
+	/**
+	 * This method checks whether a view could be refreshed incrementally:
+	 * it groups a single table, every attribute in the select part is a
+	 * group attribute or one of SUM, COUNT, MIN and MAX, and all the group
+	 * attributes are selected, so the groups of the view could be found.
+	 * @param plain the query that builds the view.
+	 * @return the boolean value shows whether the view is incremental.
+	 */
+	private static boolean isIncremental(PlainSelect plain) {
+		if(plain.getUnionType() != 0 || plain.getFromList().size() != 1 ||
+				plain.getHavingExpression() != null || plain.isDistinct() ||
+				plain.isLimited() || plain.getWindowFunctions().size() != 0 ||
+				plain.getSelectElements().size() == 0)
+			return false;
+		Set<String> groups = new HashSet<>(plain.getGroupByElements());
+		Set<String> selected = new HashSet<>();
+		for(Expression express : plain.getSelectElements()) {
+			if(!(express instanceof ColumnNode))
+				return false;
+			String str = ((ColumnNode)express).getWholeColumnName();
+			if(AggregateCall.isAggregate(str)) {
+				AggregateCall call = new AggregateCall(str);
+				String function = call.getFunction();
+				if(call.isDistinct() || !(function.equals("SUM") || 
+						function.equals("COUNT") || function.equals("MIN") ||
+						function.equals("MAX")))
+					return false;
+			}else if(groups.contains(str))
+				selected.add(str);
+			else return false;
+		}
+		return selected.equals(groups);
+	}
+	
+	/**
+	 * This method merges the groups of the new tuples into the groups of
+	 * the view. The groups are held in the memory, which is fine since a
+	 * view is usually much smaller than its table.
+	 * @param plain the query that builds the view.
+	 * @param view the operator that reads the view.
+	 * @param delta the operator that returns the groups of the new tuples.
+	 * @return the operator that returns the merged groups.
+	 */
+	private static Operator merge(PlainSelect plain, Operator view, Operator delta) {
+		List<Expression> list = plain.getSelectElements();
+		String[] functions = new String[list.size()];
+		List<Integer> keylist = new ArrayList<>();
+		for(int i=0;i<functions.length;i++) {
+			String str = ((ColumnNode)list.get(i)).getWholeColumnName();
+			if(AggregateCall.isAggregate(str))
+				functions[i] = new AggregateCall(str).getFunction();
+			else keylist.add(i);
+		}
+		int[] keyindex = new int[keylist.size()];
+		for(int i=0;i<keyindex.length;i++)
+			keyindex[i] = keylist.get(i);
+		GroupTable table = new GroupTable(keyindex);
+		List<DataType[]> rows = new ArrayList<>();
+		for(Operator op : new Operator[]{view, delta}) {
+			Tuple tuple = null;
+			while((tuple=op.getNextTuple())!=null) {
+				int hash = table.hash(tuple);
+				int group = table.find(tuple, hash);
+				if(group == -1) {
+					table.add(tuple, hash);
+					DataType[] row = new DataType[functions.length];
+					for(int i=0;i<row.length;i++)
+						row[i] = tuple.getData(i);
+					rows.add(row);
+					continue;
+				}
+				DataType[] row = rows.get(group);
+				for(int i=0;i<row.length;i++) {
+					if(functions[i] == null) continue;
+					DataType data = tuple.getData(i);
+					if(functions[i].equals("MIN")) {
+						if(data.compare(row[i]) < 0) row[i] = data;
+					}else if(functions[i].equals("MAX")) {
+						if(data.compare(row[i]) > 0) row[i] = data;
+					}else row[i] = row[i].add(data);
+				}
+			}
+		}
+		return new ListOperator(rows, delta.getSchema());
+	}
+	
+	/**
+	 * This method rewrites a query to read a materialized view, when one
+	 * of the views could answer it. A view whose watermark is dropped or
+	 * behind the base table is skipped, since its groups miss the changes.
+	 * @param plain the query to be rewritten.
+	 * @param catalog the list of schemas available.
+	 * @return the query that reads the view, or the query itself when
+	 * no view could answer it.
+	 */
+	public static PlainSelect rewrite(PlainSelect plain, Catalog catalog) {
+		if(plain.getUnionType() != 0 || plain.getFromList().size() != 1 ||
+				plain.getHavingExpression() != null || 
+				plain.getWindowFunctions().size() != 0 ||
+				plain.getSelectElements().size() == 0)
+			return plain;
+		for(ViewDefinition view : catalog.getViews().values()) {
+			String query = rewrite(plain, view);
+			if(query != null && isFresh(view, catalog))
+				return new PlainSelect(query);
+		}
+		return plain;
+	}
+	
+	/**
+	 * This method checks whether a view is up to date with its base table,
+	 * which means its watermark is not dropped and it is the same as the
+	 * one of the table.
+	 * @param view the definition of the view.
+	 * @param catalog the list of schemas available.
+	 * @return true if the view has all the changes of the table.
+	 */
+	private static boolean isFresh(ViewDefinition view, Catalog catalog) {
+		if(view.getLastID() < 0)
+			return false;
+		long[] watermark = getWatermark(new File(catalog.getFileLocation(view.getTable())));
+		return watermark[0] == view.getPage() && watermark[1] == view.getLastID();
+	}
+	
+	/**
+	 * This method tries to rewrite a query to read a materialized view.
+	 * @param plain the query to be rewritten.
+	 * @param view the definition of the view.
+	 * @return the new query, null when the view could not answer it.
+	 */
+	private static String rewrite(PlainSelect plain, ViewDefinition view) {
+		PlainSelect define = new PlainSelect(view.getQuery());
+		if(!isIncremental(define))
+			return null;
+		CheckEquals check = new CheckEquals();
+		if(!check.checkEqual(plain.getFromList(), define.getFromList()))
+			return null;
+		Expression where = plain.getWhereExpression();
+		Expression other = define.getWhereExpression();
+		if(where == null ? other != null : 
+				other == null || !check.checkEqual(where, other))
+			return null;
+		Set<String> groups = new HashSet<>(define.getGroupByElements());
+		List<String> grouplist = plain.getGroupByElements();
+		if(!groups.containsAll(grouplist))
+			return null;
+		boolean rollup = !groups.equals(new HashSet<>(grouplist));
+		/* the names of the attributes of the view. */
+		String[] names = getAttributes(define, null);
+		Map<String, String> columns = new HashMap<>();
+		for(int i=0;i<names.length;i++)
+			columns.put(((ColumnNode)define.getSelectElements().get(i))
+					.getWholeColumnName(), view.getName() + "." + names[i]);
+		boolean isAggregate = grouplist.size() != 0;
+		List<String> items = new ArrayList<>();
+		Map<String, String> order = new HashMap<>();
+		for(int i=0;i<plain.getSelectElements().size();i++) {
+			Expression express = plain.getSelectElements().get(i);
+			if(!(express instanceof ColumnNode))
+				return null;
+			String str = ((ColumnNode)express).getWholeColumnName();
+			String column = columns.get(str);
+			if(column == null)
+				return null;
+			String alias = plain.getSelectAlias().get(i);
+			if(alias.equals("")) alias = str;
+			if(AggregateCall.isAggregate(str)) {
+				isAggregate = true;
+				if(rollup) {
+					String function = new AggregateCall(str).getFunction();
+					if(function.equals("COUNT")) function = "SUM";
+					items.add(function + " ( " + column + " ) AS " + alias);
+					continue;
+				}
+			}
+			order.put(str, column);
+			items.add(column + " AS " + alias);
+		}
+		/* the query without groups returns every tuple of the table. */
+		if(!isAggregate)
+			return null;
+		StringBuilder sb = new StringBuilder("SELECT ");
+		if(plain.isDistinct())
+			sb.append("DISTINCT ");
+		sb.append(String.join(" , ", items)).append(" FROM ").append(view.getName());
+		if(rollup && grouplist.size() != 0) {
+			sb.append(" GROUP BY");
+			for(int i=0;i<grouplist.size();i++)
+				sb.append(i == 0 ? " " : " , ").append(columns.get(grouplist.get(i)));
+		}
+		List<Expression> orderlist = plain.getOrderByElements();
+		for(int i=0;i<orderlist.size();i++) {
+			if(!(orderlist.get(i) instanceof ColumnNode))
+				return null;
+			String column = order.get(((ColumnNode)orderlist.get(i)).getWholeColumnName());
+			if(column == null)
+				return null;
+			sb.append(i == 0 ? " ORDER BY " : " , ").append(column);
+			if(plain.isDescList()[i] == -1)
+				sb.append(" DESC");
+		}
+		if(plain.isLimited()) {
+			sb.append(" LIMIT ");
+			if(plain.getStartPoint() != 0)
+				sb.append(plain.getStartPoint()).append(" , ");
+			sb.append(plain.getEndPoint());
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * This method builds the physical operators of a query.
+	 * @param plain the query.
+	 * @param catalog the list of schemas available.
+	 * @return the root of the physical operators.
+	 */
+	private static Operator buildPlan(PlainSelect plain, Catalog catalog) {
+		PhysicalVisitor pv = new PhysicalVisitor(plain, catalog);
+		QueryHandler.BuildQueryPlan(plain).accept(pv);
+		return pv.getOperator();
+	}
+	
+	/**
+	 * This method finds the names of the attributes of the view, which is
+	 * the alias of the expression, or the name of the column without the
+	 * name of the table.
+	 * @param plain the query that builds the view.
+	 * @param op the operator of the query, only used for the "*".
+	 * @return the array of names, null when an aggregate has no alias.
+	 */
+	private static String[] getAttributes(PlainSelect plain, Operator op) {
+		List<Expression> list = plain.getSelectElements();
+		if(list.size() == 0) {
+			String[] names = new String[op.getSchema().size()];
+			for(Map.Entry<String, Mule> entry : op.getSchema().entrySet())
+				names[entry.getValue().getIndex()] = entry.getKey().split("\\.")[1];
+			return names;
+		}
+		String[] names = new String[list.size()];
+		for(int i=0;i<names.length;i++) {
+			String alias = plain.getSelectAlias().get(i);
+			Expression express = list.get(i);
+			if(!alias.equals(""))
+				names[i] = alias;
+			else if(express instanceof ColumnNode && !AggregateCall.isAggregate(
+					((ColumnNode)express).getWholeColumnName()))
+				names[i] = ((ColumnNode)express).getWholeColumnName().split("\\.")[1];
+			else return null;
+		}
+		return names;
+	}
+	
+	/**
+	 * This method returns the type of an attribute of the operator.
+	 * @param op the operator.
+	 * @param index the index of the attribute.
+	 * @return the type of the attribute.
+	 */
+	private static int getType(Operator op, int index) {
+		for(Mule mule : op.getSchema().values())
+			if(mule.getIndex() == index)
+				return mule.getDataType();
+		return 0;
+	}
+	
+	/**
+	 * This method writes the tuples of an operator as the table of a view.
+	 * The values of the tuples are written to the pages of the binary file
+	 * directly, with the Bloom filters of the view. The operator is closed
+	 * after all the tuples are written.
+	 * @param op the operator that returns the tuples of the view.
+	 * @param name the name of the view.
+	 * @param names the names of the attributes of the view.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void write(Operator op, String name, String[] names,
+							  Catalog catalog) {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<names.length;i++) {
+			if(i > 0) sb.append(" ");
+			sb.append(name).append(".").append(names[i]).append(" ")
+			  .append(getType(op, i));
+		}
+		new HumanToBinary(catalog.getFilterColumns(name)).convert(op,
+				sb.toString(), new File(Main.getInput() + base + name + ".b"));
+		op.close();
+	}
+	
+	/**
+	 * This method finds the watermark of a table, which is the last data
+	 * page and the ID of the last tuple in it.
+	 * @param file the file of the table.
+	 * @return the page and the ID of the last tuple, 0 when it is empty.
+	 */
+	private static long[] getWatermark(File file) {
+		int page = (int)Math.max(0, file.length() / NUM_OF_BYTES - 2);
+		ScanOperator scan = new ScanOperator(file, page, Long.MIN_VALUE);
+		Tuple tuple = null;
+		long ID = 0;
+		while((tuple=scan.getNextRow())!=null)
+			ID = tuple.getTupleID(0);
+		scan.close();
+		return new long[]{page, ID};
+	}
+	
+	/**
+	 * This method writes the definitions of all the views to the view file.
+	 * @param catalog the catalog that holds the views.
+	 */
+	private static void saveViews(Catalog catalog) {
+		try {
+			BufferedWriter write = new BufferedWriter(new FileWriter(
+					Main.getInput() + views));
+			for(ViewDefinition view : catalog.getViews().values())
+				write.write(view.toString() + "\n");
+			write.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This class returns the tuples held in a list, which is used for
+	 * writing the merged groups of a view and the tuples written to a
+	 * table by the insertions and the updates.
+	 * @author messfish
+	 *
+	 */
+	static class ListOperator extends Operator {
+		
+		private List<DataType[]> rows; // the values of the tuples.
+		private Map<String, Mule> schema;
+		private int index; // the index of the next tuple.
+		
+		/**
+		 * Constructor: this constructor stores the tuples and the schema.
+		 * @param rows the values of the tuples.
+		 * @param schema the schema of the tuples.
+		 */
+		public ListOperator(List<DataType[]> rows, Map<String, Mule> schema) {
+			this.rows = rows;
+			this.schema = schema;
+		}
+	
+		/**
+		 * This method is used to fetch the next tuple from the list.
+		 * @return the next valid tuple.
+		 */
+		@Override
+		public Tuple getNextTuple() {
+			if(index == rows.size())
+				return null;
+			DataType[] row = rows.get(index);
+			Tuple tuple = new Tuple(row.length, 1);
+			for(int i=0;i<row.length;i++)
+				tuple.setData(i, row[i]);
+			index++;
+			tuple.setTupleID(0, index);
+			return tuple;
+		}
+	
+		/**
+		 * This method is used to reset the operator back to the starting point.
+		 */
+		@Override
+		public void reset() {
+			index = 0;
+		}
+	
+		/**
+		 * This method returns the schema of the operator.
+		 * @return the schema of the operator.
+		 */
+		@Override
+		public Map<String, Mule> getSchema() {
+			return schema;
+		}
+	
+		/**
+		 * This method is used to return the number of tables in the operator.
+		 * @return the number of tables.
+		 */
+		@Override
+		public int getNumOfTables() {
+			return 1;
+		}
+		
+	}
+
+}
@@ -0,0 +1,489 @@
+package SmallSQLServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import BPlusTree.BPlusTree;
+import BitmapIndex.BitmapIndex;
+import Evaluator.Evaluator;
+import HashIndex.HashIndex;
+import PhysicalOperators.ScanOperator;
+import SQLExpression.Expression;
+import SQLParser.CalculationParser;
+import SQLParser.PlainSelect;
+import Support.Catalog;
+import Support.HumanToBinary;
+import Support.IndexDefinition;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class handles the queries that change the tuples of a table.
+ * "INSERT INTO T VALUES ( 1 , "a" ) , ( 2 , "b" )" appends the tuples to
+ * the table, they fill the free space at the end of the last page first
+ * and then go to new pages. "DELETE FROM T WHERE ..." marks the tuples as
+ * deleted by their valid byte, the deleted tuples keep their places so
+ * the positions in the indexes and the numbers in the bitmaps of the
+ * other tuples never change, their space is only taken back when the
+ * table is written again. "UPDATE T SET A = T.A + 1 WHERE ..." deletes
+ * the tuples and appends the new ones with new IDs. All the indexes of
+ * the table are changed along with it, and the materialized views on the
+ * table run their queries again at the next refresh after a deletion or
+ * an update. The materialized views could not be changed this way.
+ * @author messfish
+ *
+ */
+public class WriteHandler {
+
+	private static final int NUM_OF_BYTES = 16384;
+	// this is the number of bytes in a single page.
+	public static final int MAX_OF_LENGTH = 127;
+	// the length of the longest string, which is kept in a byte.
+	
+	/**
+	 * This method handles the queries that change the tuples.
+	 * @param query the SQL query.
+	 * @param catalog the list of schemas available.
+	 * @return the boolean value shows whether the query changes the
+	 * tuples, false means it should be handled as usual.
+	 */
+	public static boolean handle(String query, Catalog catalog) {
+		String[] array = query.replaceAll("([(),])", " $1 ").trim().split("\\s+");
+		if(array.length < 3)
+			return false;
+		if(array[0].equals("INSERT") && array[1].equals("INTO")) {
+			if(check(array[2], catalog))
+				insert(array, catalog);
+			return true;
+		}
+		if(array[0].equals("DELETE") && array[1].equals("FROM")) {
+			if(check(array[2], catalog))
+				change(array[2], null, getWhere(query, array[2]), catalog);
+			return true;
+		}
+		if(array[0].equals("UPDATE") && array.length > 3 && array[2].equals("SET")) {
+			if(check(array[1], catalog))
+				update(array, getWhere(query, array[1]), catalog);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * This method checks whether a table could be changed.
+	 * @param table the name of the table.
+	 * @param catalog the list of schemas available.
+	 * @return true if the table could be changed.
+	 */
+	private static boolean check(String table, Catalog catalog) {
+		if(catalog.getFileLocation(table) == null) {
+			System.out.println("There is no table called " + table + "!");
+			return false;
+		}
+		if(catalog.getView(table) != null) {
+			System.out.println("The table " + table + " is a materialized view!");
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * This method builds the where expression of the query, which is
+	 * parsed as the where expression of a query on the table.
+	 * @param query the SQL query.
+	 * @param table the name of the table.
+	 * @return the where expression, null if there is none.
+	 */
+	private static Expression getWhere(String query, String table) {
+		String[] words = query.trim().split("\\s+");
+		for(int i=0;i<words.length;i++) {
+			if(!words[i].equals("WHERE"))
+				continue;
+			StringBuilder sb = new StringBuilder("SELECT * FROM " + table + " WHERE");
+			for(int j=i+1;j<words.length;j++)
+				sb.append(" ").append(words[j]);
+			return new PlainSelect(sb.toString()).getWhereExpression();
+		}
+		return null;
+	}
+	
+	/**
+	 * This method inserts the tuples after "VALUES", each of them is a
+	 * list of values in the parenthesis, one for each attribute in the
+	 * order of the table.
+	 * @param array the tokens of the query.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void insert(String[] array, Catalog catalog) {
+		String table = array[2];
+		File file = new File(catalog.getFileLocation(table));
+		ScanOperator scan = new ScanOperator(file);
+		Map<String, Mule> schema = scan.getSchema();
+		scan.close();
+		String[] names = getNames(schema);
+		List<DataType[]> rows = new ArrayList<>();
+		int index = 4;
+		if(array.length < 5 || !array[3].equals("VALUES"))
+			index = array.length;
+		while(index < array.length) {
+			List<int[]> ranges = getRanges(array, index, array.length, true);
+			if(ranges == null || ranges.size() != names.length)
+				break;
+			DataType[] row = new DataType[names.length];
+			for(int i=0;i<row.length;i++) {
+				int[] range = ranges.get(i);
+				row[i] = evaluate(new CalculationParser(array, range[0], range[1]).parse(),
+						null, schema, names[i]);
+				if(row[i] == null)
+					return;
+			}
+			rows.add(row);
+			index = ranges.get(ranges.size() - 1)[1] + 1;
+			if(index < array.length && !array[index].equals(","))
+				break;
+			index++;
+		}
+		if(rows.size() == 0 || index != array.length + 1) {
+			System.out.println("The insertion should be like INSERT INTO table "
+					+ "VALUES ( 1 , \"a\" ) , ( 2 , \"b\" ) with a value for each attribute!");
+			return;
+		}
+		Indexes indexes = new Indexes(table, schema, catalog);
+		append(file, rows, schema, indexes);
+		indexes.close();
+	}
+	
+	/**
+	 * This method reads the assignments of an update and updates the
+	 * tuples of the table.
+	 * @param array the tokens of the query.
+	 * @param where the where expression, null means all the tuples.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void update(String[] array, Expression where, Catalog catalog) {
+		String table = array[1];
+		ScanOperator scan = new ScanOperator(new File(catalog.getFileLocation(table)));
+		Map<String, Mule> schema = scan.getSchema();
+		scan.close();
+		int end = Arrays.asList(array).indexOf("WHERE");
+		if(end == -1)
+			end = array.length;
+		List<int[]> ranges = getRanges(array, 3, end, false);
+		Expression[] set = new Expression[schema.size()];
+		for(int[] range : ranges) {
+			String name = array[range[0]];
+			Mule mule = schema.get(table + "." + name.substring(name.indexOf('.') + 1));
+			if(range[1] - range[0] < 3 || !array[range[0] + 1].equals("=") ||
+					mule == null || set[mule.getIndex()] != null) {
+				System.out.println("The update should be like UPDATE table SET a = "
+						+ "table.a + 1 , b = \"x\" WHERE ... with each attribute once!");
+				return;
+			}
+			set[mule.getIndex()] = new CalculationParser(array, range[0] + 2,
+					range[1]).parse();
+		}
+		change(table, set, where, catalog);
+	}
+	
+	/**
+	 * This method deletes the tuples that satisfy the where expression.
+	 * When the new values are given, the new tuples are appended after
+	 * the deletion, which is the update.
+	 * @param table the name of the table.
+	 * @param set the new value of each attribute, null means the value is
+	 * not changed, and the whole array is null for a deletion.
+	 * @param where the where expression, null means all the tuples.
+	 * @param catalog the list of schemas available.
+	 */
+	private static void change(String table, Expression[] set, Expression where,
+							   Catalog catalog) {
+		File file = new File(catalog.getFileLocation(table));
+		ScanOperator scan = new ScanOperator(file);
+		Map<String, Mule> schema = scan.getSchema();
+		String[] names = getNames(schema);
+		Indexes indexes = new Indexes(table, schema, catalog);
+		List<DataType[]> rows = new ArrayList<>();
+		int count = 0;
+		try {
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			Tuple tuple = null;
+			while((tuple=scan.getNextTuple())!=null) {
+				if(where != null && !new Evaluator(tuple, where, schema).checkValid())
+					continue;
+				/* the new values are checked before the tuple is deleted,
+				 * so the tuples before a wrong value are updated only. */
+				if(set != null) {
+					DataType[] row = new DataType[names.length];
+					boolean isValid = true;
+					for(int i=0;i<row.length&&isValid;i++) {
+						row[i] = set[i] == null ? tuple.getData(i) :
+							evaluate(set[i], tuple, schema, names[i]);
+						isValid = row[i] != null;
+					}
+					if(!isValid)
+						break;
+					rows.add(row);
+				}
+				int[] position = scan.getPosition();
+				out.seek((long)(position[0] + 1) * NUM_OF_BYTES + position[1]);
+				out.write(0);
+				indexes.delete(tuple, position, scan.getSlot());
+				count++;
+			}
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		scan.close();
+		if(rows.size() > 0)
+			append(file, rows, schema, indexes);
+		indexes.close();
+		if(count > 0)
+			ViewHandler.invalidate(table, catalog);
+	}
+	
+	/**
+	 * This method appends the tuples to the table, their values are 
+	 * written to the pages directly, which keeps the Bloom filters of
+	 * the pages as well. The tuples are added to the indexes by reading
+	 * them back from the pages they are written to.
+	 * @param file the file of the table.
+	 * @param rows the values of the tuples.
+	 * @param schema the schema of the table.
+	 * @param indexes the indexes of the table.
+	 */
+	private static void append(File file, List<DataType[]> rows, Map<String, Mule> schema,
+							   Indexes indexes) {
+		String[] names = getNames(schema);
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<names.length;i++) {
+			if(i > 0) sb.append(" ");
+			sb.append(names[i]).append(" ").append(schema.get(names[i]).getDataType());
+		}
+		int[] start = new HumanToBinary().append(
+				new ViewHandler.ListOperator(rows, schema), sb.toString(), file);
+		if(start == null)
+			return;
+		/* the tuples already in the first page are skipped. */
+		ScanOperator scan = new ScanOperator(file);
+		scan.skipTo(start[0]);
+		for(int i=0;i<start[1];i++)
+			scan.getNextRow();
+		Tuple tuple = null;
+		while((tuple=scan.getNextRow())!=null)
+			indexes.insert(tuple, scan.getPosition(), scan.getSlot());
+		scan.close();
+	}
+	
+	/**
+	 * This method returns the names of the attributes in the order of
+	 * the table.
+	 * @param schema the schema of the table.
+	 * @return the names of the attributes, such as "T.A".
+	 */
+	private static String[] getNames(Map<String, Mule> schema) {
+		String[] result = new String[schema.size()];
+		for(Map.Entry<String, Mule> entry : schema.entrySet())
+			result[entry.getValue().getIndex()] = entry.getKey();
+		return result;
+	}
+	
+	/**
+	 * This method splits the tokens by the commas that are not in any
+	 * parenthesis.
+	 * @param array the tokens of the query.
+	 * @param start the index of the first token.
+	 * @param end the index after the last token.
+	 * @param isList true means the tokens start with a left parenthesis,
+	 * and only the ones before the matching right parenthesis are split.
+	 * @return the index of the first token and the one after the last token
+	 * of each part, null if the parenthesis do not match.
+	 */
+	private static List<int[]> getRanges(String[] array, int start, int end,
+										 boolean isList) {
+		List<int[]> result = new ArrayList<>();
+		if(isList) {
+			if(start >= end || !array[start].equals("("))
+				return null;
+			start++;
+		}
+		int depth = 0, first = start;
+		for(int i=start;i<end;i++) {
+			if(array[i].equals("("))
+				depth++;
+			else if(array[i].equals(")") && depth > 0)
+				depth--;
+			else if(array[i].equals(")") || (array[i].equals(",") && depth == 0)) {
+				result.add(new int[]{first, i});
+				first = i + 1;
+				if(array[i].equals(")"))
+					return isList ? result : null;
+			}
+		}
+		if(isList)
+			return null;
+		result.add(new int[]{first, end});
+		return result;
+	}
+	
+	/**
+	 * This method computes the value of an attribute and changes it to
+	 * the type of the attribute. The quotes of the strings are removed.
+	 * @param express the expression of the value.
+	 * @param tuple the tuple the expression reads, null if there is none.
+	 * @param schema the schema of the table.
+	 * @param name the name of the attribute, such as "T.A".
+	 * @return the value, null if it does not fit the attribute.
+	 */
+	private static DataType evaluate(Expression express, Tuple tuple,
+									 Map<String, Mule> schema, String name) {
+		DataType data = null;
+		try {
+			data = new Evaluator(tuple, express, schema).getData();
+		} catch (Exception e) {
+			System.out.println("The value of " + name + " is not valid!");
+			return null;
+		}
+		int type = schema.get(name).getDataType();
+		DataType result = null;
+		if(type == 1 && data.getType() == 1)
+			result = data;
+		else if(type == 2 && data.getType() == 2) {
+			String str = data.getString();
+			if(str.length() >= 2 && str.startsWith("\"") && str.endsWith("\""))
+				str = str.substring(1, str.length() - 1);
+			if(str.length() <= MAX_OF_LENGTH)
+				result = new DataType(str);
+		}else if(type != 1 && type != 2 && data.getType() == 1)
+			result = new DataType((double)data.getLong());
+		else if(type != 1 && type != 2 && data.getType() == 5)
+			result = data;
+		if(result == null)
+			System.out.println("The value " + data.print() + " does not fit "
+					+ name + "!");
+		return result;
+	}
+	
+	/**
+	 * This class holds the indexes of a table while its tuples are
+	 * changed, the entries of the B+ Trees and the hash indexes are
+	 * inserted and deleted, the bitmap indexes are written back when
+	 * they are closed.
+	 * @author messfish
+	 *
+	 */
+	private static class Indexes {
+	
+		private List<BPlusTree> trees; // the B+ Trees of the table.
+		private List<int[]> treecolumns;
+		// the index of each attribute in the entries of each tree.
+		private List<HashIndex> hashes; // the hash indexes of the table.
+		private List<int[]> hashcolumns;
+		// the index of each attribute in the key of each hash index.
+		private List<BitmapIndex> bitmaps; // the bitmap indexes of the table.
+		private List<int[]> bitmapcolumns;
+		// the index of each attribute in each bitmap index.
+		private List<String> locations; // the files of the bitmap indexes.
+	
+		/**
+		 * Constructor: this constructor opens all the indexes of a table.
+		 * @param table the name of the table.
+		 * @param schema the schema of the table.
+		 * @param catalog the list of schemas available.
+		 */
+		public Indexes(String table, Map<String, Mule> schema, Catalog catalog) {
+			trees = new ArrayList<>();
+			treecolumns = new ArrayList<>();
+			hashes = new ArrayList<>();
+			hashcolumns = new ArrayList<>();
+			bitmaps = new ArrayList<>();
+			bitmapcolumns = new ArrayList<>();
+			locations = new ArrayList<>();
+			for(IndexDefinition index : catalog.getIndexes(table)) {
+				/* the Bloom filters of the pages are kept by the append. */
+				if(index.isBloom())
+					continue;
+				String location = catalog.getIndexLocation(index.getName());
+				List<String> attributes = index.isHash() || index.isBitmap() ?
+						index.getKeys() : index.getAttributes();
+				int[] columns = new int[attributes.size()];
+				for(int i=0;i<columns.length;i++)
+					columns[i] = schema.get(table + "." + attributes.get(i)).getIndex();
+				if(index.isHash()) {
+					hashes.add(new HashIndex(location));
+					hashcolumns.add(columns);
+				}else if(index.isBitmap()) {
+					bitmaps.add(new BitmapIndex(location));
+					bitmapcolumns.add(columns);
+					locations.add(location);
+				}else {
+					trees.add(new BPlusTree(location));
+					treecolumns.add(columns);
+				}
+			}
+		}
+	
+		/**
+		 * This method adds a tuple to all the indexes.
+		 * @param tuple the tuple.
+		 * @param position the data page and the offset of the tuple.
+		 * @param slot the place of the tuple in its page.
+		 */
+		public void insert(Tuple tuple, int[] position, int slot) {
+			for(int i=0;i<trees.size();i++)
+				trees.get(i).insert(getKey(tuple, treecolumns.get(i)), position);
+			for(int i=0;i<hashes.size();i++)
+				hashes.get(i).insert(getKey(tuple, hashcolumns.get(i)), position);
+			for(int i=0;i<bitmaps.size();i++)
+				bitmaps.get(i).insert(position[0], slot, getKey(tuple, bitmapcolumns.get(i)));
+		}
+	
+		/**
+		 * This method removes a tuple from all the indexes.
+		 * @param tuple the tuple.
+		 * @param position the data page and the offset of the tuple.
+		 * @param slot the place of the tuple in its page.
+		 */
+		public void delete(Tuple tuple, int[] position, int slot) {
+			for(int i=0;i<trees.size();i++)
+				trees.get(i).delete(getKey(tuple, treecolumns.get(i)), position);
+			for(int i=0;i<hashes.size();i++)
+				hashes.get(i).delete(getKey(tuple, hashcolumns.get(i)), position);
+			for(BitmapIndex bitmap : bitmaps)
+				bitmap.delete(position[0], slot);
+		}
+	
+		/**
+		 * This method writes all the indexes back to their files.
+		 */
+		public void close() {
+			for(BPlusTree tree : trees)
+				tree.close();
+			for(HashIndex hash : hashes)
+				hash.close();
+			for(int i=0;i<bitmaps.size();i++)
+				bitmaps.get(i).save(locations.get(i));
+		}
+	
+		/**
+		 * This method picks the values of the attributes from a tuple.
+		 * @param tuple the tuple.
+		 * @param columns the index of each attribute.
+		 * @return the values of the attributes.
+		 */
+		private DataType[] getKey(Tuple tuple, int[] columns) {
+			DataType[] result = new DataType[columns.length];
+			for(int i=0;i<columns.length;i++)
+				result[i] = tuple.getData(columns[i]);
+			return result;
+		}
+	
+	}
+
+}
@@ -1,79 +1,127 @@
 package Sorting;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
-import Evaluator.Evaluator;
 import PhysicalOperators.Operator;
 import SQLExpression.Expression;
 import SmallSQLServer.Main;
 import Support.Mule;
-import TableElement.DataType;
 import TableElement.Tuple;
 
-/** 
+/**
  * This class mainly holds the external sort operation.
  * The logic of the sort will be displayed in the methods below.
+ * Notice the sort is driven by a memory grant: the size of the runs
+ * and the fan-in of the merge are both computed from the number of
+ * buffer pages the grant could hold. Both phases of the sort are done
+ * by a pool of threads: the runs are generated by the sorter threads
+ * while the caller keeps reading the operator, and the independent
+ * merge groups of a single pass are merged at the same time. The tuples
+ * are compared by their normalized keys, which are built only once when
+ * a tuple is read from the operator or from a run.
  * @author messfish
  *
  */
 public class ExternalSort {
 
-	private static final int NUM_OF_BUFFER = 10;
 	private static final int NUM_OF_BYTES = 16384;
+	private static final int MIN_OF_BUFFER = 8;
+	// this is the least number of buffer pages a sort could work with.
+	private static final int NUM_OF_PREFETCH = 3;
+	// this is the number of pages held by an input run which is read
+	// ahead: the current page and the pages waiting in the queue.
+	private static final long MIN_SORTER_MEMORY = 4L << 20;
+	// a sorter thread is only worth it when it holds at least 4MB.
+	private static final int NUM_OF_THREADS =
+			Math.max(2, Runtime.getRuntime().availableProcessors());
 	private int file_index = 1;
 	private Map<String, Mule> schema;
-	private List<Expression> attributeslist;
+	private SortKey sortkey; // this is used to build the normalized keys.
 	private File result; // this will be used to store the result.
 	private Operator op;
-	private Tuple first; // this is used to store the previous tuple 
-	// that could not be stored in the buffer page.
+	private int ID; // the ID of the operator who are calling this class.
+	private int numofbuffer; // the number of pages in the memory grant.
+	private int numofsorters; // the number of sorter threads.
+	private ExecutorService pool; // the threads that sort and merge runs.
+	
+	/**
+	 * Constructor: this constructor sorts the tuples of the operator with
+	 * the memory grant of the query.
+	 * @param op the operator that calls this class.
+	 * @param attributeslist the list of attributes that used for sorting.
+	 * @param ID this marks the ID of the operator who are calling this class.
+	 */
+	public ExternalSort(Operator op, List<Expression> attributeslist, int ID) {
+		this(op, attributeslist, ID, Main.getMemory());
+	}
 	
 	/**
 	 * Constructor: this constructor is used to fetch all the tuples
-	 * in an operator and store them in pages. After that, it would 
-	 * perform these two types of sorting: (1) First it stores the 
-	 * pages in the buffer poll and sort them and put them in one 
-	 * file. (2) Next, use all but one pages in the buffer pool to 
+	 * in an operator and store them in runs. After that, it would
+	 * perform these two types of sorting: (1) First it uses replacement
+	 * selection to generate the runs: the tuples are kept in a heap and
+	 * the smallest one that is not smaller than the last written tuple
+	 * goes to the current run, so the runs are about twice as large as
+	 * the memory. (2) Next, use all but one pages in the buffer pool to
 	 * store the files. Pick the smallest of them and write that into
 	 * the empty slot. Note we need to do everything in a single page.
-	 * Do this iteratively until only one large file left. Pass that 
+	 * Do this iteratively until only one large file left. Pass that
 	 * file to the global file operator.
 	 * @param op the operator that calls this class.
 	 * @param attributeslist the list of attributes that used for sorting.
 	 * @param ID this marks the ID of the operator who are calling this class.
+	 * @param memory the number of bytes this sort could hold in memory.
 	 */
-	public ExternalSort(Operator op, List<Expression> attributeslist, int ID) {
+	public ExternalSort(Operator op, List<Expression> attributeslist, int ID,
+						long memory) {
+		this(op, attributeslist, null, ID, memory);
+	}
+	
+	/**
+	 * Constructor: this constructor works just like the one above, except
+	 * that some of the attributes could be sorted in the descending order.
+	 * @param op the operator that calls this class.
+	 * @param attributeslist the list of attributes that used for sorting.
+	 * @param desclist the array checks whether the expression is ascending
+	 * or descending by showing whether it is 1 or -1, null means ascending.
+	 * @param ID this marks the ID of the operator who are calling this class.
+	 * @param memory the number of bytes this sort could hold in memory.
+	 */
+	public ExternalSort(Operator op, List<Expression> attributeslist,
+						int[] desclist, int ID, long memory) {
 		this.op = op;
+		this.ID = ID;
 		schema = op.getSchema();
-		this.attributeslist = attributeslist;
-		/* At first, we build the base of the sorting file. */
-		File file = null, previous = null;
-		while(true) {
-			previous = file;
-			file = writeBase(op, ID);
-			if(file == null)
-				break;
-			file_index++;
-		}
-		/* if the file index is 1, that means there are no tuples available.
-		 * do nothing and let the result be a null pointer. */
-		/* this indicates all the tuples are sorted during the first step,
-		 * so we simply assign the file to the result file. */
-		if(file_index == 2) {
-			result = previous;
-		}else if(file_index > 2) {
-			merge(ID);
-			file_index--;
-			result = new File(Main.getTemp() + "/" + ID + " " + file_index);
+		sortkey = new SortKey(attributeslist, desclist, schema);
+		numofbuffer = (int)Math.max(MIN_OF_BUFFER, memory / NUM_OF_BYTES);
+		numofsorters = (int)Math.max(1,
+				Math.min(NUM_OF_THREADS, memory / MIN_SORTER_MEMORY));
+		pool = Executors.newFixedThreadPool(NUM_OF_THREADS);
+		try {
+			/* At first, we build the base of the sorting file. */
+			List<Integer> runs = writeBase();
+			/* if there are no runs, that means there are no tuples available.
+			 * do nothing and let the result be a null pointer. If there is
+			 * only one run, all the tuples are sorted during the first step,
+			 * so we simply assign the file to the result file. */
+			if(runs.size() == 1)
+				result = getFile(runs.get(0));
+			else if(runs.size() > 1)
+				result = merge(runs);
+		} finally {
+			pool.shutdown();
 		}
 	}
 	
@@ -94,56 +142,124 @@ public class ExternalSort {
 	}
 	
 	/**
-	 * This method is used to write the base of the file. Get all the tuples
-	 * available from the operator and store them in the file.
-	 * @param op the operator needed for sorting.
-	 * @param ID the ID to identify the table.
-	 * @return the file that contains sorted data.
+	 * This method is used to write the base of the file. The caller thread
+	 * reads the tuples from the operator page by page and deals the pages
+	 * to the sorter threads. Each sorter owns an equal share of the memory
+	 * grant and runs the replacement selection on the pages it receives.
+	 * @return the list of indexes of the runs.
 	 */
-	private File writeBase(Operator op, int ID) {
-		List<Tuple> list = new ArrayList<>();
+	private List<Integer> writeBase() {
+		List<Integer> runs = Collections.synchronizedList(new ArrayList<>());
+		List<Future<?>> futures = new ArrayList<>();
+		List<BlockingQueue<List<Tuple>>> queues = new ArrayList<>();
+		long share = (long)numofbuffer * NUM_OF_BYTES / numofsorters;
+		for(int i=0;i<numofsorters;i++) {
+			BlockingQueue<List<Tuple>> queue = new ArrayBlockingQueue<>(2);
+			queues.add(queue);
+			futures.add(pool.submit(() -> replacementSelection(queue, share, runs)));
+		}
 		Tuple tuple = null;
-		for(int i=0;i<NUM_OF_BUFFER;i++) {
-			tuple = storePage(op, tuple, list);
+		int turn = 0;
+		while(true) {
+			List<Tuple> page = new ArrayList<>();
+			tuple = storePage(op, tuple, page);
+			if(page.size() > 0) {
+				put(queues.get(turn), page);
+				turn = (turn + 1) % numofsorters;
+			}
 			if(tuple == null)
 				break;
 		}
-		/* this indicates no more tuples left, simply return null. */
-		if(list.size()==0) return null;
-		else if(tuple != null)
-			list.add(tuple);
-		Collections.sort(list, new Comparator<Tuple>(){
-			@Override
-			public int compare(Tuple t1, Tuple t2) {
-				return comparison(t1, t2);
-			}
+		/* an empty page tells the sorter there are no tuples left. */
+		for(BlockingQueue<List<Tuple>> queue : queues)
+			put(queue, new ArrayList<>());
+		waitFor(futures);
+		return new ArrayList<>(runs);
+	}
+	
+	/**
+	 * This method is run by the sorter thread: it performs the replacement
+	 * selection on the pages from the queue. Every tuple in the heap is
+	 * tagged with the run it belongs to: when a new tuple is smaller than
+	 * the tuple written last, it could not go to the current run anymore,
+	 * so it is tagged with the next run. The heap is ordered by the tag
+	 * first, so the current run ends when the smallest tag changes.
+	 * @param queue the queue that hands the pages to this sorter.
+	 * @param memory the number of bytes of tuples the heap could hold.
+	 * @param runs the list to put the indexes of the generated runs in.
+	 */
+	private void replacementSelection(BlockingQueue<List<Tuple>> queue,
+				long memory, List<Integer> runs) {
+		PriorityQueue<HeapData> heap = new PriorityQueue<>((a,b) -> {
+			if(a.getIndex() != b.getIndex())
+				return a.getIndex() < b.getIndex() ? -1 : 1;
+			return SortKey.compare(a.getKey(), b.getKey());
 		});
-		File file = new File(Main.getTemp() + "/" + ID + " " + file_index);
-		try{
-			FileOutputStream output = new FileOutputStream(file);
-			FileChannel fc = output.getChannel();
-			ByteBuffer buffer = null;
-			int start = 0;
-			while((buffer=writePage(list, start))!=null) {
-				start += buffer.getInt(0);
-				buffer.limit(buffer.capacity());
-				buffer.position(0);
-				fc.write(buffer);
+		int current = 0; // the tag of the run being written.
+		long used = 0; // the number of bytes held by the heap.
+		byte[] last = null; // the key of the tuple written last.
+		PageWriter writer = null;
+		while(true) {
+			List<Tuple> page = take(queue);
+			if(page.size() == 0)
+				break;
+			for(Tuple tuple : page) {
+				int size = op.checkSize(tuple);
+				/* make room for the new tuple by writing the smallest ones. */
+				while(used + size > memory && !heap.isEmpty()) {
+					HeapData mule = heap.poll();
+					if(writer == null || mule.getIndex() != current) {
+						if(writer != null)
+							writer.close();
+						current = mule.getIndex();
+						writer = new PageWriter(getFile(nextRun(runs)), op);
+					}
+					writer.write(mule.getTuple());
+					used -= op.checkSize(mule.getTuple());
+					last = mule.getKey();
+				}
+				byte[] key = sortkey.build(tuple);
+				int tag = last != null && SortKey.compare(key, last) < 0 ?
+						  current + 1 : current;
+				heap.offer(new HeapData(tag, tuple, key));
+				used += size;
 			}
-			output.close();
-		}catch (Exception e) {
-			e.printStackTrace();
 		}
-		return file;
+		/* write the tuples left in the heap, they may fill up two runs. */
+		while(!heap.isEmpty()) {
+			HeapData mule = heap.poll();
+			if(writer == null || mule.getIndex() != current) {
+				if(writer != null)
+					writer.close();
+				current = mule.getIndex();
+				writer = new PageWriter(getFile(nextRun(runs)), op);
+			}
+			writer.write(mule.getTuple());
+		}
+		if(writer != null)
+			writer.close();
+	}
+	
+	/**
+	 * This method is used to allocate the index of a new run. Since the
+	 * sorter threads share the file index, it needs to be synchronized.
+	 * @param runs the list that holds the indexes of the runs.
+	 * @return the index of the new run.
+	 */
+	private synchronized int nextRun(List<Integer> runs) {
+		int index = file_index;
+		file_index++;
+		runs.add(index);
+		return index;
 	}
 	
 	/**
-	 * This method is used for storing the tuple into a tuple list. Notice the 
+	 * This method is used for storing the tuple into a tuple list. Notice the
 	 * amount of increment should not exceed the size of a single page. Also,
 	 * since there are no needs to get the tuple ID and the byte to indicate
 	 * the state of the tuple. We could simply leave them out.
 	 * @param op the operator to extract the tuple.
-	 * @param tuple might stores the tuple that 
+	 * @param tuple might stores the tuple that
 	 * @param list the list that stores the tuples.
 	 * @return tuple the next tuple that cannot fit into the page.
 	 */
@@ -160,14 +276,14 @@ public class ExternalSort {
 			list.add(tuple);
 		}
 		/* when we meet this code, that means there are no tuples left
-		 * in the operator, so we simply return null. */ 
+		 * in the operator, so we simply return null. */
 		return null;
 	}
 	
 	/**
 	 * This method is mainly used for comparing two different tuples
-	 * by using the schema and the attribute list. Note if we cannot
-	 * tell apart from the attributes list, we use the rest of the 
+	 * by using their normalized keys. Note if we cannot
+	 * tell apart from the attributes list, we use the rest of the
 	 * attributes to pull them apart. Return 0 if we find these two
 	 * tuples are actually equal.
 	 * @param t1 one of the tuples to be compared.
@@ -177,143 +293,161 @@ public class ExternalSort {
 	 * the same.
 	 */
 	int comparison(Tuple t1, Tuple t2) {
-		for(int i=0;i<attributeslist.size();i++) {
-			Expression exp = attributeslist.get(i);
-			Evaluator eva1 = new Evaluator(t1, exp, schema);
-			DataType data1 = eva1.getData();
-			Evaluator eva2 = new Evaluator(t2, exp, schema);
-			DataType data2 = eva2.getData();
-			if(data1.compare(data2)!=0)
-				return data1.compare(data2);
-		}
-		for(int i=0;i<t1.datasize();i++){
-			DataType data1 = t1.getData(i);
-			DataType data2 = t2.getData(i);
-			if(data1.compare(data2)!=0)
-				return data1.compare(data2);
+		int result = SortKey.compare(sortkey.build(t1), sortkey.build(t2));
+		return Integer.signum(result);
+	}
+	
+	/**
+	 * This is the second part of the external sort: bring the files
+	 * to fill up all but one slots in the buffer page. Pick the
+	 * smallest tuple and store that into the empty slot. In other words,
+	 * merge the file array into one file. The fan-in comes from the
+	 * memory grant, and the last pass needs more pages per run since the
+	 * runs are read ahead. To keep the number of passes small, a pass
+	 * only merges as many runs as needed for the last pass to take all
+	 * of them, and it starts with the smallest runs. The groups in a
+	 * single pass are merged by different threads, each of them takes
+	 * its pages from the grant before it starts.
+	 * @param runs the list of indexes of the runs.
+	 * @return the file that contains all the sorted tuples.
+	 */
+	private File merge(List<Integer> runs) {
+		int fanin = numofbuffer - 1;
+		int finalfanin = Math.max(2, (numofbuffer - 1) / NUM_OF_PREFETCH);
+		Semaphore pages = new Semaphore(numofbuffer);
+		while(runs.size() > finalfanin) {
+			runs.sort((a,b) -> Long.compare(getFile(a).length(),
+											 getFile(b).length()));
+			int excess = runs.size() - finalfanin, start = 0;
+			List<Integer> next = new ArrayList<>();
+			List<Future<?>> futures = new ArrayList<>();
+			/* merging a group of g runs leaves g - 1 runs less. */
+			while(excess > 0 && runs.size() - start > 1) {
+				int size = Math.min(fanin,
+						   Math.min(excess + 1, runs.size() - start));
+				List<Integer> group = runs.subList(start, start + size);
+				int output = file_index;
+				file_index++;
+				next.add(output);
+				acquire(pages, size + 1);
+				futures.add(pool.submit(() -> {
+					try {
+						mergeGroup(group, output, false);
+					} finally {
+						pages.release(size + 1);
+					}
+				}));
+				excess -= size - 1;
+				start += size;
+			}
+			waitFor(futures);
+			next.addAll(runs.subList(start, runs.size()));
+			runs = next;
 		}
-		return 0;
+		int output = file_index;
+		file_index++;
+		mergeGroup(runs, output, true);
+		return getFile(output);
 	}
 	
 	/**
-	 * This method is used for writing the tuples as bytes in the byte
-	 * buffer. We start the tuple from the starting point and moves on
-	 * until there is not enough room for the tuple at the current index.
-	 * @param list the list of Tuples 
-	 * @param start the starting point of the list
-	 * @return a byte buffer that stores the data.
+	 * This method merges a group of runs into a single run. Notice each
+	 * call has its own operators, priority queue and page writer, so it
+	 * is safe to call this method from different threads at the same time.
+	 * The merged runs are deleted since they are no longer needed.
+	 * @param group the list of indexes of the runs to be merged.
+	 * @param output the index of the merged run.
+	 * @param readahead whether the runs should be read asynchronously.
 	 */
-	private ByteBuffer writePage(List<Tuple> list, int start) {
-		if(list.size()==start)
-			return null;
-		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-		int temp = start, index = 4;
-		while(start<list.size()) {
-			Tuple tuple = list.get(start);
-			int length = op.checkSize(tuple);
-			if(index + length > NUM_OF_BYTES) 
-				break;
-			op.writeTuple(buffer, tuple, index);
-			index += length;
-			start++;
+	private void mergeGroup(List<Integer> group, int output, boolean readahead) {
+		TempOperator[] temparray = new TempOperator[group.size()];
+		PriorityQueue<HeapData> pq = new PriorityQueue<>
+				((a,b)->SortKey.compare(a.getKey(),b.getKey()));
+		for(int i=0;i<temparray.length;i++) {
+			temparray[i] = new TempOperator(getFile(group.get(i)), schema, readahead);
+			Tuple tuple = temparray[i].getNextTuple();
+			if(tuple != null)
+				pq.offer(new HeapData(i, tuple, sortkey.build(tuple)));
+			else temparray[i].close();
 		}
-		buffer.putInt(0, start - temp);
-		return buffer;
+		PageWriter writer = new PageWriter(getFile(output), op);
+		while(!pq.isEmpty()) {
+			HeapData mule = pq.poll();
+			writer.write(mule.getTuple());
+			int arrayindex = mule.getIndex();
+			Tuple next = temparray[arrayindex].getNextTuple();
+			if(next != null)
+				pq.offer(new HeapData(arrayindex, next, sortkey.build(next)));
+			else temparray[arrayindex].close();
+		}
+		writer.close();
+		for(int index : group)
+			getFile(index).delete();
 	}
 	
 	/**
-	 * This is the second part of the external sort: bring the files
-	 * to fill up all but one slots in the buffer page. Pick the 
-	 * smallest tuple and store that into the empty slot. In other words,
-	 * merge the file array into one file.
-	 * @param ID the ID that used to identify the operator which calls this class.
+	 * This method is used to get the file of a run by using its index.
+	 * @param index the index of the run.
+	 * @return the file of that run.
 	 */
-	private void merge(int ID) {
-		int current = 1;
-		/* only when we get all the data in one file can we break out
-		 * from the condition. */
-		while(file_index - current > 1) {
-			int limit = file_index;
-			while(current < limit) {
-				TempOperator[] temparray = new TempOperator[NUM_OF_BUFFER-1];
-				int numofoperators = 0;
-				for(;numofoperators<NUM_OF_BUFFER - 1&&current<limit;
-						numofoperators++,current++) {
-					String filelocation = Main.getTemp() + "/" + ID + " " + current;
-					File file = new File(filelocation);
-					temparray[numofoperators] = 
-							new TempOperator(file, op.getSchema());
-				}
-				PriorityQueue<HeapData> pq = new PriorityQueue<>
-						((a,b)->comparison(a.getTuple(),b.getTuple()));
-				for(int i=0;i<numofoperators;i++) 
-					pq.offer(new HeapData(i, temparray[i].getNextTuple()));
-				writeFile(pq,temparray,ID);
-				file_index++;
-			}
+	private File getFile(int index) {
+		return new File(Main.getTemp() + "/" + ID + " " + index);
+	}
+	
+	/**
+	 * This method is used to take pages from the memory grant, it will
+	 * wait until the other threads give enough pages back.
+	 * @param pages the semaphore that holds the buffer pages.
+	 * @param number the number of pages needed.
+	 */
+	private void acquire(Semaphore pages, int number) {
+		try {
+			pages.acquire(number);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
 		}
 	}
 	
 	/**
-	 * This method is mainly used for writing the data into the file.
-	 * @param pq the priority queue to fetch the minimum data out.
-	 * @param temparray the array of temp operators.
-	 * @param ID the ID of the operators using this class.
+	 * This method hands a page of tuples to a sorter thread, it will wait
+	 * when the sorter is still busy with the pages it got before.
+	 * @param queue the queue of the sorter thread.
+	 * @param page the page of tuples.
 	 */
-	private void writeFile(PriorityQueue<HeapData> pq, 
-						   TempOperator[] temparray, int ID) {
-		File file = new File(Main.getTemp() + "/" + ID + " " + file_index);
+	private void put(BlockingQueue<List<Tuple>> queue, List<Tuple> page) {
 		try {
-			FileOutputStream out = new FileOutputStream(file);
-			FileChannel fc = out.getChannel();
-			while(!pq.isEmpty()) {
-				ByteBuffer buffer = writePage(pq, temparray);
-				buffer.limit(buffer.capacity());
-				buffer.position(0);
-				fc.write(buffer);
-			}
-			first = null;
-			out.close();
-		} catch (Exception e) {
+			queue.put(page);
+		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
 	}
 	
 	/**
-	 * This method is used to extract the tuple from the priority 
-	 * queue and store the result into the byte buffer.
-	 * @param pq the priority queue used to extract the smallest tuple out.
-	 * @param temparray the array of operators that stores tuple.
-	 * @return the byte buffer that stores the data.
+	 * This method is used by the sorter thread to get the next page.
+	 * @param queue the queue of the sorter thread.
+	 * @return the page of tuples, an empty page means nothing left.
 	 */
-	private ByteBuffer writePage(PriorityQueue<HeapData> pq,
-						TempOperator[] temparray) {
-		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-		int index = 4, times = 0;
-		if(first!=null) {
-			op.writeTuple(buffer, first, index);
-			index += op.checkSize(first);
-			times++;
+	private List<Tuple> take(BlockingQueue<List<Tuple>> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return new ArrayList<>();
 		}
-		while(!pq.isEmpty()) {
-			HeapData mule = pq.poll();
-			Tuple tuple = mule.getTuple();
-			int length = op.checkSize(tuple);
-			int arrayindex = mule.getIndex();
-			Tuple next = temparray[arrayindex].getNextTuple();
-			if(next != null)
-				pq.offer(new HeapData(arrayindex, next));
-			else temparray[arrayindex].close();
-			if(index + length > NUM_OF_BYTES) {
-				first = tuple;
-				break;
+	}
+	
+	/**
+	 * This method waits until all the tasks submitted to the pool are done.
+	 * @param futures the list of tasks.
+	 */
+	private void waitFor(List<Future<?>> futures) {
+		for(Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
 			}
-			op.writeTuple(buffer,tuple,index);
-			index += length;
-			times++;
 		}
-		buffer.putInt(0, times);
-		return buffer;
 	}
-	
+
 }
@@ -13,6 +13,7 @@ public class HeapData {
 
 	private int index;
 	private Tuple tuple;
+	private byte[] key; // the normalized key of the tuple.
 	
 	/**
 	 * Constructor: this constructor is mainly used for assigning
@@ -25,6 +26,19 @@ public class HeapData {
 		this.tuple = tuple;
 	}
 	
+	/**
+	 * Constructor: this constructor is used when the tuple is compared
+	 * by its normalized key, the key is built once and kept here.
+	 * @param index the index of the tuple
+	 * @param tuple the tuple that stores the data.
+	 * @param key the normalized key of the tuple.
+	 */
+	public HeapData(int index, Tuple tuple, byte[] key) {
+		this.index = index;
+		this.tuple = tuple;
+		this.key = key;
+	}
+	
 	/**
 	 * This is the getter method of the index.
 	 * @return the index.
@@ -41,4 +55,12 @@ public class HeapData {
 		return tuple;
 	}
 	
+	/**
+	 * This is the getter method of the normalized key.
+	 * @return the normalized key.
+	 */
+	public byte[] getKey() {
+		return key;
+	}
+	
 }
@@ -0,0 +1,98 @@
+package Sorting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import PhysicalOperators.Operator;
+import TableElement.Tuple;
+
+/**
+ * This class is used for writing tuples into a temporary file page by
+ * page. The format of the file is exactly the one that is read by the
+ * TempOperator: every page is 16KB, the first four bytes tell how many
+ * tuples are there in the page, followed by the tuples written by the
+ * writeTuple() method of the operator. Since each writer owns its own
+ * buffer page, different threads could use different writers at the
+ * same time.
+ * @author messfish
+ *
+ */
+public class PageWriter {
+
+	private static final int NUM_OF_BYTES = 16384;
+	private FileOutputStream out;
+	private FileChannel fc;
+	private ByteBuffer buffer;
+	private Operator op; // the operator that knows how to write a tuple.
+	private int index; // the current point in the buffer page.
+	private int numoftuples; // the number of tuples in the buffer page.
+	
+	/**
+	 * Constructor: this constructor opens the file for writing and
+	 * allocates the first buffer page.
+	 * @param file the file that will be written.
+	 * @param op the operator used for checking the size of the tuple
+	 * and writing the tuple into the buffer page.
+	 */
+	public PageWriter(File file, Operator op) {
+		this.op = op;
+		try {
+			out = new FileOutputStream(file);
+			fc = out.getChannel();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+		index = 4;
+	}
+	
+	/**
+	 * This method is used to append a tuple to the file. When the tuple
+	 * could not fit into the current page, the page will be flushed
+	 * to the disk and the tuple goes to a new page.
+	 * @param tuple the tuple that will be written.
+	 */
+	public void write(Tuple tuple) {
+		int length = op.checkSize(tuple);
+		if(index + length > NUM_OF_BYTES)
+			flush();
+		op.writeTuple(buffer, tuple, index);
+		index += length;
+		numoftuples++;
+	}
+	
+	/**
+	 * This method is used to write the last page and close the file.
+	 */
+	public void close() {
+		if(numoftuples > 0)
+			flush();
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method writes the current buffer page into the file and
+	 * prepares an empty page for the following tuples.
+	 */
+	private void flush() {
+		buffer.putInt(0, numoftuples);
+		buffer.limit(buffer.capacity());
+		buffer.position(0);
+		try {
+			fc.write(buffer);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+		index = 4;
+		numoftuples = 0;
+	}
+
+}
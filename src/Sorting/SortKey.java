@@ -0,0 +1,252 @@
+package Sorting;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import Evaluator.Evaluator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * This class is used to build the normalized key of a tuple: an array
+ * of bytes which keeps the order of the sort when the arrays are compared
+ * byte by byte as unsigned numbers. The key is built once for every tuple,
+ * so the comparison itself needs neither the evaluator nor any new object.
+ * Here is the format of a single value:
+ * long integer: 8 bytes in big endian with the sign bit flipped.
+ * double value: 8 bytes of the bits, with all the bits flipped for the
+ * negative numbers and only the sign bit flipped for the others.
+ * string: every character smaller than 0xFE is stored as the character
+ * plus one, the others are stored as 0xFF followed by two bytes of the
+ * character. The string is ended by a 0 byte, so a prefix is smaller.
+ * For the descending attributes, every byte of the value is inverted.
+ * After the attributes used for sorting, all the attributes of the tuple
+ * are appended in the ascending order to pull the ties apart.
+ * @author messfish
+ *
+ */
+public class SortKey {
+
+	private List<Expression> attributeslist;
+	private int[] desclist;
+	private int[] columnlist;
+	// this array stores the index of the attribute when the expression
+	// is a single column, or -1 when it needs to be evaluated.
+	private Map<String, Mule> schema;
+	
+	/**
+	 * Constructor: this constructor takes the attributes for sorting
+	 * and finds out the ones which are plain columns in advance.
+	 * @param attributeslist the list of expressions used for sorting.
+	 * @param desclist the array shows whether an expression is ascending
+	 * or descending by 1 or -1. A null value means all are ascending.
+	 * @param schema the schema of the tuples.
+	 */
+	public SortKey(List<Expression> attributeslist, int[] desclist,
+				   Map<String, Mule> schema) {
+		this.attributeslist = attributeslist;
+		this.desclist = desclist;
+		this.schema = schema;
+		columnlist = new int[attributeslist.size()];
+		for(int i=0;i<columnlist.length;i++) {
+			Expression exp = attributeslist.get(i);
+			columnlist[i] = -1;
+			if(exp instanceof ColumnNode) {
+				Mule mule = schema.get(((ColumnNode)exp).getWholeColumnName());
+				if(mule != null)
+					columnlist[i] = mule.getIndex();
+			}
+		}
+	}
+	
+	/**
+	 * This method is used to build the normalized key of a tuple.
+	 * @param tuple the tuple used for building the key.
+	 * @return the array of bytes that serves as the key.
+	 */
+	public byte[] build(Tuple tuple) {
+		Builder builder = new Builder();
+		for(int i=0;i<columnlist.length;i++) {
+			DataType data = null;
+			if(columnlist[i] != -1)
+				data = tuple.getData(columnlist[i]);
+			else {
+				Evaluator eva = new Evaluator(tuple, attributeslist.get(i), schema);
+				data = eva.getData();
+			}
+			int start = builder.length;
+			builder.append(data);
+			if(desclist != null && desclist[i] == -1)
+				builder.invert(start);
+		}
+		for(int i=0;i<tuple.datasize();i++)
+			builder.append(tuple.getData(i));
+		return builder.toArray();
+	}
+	
+	/**
+	 * This method builds the normalized key of a list of values, which is
+	 * used by the indexes to store and compare the keys as bytes.
+	 * @param values the values in the key.
+	 * @return the array of bytes that serves as the key.
+	 */
+	public static byte[] normalize(DataType[] values) {
+		Builder builder = new Builder();
+		for(DataType data : values)
+			builder.append(data);
+		return builder.toArray();
+	}
+	
+	/**
+	 * This method turns a normalized key in the ascending order back to 
+	 * the values. The key could be cut short, then only the values that 
+	 * are complete are returned.
+	 * @param key the normalized key.
+	 * @param datatype the types of the values in the key.
+	 * @return the array of the values that are complete in the key.
+	 */
+	public static DataType[] denormalize(byte[] key, int[] datatype) {
+		DataType[] result = new DataType[datatype.length];
+		int index = 0, point = 0;
+		for(;point<datatype.length;point++) {
+			if(datatype[point] == 2) {
+				StringBuilder sb = new StringBuilder();
+				while(index < key.length && key[index] != 0) {
+					int b = key[index] & 0xff;
+					if(b == 0xFF) {
+						if(index + 2 >= key.length)
+							break;
+						sb.append((char)(((key[index + 1] & 0xff) << 8) |
+										 (key[index + 2] & 0xff)));
+						index += 3;
+					}else {
+						sb.append((char)(b - 1));
+						index++;
+					}
+				}
+				/* the string is not complete without the 0 at the end. */
+				if(index >= key.length || key[index] != 0)
+					break;
+				index++;
+				result[point] = new DataType(sb.toString());
+			}else {
+				if(index + 8 > key.length)
+					break;
+				long number = 0;
+				for(int i=0;i<8;i++)
+					number = (number << 8) | (key[index + i] & 0xff);
+				index += 8;
+				if(datatype[point] == 1)
+					result[point] = new DataType(number ^ Long.MIN_VALUE);
+				else {
+					long bits = number < 0 ? number ^ Long.MIN_VALUE : ~number;
+					result[point] = new DataType(Double.longBitsToDouble(bits));
+				}
+			}
+		}
+		return Arrays.copyOf(result, point);
+	}
+	
+	/**
+	 * This method is used to compare two normalized keys byte by byte,
+	 * every byte is treated as an unsigned number.
+	 * @param key1 one of the keys to be compared.
+	 * @param key2 one of the keys to be compared.
+	 * @return a negative number when key1 is smaller, a positive number
+	 * when key1 is larger, 0 means the two keys are the same.
+	 */
+	public static int compare(byte[] key1, byte[] key2) {
+		int length = Math.min(key1.length, key2.length);
+		for(int i=0;i<length;i++) {
+			int b1 = key1[i] & 0xff, b2 = key2[i] & 0xff;
+			if(b1 != b2)
+				return b1 - b2;
+		}
+		return key1.length - key2.length;
+	}
+	
+	/**
+	 * This class is a growing array of bytes that stores the key being
+	 * built. Each call of build() has its own builder, so different
+	 * threads could build keys with the same SortKey object.
+	 * @author messfish
+	 *
+	 */
+	private static class Builder {
+	
+		private byte[] array = new byte[64];
+		private int length;
+	
+		/**
+		 * This method appends the normalized form of a single value.
+		 * @param data the value that will be appended.
+		 */
+		private void append(DataType data) {
+			if(data.getType() == 1)
+				appendLong(data.getLong() ^ Long.MIN_VALUE);
+			else if(data.getType() == 5) {
+				/* the negative zero should be equal to the positive zero. */
+				double number = data.getDouble() == 0.0 ? 0.0 : data.getDouble();
+				long bits = Double.doubleToLongBits(number);
+				appendLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+			}else if(data.getType() == 2) {
+				String str = data.getString();
+				for(int i=0;i<str.length();i++) {
+					char c = str.charAt(i);
+					if(c < 0xFE)
+						appendByte(c + 1);
+					else {
+						appendByte(0xFF);
+						appendByte(c >>> 8);
+						appendByte(c & 0xFF);
+					}
+				}
+				appendByte(0);
+			}
+		}
+	
+		/**
+		 * This method appends a long integer in big endian.
+		 * @param number the number that will be appended.
+		 */
+		private void appendLong(long number) {
+			for(int i=56;i>=0;i-=8)
+				appendByte((int)(number >>> i));
+		}
+	
+		/**
+		 * This method appends a single byte, the array grows when full.
+		 * @param b the byte that will be appended.
+		 */
+		private void appendByte(int b) {
+			if(length == array.length)
+				array = Arrays.copyOf(array, length * 2);
+			array[length] = (byte)b;
+			length++;
+		}
+	
+		/**
+		 * This method inverts the bytes from the starting point to the end,
+		 * which turns the ascending order into the descending order.
+		 * @param start the starting point of the value.
+		 */
+		private void invert(int start) {
+			for(int i=start;i<length;i++)
+				array[i] = (byte)~array[i];
+		}
+	
+		/**
+		 * This method returns the key with the exact length.
+		 * @return the array of bytes that serves as the key.
+		 */
+		private byte[] toArray() {
+			return Arrays.copyOf(array, length);
+		}
+	
+	}
+
+}
@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import PhysicalOperators.Operator;
 import Support.Mule;
@@ -29,7 +31,17 @@ public class TempOperator extends Operator {
 	private int[] datatypearray;
 	private int tupleindex, limit, index;
 	private static final int NUM_OF_BYTES = 16384;
+	private static final int NUM_OF_PREFETCH = 2;
+	// this is the number of pages that could be read ahead of the caller.
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+	// this empty page is used to tell the caller the file is exhausted.
 	private File file;
+	private boolean readahead;
+	// this indicates whether the pages are read by a background thread.
+	private BlockingQueue<ByteBuffer> queue;
+	private Thread reader;
+	private boolean finished;
+	// this indicates the background reader has reached the end of file.
 	
 	/**
 	 * Constructor: this constructor is mainly used for extracting pages
@@ -38,24 +50,28 @@ public class TempOperator extends Operator {
 	 * @param op the operator that will provide the schema.
 	 */
 	public TempOperator(File file, Map<String, Mule> schema) {
+		this(file, schema, false);
+	}
+	
+	/**
+	 * Constructor: this constructor works just like the one above, except
+	 * that it could ask a background thread to read the pages in advance.
+	 * This is handy when several files are merged at the same time: the
+	 * disk reads of one file overlap with the comparisons of the others.
+	 * @param file the file that will be used for extracting information.
+	 * @param schema the schema of the tuples in the file.
+	 * @param readahead whether the pages should be read asynchronously.
+	 */
+	public TempOperator(File file, Map<String, Mule> schema, boolean readahead) {
 		this.file = file;
 		this.schema = schema;
+		this.readahead = readahead;
 		datatypearray = new int[schema.size()];
 		for(Map.Entry<String, Mule> entry : schema.entrySet()) {
 			Mule mule = entry.getValue();
 			datatypearray[mule.getIndex()] = mule.getDataType();
 		}
-		try {
-			in = new FileInputStream(file);
-			fc = in.getChannel();
-			buffer = readPage();
-			tupleindex = 0;
-			if(buffer!=null)
-				limit = buffer.getInt(0);
-			index = 4;
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		open();
 	}
 
 	/**
@@ -105,17 +121,8 @@ public class TempOperator extends Operator {
 	 */
 	@Override
 	public void reset() {
-		try {
-			in = new FileInputStream(file);
-			fc = in.getChannel();
-			buffer = readPage();
-			tupleindex = 0;
-			if(buffer!=null)
-				limit = buffer.getInt(0);
-			index = 4;
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		close();
+		open();
 	}
 
 	/**
@@ -141,14 +148,75 @@ public class TempOperator extends Operator {
 	 * This method is mainly used for closing the operator when we do 
 	 * not need to extract the tuple out anymore.
 	 */
+	@Override
 	public void close() {
 		try {
+			if(reader != null)
+				reader.interrupt();
 			in.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * This method is used to close the operator and delete the file,
+	 * when the file is owned by the caller and is not needed anymore,
+	 * such as the result of an external sort.
+	 */
+	public void delete() {
+		close();
+		file.delete();
+	}
+	
+	/**
+	 * This method opens the file, starts the background reader if it
+	 * is needed and fetches the first page out.
+	 */
+	private void open() {
+		try {
+			in = new FileInputStream(file);
+			fc = in.getChannel();
+			if(readahead) {
+				finished = false;
+				queue = new ArrayBlockingQueue<>(NUM_OF_PREFETCH);
+				reader = new Thread(() -> prefetch(fc, queue));
+				reader.setDaemon(true);
+				reader.start();
+			}
+			buffer = readPage();
+			tupleindex = 0;
+			if(buffer!=null)
+				limit = buffer.getInt(0);
+			index = 4;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method is run by the background reader: it keeps reading pages
+	 * from the file channel and puts them in the queue. When the file is
+	 * exhausted, the empty page is put in the queue as a marker.
+	 * @param fc the file channel to read the pages from.
+	 * @param queue the queue that hands the pages to the caller.
+	 */
+	private void prefetch(FileChannel fc, BlockingQueue<ByteBuffer> queue) {
+		try {
+			while(true) {
+				ByteBuffer page = ByteBuffer.allocate(NUM_OF_BYTES);
+				if(fc.read(page) == -1) {
+					queue.put(END);
+					return;
+				}
+				queue.put(page);
+			}
+		} catch (InterruptedException | IOException e) {
+			/* this happens when the operator is closed before the whole
+			 * file is read, simply stop reading. */
+		}
+	}
+	
 	/**
 	 * This method is used for reading a page from the file and
 	 * store the content in the byte buffer. return null if we 
@@ -156,6 +224,18 @@ public class TempOperator extends Operator {
 	 * @return the byte buffer that stores the content of the page.
 	 */
 	private ByteBuffer readPage() {
+		if(readahead) {
+			if(finished)
+				return null;
+			try {
+				ByteBuffer page = queue.take();
+				finished = page == END;
+				return finished ? null : page;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
 		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
 		int length = 0;
 		try {
@@ -85,8 +85,10 @@ public class BinaryToHuman {
 				int size = buffer.getInt(0), index = 4;
 				for(int i=0;i<size;i++) 
 					/* notice there are is a byte to show whether the tuple is 
-					 * valid, so we need to increase the value. */
-					index = writeTuple(buffer, index + 1, sb, typelist);
+					 * valid, so we need to increase the value. The deleted
+					 * tuples are read but not written. */
+					index = writeTuple(buffer, index + 1, buffer.get(index) == 0 ?
+							new StringBuilder() : sb, typelist);
 				/* do not forget to refresh the byte buffer! */
 				buffer = ByteBuffer.allocate(NUM_OF_BYTES);
 			}
@@ -0,0 +1,155 @@
+package Support;
+
+import java.nio.ByteBuffer;
+
+import Aggregation.HyperLogLog;
+import TableElement.DataType;
+
+/**
+ * This class is a Bloom filter: a set of values kept as a few bits for
+ * each value, which tells for sure when a value is not in the set, but
+ * could be wrong when it says a value might be. Each value sets several
+ * bits picked by its hash. The long integers and the double values are
+ * hashed by their numbers, so 3 and 3.0 have the same hash, just like
+ * they are equal in the where expression.
+ * @author messfish
+ *
+ */
+public class BloomFilter {
+
+	private static final int BITS_PER_VALUE = 10;
+	// the number of bits for each value when the number of values is known.
+	private static final int NUM_OF_HASHES = 7;
+	// the number of bits set by a value, which fits 10 bits for each value.
+	private long[] words; // the bits of the filter.
+	private int numofbits; // the number of bits in the filter.
+	private int numofhashes; // the number of bits set by a value.
+	
+	/**
+	 * Constructor: this constructor builds an empty filter.
+	 * @param numofbits the number of bits, a multiple of 64.
+	 * @param numofhashes the number of bits set by a value.
+	 */
+	public BloomFilter(int numofbits, int numofhashes) {
+		words = new long[numofbits / 64];
+		this.numofbits = numofbits;
+		this.numofhashes = numofhashes;
+	}
+	
+	/**
+	 * Constructor: this constructor builds an empty filter for the number
+	 * of values, which gives about one wrong answer in a hundred.
+	 * @param numofvalues the number of values to be added.
+	 */
+	public BloomFilter(long numofvalues) {
+		this((int)Math.min(1 << 30, (numofvalues * BITS_PER_VALUE / 64 + 1) * 64),
+			 NUM_OF_HASHES);
+	}
+	
+	/**
+	 * This method returns the number of bytes taken by a filter.
+	 * @param numofvalues the number of values to be added.
+	 * @return the number of bytes.
+	 */
+	public static long getSize(long numofvalues) {
+		return (numofvalues * BITS_PER_VALUE / 64 + 1) * 8;
+	}
+	
+	/**
+	 * This method hashes a value into 64 bits, the numbers are hashed as
+	 * double values.
+	 * @param data the value to be hashed.
+	 * @return the hash of the value.
+	 */
+	public static long hash(DataType data) {
+		if(data.getType() == 2)
+			return HyperLogLog.hash(data);
+		double number = data.getType() == 1 ? data.getLong() : data.getDouble();
+		/* 0.0 and -0.0 are equal, so they should have the same hash. */
+		return HyperLogLog.hash(new DataType(number == 0.0 ? 0.0 : number));
+	}
+	
+	/**
+	 * This method adds a value to the filter by its hash.
+	 * @param hash the hash of the value.
+	 */
+	public void add(long hash) {
+		for(int i=0;i<numofhashes;i++) {
+			int bit = getBit(hash, i, numofbits);
+			words[bit >>> 6] |= 1L << bit;
+		}
+	}
+	
+	/**
+	 * This method checks whether a value might be in the filter.
+	 * @param hash the hash of the value.
+	 * @return false means the value is not in the filter for sure.
+	 */
+	public boolean mightContain(long hash) {
+		for(int i=0;i<numofhashes;i++) {
+			int bit = getBit(hash, i, numofbits);
+			if((words[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * This method checks whether a value might be in the filter that is
+	 * written in a buffer, so the filter is not read out.
+	 * @param buffer the buffer that holds the filter.
+	 * @param offset the offset of the filter in the buffer.
+	 * @param numofbits the number of bits in the filter.
+	 * @param numofhashes the number of bits set by a value.
+	 * @param hash the hash of the value.
+	 * @return false means the value is not in the filter for sure.
+	 */
+	public static boolean mightContain(ByteBuffer buffer, int offset, int numofbits,
+									   int numofhashes, long hash) {
+		for(int i=0;i<numofhashes;i++) {
+			int bit = getBit(hash, i, numofbits);
+			if((buffer.getLong(offset + (bit >>> 6) * 8) & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * This method picks a bit of a value, the bits are picked by adding
+	 * the higher half of the hash to the lower half again and again.
+	 * @param hash the hash of the value.
+	 * @param index the index of the bit among the bits of the value.
+	 * @param numofbits the number of bits in the filter.
+	 * @return the index of the bit in the filter.
+	 */
+	private static int getBit(long hash, int index, int numofbits) {
+		int combined = (int)hash + index * (int)(hash >>> 32);
+		return (combined & Integer.MAX_VALUE) % numofbits;
+	}
+	
+	/**
+	 * This method reads a filter that is written in a buffer.
+	 * @param buffer the buffer that holds the filter.
+	 * @param offset the offset of the filter in the buffer.
+	 * @param numofbits the number of bits in the filter.
+	 * @param numofhashes the number of bits set by a value.
+	 * @return the filter.
+	 */
+	public static BloomFilter read(ByteBuffer buffer, int offset, int numofbits,
+								   int numofhashes) {
+		BloomFilter result = new BloomFilter(numofbits, numofhashes);
+		for(int i=0;i<result.words.length;i++)
+			result.words[i] = buffer.getLong(offset + i * 8);
+		return result;
+	}
+	
+	/**
+	 * This method writes the bits of the filter to the buffer.
+	 * @param buffer the buffer to be written.
+	 */
+	public void write(ByteBuffer buffer) {
+		for(long word : words)
+			buffer.putLong(word);
+	}
+
+}
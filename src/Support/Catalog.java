@@ -1,10 +1,12 @@
 package Support;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -36,6 +38,19 @@ public class Catalog {
 	private Map<String, List<String>> attributes_map;
 	// this variable uses the table name as the key and stores 
 	// a list of string that is the list of attributes in the table.
+	private static final String views = "/db/views.txt";
+	// this is the location of the file of the materialized views.
+	private Map<String, ViewDefinition> view_map;
+	// this variable uses the view name as the key and stores the
+	// definition of the materialized view as the value.
+	private static final String indexes = "/db/indexes.txt";
+	// this is the location of the file of the indexes.
+	private Map<String, IndexDefinition> index_map;
+	// this variable uses the index name as the key and stores the
+	// definition of the index as the value.
+	private Map<String, long[]> watermark_map;
+	// this variable uses the table name as the key and stores the page
+	// and the ID of the last tuple that should not be read.
 	
 	/**
 	 * Constructor: This constructor sets the schema map which will be
@@ -48,27 +63,14 @@ public class Catalog {
 		table_schema = new HashMap<>();
 		file_map = new HashMap<>();
 		attributes_map = new HashMap<>();
+		readViews();
+		readIndexes();
 		try{
 			FileReader fread = new FileReader(Main.getInput() + schema);
 			BufferedReader buff = new BufferedReader(fread);
 			String s = null;
-			while((s = buff.readLine())!=null) {
-				String[] str = s.split("\\s+");
-				file_map.put(str[0], Main.getInput() + base + str[0] + ".b");
-				/* the map stores the name of the table as the key and
-				 * a uniformed structure as the value. */
-				Map<String, Mule> schema = new HashMap<>();
-				List<String> attributelist = new ArrayList<>();
-				for(int i=1;i<str.length;i+=2){
-					String build = str[0] + "." + str[i];
-					int type = Integer.parseInt(str[i + 1]);
-					Mule mule = new Mule(i / 2, type);
-					schema.put(build, mule);
-					attributelist.add(str[i]);
-				}
-				table_schema.put(str[0], schema);
-				attributes_map.put(str[0], attributelist);
-			}
+			while((s = buff.readLine())!=null)
+				addTable(s);
 			buff.close();
 		}catch(IOException e) {
 			System.out.print("The schema file is not find in the given"
@@ -76,6 +78,77 @@ public class Catalog {
 		}
 	}
 	
+	/**
+	 * This method adds a table from its line in the schema file, which
+	 * is the name of the table followed by the attributes and their data
+	 * types. It is also used when a table is created by a query, such as
+	 * a materialized view, so the later queries could read it.
+	 * @param s the line of the table in the schema file.
+	 */
+	public void addTable(String s) {
+		String[] str = s.split("\\s+");
+		file_map.put(str[0], Main.getInput() + base + str[0] + ".b");
+		/* the map stores the name of the table as the key and
+		 * a uniformed structure as the value. */
+		Map<String, Mule> schema = new HashMap<>();
+		List<String> attributelist = new ArrayList<>();
+		for(int i=1;i<str.length;i+=2){
+			String build = str[0] + "." + str[i];
+			int type = Integer.parseInt(str[i + 1]);
+			Mule mule = new Mule(i / 2, type);
+			schema.put(build, mule);
+			attributelist.add(str[i]);
+		}
+		table_schema.put(str[0], schema);
+		attributes_map.put(str[0], attributelist);
+	}
+	
+	/**
+	 * This method reads the definitions of the materialized views. Note 
+	 * the views are tables as well, so they are in the schema file too.
+	 */
+	private void readViews() {
+		view_map = new LinkedHashMap<>();
+		watermark_map = new HashMap<>();
+		File file = new File(Main.getInput() + views);
+		if(!file.exists())
+			return;
+		try{
+			BufferedReader buff = new BufferedReader(new FileReader(file));
+			String s = null;
+			while((s = buff.readLine())!=null) {
+				if(s.trim().length()==0) continue;
+				ViewDefinition view = new ViewDefinition(s);
+				view_map.put(view.getName(), view);
+			}
+			buff.close();
+		}catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method reads the definitions of the indexes.
+	 */
+	private void readIndexes() {
+		index_map = new LinkedHashMap<>();
+		File file = new File(Main.getInput() + indexes);
+		if(!file.exists())
+			return;
+		try{
+			BufferedReader buff = new BufferedReader(new FileReader(file));
+			String s = null;
+			while((s = buff.readLine())!=null) {
+				if(s.trim().length()==0) continue;
+				IndexDefinition index = new IndexDefinition(s);
+				index_map.put(index.getName(), index);
+			}
+			buff.close();
+		}catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * this method returns the path of the file using the table name.
 	 * @param s the table name.
@@ -106,4 +179,97 @@ public class Catalog {
 		return attributes_map.get(s);
 	}
 	
+	/**
+	 * This method returns the definition of a materialized view.
+	 * @param s the name of the view.
+	 * @return the definition of the view, null if the view does not exist.
+	 */
+	public ViewDefinition getView(String s) {
+		return view_map.get(s);
+	}
+	
+	/**
+	 * This method returns all the materialized views.
+	 * @return the map with the name of the view as the key.
+	 */
+	public Map<String, ViewDefinition> getViews() {
+		return view_map;
+	}
+	
+	/**
+	 * This method returns all the indexes.
+	 * @return the map with the name of the index as the key.
+	 */
+	public Map<String, IndexDefinition> getIndexes() {
+		return index_map;
+	}
+	
+	/**
+	 * This method returns the indexes of a table.
+	 * @param s the table name.
+	 * @return the list of indexes built on the table.
+	 */
+	public List<IndexDefinition> getIndexes(String s) {
+		List<IndexDefinition> result = new ArrayList<>();
+		for(IndexDefinition index : index_map.values())
+			if(index.getTable().equals(s))
+				result.add(index);
+		return result;
+	}
+	
+	/**
+	 * This method returns the attributes of a table that get the Bloom
+	 * filters of the pages, which are the keys of its "BLOOM" indexes.
+	 * @param s the table name.
+	 * @return the list of attributes, such as "S.A".
+	 */
+	public List<String> getFilterColumns(String s) {
+		List<String> result = new ArrayList<>();
+		for(IndexDefinition index : getIndexes(s))
+			if(index.isBloom())
+				for(String str : index.getKeys())
+					if(!result.contains(s + "." + str))
+						result.add(s + "." + str);
+		return result;
+	}
+	
+	/**
+	 * This method returns the location of the file of an index.
+	 * @param s the name of the index.
+	 * @return the file location of the index.
+	 */
+	public String getIndexLocation(String s) {
+		return Main.getInput() + base + s + ".idx";
+	}
+	
+	/**
+	 * This method sets the watermark of a table, so the scan of the table
+	 * only returns the tuples appended after it.
+	 * @param s the table name.
+	 * @param page the data page that holds the last tuple not to be read.
+	 * @param ID the ID of the last tuple not to be read.
+	 */
+	public void setWatermark(String s, int page, long ID) {
+		watermark_map.put(s, new long[]{page, ID});
+	}
+	
+	/**
+	 * This method returns the watermark of a table.
+	 * @param s the table name.
+	 * @return the page and the ID of the watermark, null if the whole
+	 * table should be read.
+	 */
+	public long[] getWatermark(String s) {
+		return watermark_map.get(s);
+	}
+	
+	/**
+	 * This method removes the watermark of a table, so the scans built
+	 * afterwards read the whole table again.
+	 * @param s the table name.
+	 */
+	public void removeWatermark(String s) {
+		watermark_map.remove(s);
+	}
+	
 }
@@ -0,0 +1,282 @@
+package Support;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import PhysicalOperators.ScanOperator;
+import TableElement.Tuple;
+
+/**
+ * This class handles the file of Bloom filters that goes with a binary
+ * file of a table, such as "T.bf" for "T.b". For each data page of the
+ * table, it keeps a Bloom filter of the values of each chosen attribute
+ * in that page, so a scan that looks for a value could skip the pages
+ * whose filters do not have it without reading them. The format of the
+ * file is as follows: the number of attributes and the name of each of
+ * them, then the filters of the first data page, one for each attribute,
+ * followed by the ones of the next page, and so on. All the filters have
+ * the same size, so the filters of a page are found by the number of
+ * the page. The pages after the last one in the file have no filters.
+ * @author messfish
+ *
+ */
+public class FilterFile {
+
+	private static final int NUM_OF_BYTES = 16384;
+	// this is the number of bytes in a single page.
+	private static final int NUM_OF_BITS = 8192;
+	// the number of bits in the filter of an attribute in a page.
+	private static final int NUM_OF_HASHES = 5;
+	// the number of bits set by a value, which fits the values of a page.
+	private List<String> columns; // the names of the attributes.
+	private ByteBuffer buffer; // the content of the file when it is read.
+	private RandomAccessFile output; // the file when it is written.
+	private FileChannel fc;
+	
+	/**
+	 * Constructor: this constructor creates the file of a table with no
+	 * filters, the filters of the pages are added one by one.
+	 * @param table the binary file of the table.
+	 * @param columns the names of the attributes, such as "S.A".
+	 */
+	public FilterFile(File table, List<String> columns) {
+		this.columns = columns;
+		ByteBuffer head = ByteBuffer.allocate(getHeadSize(columns));
+		head.putInt(columns.size());
+		for(String str : columns) {
+			head.put((byte)str.length());
+			for(char c : str.toCharArray())
+				head.put((byte)c);
+		}
+		head.flip();
+		try {
+			output = new RandomAccessFile(getLocation(table), "rw");
+			output.setLength(0);
+			fc = output.getChannel();
+			while(head.hasRemaining())
+				fc.write(head);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Constructor: this constructor reads the file of a table.
+	 * @param table the binary file of the table.
+	 * @param isAppend true means the filters of new pages will be added.
+	 */
+	private FilterFile(File table, boolean isAppend) {
+		columns = new ArrayList<>();
+		try {
+			output = new RandomAccessFile(getLocation(table), isAppend ? "rw" : "r");
+			fc = output.getChannel();
+			buffer = ByteBuffer.allocate((int)fc.size());
+			while(buffer.hasRemaining() && fc.read(buffer, buffer.position()) != -1);
+			if(!isAppend) {
+				output.close();
+				fc = null;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		int numofcolumns = buffer.getInt(0), index = 4;
+		for(int i=0;i<numofcolumns;i++) {
+			int length = buffer.get(index);
+			index++;
+			StringBuilder sb = new StringBuilder();
+			for(int j=0;j<length;j++) {
+				sb.append((char)buffer.get(index));
+				index++;
+			}
+			columns.add(sb.toString());
+		}
+	}
+	
+	/**
+	 * This method returns the location of the file of Bloom filters.
+	 * @param table the binary file of the table.
+	 * @return the file of Bloom filters.
+	 */
+	public static File getLocation(File table) {
+		String path = table.getPath();
+		if(path.endsWith(".b"))
+			path = path.substring(0, path.length() - 2);
+		return new File(path + ".bf");
+	}
+	
+	/**
+	 * This method builds the file of Bloom filters of a table that is
+	 * already written, by scanning the tuples of every data page. The
+	 * deleted tuples are added as well, since they still take their
+	 * places in the pages. The file is removed when there is no attribute.
+	 * @param table the binary file of the table.
+	 * @param columns the names of the attributes, such as "S.A".
+	 */
+	public static void build(File table, List<String> columns) {
+		if(columns.isEmpty()) {
+			getLocation(table).delete();
+			return;
+		}
+		FilterFile result = new FilterFile(table, columns);
+		ScanOperator scan = new ScanOperator(table);
+		int[] index = new int[columns.size()];
+		for(int i=0;i<index.length;i++)
+			index[i] = scan.getSchema().get(columns.get(i)).getIndex();
+		int numofpages = (int)(table.length() / NUM_OF_BYTES) - 1, current = 0;
+		BloomFilter[] page = result.newPage();
+		Tuple tuple = null;
+		while((tuple=scan.getNextRow())!=null) {
+			/* the filters of a page are written when its tuples are done. */
+			for(;current<scan.getPosition()[0];current++) {
+				result.setPage(current, page);
+				page = result.newPage();
+			}
+			for(int i=0;i<index.length;i++)
+				page[i].add(BloomFilter.hash(tuple.getData(index[i])));
+		}
+		scan.close();
+		for(;current<numofpages;current++) {
+			result.setPage(current, page);
+			page = result.newPage();
+		}
+		result.close();
+	}
+	
+	/**
+	 * This method reads the Bloom filters of a table.
+	 * @param table the binary file of the table.
+	 * @return the filters, null when the table has none.
+	 */
+	public static FilterFile read(File table) {
+		if(!getLocation(table).exists())
+			return null;
+		return new FilterFile(table, false);
+	}
+	
+	/**
+	 * This method opens the Bloom filters of a table, so the filters of
+	 * the pages appended to the table could be added.
+	 * @param table the binary file of the table.
+	 * @return the filters, null when the table has none.
+	 */
+	public static FilterFile open(File table) {
+		if(!getLocation(table).exists())
+			return null;
+		return new FilterFile(table, true);
+	}
+	
+	/**
+	 * This is the getter method of the names of the attributes.
+	 * @return the list of attributes with filters.
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+	
+	/**
+	 * This method returns the number of data pages with filters.
+	 * @return the number of pages.
+	 */
+	public int getNumOfPages() {
+		return (buffer.capacity() - getHeadSize(columns)) /
+				(columns.size() * NUM_OF_BITS / 8);
+	}
+	
+	/**
+	 * This method builds the empty filters of a new page.
+	 * @return one filter for each attribute.
+	 */
+	public BloomFilter[] newPage() {
+		BloomFilter[] result = new BloomFilter[columns.size()];
+		for(int i=0;i<result.length;i++)
+			result[i] = new BloomFilter(NUM_OF_BITS, NUM_OF_HASHES);
+		return result;
+	}
+	
+	/**
+	 * This method reads the filters of a page, so the values of the
+	 * tuples added to the page could be added to them.
+	 * @param page the data page.
+	 * @return the filters of the page, one for each attribute.
+	 */
+	public BloomFilter[] getPage(int page) {
+		BloomFilter[] result = new BloomFilter[columns.size()];
+		for(int i=0;i<result.length;i++)
+			result[i] = BloomFilter.read(buffer, getOffset(page, i), NUM_OF_BITS,
+					NUM_OF_HASHES);
+		return result;
+	}
+	
+	/**
+	 * This method writes the filters of a page, the filters of a new page
+	 * are added to the end of the file.
+	 * @param page the data page.
+	 * @param filters the filters of the page, one for each attribute.
+	 */
+	public void setPage(int page, BloomFilter[] filters) {
+		ByteBuffer bytes = ByteBuffer.allocate(filters.length * NUM_OF_BITS / 8);
+		for(BloomFilter filter : filters)
+			filter.write(bytes);
+		bytes.flip();
+		try {
+			long position = getOffset(page, 0);
+			while(bytes.hasRemaining())
+				position += fc.write(bytes, position);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method checks whether a value might be in an attribute of a page.
+	 * @param page the data page.
+	 * @param column the index of the attribute.
+	 * @param hash the hash of the value.
+	 * @return false means no tuple in the page has the value for sure.
+	 */
+	public boolean mightContain(int page, int column, long hash) {
+		return BloomFilter.mightContain(buffer, getOffset(page, column), NUM_OF_BITS,
+				NUM_OF_HASHES, hash);
+	}
+	
+	/**
+	 * This method returns the offset of the filter of an attribute in a page.
+	 * @param page the data page.
+	 * @param column the index of the attribute.
+	 * @return the offset in the file.
+	 */
+	private int getOffset(int page, int column) {
+		return getHeadSize(columns) + (page * columns.size() + column) *
+				NUM_OF_BITS / 8;
+	}
+	
+	/**
+	 * This method closes the file after the filters are added.
+	 */
+	public void close() {
+		try {
+			if(output != null)
+				output.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * This method returns the number of bytes before the filters.
+	 * @param columns the names of the attributes.
+	 * @return the number of bytes.
+	 */
+	private static int getHeadSize(List<String> columns) {
+		int result = 4;
+		for(String str : columns)
+			result += 1 + str.length();
+		return result;
+	}
+
+}
@@ -5,12 +5,18 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import PhysicalOperators.Operator;
+import PhysicalOperators.ScanOperator;
 import SmallSQLServer.Main;
+import TableElement.Tuple;
+import TableElement.DataType;
 
 /**
  * This class is used to convert the human readable file into
@@ -26,6 +32,16 @@ import SmallSQLServer.Main;
  * of each single table, the first one is the order of that table, followed
  * by the data of that table. Notice there should be a byte indicates the 
  * length of the string if the data type is a string.
+ * After the attributes in the header, there is a byte of the number of
+ * attributes the tuples are sorted on, followed by the names of them.
+ * When the tuples are sorted on an attribute, such as the time of a log
+ * table, the operators could use this order instead of sorting again.
+ * The attributes given to the constructor also get a Bloom filter for
+ * each data page, which are kept in a file next to the binary file, so
+ * the scans that look for a value could skip the pages without it.
+ * The tuples of an operator could be converted or appended the same way,
+ * their values are written to the pages directly without a human 
+ * readable file.
  * @author messfish
  *
  */
@@ -35,7 +51,39 @@ public class HumanToBinary {
 	// this is the number of bytes in a single page. Notice I set it
 	// to 16KB, so this is the number of bytes for that size.
 	private TimeConversion convert = new TimeConversion();
-	private StringBuilder sb;
+	private BufferedReader read; // the reader of the human readable file.
+	private Operator source; // the operator that returns the tuples.
+	// the rows are read from the operator when it is not null.
+	private DataType[] row; // the values of the row to be written next.
+	private long rowID; // the ID of the row to be written next.
+	private DataType[] lastdata; // the values of the last line.
+	private boolean[] isSorted;
+	// this array checks whether the lines are sorted on each attribute.
+	private long nextID;
+	// the ID of the next appended line, 0 means the IDs are not changed.
+	private List<String> filtered; // the attributes with Bloom filters.
+	private FilterFile filters; // the file of the Bloom filters.
+	private DataType[] linedata; // the values of the line being written.
+	private int[] filterindex; // the index of each attribute with a filter.
+	private int filterpage; // the data page whose filters are written next.
+	
+	/**
+	 * Constructor: this constructor converts the tables without any
+	 * Bloom filters.
+	 */
+	public HumanToBinary() {
+		this(new ArrayList<>());
+	}
+	
+	/**
+	 * Constructor: this constructor converts the tables with a Bloom
+	 * filter of each page for the given attributes. The attributes that
+	 * are not in a table are ignored.
+	 * @param filtered the attributes with Bloom filters, such as "S.A".
+	 */
+	public HumanToBinary(List<String> filtered) {
+		this.filtered = filtered;
+	}
 	
 	/**
 	 * This method is the main method that convert the human readable
@@ -46,42 +94,257 @@ public class HumanToBinary {
 	 * @return the file in the binary form.
 	 */
 	public File convert(File file, String title) {
-		File result = new File(Main.getTest()+"/conversiontest/"+title+".b");
+		return convert(file, new File(Main.getTest()+"/conversiontest/"+title+".b"));
+	}
+	
+	/**
+	 * This method converts the human readable file into the given binary
+	 * file, which works just like the one above.
+	 * @param file the human readable file.
+	 * @param result the binary file to be written.
+	 * @return the file in the binary form.
+	 */
+	public File convert(File file, File result) {
+		try {
+			read = new BufferedReader(new FileReader(file));
+			convert(read.readLine().split("\\s+"), result);
+			read.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		read = null;
+		return result;
+	}
+	
+	/**
+	 * This method writes the tuples of an operator into the given binary
+	 * file, which works just like the one above. The values of the tuples
+	 * are written to the pages directly.
+	 * @param op the operator that returns the tuples.
+	 * @param head the header line, which is the name and the type of
+	 * each attribute in the order of the tuples, such as "T.A 1 T.B 2".
+	 * @param result the binary file to be written.
+	 * @return the file in the binary form.
+	 */
+	public File convert(Operator op, String head, File result) {
+		source = op;
+		convert(head.split("\\s+"), result);
+		source = null;
+		return result;
+	}
+	
+	/**
+	 * This method writes the rows into the binary file, the rows come
+	 * from the reader or the operator.
+	 * @param array the array that stores the schema of the table.
+	 * @param result the binary file to be written.
+	 */
+	private void convert(String[] array, File result) {
 		List<Integer> typelist = new ArrayList<>();
 		try {
 			FileOutputStream out = new FileOutputStream(result);
 			FileChannel fc = out.getChannel();
-			BufferedReader read = new BufferedReader(new FileReader(file));
-			String str = read.readLine();
-			String[] array = str.split("\\s+");
-			ByteBuffer buffer = writeHead(array, typelist);
+			ByteBuffer buffer = writeHead(array, typelist, new ArrayList<>());
 			buffer.limit(buffer.capacity());
 			buffer.position(0);
 			fc.write(buffer);
-			sb = new StringBuilder();
+			lastdata = new DataType[typelist.size()];
+			linedata = new DataType[typelist.size()];
+			isSorted = new boolean[typelist.size()];
+			Arrays.fill(isSorted, true);
+			List<String> columns = new ArrayList<>();
+			for(int i=0;i<array.length;i+=2)
+				if(filtered.contains(array[i]))
+					columns.add(array[i]);
+			FilterFile.getLocation(result).delete();
+			if(!columns.isEmpty())
+				filters = new FilterFile(result, columns);
+			filterpage = 0;
+			setFilterIndex(array);
+			row = nextRow(typelist);
 			while(true) {
-				buffer = writePage(read, typelist);
+				buffer = writePage(typelist);
 				buffer.limit(buffer.capacity());
 				buffer.position(0);
 				fc.write(buffer);
-				if(sb.length()==0) break;
+				if(row==null) break;
 			}
+			/* the header is written again with the order of the lines. */
+			List<String> order = new ArrayList<>();
+			for(int i=0;i<isSorted.length;i++)
+				if(isSorted[i]) {
+					order.add(array[i * 2]);
+					break;
+				}
+			buffer = writeHead(array, new ArrayList<>(), order);
+			buffer.limit(buffer.capacity());
+			buffer.position(0);
+			fc.write(buffer, 0);
+			out.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		closeFilters();
+	}
+
+	/**
+	 * This method appends the lines of a human readable file to the end
+	 * of the binary file of the same table. The lines get the IDs after 
+	 * the last tuple of the binary file, they fill the free space at the
+	 * end of the last page first and then go to new pages, so the tuples
+	 * in the binary file are never moved, and the tuples after an ID are
+	 * always the ones appended after it. The order in the header is kept
+	 * when the new lines are still in that order. The Bloom filters of 
+	 * the table get the values of the new lines, if the file of the
+	 * filters does not cover all the old pages, it is removed.
+	 * @param file the human readable file, with the same header line.
+	 * @param binary the binary file of the table.
+	 * @return the data page where the new tuples start and the number of
+	 * tuples in that page before them, including the deleted ones.
+	 */
+	public int[] append(File file, File binary) {
+		int[] result = null;
+		try {
+			read = new BufferedReader(new FileReader(file));
+			result = append(read.readLine().split("\\s+"), binary);
 			read.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		read = null;
+		return result;
+	}
+	
+	/**
+	 * This method appends the tuples of an operator to the end of the
+	 * binary file of the same table, which works just like the one above.
+	 * The values of the tuples are written to the pages directly.
+	 * @param op the operator that returns the tuples.
+	 * @param head the header line, which is the name and the type of
+	 * each attribute in the order of the table, such as "T.A 1 T.B 2".
+	 * @param binary the binary file of the table.
+	 * @return the data page where the new tuples start and the number of
+	 * tuples in that page before them, including the deleted ones.
+	 */
+	public int[] append(Operator op, String head, File binary) {
+		source = op;
+		int[] result = append(head.split("\\s+"), binary);
+		source = null;
+		return result;
+	}
+	
+	/**
+	 * This method appends the rows to the end of the binary file, the
+	 * rows come from the reader or the operator.
+	 * @param array the array that stores the schema of the table.
+	 * @param binary the binary file of the table.
+	 * @return the data page where the new tuples start and the number of
+	 * tuples in that page before them, including the deleted ones.
+	 */
+	private int[] append(String[] array, File binary) {
+		List<Integer> typelist = new ArrayList<>();
+		int[] result = null;
+		try {
+			/* the last page is read for the last tuple of the table. */
+			int numofpages = (int)(binary.length() / NUM_OF_BYTES) - 1;
+			int start = Math.max(0, numofpages - 1);
+			ScanOperator scan = new ScanOperator(binary, start, Long.MIN_VALUE);
+			List<String> order = scan.getOrder();
+			Tuple last = null, tuple = null;
+			while((tuple=scan.getNextRow())!=null)
+				last = tuple;
+			scan.close();
+			writeHead(array, typelist, order);
+			lastdata = new DataType[typelist.size()];
+			linedata = new DataType[typelist.size()];
+			isSorted = new boolean[typelist.size()];
+			filters = FilterFile.open(binary);
+			if(filters != null && filters.getNumOfPages() != numofpages) {
+				filters.close();
+				filters = null;
+				FilterFile.getLocation(binary).delete();
+			}
+			setFilterIndex(array);
+			for(int i=0;i<isSorted.length;i++) {
+				isSorted[i] = order.contains(array[i * 2]);
+				if(last != null)
+					lastdata[i] = last.getData(i);
+			}
+			nextID = last == null ? 1 : last.getTupleID(0) + 1;
+			RandomAccessFile out = new RandomAccessFile(binary, "rw");
+			FileChannel fc = out.getChannel();
+			/* the last page is written again with the new lines after
+			 * its tuples, an empty page is read if there is none. */
+			ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+			fc.read(buffer, (long)(start + 1) * NUM_OF_BYTES);
+			result = new int[]{start, buffer.getInt(0)};
+			fc.position((long)(start + 1) * NUM_OF_BYTES);
+			filterpage = start;
+			BloomFilter[] page = filters == null ? null : start < numofpages ?
+					filters.getPage(start) : filters.newPage();
+			row = nextRow(typelist);
+			while(true) {
+				buffer = writePage(typelist, buffer, page);
+				buffer.limit(buffer.capacity());
+				buffer.position(0);
+				fc.write(buffer);
+				if(row==null) break;
+				buffer = ByteBuffer.allocate(NUM_OF_BYTES);
+				page = filters == null ? null : filters.newPage();
+			}
+			List<String> neworder = new ArrayList<>();
+			for(int i=0;i<isSorted.length;i++)
+				if(isSorted[i]) {
+					neworder.add(array[i * 2]);
+					break;
+				}
+			buffer = writeHead(array, new ArrayList<>(), neworder);
+			buffer.limit(buffer.capacity());
+			buffer.position(0);
+			fc.write(buffer, 0);
+			nextID = 0;
 			out.close();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		closeFilters();
 		return result;
 	}
+	
+	/**
+	 * This method finds the index of each attribute in the file of the
+	 * Bloom filters among the attributes of the table.
+	 * @param array the array that stores the schema of the table.
+	 */
+	private void setFilterIndex(String[] array) {
+		if(filters == null)
+			return;
+		List<String> columns = filters.getColumns();
+		filterindex = new int[columns.size()];
+		for(int i=0;i<filterindex.length;i++)
+			filterindex[i] = Arrays.asList(array).indexOf(columns.get(i)) / 2;
+	}
+	
+	/**
+	 * This method closes the file of the Bloom filters after the table
+	 * is written.
+	 */
+	private void closeFilters() {
+		if(filters != null)
+			filters.close();
+		filters = null;
+	}
 
 	/**
 	 * This method is used to write the head of the file. Notice it should
 	 * follow the format that is defined in the class.
 	 * @param array the array that stores the schema of the table.
 	 * @param typelist a list that stores the type of the data.
+	 * @param order the list of attributes the lines are sorted on.
 	 * @return the byte buffer which stores the data.
 	 */
-	private ByteBuffer writeHead(String[] array, List<Integer> typelist) {
+	private ByteBuffer writeHead(String[] array, List<Integer> typelist,
+								 List<String> order) {
 		ByteBuffer result = ByteBuffer.allocate(NUM_OF_BYTES);
 		result.put((byte)1);
 		int index = 1;
@@ -98,76 +361,146 @@ public class HumanToBinary {
 			typelist.add(type);
 			index++;
 		}
+		/* skip the byte that ends the list of attributes. */
+		index++;
+		result.put(index, (byte)order.size());
+		index++;
+		for(String str : order) {
+			result.put(index, (byte)str.length());
+			index++;
+			for(char c : str.toCharArray()) {
+				result.put(index, (byte)c);
+				index++;
+			}
+		}
 		return result;
 	}
 	
 	/**
 	 * This method is mainly used for writing the main page of the binary file.
 	 * Notice it should follow the format defined in the class definition.
-	 * @param read the buffered reader to get lines out from human file.
-	 * @param sb the string that stores a temporary line.
-	 * @param typelist the list that stores the type of the attribute.
+	 * @param typeList the list that stores the type of the attribute.
 	 * @return the byte buffer that contains the data written.
 	 */
-	private ByteBuffer writePage(BufferedReader read, List<Integer> typeList) {
-		ByteBuffer buffer = ByteBuffer.allocate(NUM_OF_BYTES);
-		int numoftuples = 0, index = 4;
-		/* this is the tuple that cannot be written to the former buffer.
-		 * so we need to handle that in advance. */
-		if(sb.length()!=0) {
-			List<Byte> list = writeLine(index, sb.toString(), typeList);
+	private ByteBuffer writePage(List<Integer> typeList) {
+		return writePage(typeList, ByteBuffer.allocate(NUM_OF_BYTES),
+				filters == null ? null : filters.newPage());
+	}
+	
+	/**
+	 * This method writes the rows after the tuples that are already in
+	 * the page, which works just like the one above. The row that could
+	 * not fit into the page is kept, so it is written to the next page.
+	 * @param typeList the list that stores the type of the attribute.
+	 * @param buffer the page, which could have some tuples.
+	 * @param page the filters of the page, null if there is none.
+	 * @return the byte buffer that contains the data written.
+	 */
+	private ByteBuffer writePage(List<Integer> typeList, ByteBuffer buffer,
+								 BloomFilter[] page) {
+		int numoftuples = buffer.getInt(0), index = getEnd(buffer, typeList);
+		while(row != null) {
+			List<Byte> list = writeRow(typeList);
+			/* this indicates the byte buffer cannot handle the row. */
+			if(index + list.size() > NUM_OF_BYTES)
+				break;
 			for(byte data : list) {
 				buffer.put(index, data);
 				index++;
 			}
+			addFilters(page);
 			numoftuples++;
+			row = nextRow(typeList);
 		}
-		String temp = null;
-		try {
-			while((temp=read.readLine())!=null) {
-				sb = new StringBuilder(temp);
-				List<Byte> list = writeLine(index, sb.toString(), typeList);
-				if(list==null) break;
-				for(byte data : list) {
-					buffer.put(index, data);
-					index++;
-				}
-				numoftuples++;
+		buffer.putInt(0, numoftuples);
+		if(page != null)
+			filters.setPage(filterpage, page);
+		filterpage++;
+		return buffer;
+	}
+	
+	/**
+	 * This method fetches the next row to be written, which is the next
+	 * line of the human readable file, or the next tuple of the operator.
+	 * The appended rows take the IDs after the table.
+	 * @param typeList the list that stores the type of the attribute.
+	 * @return the values of the row, null means nothing left.
+	 */
+	private DataType[] nextRow(List<Integer> typeList) {
+		DataType[] result = null;
+		if(source != null) {
+			Tuple tuple = source.getNextTuple();
+			if(tuple == null)
+				return null;
+			result = new DataType[tuple.datasize()];
+			for(int i=0;i<result.length;i++)
+				result[i] = tuple.getData(i);
+			rowID = tuple.getTupleID(0);
+		}else {
+			String line = null;
+			try {
+				line = read.readLine();
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-			/* this means no more tuples left, I get the string builder to a 
-			 * whole new one to let the caller methods know nothing left. */
-			if(temp==null)
-				sb = new StringBuilder();
-			buffer.putInt(numoftuples);
-		} catch (IOException e) {
-			e.printStackTrace();
+			if(line == null)
+				return null;
+			result = parseLine(line, typeList);
 		}
-		return buffer;
+		if(nextID > 0) {
+			rowID = nextID;
+			nextID++;
+		}
+		return result;
 	}
 	
 	/**
-	 * This method is used to write the line in the buffer page. Notice
-	 * it should follow the method in the class definition. If the 
-	 * byte buffer could not handle that line, return null. Note that the 1
-	 * is the long integer, 2 is the string value, 3 is the date value and
-	 * 4 is the time value, 5 is the double integer.
-	 * @param index the starting point of the byte buffer page.
+	 * This method finds the offset right after the last tuple of a page.
+	 * @param buffer the page.
+	 * @param typeList the list that stores the type of the attribute.
+	 * @return the offset of the free space in the page.
+	 */
+	private int getEnd(ByteBuffer buffer, List<Integer> typeList) {
+		int index = 4;
+		for(int i=0;i<buffer.getInt(0);i++) {
+			/* the valid byte and the ID of the tuple. */
+			index += 9;
+			for(int type : typeList)
+				index += type == 2 ? 1 + buffer.get(index) : 8;
+		}
+		return index;
+	}
+	
+	/**
+	 * This method adds the values of the line that is just written to
+	 * the Bloom filters of the page.
+	 * @param page the filters of the page, null if there is none.
+	 */
+	private void addFilters(BloomFilter[] page) {
+		if(page == null)
+			return;
+		for(int i=0;i<page.length;i++)
+			page[i].add(BloomFilter.hash(linedata[filterindex[i]]));
+	}
+	
+	/**
+	 * This method is used to parse a line of the human readable file into
+	 * the ID and the values of the row. Note that the 1 is the long 
+	 * integer, 2 is the string value, 3 is the date value and 4 is the 
+	 * time value, 5 is the double integer. The date and the time values
+	 * are changed to double values.
 	 * @param s the string that needs to be parsed.
 	 * @param typeList the array that stores the type of data.
-	 * @return an array list storing bytes, null means we have an overflow.
+	 * @return the values of the row.
 	 */
-	private List<Byte> writeLine(int index, String s, List<Integer> typeList) {
-		List<Byte> result = new ArrayList<>();
-		/* this byte is used to check whether the tuple is valid. 
-		 * since it is always valid, we append 1 to it. */
-		result.add((byte)1);
+	private DataType[] parseLine(String s, List<Integer> typeList) {
+		DataType[] result = new DataType[typeList.size()];
 		int point = 0, attribute = 0;
-		long first = 0;
+		rowID = 0;
 		while(s.charAt(point)!=' ') {
-			first = first * 10 + (long)(s.charAt(point) - '0');
+			rowID = rowID * 10 + (long)(s.charAt(point) - '0');
 			point++;
 		}
-		storeData(first, result);
 		point++;
 		while(point<s.length()) {
 			int nums = 0;
@@ -177,26 +510,16 @@ public class HumanToBinary {
 			}
 			point++;
 			String fetch = s.substring(point, point+nums);
-			if(typeList.get(attribute)==1) {
-				long data = Long.parseLong(fetch);
-				storeData(data, result);
-			}else if(typeList.get(attribute)==2) {
-				result.add((byte)fetch.length());
-				for(char c : fetch.toCharArray())
-					result.add((byte)c);
-			}else if(typeList.get(attribute)==3) {
-				double change = convert.fromDateToNumber(fetch);
-				long lng = Double.doubleToLongBits(change);
-				storeData(lng, result);
-			}else if(typeList.get(attribute)==4) {
-				double change = convert.fromTimeToNumber(fetch);
-				long lng = Double.doubleToLongBits(change);
-				storeData(lng, result);
-			}else if(typeList.get(attribute)==5) {
-				double data = Double.parseDouble(fetch);
-				long lng = Double.doubleToLongBits(data);
-				storeData(lng, result);
-			}
+			if(typeList.get(attribute)==1)
+				result[attribute] = new DataType(Long.parseLong(fetch));
+			else if(typeList.get(attribute)==2)
+				result[attribute] = new DataType(fetch);
+			else if(typeList.get(attribute)==3)
+				result[attribute] = new DataType(convert.fromDateToNumber(fetch));
+			else if(typeList.get(attribute)==4)
+				result[attribute] = new DataType(convert.fromTimeToNumber(fetch));
+			else if(typeList.get(attribute)==5)
+				result[attribute] = new DataType(Double.parseDouble(fetch));
 			/* this is mainly used for debugging. */
 			else {
 				System.out.println("You get an invalid type!");
@@ -204,12 +527,52 @@ public class HumanToBinary {
 			point += nums + 1;
 			attribute++;
 		}
-		/* this indicates the byte buffer cannot handle the line. */
-		if(index + result.size() > NUM_OF_BYTES)
-			return null;
 		return result;
 	}
 	
+	/**
+	 * This method is used to write the row in the buffer page. Notice
+	 * it should follow the method in the class definition. The long 
+	 * integers and the strings are written as they are, the others are
+	 * written as double values.
+	 * @param typeList the array that stores the type of data.
+	 * @return an array list storing bytes.
+	 */
+	private List<Byte> writeRow(List<Integer> typeList) {
+		List<Byte> result = new ArrayList<>();
+		/* this byte is used to check whether the tuple is valid. 
+		 * since it is always valid, we append 1 to it. */
+		result.add((byte)1);
+		storeData(rowID, result);
+		for(int i=0;i<row.length;i++) {
+			if(typeList.get(i)==1)
+				storeData(row[i].getLong(), result);
+			else if(typeList.get(i)==2) {
+				String fetch = row[i].getString();
+				result.add((byte)fetch.length());
+				for(char c : fetch.toCharArray())
+					result.add((byte)c);
+			}else storeData(Double.doubleToLongBits(row[i].getDouble()), result);
+			checkOrder(i, row[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * This method checks whether the value of an attribute is not smaller
+	 * than the one in the last line. Note a row which could not fit into
+	 * a page is written twice, which compares the same value. The value is
+	 * also kept for the Bloom filters of the page.
+	 * @param attribute the index of the attribute.
+	 * @param data the value of the attribute in this line.
+	 */
+	private void checkOrder(int attribute, DataType data) {
+		linedata[attribute] = data;
+		if(lastdata[attribute] != null && lastdata[attribute].compare(data) > 0)
+			isSorted[attribute] = false;
+		lastdata[attribute] = data;
+	}
+	
 	/**
 	 * This method is used to convert the long integer as bytes and store
 	 * them in the array list of byte integers.
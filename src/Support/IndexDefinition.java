@@ -0,0 +1,166 @@
+package Support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class describes an index of a table: the name of the index, the
+ * table, the attributes in the key and the attributes that are included
+ * in the leaves of the index. The index is a B+ Tree whose entries hold
+ * the values of both, so a query that only reads them could be answered
+ * by the index alone. Notice the format of a line in the index file
+ * should be like this: the name, the table, the attributes in the key
+ * separated by commas, and the included attributes separated by commas,
+ * or a "-" when there is none, followed by the type of the index, all
+ * separated by a space. The type is "BTREE" for the B+ Tree, "HASH"
+ * for the hash index, which only finds the tuples with a given key, and
+ * "BITMAP" for the bitmaps of the values of each attribute in the key,
+ * and "BLOOM" for the Bloom filters of each data page of the table, which
+ * are kept in the file next to the binary file of the table instead of
+ * a file of the index. Only the B+ Tree has included attributes.
+ * @author messfish
+ *
+ */
+public class IndexDefinition {
+
+	private String name; // the name of the index.
+	private String table; // the name of the table.
+	private List<String> keys; // the attributes in the key.
+	private List<String> include; // the attributes only in the leaves.
+	private String type; // the type of the index.
+	public static final String BTREE = "BTREE"; // the type of the B+ Tree.
+	public static final String HASH = "HASH"; // the type of the hash index.
+	public static final String BITMAP = "BITMAP"; // the type of the bitmap index.
+	public static final String BLOOM = "BLOOM"; // the type of the page filters.
+	
+	/**
+	 * Constructor: this constructor builds the definition from the values.
+	 * @param name the name of the index.
+	 * @param table the name of the table.
+	 * @param keys the attributes in the key.
+	 * @param include the attributes only in the leaves.
+	 */
+	public IndexDefinition(String name, String table, List<String> keys,
+						   List<String> include) {
+		this(name, table, keys, include, BTREE);
+	}
+	
+	/**
+	 * Constructor: this constructor builds the definition from the values.
+	 * @param name the name of the index.
+	 * @param table the name of the table.
+	 * @param keys the attributes in the key.
+	 * @param include the attributes only in the leaves.
+	 * @param type the type of the index.
+	 */
+	public IndexDefinition(String name, String table, List<String> keys,
+						   List<String> include, String type) {
+		this.name = name;
+		this.table = table;
+		this.keys = keys;
+		this.include = include;
+		this.type = type;
+	}
+	
+	/**
+	 * Constructor: this constructor parses a line of the index file.
+	 * @param line the line that describes the index.
+	 */
+	public IndexDefinition(String line) {
+		String[] array = line.trim().split("\\s+");
+		name = array[0];
+		table = array[1];
+		keys = Arrays.asList(array[2].split(","));
+		include = new ArrayList<>();
+		if(!array[3].equals("-"))
+			include = Arrays.asList(array[3].split(","));
+		type = array.length > 4 ? array[4] : BTREE;
+	}
+	
+	/**
+	 * This is the getter method of the name of the index.
+	 * @return the name of the index.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * This is the getter method of the table.
+	 * @return the name of the table.
+	 */
+	public String getTable() {
+		return table;
+	}
+	
+	/**
+	 * This is the getter method of the attributes in the key.
+	 * @return the list of attributes in the key.
+	 */
+	public List<String> getKeys() {
+		return keys;
+	}
+	
+	/**
+	 * This is the getter method of the included attributes.
+	 * @return the list of attributes only in the leaves.
+	 */
+	public List<String> getInclude() {
+		return include;
+	}
+	
+	/**
+	 * This is the getter method of the type of the index.
+	 * @return the type of the index.
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	/**
+	 * This method checks whether the index is a hash index.
+	 * @return true for the hash index.
+	 */
+	public boolean isHash() {
+		return type.equals(HASH);
+	}
+	
+	/**
+	 * This method checks whether the index is a bitmap index.
+	 * @return true for the bitmap index.
+	 */
+	public boolean isBitmap() {
+		return type.equals(BITMAP);
+	}
+	
+	/**
+	 * This method checks whether the index is the Bloom filters of the pages.
+	 * @return true for the Bloom filters.
+	 */
+	public boolean isBloom() {
+		return type.equals(BLOOM);
+	}
+	
+	/**
+	 * This method returns all the attributes in the index, the ones in
+	 * the key come first.
+	 * @return the list of attributes in the index.
+	 */
+	public List<String> getAttributes() {
+		List<String> result = new ArrayList<>(keys);
+		result.addAll(include);
+		return result;
+	}
+	
+	/**
+	 * This method returns the line of the index in the index file.
+	 * @return the line that describes the index.
+	 */
+	@Override
+	public String toString() {
+		return name + " " + table + " " + String.join(",", keys) + " " +
+				(include.size() == 0 ? "-" : String.join(",", include)) + " " + type;
+	}
+
+}
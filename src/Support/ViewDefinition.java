@@ -0,0 +1,102 @@
+package Support;
+
+/**
+ * This class describes a materialized view: the name of the view, the
+ * query that builds it, the base table of the query and the watermark
+ * of the base table, which is the last tuple that has been aggregated
+ * into the view. The tuples of the base table are only appended, so
+ * the tuples after the watermark are the ones that come after the last
+ * refresh. Notice the format of a line in the view file should be like
+ * this: the name, the base table, the page and the ID of the watermark,
+ * followed by the query, all separated by a space.
+ * @author messfish
+ *
+ */
+public class ViewDefinition {
+
+	private String name; // the name of the view.
+	private String table; // the name of the base table.
+	private int page; // the data page that holds the last tuple.
+	private long lastID; // the ID of the last tuple in the view.
+	private String query; // the query that builds the view.
+	
+	/**
+	 * Constructor: this constructor builds the definition from the values.
+	 * @param name the name of the view.
+	 * @param table the name of the base table.
+	 * @param page the data page that holds the last tuple.
+	 * @param lastID the ID of the last tuple in the view.
+	 * @param query the query that builds the view.
+	 */
+	public ViewDefinition(String name, String table, int page, long lastID,
+						  String query) {
+		this.name = name;
+		this.table = table;
+		this.page = page;
+		this.lastID = lastID;
+		this.query = query;
+	}
+	
+	/**
+	 * Constructor: this constructor parses a line of the view file.
+	 * @param line the line that describes the view.
+	 */
+	public ViewDefinition(String line) {
+		String[] array = line.split("\\s+", 5);
+		name = array[0];
+		table = array[1];
+		page = Integer.parseInt(array[2]);
+		lastID = Long.parseLong(array[3]);
+		query = array[4];
+	}
+	
+	/**
+	 * This is the getter method of the name of the view.
+	 * @return the name of the view.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * This is the getter method of the base table.
+	 * @return the name of the base table.
+	 */
+	public String getTable() {
+		return table;
+	}
+	
+	/**
+	 * This is the getter method of the page of the watermark.
+	 * @return the data page that holds the last tuple.
+	 */
+	public int getPage() {
+		return page;
+	}
+	
+	/**
+	 * This is the getter method of the ID of the watermark.
+	 * @return the ID of the last tuple in the view.
+	 */
+	public long getLastID() {
+		return lastID;
+	}
+	
+	/**
+	 * This is the getter method of the query.
+	 * @return the query that builds the view.
+	 */
+	public String getQuery() {
+		return query;
+	}
+	
+	/**
+	 * This method returns the line of the view in the view file.
+	 * @return the line that describes the view.
+	 */
+	@Override
+	public String toString() {
+		return name + " " + table + " " + page + " " + lastID + " " + query;
+	}
+
+}
@@ -0,0 +1,352 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import Aggregation.AggregateCall;
+import PhysicalOperators.GroupByOperator;
+import PhysicalOperators.HashAggregateOperator;
+import PhysicalOperators.HashDistinctOperator;
+import PhysicalOperators.Operator;
+import PhysicalOperators.PartialAggregateOperator;
+import PhysicalOperators.ProjectOperator;
+import PhysicalOperators.ScanOperator;
+import PhysicalOperators.StreamAggregateOperator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SmallSQLServer.Main;
+import TableElement.Tuple;
+
+/**
+ * this class is mainly used for testing whether the aggregations and the
+ * queries with the aggregates give the right groups, no matter which
+ * aggregation is chosen for them. The table S has ten values of A,
+ * three values of C and a different value of D for each tuple, the
+ * table U is sorted on A.
+ * @author messfish
+ *
+ */
+public class AggregationTest {
+
+	private static final int NUM_OF_TUPLES = 1000; // the tuples in the table.
+	private File table; // the file of the table S.
+	private File sorted; // the file of the table U.
+	private DatabaseFixture db; // the database of the tables.
+	private int numoffiles; // the files in the temp directory during a read.
+
+	/**
+	 * This method tests the hash aggregation on the groups of two
+	 * attributes, it gives the same groups as the aggregation that sorts
+	 * the tuples first.
+	 */
+	@Test
+	public void testHashAggregation() throws IOException {
+		setUp("aggregationtest");
+		List<String> grouplist = Arrays.asList("S.C", "S.A");
+		List<AggregateCall> calls = calls("SUM(S.D)", "COUNT(*)", "MIN(S.D)",
+				"MAX(S.D)", "AVG(S.D)");
+		List<String> expected = read(new GroupByOperator(scan(), grouplist, calls),
+				grouplist, calls);
+		assertEquals(30, expected.size());
+		List<String> result = read(new HashAggregateOperator(scan(), grouplist, calls),
+				grouplist, calls);
+		assertEquals(expected, result);
+		/* the group of c0 and 0 has the tuples of 0, 30, ..., 990. */
+		assertEquals("c0 0 16830 34 0 990 495.0 ", result.get(0));
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+
+	/**
+	 * This method tests the hash aggregation when the memory grant only
+	 * holds a few groups, so the tuples of the other groups are split
+	 * into the partitions, which are split again when they are still too
+	 * large. The groups are the same as the ones in the memory.
+	 */
+	@Test
+	public void testSpilledHashAggregation() throws IOException {
+		setUp("aggregationtest");
+		List<String> grouplist = Arrays.asList("S.D");
+		List<AggregateCall> calls = calls("COUNT(*)", "SUM(S.A)", "MAX(S.A)");
+		List<String> expected = read(new HashAggregateOperator(scan(), grouplist, calls),
+				grouplist, calls);
+		assertEquals(NUM_OF_TUPLES, expected.size());
+		assertEquals(0, numoffiles);
+		for(long memory : new long[]{2000, 100}) {
+			assertEquals(expected, read(new HashAggregateOperator(scan(),
+					grouplist, calls, memory, 0), grouplist, calls));
+			assertTrue(numoffiles > 0);
+			/* the partitions are deleted once they are aggregated. */
+			assertEquals(0, new File(Main.getTemp()).listFiles().length);
+		}
+		/* the groups of two attributes are split in the same way. */
+		grouplist = Arrays.asList("S.C", "S.A");
+		expected = read(new HashAggregateOperator(scan(), grouplist, calls),
+				grouplist, calls);
+		assertEquals(expected, read(new HashAggregateOperator(scan(),
+				grouplist, calls, 100, 0), grouplist, calls));
+		assertTrue(numoffiles > 0);
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+
+	/**
+	 * This method tests the partial aggregation below the aggregation that
+	 * sorts the tuples, which merges the states of the aggregates. With a
+	 * small memory grant, the sort of the states is spilled as well.
+	 */
+	@Test
+	public void testPartialAggregation() throws IOException {
+		setUp("aggregationtest");
+		List<AggregateCall> calls = calls("SUM(S.D)", "COUNT(*)", "MIN(S.D)",
+				"MAX(S.D)", "AVG(S.D)");
+		long memory = Main.getMemory();
+		for(long grant : new long[]{memory, 200}) {
+			Main.setMemory(grant);
+			try {
+				for(List<String> grouplist : Arrays.asList(Arrays.asList("S.A"),
+						Arrays.asList("S.D"), new ArrayList<String>())) {
+					List<String> expected = read(new HashAggregateOperator(scan(),
+							grouplist, calls), grouplist, calls);
+					List<String> result = read(new GroupByOperator(new PartialAggregateOperator(
+							scan(), grouplist, calls), grouplist, calls), grouplist, calls);
+					assertEquals(expected, result);
+					/* the sorted states are read from the file of the sort. */
+					if(grant == 200 && grouplist.size() > 0)
+						assertTrue(numoffiles > 0);
+					if(grouplist.size() == 0)
+						assertEquals("499500 1000 0 999 499.5 ", result.get(0));
+					else if(grouplist.get(0).equals("S.A"))
+						assertEquals("3 49800 100 3 993 498.0 ", result.get(3));
+					/* the sorted states are deleted when the sort is closed. */
+					assertEquals(0, new File(Main.getTemp()).listFiles().length);
+				}
+			} finally {
+				Main.setMemory(memory);
+			}
+		}
+	}
+
+	/**
+	 * This method tests the hash distinct on the attributes A and C, which
+	 * are not sorted. When the memory grant only holds a few tuples, the
+	 * others are split into the partitions, and the tuples are the same.
+	 */
+	@Test
+	public void testHashDistinct() throws IOException {
+		setUp("aggregationtest");
+		List<String> attributes = Arrays.asList("S.A", "S.C");
+		List<AggregateCall> calls = calls();
+		List<String> expected = new ArrayList<>();
+		for(int i=0;i<30;i++)
+			expected.add(i % 10 + " c" + i % 3 + " ");
+		Collections.sort(expected);
+		assertEquals(expected, read(new HashDistinctOperator(project()), attributes, calls));
+		assertEquals(0, numoffiles);
+		for(long memory : new long[]{200, 0}) {
+			assertEquals(expected, read(new HashDistinctOperator(project(), memory, 0),
+					attributes, calls));
+			assertTrue(numoffiles > 0);
+			/* the partitions are deleted once their tuples are returned. */
+			assertEquals(0, new File(Main.getTemp()).listFiles().length);
+		}
+	}
+
+	/**
+	 * This method tests the aggregation on the table U, which is sorted
+	 * on A, so the groups are streamed from the scan without any sort,
+	 * and no file is written in the temp directory.
+	 */
+	@Test
+	public void testStreamAggregation() throws IOException {
+		setUp("aggregationtest");
+		Operator scan = new ScanOperator(sorted);
+		assertEquals("U.A", scan.getOrder().get(0));
+		List<String> grouplist = Arrays.asList("U.A");
+		List<AggregateCall> calls = calls("COUNT(*)", "SUM(U.D)", "MIN(U.D)");
+		List<String> result = read(new StreamAggregateOperator(scan, grouplist, calls),
+				grouplist, calls);
+		assertEquals(0, numoffiles);
+		assertEquals(10, result.size());
+		for(int i=0;i<10;i++)
+			assertEquals(i + " 100 " + (10000 * i + 4950) + " " + 100 * i + " ", result.get(i));
+		assertEquals(result, read(new HashAggregateOperator(new ScanOperator(sorted),
+				grouplist, calls), grouplist, calls));
+	}
+
+	/**
+	 * This method tests the query with two COUNT(DISTINCT) of different
+	 * attributes, only one of them could be sorted after the group.
+	 */
+	@Test
+	public void testDistinctCounts() throws IOException {
+		setUp("aggregationtest");
+		List<String> result = db.fetch("SELECT S.A , COUNT ( DISTINCT S.D ) AS X , "
+				+ "COUNT ( DISTINCT S.C ) AS Y FROM S GROUP BY S.A");
+		assertEquals(10, result.size());
+		for(int i=0;i<10;i++)
+			assertEquals(i + " 100 3", result.get(i));
+		result = db.fetch("SELECT S.C , COUNT ( DISTINCT S.A ) AS X , "
+				+ "COUNT ( DISTINCT S.D ) AS Y , COUNT ( * ) AS Z FROM S GROUP BY S.C");
+		assertEquals(3, result.size());
+		assertEquals("c0 10 334 334", result.get(0));
+		assertEquals("c1 10 333 333", result.get(1));
+		assertEquals("c2 10 333 333", result.get(2));
+		/* the sorted files of the groups are deleted after the queries. */
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+
+	/**
+	 * This method tests the aggregates without a "GROUP BY" when no tuple
+	 * satisfies the where expression, which still give a single group.
+	 * The count from the bitmap index, the stream aggregation and the sort
+	 * for COUNT(DISTINCT) are all checked.
+	 */
+	@Test
+	public void testEmptyInput() throws IOException {
+		setUp("aggregationtest");
+		List<String> result = db.fetch("SELECT COUNT ( * ) AS N , SUM ( S.D ) AS T "
+				+ "FROM S WHERE S.D < 0");
+		assertEquals(1, result.size());
+		assertEquals("0 0", result.get(0));
+		result = db.fetch("SELECT COUNT ( DISTINCT S.C ) AS N , MAX ( S.D ) AS M "
+				+ "FROM S WHERE S.D > 5000");
+		assertEquals(1, result.size());
+		assertEquals("0 0", result.get(0));
+		db.fetch("CREATE INDEX SA ON S USING BITMAP ( A )");
+		result = db.fetch("SELECT COUNT ( * ) AS N FROM S WHERE S.A = 42");
+		assertEquals(1, result.size());
+		assertEquals("0", result.get(0));
+		result = db.fetch("SELECT COUNT ( * ) AS N FROM S WHERE S.A = 4");
+		assertEquals("100", result.get(0));
+	}
+
+	/**
+	 * This method tests the approximate aggregates when the memory grant
+	 * only holds a few sketches, so the groups are partially aggregated
+	 * and the sketches are merged from the pieces of their states. The
+	 * result is the same as the one of the hash aggregation.
+	 */
+	@Test
+	public void testPartialSketches() throws IOException {
+		setUp("aggregationtest");
+		String query = "SELECT S.A , APPROX_COUNT_DISTINCT ( S.D ) AS X , "
+				+ "APPROX_MEDIAN ( S.D ) AS M , SUM ( S.D ) AS T FROM S GROUP BY S.A";
+		List<String> expected = db.fetch(query);
+		assertEquals(10, expected.size());
+		assertTrue(expected.get(3).startsWith("3 100 "));
+		long memory = Main.getMemory();
+		Main.setMemory(100000);
+		try {
+			assertEquals(expected, db.fetch(query));
+		} finally {
+			Main.setMemory(memory);
+		}
+	}
+
+	/**
+	 * This method builds the list of the aggregates.
+	 * @param names the names of the aggregates, such as "SUM(S.D)".
+	 * @return the list of the aggregates.
+	 */
+	private List<AggregateCall> calls(String... names) {
+		List<AggregateCall> result = new ArrayList<>();
+		for(String name : names)
+			result.add(new AggregateCall(name));
+		return result;
+	}
+
+	/**
+	 * This method opens the scan of the table S.
+	 * @return the scan of the table.
+	 */
+	private Operator scan() {
+		return new ScanOperator(table);
+	}
+
+	/**
+	 * This method projects the attributes A and C of the table S.
+	 * @return the operator that returns the projected tuples.
+	 */
+	private Operator project() {
+		List<Expression> list = new ArrayList<>();
+		list.add(new ColumnNode("S.A"));
+		list.add(new ColumnNode("S.C"));
+		return new ProjectOperator(scan(), list, Arrays.asList("", ""));
+	}
+
+	/**
+	 * This method reads all the tuples from an operator. The values of
+	 * the group attributes and the aggregates are found in the schema,
+	 * so the other values of the tuples are skipped. The number of files
+	 * in the temp directory while the tuples are read is kept as well.
+	 * The operator is closed at last.
+	 * @param op the operator to be read.
+	 * @param grouplist the list of attributes used for grouping.
+	 * @param calls the list of aggregates.
+	 * @return the sorted list of the tuples, the values of each tuple are
+	 * followed by a space.
+	 */
+	private List<String> read(Operator op, List<String> grouplist,
+							  List<AggregateCall> calls) {
+		List<String> names = new ArrayList<>(grouplist);
+		for(AggregateCall call : calls)
+			names.add(call.getName());
+		List<String> result = new ArrayList<>();
+		numoffiles = new File(Main.getTemp()).list().length;
+		Tuple tuple = null;
+		while((tuple=op.getNextTuple())!=null) {
+			StringBuilder sb = new StringBuilder();
+			for(String name : names)
+				sb.append(tuple.getData(op.getSchema().get(name).getIndex()).print()).append(" ");
+			result.add(sb.toString());
+			numoffiles = Math.max(numoffiles, new File(Main.getTemp()).list().length);
+		}
+		op.close();
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * This method tests the query whose limit stops fetching the tuples
+	 * before the hash distinct reads its partitions. The partitions are
+	 * deleted when the query closes the operators.
+	 */
+	@Test
+	public void testEarlyLimit() throws IOException {
+		setUp("aggregationtest");
+		long memory = Main.getMemory();
+		Main.setMemory(100);
+		try {
+			List<String> result = db.fetch("SELECT DISTINCT S.A , S.D FROM S LIMIT 0 , 5");
+			assertEquals(5, result.size());
+		} finally {
+			Main.setMemory(memory);
+		}
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+	
+	/**
+	 * This method builds the database with the table S and the table U,
+	 * whose tuples are sorted on A with a hundred tuples for each value.
+	 * @param name the name of the directory of the database.
+	 */
+	private void setUp(String name) throws IOException {
+		db = new DatabaseFixture(name, "S A 1 C 2 D 1", "U A 1 D 1");
+		List<String[]> rows = new ArrayList<>();
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(i % 10), "c" + i % 3, String.valueOf(i)});
+		table = db.addTable("S", rows);
+		rows = new ArrayList<>();
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(i / 100), String.valueOf(i)});
+		sorted = db.addTable("U", rows);
+	}
+
+}
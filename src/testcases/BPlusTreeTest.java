@@ -0,0 +1,275 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import BPlusTree.BPlusTree;
+import BPlusTree.TreeCursor;
+import TableElement.DataType;
+
+/**
+ * this class is mainly used for testing whether the B+ Tree finds the
+ * same tuples as a tree map after a lot of random insertions, also 
+ * after the file of the tree is closed and opened again. The deletions
+ * and the insertions from several threads are tested as well, so are
+ * the included attributes read by the cursor.
+ * @author messfish
+ *
+ */
+public class BPlusTreeTest {
+
+	/**
+	 * This method tests the insertion and the search of the B+ Tree.
+	 */
+	@Test
+	public void testInsertAndSearch() {
+		File location = new File(System.getProperty("java.io.tmpdir"), 
+				"bplustreetest.idx");
+		location.delete();
+		BPlusTree tree = new BPlusTree(location.getPath(), new int[]{1, 2});
+		TreeMap<Long, List<int[]>> map = new TreeMap<>();
+		Random random = new Random(7);
+		for(int i=0;i<20000;i++) {
+			long key = random.nextInt(2000);
+			DataType[] array = {new DataType(key), new DataType("name" + key % 7)};
+			int[] value = {i / 100, i % 100};
+			tree.insert(array, value);
+			if(!map.containsKey(key))
+				map.put(key, new ArrayList<>());
+			map.get(key).add(value);
+		}
+		assertTrue(tree.getHeight() > 0);
+		tree.close();
+		tree = new BPlusTree(location.getPath());
+		for(long key=-1;key<=2000;key++) {
+			List<int[]> result = tree.search(new DataType[]{new DataType(key)});
+			if(!map.containsKey(key)) {
+				assertNull(result);
+				continue;
+			}
+			assertEquals(map.get(key).size(), result.size());
+			/* the tuples with the same key are ordered by their position. */
+			for(int i=0;i<result.size();i++)
+				assertArrayEquals(map.get(key).get(i), result.get(i));
+			DataType[] whole = {new DataType(key), new DataType("name" + key % 7)};
+			assertEquals(result.size(), tree.search(whole).size());
+			whole[1] = new DataType("other");
+			assertNull(tree.search(whole));
+		}
+		tree.close();
+		location.delete();
+	}
+	
+	/**
+	 * This method tests the deletion of the B+ Tree, the tree should
+	 * go back to a single leaf after all the keys are deleted.
+	 */
+	@Test
+	public void testDelete() {
+		File location = new File(System.getProperty("java.io.tmpdir"), 
+				"bplustreedelete.idx");
+		location.delete();
+		BPlusTree tree = new BPlusTree(location.getPath(), new int[]{1});
+		List<Integer> list = new ArrayList<>();
+		for(int i=0;i<20000;i++) {
+			tree.insert(new DataType[]{new DataType((long)(i % 1000))}, new int[]{i, 0});
+			list.add(i);
+		}
+		Collections.shuffle(list, new Random(3));
+		for(int i=0;i<list.size();i++) {
+			int number = list.get(i);
+			DataType[] key = {new DataType((long)(number % 1000))};
+			assertTrue(tree.delete(key, new int[]{number, 0}));
+			assertFalse(tree.delete(key, new int[]{number, 0}));
+		}
+		assertEquals(0, tree.getHeight());
+		assertNull(tree.search(new DataType[]{new DataType(5L)}));
+		tree.close();
+		location.delete();
+	}
+	
+	/**
+	 * This method tests the insertions from several threads while other
+	 * threads are searching the tree.
+	 */
+	@Test
+	public void testConcurrentInsert() throws InterruptedException {
+		File location = new File(System.getProperty("java.io.tmpdir"), 
+				"bplustreeconcurrent.idx");
+		location.delete();
+		final BPlusTree tree = new BPlusTree(location.getPath(), new int[]{1});
+		Thread[] threads = new Thread[8];
+		for(int i=0;i<threads.length;i++) {
+			final int ID = i;
+			threads[i] = new Thread(() -> {
+				for(int j=0;j<5000;j++) {
+					long key = (long)j * threads.length + ID;
+					if(ID % 2 == 0)
+						tree.insert(new DataType[]{new DataType(key)}, new int[]{j, ID});
+					else tree.search(new DataType[]{new DataType(key)});
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		for(long key=0;key<5000*threads.length;key++) {
+			List<int[]> result = tree.search(new DataType[]{new DataType(key)});
+			if(key % threads.length % 2 == 0)
+				assertEquals(1, result.size());
+			else assertNull(result);
+		}
+		tree.close();
+		location.delete();
+	}
+
+	/**
+	 * This method tests the deletions and the insertions from several
+	 * threads while other threads are searching the tree. The keys are
+	 * split by their remainder of 4: the first kind is never changed, the
+	 * second kind is deleted, the third kind is inserted and the last kind
+	 * never exists. So a search while the tree changes still knows what
+	 * it could find, which is checked by the searching threads.
+	 */
+	@Test
+	public void testConcurrentDelete() throws InterruptedException {
+		File location = new File(System.getProperty("java.io.tmpdir"), 
+				"bplustreeconcurrentdelete.idx");
+		location.delete();
+		final BPlusTree tree = new BPlusTree(location.getPath(), new int[]{1});
+		final int numofkeys = 40000;
+		for(int key=0;key<numofkeys;key+=4) {
+			tree.insert(new DataType[]{new DataType((long)key)}, new int[]{key, 0});
+			tree.insert(new DataType[]{new DataType((long)key + 1)}, new int[]{key + 1, 0});
+		}
+		final AtomicReference<String> failure = new AtomicReference<>();
+		final AtomicBoolean isDone = new AtomicBoolean();
+		Thread[] writers = new Thread[4];
+		for(int i=0;i<writers.length;i++) {
+			final int ID = i;
+			writers[i] = new Thread(() -> {
+				/* the even threads delete, the odd threads insert, each
+				 * of them handles every second key of its own kind. */
+				for(int key=(ID / 2) * 4;key<numofkeys;key+=8) {
+					if(ID % 2 == 0) {
+						int number = key + 1;
+						if(!tree.delete(new DataType[]{new DataType((long)number)},
+								new int[]{number, 0}))
+							failure.compareAndSet(null, "The key " + number + " is not deleted!");
+					}else {
+						int number = key + 2;
+						tree.insert(new DataType[]{new DataType((long)number)},
+								new int[]{number, 1});
+					}
+				}
+			});
+		}
+		Thread[] readers = new Thread[4];
+		for(int i=0;i<readers.length;i++) {
+			final int ID = i;
+			readers[i] = new Thread(() -> {
+				Random random = new Random(ID);
+				while(!isDone.get()) {
+					int key = random.nextInt(numofkeys);
+					List<int[]> result = tree.search(new DataType[]{new DataType((long)key)});
+					String error = check(key, result, false);
+					if(error != null)
+						failure.compareAndSet(null, error);
+				}
+			});
+		}
+		for(Thread thread : readers)
+			thread.start();
+		for(Thread thread : writers)
+			thread.start();
+		for(Thread thread : writers)
+			thread.join();
+		isDone.set(true);
+		for(Thread thread : readers)
+			thread.join();
+		assertNull(failure.get());
+		for(int key=0;key<numofkeys;key++)
+			assertNull(check(key, tree.search(new DataType[]{new DataType((long)key)}), true));
+		tree.close();
+		location.delete();
+	}
+	
+	/**
+	 * This method checks the result of a search in the test above.
+	 * @param key the key that is searched.
+	 * @param result the positions found by the search.
+	 * @param isDone whether all the changes are done.
+	 * @return the error message, null if the result is right.
+	 */
+	private String check(int key, List<int[]> result, boolean isDone) {
+		int kind = key % 4;
+		boolean exists = kind == 0 || (kind == 1 && !isDone) || kind == 2;
+		boolean required = kind == 0 || (kind == 2 && isDone);
+		if(result == null)
+			return required ? "The key " + key + " is missing!" : null;
+		if(!exists)
+			return "The key " + key + " should not be found!";
+		if(result.size() != 1 || result.get(0)[0] != key ||
+				result.get(0)[1] != (kind == 2 ? 1 : 0))
+			return "The key " + key + " has the wrong positions!";
+		return null;
+	}
+
+	/**
+	 * This method tests the cursor on a tree with included attributes,
+	 * the entries come in the order of the key and the included values.
+	 */
+	@Test
+	public void testCursor() {
+		File location = new File(System.getProperty("java.io.tmpdir"), 
+				"bplustreecursor.idx");
+		location.delete();
+		BPlusTree tree = new BPlusTree(location.getPath(), new int[]{1, 2, 5}, 1);
+		for(int i=0;i<5000;i++) {
+			DataType[] array = {new DataType((long)(i % 50)), 
+					new DataType("name" + (4999 - i) % 3), new DataType(i * 0.5)};
+			tree.insert(array, new int[]{i, 0});
+		}
+		tree.close();
+		tree = new BPlusTree(location.getPath());
+		assertEquals(1, tree.getNumOfKeys());
+		TreeCursor cursor = new TreeCursor(tree, new DataType[]{new DataType(7L)});
+		List<Integer> expected = new ArrayList<>();
+		for(int i=7;i<5000;i+=50)
+			expected.add(i);
+		Collections.sort(expected, (a, b) -> (4999 - a) % 3 != (4999 - b) % 3 ?
+				(4999 - a) % 3 - (4999 - b) % 3 : a - b);
+		for(int i : expected) {
+			assertTrue(cursor.next());
+			DataType[] values = cursor.getValues();
+			assertEquals(7L, values[0].getLong());
+			assertEquals("name" + (4999 - i) % 3, values[1].getString());
+			assertEquals(i * 0.5, values[2].getDouble(), 0);
+			assertArrayEquals(new int[]{i, 0}, cursor.getPosition());
+		}
+		assertFalse(cursor.next());
+		cursor = new TreeCursor(tree, new DataType[0]);
+		long last = -1;
+		int count = 0;
+		while(cursor.next()) {
+			long key = cursor.getValues()[0].getLong();
+			assertTrue(key >= last);
+			last = key;
+			count++;
+		}
+		assertEquals(5000, count);
+		tree.close();
+		location.delete();
+	}
+	
+}
@@ -0,0 +1,162 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import LogicalOperators.CartesianOperators;
+import PhysicalOperators.CartesianOperator;
+import PhysicalOperators.PhysicalVisitor;
+import PhysicalOperators.ScanOperator;
+import SQLParser.PlainSelect;
+import SmallSQLServer.Main;
+import Support.BloomFilter;
+import Support.Catalog;
+import Support.FilterFile;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * this class is mainly used for testing whether the Bloom filter never
+ * misses a value that is added, both in memory and after it is written
+ * to a buffer, and whether it rarely says yes to the values not added.
+ * It also checks the Bloom filters of the pages of a table built by 
+ * "USING BLOOM": the scans skip the pages without the values and the 
+ * join filters skip the tuples without a match.
+ * @author messfish
+ *
+ */
+public class BloomFilterTest {
+
+	private static final int NUM_OF_VALUES = 100000; // the values added.
+	private static final int NUM_OF_TUPLES = 5000; // the tuples in the table S.
+	private DatabaseFixture db; // the database of the tables.
+	
+	/**
+	 * This method tests the answers of the filter.
+	 */
+	@Test
+	public void testFilter() {
+		Random random = new Random(7);
+		BloomFilter filter = new BloomFilter(NUM_OF_VALUES);
+		long[] hashes = new long[NUM_OF_VALUES];
+		for(int i=0;i<NUM_OF_VALUES;i++) {
+			hashes[i] = BloomFilter.hash(new DataType(random.nextLong()));
+			filter.add(hashes[i]);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int)BloomFilter.getSize(NUM_OF_VALUES));
+		filter.write(buffer);
+		assertEquals(0, buffer.remaining());
+		int numofbits = buffer.capacity() * 8;
+		for(long hash : hashes) {
+			assertTrue(filter.mightContain(hash));
+			assertTrue(BloomFilter.mightContain(buffer, 0, numofbits, 7, hash));
+		}
+		int wrong = 0;
+		for(int i=0;i<NUM_OF_VALUES;i++)
+			if(filter.mightContain(BloomFilter.hash(new DataType("x" + i))))
+				wrong++;
+		assertTrue(wrong < NUM_OF_VALUES / 50);
+		/* the numbers equal in the where expression have the same hash. */
+		assertEquals(BloomFilter.hash(new DataType(3L)),
+				BloomFilter.hash(new DataType(3.0)));
+		assertEquals(BloomFilter.hash(new DataType(0.0)),
+				BloomFilter.hash(new DataType(-0.0)));
+	}
+
+	/**
+	 * This method tests the Bloom filters of the pages. The table S is
+	 * sorted on A, so each value of A is in one or two pages, and the
+	 * table T has two values of B to join with.
+	 */
+	@Test
+	public void testPageFilters() throws IOException {
+		setUp("bloomfiltertest");
+		File file = new File(Main.getInput() + "/db/data/S.b");
+		int numofpages = (int)(file.length() / 16384) - 1;
+		/* without the filters, every page is read. The scan is reset at
+		 * the end of the table, which reads the first page again. */
+		int all = scan("SELECT * FROM S WHERE S.A = 3", "S", 3);
+		assertEquals(numofpages + 1, all);
+		db.run("CREATE INDEX SB ON S USING BLOOM ( A )");
+		assertTrue(FilterFile.getLocation(file).exists());
+		assertEquals(2, scan("SELECT * FROM S WHERE S.A = 3", "S", 3));
+		assertEquals(100, db.fetch("SELECT * FROM S WHERE S.A = 3").size());
+		/* the tuples of S that could not be joined are skipped. */
+		PhysicalVisitor pv = visit("SELECT * FROM S , T WHERE S.A = T.B");
+		ScanOperator scan = ((CartesianOperator)pv.getOperator()).getScan("S");
+		int a = pv.getOperator().getSchema().get("S.A").getIndex(),
+			b = pv.getOperator().getSchema().get("T.B").getIndex(), count = 0, joined = 0;
+		Tuple tuple = null;
+		while((tuple=pv.getOperator().getNextTuple())!=null) {
+			count++;
+			if(tuple.getData(a).getLong() == tuple.getData(b).getLong())
+				joined++;
+		}
+		assertEquals(200, joined);
+		assertTrue(count < NUM_OF_TUPLES);
+		assertTrue(scan.getNumOfPagesRead() < numofpages);
+		assertTrue(scan.getNumOfPruned() > 0);
+		assertEquals(200, db.fetch("SELECT * FROM S , T WHERE S.A = T.B").size());
+		/* the appended tuples get the filters of their pages. */
+		db.run("INSERT INTO S VALUES ( 77 , 1 )");
+		assertEquals(1, db.fetch("SELECT * FROM S WHERE S.A = 77").size());
+		assertTrue(scan("SELECT * FROM S WHERE S.A = 77", "S", 77) < all);
+		db.run("DROP INDEX SB");
+		assertFalse(FilterFile.getLocation(file).exists());
+		assertEquals(all, scan("SELECT * FROM S WHERE S.A = 3", "S", 3));
+	}
+	
+	/**
+	 * This method builds the scans of the tables of a query.
+	 * @param query the SQL query.
+	 * @return the physical visitor that holds the operator of the scans.
+	 */
+	private PhysicalVisitor visit(String query) {
+		PhysicalVisitor pv = new PhysicalVisitor(new PlainSelect(query), new Catalog());
+		pv.visit(new CartesianOperators());
+		return pv;
+	}
+	
+	/**
+	 * This method reads the tuples of a table through the scan of a query,
+	 * and checks all the tuples with the value of A are returned.
+	 * @param query the SQL query on a single table.
+	 * @param alias the alias of the table.
+	 * @param value the value of A in the where expression.
+	 * @return the number of data pages that are read.
+	 */
+	private int scan(String query, String alias, long value) {
+		PhysicalVisitor pv = visit(query);
+		ScanOperator scan = ((CartesianOperator)pv.getOperator()).getScan(alias);
+		int count = 0;
+		Tuple tuple = null;
+		while((tuple=pv.getOperator().getNextTuple())!=null)
+			if(tuple.getData(0).getLong() == value)
+				count++;
+		assertEquals(value < 50 ? 100 : 1, count);
+		return scan.getNumOfPagesRead();
+	}
+	
+	/**
+	 * This method builds the database with the tables S and T.
+	 * @param name the name of the directory of the database.
+	 */
+	private void setUp(String name) throws IOException {
+		db = new DatabaseFixture(name, "S A 1 D 1", "T B 1");
+		List<String[]> rows = new ArrayList<>();
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(i / 100), String.valueOf(i)});
+		db.addTable("S", rows);
+		db.addTable("T", Arrays.asList(new String[]{"3"}, new String[]{"7"}));
+	}
+
+}
@@ -0,0 +1,134 @@
+package testcases;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import SmallSQLServer.Main;
+import Support.Catalog;
+import Support.HumanToBinary;
+
+/**
+ * this class is mainly used for building the database of a test case.
+ * It makes the directories of the database in the temp directory of the
+ * system, writes the schema file, turns the tuples of each table into
+ * its binary file and points the input, output and temp directories of
+ * the server to them. The queries run on the database share a catalog,
+ * just like the queries from the same input file, and their result
+ * files are read back as the values of the tuples.
+ * @author messfish
+ *
+ */
+public class DatabaseFixture {
+
+	private File dir; // the directory of the database.
+	private Map<String, String> heads; // the header line of each table.
+	private Catalog catalog; // the catalog shared by the queries.
+	private int index = 1; // the order of the next query.
+
+	/**
+	 * Constructor: this constructor builds the directories of the database,
+	 * the files left by the last run of the test are deleted. Then the
+	 * schema file is written, one line for each table which is the name of
+	 * the table followed by the attributes and their data types.
+	 * @param name the name of the directory of the database.
+	 * @param schema the lines of the schema file.
+	 */
+	public DatabaseFixture(String name, String... schema) throws IOException {
+		dir = new File(System.getProperty("java.io.tmpdir"), name);
+		for(String str : new String[]{"/input/db/data", "/output", "/temp"}) {
+			File sub = new File(dir + str);
+			sub.mkdirs();
+			for(File file : sub.listFiles())
+				file.delete();
+		}
+		new File(dir + "/input/db/views.txt").delete();
+		new File(dir + "/input/db/indexes.txt").delete();
+		Main.setInput(dir + "/input");
+		Main.setOutput(dir + "/output");
+		Main.setTemp(dir + "/temp");
+		heads = new HashMap<>();
+		BufferedWriter write = new BufferedWriter(new FileWriter(dir + "/input/db/schema.txt"));
+		for(String line : schema) {
+			write.write(line + "\n");
+			String[] array = line.split("\\s+");
+			StringBuilder sb = new StringBuilder();
+			for(int i=1;i<array.length;i+=2)
+				sb.append(array[0]).append(".").append(array[i]).append(" ")
+				  .append(array[i + 1]).append(" ");
+			heads.put(array[0], sb.deleteCharAt(sb.length() - 1).toString());
+		}
+		write.close();
+		catalog = new Catalog();
+	}
+
+	/**
+	 * This method writes the tuples of a table into a human readable file
+	 * and turns it into the binary file of the table. The tuples get the
+	 * IDs from one in the order of the list.
+	 * @param table the name of the table in the schema file.
+	 * @param rows the values of each tuple, in the order of the attributes.
+	 * @return the binary file of the table.
+	 */
+	public File addTable(String table, List<String[]> rows) throws IOException {
+		File human = new File(dir + "/temp/" + table);
+		BufferedWriter write = new BufferedWriter(new FileWriter(human));
+		write.write(heads.get(table) + "\n");
+		for(int i=0;i<rows.size();i++) {
+			write.write(String.valueOf(i + 1));
+			for(String value : rows.get(i))
+				write.write(" " + value.length() + "/" + value);
+			write.write("\n");
+		}
+		write.close();
+		File result = new HumanToBinary().convert(human,
+				new File(dir + "/input/db/data/" + table + ".b"));
+		human.delete();
+		return result;
+	}
+
+	/**
+	 * This method runs a query on the database.
+	 * @param query the SQL query.
+	 */
+	public void run(String query) {
+		Main.handleQuery(query, index, catalog);
+		index++;
+	}
+
+	/**
+	 * This method runs a query and reads its result file. The ID and the
+	 * lengths are dropped, so each tuple is turned into its values separated
+	 * by spaces. The tuples are sorted, so they could be compared no matter
+	 * how they are found.
+	 * @param query the SQL query.
+	 * @return the sorted list of the tuples, it is empty when the query
+	 * writes no file, such as the statements which change the database.
+	 */
+	public List<String> fetch(String query) throws IOException {
+		File file = new File(Main.getOutput() + "/" + index);
+		run(query);
+		List<String> result = new ArrayList<>();
+		if(!file.exists())
+			return result;
+		List<String> lines = Files.readAllLines(file.toPath());
+		file.delete();
+		for(int i=1;i<lines.size();i++) {
+			StringBuilder sb = new StringBuilder();
+			String[] array = lines.get(i).split(" ");
+			for(int j=1;j<array.length;j++)
+				sb.append(array[j].substring(array[j].indexOf('/') + 1)).append(" ");
+			result.add(sb.deleteCharAt(sb.length() - 1).toString());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+}
@@ -0,0 +1,197 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import PhysicalOperators.Operator;
+import PhysicalOperators.ScanOperator;
+import PhysicalOperators.SortOperator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SmallSQLServer.Main;
+import Sorting.ExternalSort;
+import Sorting.TempOperator;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * this class is mainly used for testing whether the external sort gives
+ * the tuples of the table in the right order, when the tuples are sorted
+ * by several threads and the runs are merged by several threads, and
+ * when the sort operator spills its tuples to the external sort. The
+ * table R has random values, many of them are duplicated.
+ * @author messfish
+ *
+ */
+public class ExternalSortTest {
+
+	private static final int NUM_OF_TUPLES = 20000; // the tuples in the table.
+
+	/**
+	 * This method tests the sort with a memory grant large enough for
+	 * several sorter threads, each of them writes its own runs, which
+	 * are merged at last. Only the result is left in the temp directory.
+	 */
+	@Test
+	public void testParallelSort() throws IOException {
+		File table = setUp("externalsorttest");
+		List<Expression> orderlist = new ArrayList<>();
+		orderlist.add(new ColumnNode("R.B"));
+		orderlist.add(new ColumnNode("R.A"));
+		check(table, orderlist, new int[]{1, -1}, 8L << 20);
+	}
+
+	/**
+	 * This method tests the sort with the smallest memory grant, so there
+	 * are more runs than the fan-in of the last merge and they are merged
+	 * in several passes. The tuples are sorted on all the attributes, so
+	 * the result is the same no matter how large the memory grant is.
+	 */
+	@Test
+	public void testSmallMemory() throws IOException {
+		File table = setUp("externalsorttest");
+		List<Expression> orderlist = new ArrayList<>();
+		orderlist.add(new ColumnNode("R.C"));
+		orderlist.add(new ColumnNode("R.B"));
+		orderlist.add(new ColumnNode("R.A"));
+		int[] desclist = new int[]{-1, 1, 1};
+		List<String> expected = check(table, orderlist, desclist, 8L << 20);
+		for(long memory : new long[]{0, 50000, 1L << 20})
+			assertEquals(expected, check(table, orderlist, desclist, memory));
+	}
+
+	/**
+	 * This method tests the sort operator whose tuples do not fit into the
+	 * memory grant, so they are handed to the external sort. The tuples
+	 * are the same and in the same order as the ones sorted in memory.
+	 * The sorted file is deleted when the operator is closed.
+	 */
+	@Test
+	public void testSpilledSort() throws IOException {
+		File table = setUp("externalsorttest");
+		List<Expression> orderlist = new ArrayList<>();
+		orderlist.add(new ColumnNode("R.A"));
+		Operator op = new SortOperator(new ScanOperator(table), orderlist,
+				new int[]{1}, 10000);
+		/* the tuples are read from the sorted file. */
+		assertEquals(1, new File(Main.getTemp()).list().length);
+		int count = 0;
+		long last = Long.MIN_VALUE;
+		Tuple tuple = null;
+		while((tuple=op.getNextTuple())!=null) {
+			assertTrue(last <= tuple.getData(0).getLong());
+			last = tuple.getData(0).getLong();
+			count++;
+		}
+		op.close();
+		assertEquals(NUM_OF_TUPLES, count);
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+		orderlist.add(0, new ColumnNode("R.C"));
+		orderlist.add(1, new ColumnNode("R.B"));
+		int[] desclist = new int[]{1, -1, 1};
+		List<String> expected = read(new SortOperator(new ScanOperator(table),
+				orderlist, desclist));
+		assertEquals(expected, read(new SortOperator(new ScanOperator(table),
+				orderlist, desclist, 10000)));
+	}
+
+	/**
+	 * This method sorts the table with the given order and memory grant,
+	 * and checks the tuples from the result are the tuples of the table
+	 * in the order of the values.
+	 * @param table the file of the table.
+	 * @param orderlist the list of attributes used for sorting.
+	 * @param desclist whether each attribute is ascending by 1 or -1.
+	 * @param memory the memory grant of the sort.
+	 * @return the tuples of the result in their order.
+	 */
+	private List<String> check(File table, List<Expression> orderlist, int[] desclist,
+							   long memory) {
+		ScanOperator scan = new ScanOperator(table);
+		int[] indexes = new int[orderlist.size()];
+		for(int i=0;i<indexes.length;i++)
+			indexes[i] = scan.getSchema().get(((ColumnNode)orderlist.get(i))
+					.getWholeColumnName()).getIndex();
+		List<String> expected = new ArrayList<>();
+		Tuple tuple = null;
+		while((tuple=scan.getNextTuple())!=null)
+			expected.add(toString(tuple));
+		scan.reset();
+		ExternalSort ex = new ExternalSort(scan, orderlist, desclist, 1, memory);
+		scan.close();
+		/* the runs are deleted after they are merged. */
+		assertEquals(1, new File(Main.getTemp()).list().length);
+		TempOperator temp = new TempOperator(ex.getResult(), scan.getSchema());
+		List<String> result = new ArrayList<>();
+		Tuple last = null;
+		while((tuple=temp.getNextTuple())!=null) {
+			if(last != null) {
+				int compare = 0;
+				for(int i=0;i<indexes.length&&compare==0;i++)
+					compare = desclist[i] * last.getData(indexes[i])
+						.compare(tuple.getData(indexes[i]));
+				assertTrue(compare <= 0);
+			}
+			result.add(toString(tuple));
+			last = tuple;
+		}
+		temp.delete();
+		List<String> sorted = new ArrayList<>(result);
+		Collections.sort(expected);
+		Collections.sort(sorted);
+		assertEquals(expected, sorted);
+		return result;
+	}
+
+	/**
+	 * This method reads all the tuples from an operator and closes it.
+	 * @param op the operator to be read.
+	 * @return the tuples in their order.
+	 */
+	private List<String> read(Operator op) {
+		List<String> result = new ArrayList<>();
+		Tuple tuple = null;
+		while((tuple=op.getNextTuple())!=null)
+			result.add(toString(tuple));
+		op.close();
+		return result;
+	}
+
+	/**
+	 * This method turns the values of a tuple into a string.
+	 * @param tuple the tuple.
+	 * @return the values separated by spaces.
+	 */
+	private String toString(Tuple tuple) {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<tuple.datasize();i++)
+			sb.append(tuple.getData(i).print()).append(" ");
+		return sb.toString();
+	}
+
+	/**
+	 * This method builds the database with the table R, which has a
+	 * long integer, a string and a double value in each tuple.
+	 * @param name the name of the directory of the database.
+	 * @return the file of the table.
+	 */
+	private File setUp(String name) throws IOException {
+		DatabaseFixture db = new DatabaseFixture(name, "R A 1 B 2 C 5");
+		List<String[]> rows = new ArrayList<>();
+		Random random = new Random(17);
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(random.nextInt(2000) - 1000),
+					"s" + random.nextInt(50),
+					String.valueOf(new DataType((random.nextInt(400) - 200) * 0.25).getDouble())});
+		return db.addTable("R", rows);
+	}
+
+}
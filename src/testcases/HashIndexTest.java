@@ -0,0 +1,92 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import HashIndex.HashIndex;
+import TableElement.DataType;
+
+/**
+ * this class is mainly used for testing whether the hash index finds the
+ * same tuples as a hash map after a lot of random insertions, including
+ * a key that shows up so many times that it needs the overflow pages,
+ * also after the file of the index is closed and opened again and after
+ * half of the entries are deleted.
+ * @author messfish
+ *
+ */
+public class HashIndexTest {
+
+	/**
+	 * This method tests the insertion, the search and the deletion of
+	 * the hash index.
+	 */
+	@Test
+	public void testInsertSearchAndDelete() {
+		File location = new File(System.getProperty("java.io.tmpdir"),
+				"hashindextest.idx");
+		location.delete();
+		HashIndex index = new HashIndex(location.getPath(), new int[]{1, 2});
+		Map<Long, List<int[]>> map = new HashMap<>();
+		Random random = new Random(11);
+		for(int i=0;i<30000;i++) {
+			/* one third of the entries have the same key. */
+			long key = i % 3 == 0 ? 42 : random.nextInt(5000);
+			DataType[] array = {new DataType(key), new DataType("name" + key % 7)};
+			int[] value = {i / 100, i % 100};
+			index.insert(array, value);
+			if(!map.containsKey(key))
+				map.put(key, new ArrayList<>());
+			map.get(key).add(value);
+		}
+		assertTrue(index.getDepth() > 0);
+		index.close();
+		index = new HashIndex(location.getPath());
+		check(index, map);
+		for(Map.Entry<Long, List<int[]>> entry : map.entrySet()) {
+			long key = entry.getKey();
+			DataType[] array = {new DataType(key), new DataType("name" + key % 7)};
+			List<int[]> list = entry.getValue();
+			for(int i=list.size()-1;i>=0;i-=2)
+				assertTrue(index.delete(array, list.remove(i)));
+		}
+		assertFalse(index.delete(new DataType[]{new DataType(-1L),
+				new DataType("name-1")}, new int[]{0, 0}));
+		index.close();
+		index = new HashIndex(location.getPath());
+		check(index, map);
+		index.close();
+		location.delete();
+	}
+	
+	/**
+	 * This method checks the index returns the same positions as the map
+	 * for every key.
+	 * @param index the hash index to be checked.
+	 * @param map the map of the keys and their positions.
+	 */
+	private void check(HashIndex index, Map<Long, List<int[]>> map) {
+		for(long key=-1;key<=5000;key++) {
+			List<int[]> result = index.search(new DataType[]{new DataType(key),
+					new DataType("name" + key % 7)});
+			if(!map.containsKey(key) || map.get(key).size() == 0) {
+				assertNull(result);
+				continue;
+			}
+			List<int[]> expect = map.get(key);
+			assertEquals(expect.size(), result.size());
+			/* the positions come in the order of the table. */
+			for(int i=0;i<result.size();i++)
+				assertArrayEquals(expect.get(i), result.get(i));
+		}
+	}
+
+}
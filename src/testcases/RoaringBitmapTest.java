@@ -0,0 +1,89 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import BitmapIndex.RoaringBitmap;
+
+/**
+ * this class is mainly used for testing whether the bitmap gives the
+ * same numbers as a bit set after "AND", "OR" and "NOT", both for the
+ * sparse groups kept in the arrays and the dense ones kept in the bit
+ * sets, also after the bitmap is written and read again.
+ * @author messfish
+ *
+ */
+public class RoaringBitmapTest {
+
+	private static final int LIMIT = 300000; // the range of the numbers.
+	
+	/**
+	 * This method tests the operations of the bitmaps.
+	 */
+	@Test
+	public void testOperations() {
+		Random random = new Random(3);
+		/* the density changes with the group, so both forms are used. */
+		BitSet set1 = new BitSet(), set2 = new BitSet();
+		RoaringBitmap bitmap1 = new RoaringBitmap(), bitmap2 = new RoaringBitmap();
+		for(int i=0;i<LIMIT;i++) {
+			int group = i >>> 16;
+			if(random.nextInt(100) < 2 + group * 20) {
+				set1.set(i);
+				bitmap1.add(i);
+			}
+			if(random.nextInt(100) < 90 - group * 20) {
+				set2.set(i);
+				bitmap2.add(i);
+			}
+		}
+		/* the numbers added out of order go to the right place. */
+		for(int i=0;i<1000;i++) {
+			int value = random.nextInt(LIMIT);
+			set1.set(value);
+			bitmap1.add(value);
+		}
+		check(set1, bitmap1);
+		check(set2, bitmap2);
+		BitSet and = (BitSet)set1.clone();
+		and.and(set2);
+		check(and, bitmap1.and(bitmap2));
+		BitSet or = (BitSet)set1.clone();
+		or.or(set2);
+		check(or, bitmap1.or(bitmap2));
+		BitSet andnot = (BitSet)set1.clone();
+		andnot.andNot(set2);
+		check(andnot, bitmap1.andNot(bitmap2));
+		BitSet not = new BitSet();
+		not.set(0, LIMIT);
+		not.andNot(set2);
+		check(not, RoaringBitmap.range(LIMIT).andNot(bitmap2));
+		ByteBuffer buffer = ByteBuffer.allocate(bitmap1.getSizeInBytes());
+		bitmap1.write(buffer);
+		assertEquals(0, buffer.remaining());
+		buffer.flip();
+		check(set1, RoaringBitmap.read(buffer));
+		check(new BitSet(), bitmap1.and(new RoaringBitmap()));
+	}
+	
+	/**
+	 * This method checks the bitmap holds the same numbers as the bit set.
+	 * @param set the bit set.
+	 * @param bitmap the bitmap to be checked.
+	 */
+	private void check(BitSet set, RoaringBitmap bitmap) {
+		assertEquals(set.cardinality(), bitmap.getCardinality());
+		int value = bitmap.next(0);
+		for(int i=set.nextSetBit(0);i>=0;i=set.nextSetBit(i+1)) {
+			assertEquals(i, value);
+			value = bitmap.next(value + 1);
+		}
+		assertEquals(-1, value);
+	}
+
+}
@@ -32,6 +32,7 @@ import SQLExpression.StringValue;
 import SQLExpression.Subselect;
 import SQLParser.CheckEquals;
 import SQLParser.PlainSelect;
+import SQLParser.WindowFunction;
 import TableElement.Table;
 
 /**
@@ -493,4 +494,69 @@ public class SQLPsrserFullTest {
 		assertTrue(check.checkEqual(right.isDescList(), null));
 	}
 	
+	/**
+	 * This method is used to test the "TOP" and the "LIMIT" language
+	 * with a single number.
+	 */
+	@Test
+	public void testLimit() {
+		String query = "SELECT DISTINCT TOP 5 S.A , S.B FROM Sailors AS S "
+					   + "ORDER BY S.A DESC";
+		PlainSelect plain = new PlainSelect(query);
+		CheckEquals check = new CheckEquals();
+		List<Expression> list = new ArrayList<>();
+		list.add(new ColumnNode("S.A"));
+		list.add(new ColumnNode("S.B"));
+		assertTrue(check.isEqual(plain.getSelectElements(), list));
+		assertTrue(plain.isDistinct());
+		assertTrue(plain.isLimited());
+		assertEquals(0, plain.getStartPoint());
+		assertEquals(5, plain.getEndPoint());
+		assertTrue(check.checkEqual(plain.isDescList(), new int[]{-1}));
+		query = "SELECT S.A FROM Sailors AS S WHERE S.A > 3 LIMIT 20";
+		plain = new PlainSelect(query);
+		Expression e1 = new GreaterThan(new ColumnNode("S.A"), new LongValue(3));
+		assertTrue(check.checkEqual(plain.getWhereExpression(), e1));
+		assertTrue(plain.isLimited());
+		assertEquals(0, plain.getStartPoint());
+		assertEquals(20, plain.getEndPoint());
+		plain = new PlainSelect("SELECT * FROM Sailors");
+		assertFalse(plain.isLimited());
+	}
+	
+	/**
+	 * This method is used to test the window functions with the "OVER"
+	 * language, including the partition, the order and the frame.
+	 */
+	@Test
+	public void testWindow() {
+		String query = "SELECT S.A , SUM ( S.B ) OVER ( PARTITION BY S.A "
+				+ "ORDER BY S.C DESC ROWS BETWEEN 2 PRECEDING AND CURRENT ROW ) "
+				+ "AS SB , LAG ( S.B , 2 , 0 ) OVER ( ORDER BY S.C ) "
+				+ "FROM Sailors AS S";
+		PlainSelect plain = new PlainSelect(query);
+		CheckEquals check = new CheckEquals();
+		List<Expression> list = new ArrayList<>();
+		list.add(new ColumnNode("S.A"));
+		list.add(new ColumnNode("SUM(S.B)#1"));
+		list.add(new ColumnNode("LAG(S.B,2,0)#2"));
+		assertTrue(check.isEqual(plain.getSelectElements(), list));
+		assertEquals("SB", plain.getSelectAlias().get(1));
+		assertEquals("", plain.getSelectAlias().get(2));
+		WindowFunction sum = plain.getWindowFunctions().get(0);
+		assertEquals("SUM", sum.getFunction());
+		assertEquals("S.B", sum.getAttribute());
+		assertEquals("S.A", sum.getPartitionList().get(0));
+		assertTrue(check.checkEqual(sum.getDescList(), new int[]{-1}));
+		assertTrue(sum.isRows());
+		assertEquals(-2.0, sum.getStart(), 0);
+		assertEquals(0.0, sum.getEnd(), 0);
+		WindowFunction lag = plain.getWindowFunctions().get(1);
+		assertEquals(2, lag.getOffset());
+		assertEquals("0", lag.getDefaultValue());
+		assertEquals(0, lag.getPartitionList().size());
+		assertFalse(lag.isRows());
+		assertEquals(Double.NEGATIVE_INFINITY, lag.getStart(), 0);
+	}
+	
 }
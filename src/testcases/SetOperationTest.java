@@ -0,0 +1,224 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import PhysicalOperators.HashSetOperator;
+import PhysicalOperators.Operator;
+import PhysicalOperators.ScanOperator;
+import PhysicalOperators.SortOperator;
+import PhysicalOperators.SortedSetOperator;
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import SmallSQLServer.Main;
+import Support.Catalog;
+import TableElement.Tuple;
+
+/**
+ * this class is mainly used for testing whether the set operations give
+ * the right tuples for all the six kinds of them, no matter whether they
+ * are done by hashing, by hashing with the partitions on disk, or by
+ * merging the sorted tuples. The tables S and T both have duplicated
+ * tuples, and only some of them are in both tables. The expected tuples
+ * are counted in the test from the same values.
+ * @author messfish
+ *
+ */
+public class SetOperationTest {
+
+	private static final String[] TYPES = {"UNION", "UNION ALL", "INTERSECT",
+			"INTERSECT ALL", "EXCEPT", "EXCEPT ALL"};
+	// the set operations, the type of each one is its index plus one.
+	private static final int NUM_OF_LEFT = 800; // the tuples in S.
+	private static final int NUM_OF_RIGHT = 500; // the tuples in T.
+	private DatabaseFixture db; // the database of the tables.
+
+	/**
+	 * This method tests the queries of the six set operations, which are
+	 * done by hashing in the memory.
+	 */
+	@Test
+	public void testQueries() throws IOException {
+		setUp("setoperationtest");
+		for(int i=0;i<TYPES.length;i++)
+			assertEquals(TYPES[i], expected(i + 1), db.fetch(query(TYPES[i])));
+	}
+
+	/**
+	 * This method tests the six set operations when the memory grant only
+	 * holds a few tuples, so the tuples are split into the partitions on
+	 * disk. The partitions are all deleted after the queries.
+	 */
+	@Test
+	public void testSpilledQueries() throws IOException {
+		setUp("setoperationtest");
+		long memory = Main.getMemory();
+		Main.setMemory(2000);
+		try {
+			for(int i=0;i<TYPES.length;i++)
+				assertEquals(TYPES[i], expected(i + 1), db.fetch(query(TYPES[i])));
+			/* the partitions are really written when they are read. */
+			for(int type=1;type<=TYPES.length;type++) {
+				if(type == 2) continue;
+				Operator op = new HashSetOperator(scan("S"), scan("T"), type);
+				List<String> result = new ArrayList<>();
+				int numoffiles = 0;
+				Tuple tuple = null;
+				while((tuple=op.getNextTuple())!=null) {
+					result.add(tuple.getData(0).getLong() + " " + tuple.getData(1).getString());
+					numoffiles = Math.max(numoffiles, new File(Main.getTemp()).list().length);
+				}
+				op.close();
+				Collections.sort(result);
+				assertEquals(TYPES[type - 1], expected(type), result);
+				assertTrue(numoffiles > 0);
+			}
+		} finally {
+			Main.setMemory(memory);
+		}
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+
+	/**
+	 * This method tests the set operations that merge the tuples of the
+	 * two tables, which are sorted on all the attributes first.
+	 */
+	@Test
+	public void testSortedInputs() throws IOException {
+		setUp("setoperationtest");
+		for(int type=1;type<=TYPES.length;type++) {
+			if(type == 2) continue;
+			Operator op = new SortedSetOperator(sort("S"), sort("T"), type, new int[]{0, 1});
+			List<String> result = new ArrayList<>();
+			Tuple tuple = null;
+			while((tuple=op.getNextTuple())!=null)
+				result.add(tuple.getData(0).getLong() + " " + tuple.getData(1).getString());
+			op.close();
+			/* the tuples come out in the order of the sort. */
+			List<String> sorted = new ArrayList<>(result);
+			Collections.sort(sorted, (a, b) -> Long.parseLong(a.split(" ")[0]) !=
+					Long.parseLong(b.split(" ")[0]) ? Long.compare(Long.parseLong(
+					a.split(" ")[0]), Long.parseLong(b.split(" ")[0])) : a.compareTo(b));
+			assertEquals(sorted, result);
+			Collections.sort(result);
+			assertEquals(TYPES[type - 1], expected(type), result);
+		}
+	}
+
+	/**
+	 * This method builds the query of a set operation on the two tables.
+	 * @param type the name of the set operation.
+	 * @return the SQL query.
+	 */
+	private String query(String type) {
+		return "( SELECT S.A , S.B FROM S ) " + type + " ( SELECT T.A , T.B FROM T )";
+	}
+
+	/**
+	 * This method counts the tuples a set operation should return. The
+	 * tuples of both tables are counted, the operations without "ALL"
+	 * return each tuple at most once.
+	 * @param type the type of the set operation.
+	 * @return the sorted list of the tuples.
+	 */
+	private List<String> expected(int type) {
+		Map<String, Integer> left = count(getLeft()), right = count(getRight());
+		Map<String, Integer> all = new HashMap<>(left);
+		for(String str : right.keySet())
+			all.putIfAbsent(str, 0);
+		List<String> result = new ArrayList<>();
+		for(Map.Entry<String, Integer> entry : all.entrySet()) {
+			int l = entry.getValue(), r = right.getOrDefault(entry.getKey(), 0), n = 0;
+			if(type == 1) n = 1;
+			else if(type == 2) n = l + r;
+			else if(type == 3) n = l > 0 && r > 0 ? 1 : 0;
+			else if(type == 4) n = Math.min(l, r);
+			else if(type == 5) n = l > 0 && r == 0 ? 1 : 0;
+			else n = Math.max(0, l - r);
+			for(int i=0;i<n;i++)
+				result.add(entry.getKey());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * This method counts the copies of each tuple.
+	 * @param list the list of the tuples.
+	 * @return the map from the tuple to the number of its copies.
+	 */
+	private Map<String, Integer> count(List<String> list) {
+		Map<String, Integer> result = new HashMap<>();
+		for(String str : list)
+			result.put(str, result.getOrDefault(str, 0) + 1);
+		return result;
+	}
+
+	/**
+	 * This method returns the tuples of the table S.
+	 * @return the list of the tuples, such as "3 b1".
+	 */
+	private List<String> getLeft() {
+		List<String> result = new ArrayList<>();
+		for(int i=0;i<NUM_OF_LEFT;i++)
+			result.add(i % 40 + " b" + i % 3);
+		return result;
+	}
+
+	/**
+	 * This method returns the tuples of the table T, which share the
+	 * values from 20 to 39 of A and the first two values of B with S.
+	 * @return the list of the tuples, such as "3 b1".
+	 */
+	private List<String> getRight() {
+		List<String> result = new ArrayList<>();
+		for(int i=0;i<NUM_OF_RIGHT;i++)
+			result.add((20 + i % 50) + " b" + i % 2);
+		return result;
+	}
+
+	/**
+	 * This method opens the scan of a table.
+	 * @param table the name of the table.
+	 * @return the scan of the table.
+	 */
+	private Operator scan(String table) {
+		return new ScanOperator(new File(new Catalog().getFileLocation(table)));
+	}
+
+	/**
+	 * This method sorts a table on both of its attributes.
+	 * @param table the name of the table.
+	 * @return the operator that returns the sorted tuples.
+	 */
+	private Operator sort(String table) {
+		List<Expression> orderlist = new ArrayList<>();
+		orderlist.add(new ColumnNode(table + ".A"));
+		orderlist.add(new ColumnNode(table + ".B"));
+		return new SortOperator(scan(table), orderlist, new int[]{1, 1});
+	}
+
+	/**
+	 * This method builds the database with the tables S and T.
+	 * @param name the name of the directory of the database.
+	 */
+	private void setUp(String name) throws IOException {
+		db = new DatabaseFixture(name, "S A 1 B 2", "T A 1 B 2");
+		for(String table : new String[]{"S", "T"}) {
+			List<String[]> rows = new ArrayList<>();
+			for(String str : table.equals("S") ? getLeft() : getRight())
+				rows.add(str.split(" "));
+			db.addTable(table, rows);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import Aggregation.HyperLogLog;
+import Aggregation.QuantileSketch;
+import TableElement.DataType;
+
+/**
+ * this class is mainly used for testing whether the sketches of the 
+ * approximate aggregates stay within the error they promise, both on
+ * their own and after they are merged, and within their largest size.
+ * @author messfish
+ *
+ */
+public class SketchTest {
+
+	/**
+	 * This method tests the count of the HyperLogLog sketch.
+	 */
+	@Test
+	public void testHyperLogLog() {
+		HyperLogLog small = new HyperLogLog();
+		for(int i=0;i<1000;i++)
+			small.add(HyperLogLog.hash(new DataType((long)(i % 500))));
+		assertEquals(500, small.estimate());
+		HyperLogLog left = new HyperLogLog(), right = new HyperLogLog();
+		for(int i=0;i<100000;i++) {
+			left.add(HyperLogLog.hash(new DataType((long)i)));
+			right.add(HyperLogLog.hash(new DataType((long)(i + 50000))));
+		}
+		assertEquals(100000, left.estimate(), 3000);
+		left.merge(right);
+		left.merge(small);
+		assertEquals(150000, left.estimate(), 4500);
+		assertTrue(left.getSize() <= HyperLogLog.getMaxSize());
+	}
+	
+	/**
+	 * This method tests the quantiles of the KLL sketch.
+	 */
+	@Test
+	public void testQuantileSketch() {
+		QuantileSketch left = new QuantileSketch(), right = new QuantileSketch();
+		for(int i=0;i<100000;i++) {
+			left.add(i);
+			right.add(i + 100000);
+		}
+		assertEquals(50000, left.getQuantile(0.5), 2000);
+		assertEquals(90000, left.getQuantile(0.9), 2000);
+		left.merge(right);
+		assertEquals(100000, left.getQuantile(0.5), 4000);
+		assertEquals(20000, left.getQuantile(0.1), 4000);
+		assertTrue(left.getSize() <= QuantileSketch.getMaxSize());
+	}
+
+	/**
+	 * This method tests the sketches written in pieces, which give the
+	 * same answers after the pieces are merged into an empty sketch.
+	 */
+	@Test
+	public void testPieces() {
+		HyperLogLog small = new HyperLogLog(), large = new HyperLogLog();
+		QuantileSketch quantile = new QuantileSketch();
+		for(int i=0;i<100000;i++) {
+			if(i < 1000)
+				small.add(HyperLogLog.hash(new DataType((long)i)));
+			large.add(HyperLogLog.hash(new DataType((long)i)));
+			quantile.add(i);
+		}
+		for(HyperLogLog sketch : new HyperLogLog[]{small, large}) {
+			HyperLogLog merged = new HyperLogLog();
+			long[] values = new long[128];
+			/* the pieces after the last one change nothing. */
+			for(int i=0;i<=sketch.getNumOfPieces(128);i++)
+				merged.mergePiece(sketch.writePiece(i, values), values);
+			assertEquals(sketch.estimate(), merged.estimate());
+		}
+		assertEquals(1000, small.estimate());
+		QuantileSketch merged = new QuantileSketch();
+		double[] values = new double[128];
+		for(int i=0;i<=quantile.getNumOfPieces(128);i++) {
+			int[] level = quantile.writePiece(i, values);
+			merged.mergePiece(level[0], values, level[1]);
+		}
+		for(double fraction : new double[]{0.1, 0.5, 0.9})
+			assertEquals(quantile.getQuantile(fraction), merged.getQuantile(fraction), 2000);
+	}
+
+}
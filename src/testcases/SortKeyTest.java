@@ -0,0 +1,144 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import SQLExpression.ColumnNode;
+import SQLExpression.Expression;
+import Sorting.SortKey;
+import Support.Mule;
+import TableElement.DataType;
+import TableElement.Tuple;
+
+/**
+ * this class is mainly used for testing whether the normalized keys are
+ * in the same order as the values they are built from, when the keys are
+ * compared byte by byte as unsigned numbers. The order of the values is
+ * the one given by the compare() method of the data type.
+ * @author messfish
+ *
+ */
+public class SortKeyTest {
+
+	/**
+	 * This method tests the long integers, the negative ones and the ones
+	 * whose bytes are larger than 0x7F are checked as well.
+	 */
+	@Test
+	public void testLongs() {
+		List<DataType> list = new ArrayList<>();
+		for(long value : new long[]{Long.MIN_VALUE, Long.MIN_VALUE + 1, -65536,
+				-256, -255, -129, -128, -1, 0, 1, 127, 128, 255, 256, 65535,
+				Long.MAX_VALUE - 1, Long.MAX_VALUE})
+			list.add(new DataType(value));
+		Random random = new Random(5);
+		for(int i=0;i<200;i++)
+			list.add(new DataType(random.nextLong()));
+		checkOrder(list);
+	}
+
+	/**
+	 * This method tests the double values, the negative ones are stored
+	 * with all the bits flipped, so their order is checked carefully.
+	 */
+	@Test
+	public void testDoubles() {
+		List<DataType> list = new ArrayList<>();
+		for(double value : new double[]{-Double.MAX_VALUE, -1e300, -1024.5,
+				-2, -1.5, -1, -0.75, -Double.MIN_VALUE, 0, Double.MIN_VALUE,
+				0.75, 1, 1.5, 2, 1024.5, 1e300, Double.MAX_VALUE,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY})
+			list.add(new DataType(value));
+		Random random = new Random(11);
+		for(int i=0;i<200;i++)
+			list.add(new DataType((random.nextDouble() - 0.5) * 1e6));
+		checkOrder(list);
+	}
+
+	/**
+	 * This method tests the strings, a prefix comes before the longer
+	 * strings, and the characters that are stored with more than one
+	 * byte are in the order of the characters.
+	 */
+	@Test
+	public void testStrings() {
+		List<DataType> list = new ArrayList<>();
+		for(String value : new String[]{"", "a", "aa", "ab", "abc", "abd",
+				"b", "\u0001", "\u007f", "\u0080", "a\u00fd", "a\u00fe",
+				"a\u00ff", "a\u0100", "a\uffff", "\u00fe", "\u00ff", "\u00ffa",
+				"z", "zz"})
+			list.add(new DataType(value));
+		Random random = new Random(13);
+		for(int i=0;i<200;i++) {
+			char[] array = new char[random.nextInt(4)];
+			for(int j=0;j<array.length;j++)
+				array[j] = random.nextBoolean() ? (char)('a' + random.nextInt(3)) :
+					(char)(0xF0 + random.nextInt(32));
+			list.add(new DataType(new String(array)));
+		}
+		checkOrder(list);
+	}
+
+	/**
+	 * This method tests the keys built by the sort on two attributes,
+	 * the first one descending, the second one ascending. The bytes of
+	 * the descending attribute are inverted, so its order is inverted.
+	 */
+	@Test
+	public void testDescending() {
+		Map<String, Mule> schema = new HashMap<>();
+		schema.put("T.A", new Mule(0, 5));
+		schema.put("T.B", new Mule(1, 2));
+		List<Expression> orderlist = new ArrayList<>();
+		orderlist.add(new ColumnNode("T.A"));
+		orderlist.add(new ColumnNode("T.B"));
+		SortKey sortkey = new SortKey(orderlist, new int[]{-1, 1}, schema);
+		List<Tuple> tuples = new ArrayList<>();
+		for(double a : new double[]{-3.5, -1, 0, 2.25, 1e10})
+			for(String b : new String[]{"", "x", "xy", "y\u00ff"}) {
+				Tuple tuple = new Tuple(2, 1);
+				tuple.setData(0, new DataType(a));
+				tuple.setData(1, new DataType(b));
+				tuples.add(tuple);
+			}
+		for(Tuple tuple1 : tuples)
+			for(Tuple tuple2 : tuples) {
+				int expected = -tuple1.getData(0).compare(tuple2.getData(0));
+				if(expected == 0)
+					expected = tuple1.getData(1).compare(tuple2.getData(1));
+				int result = SortKey.compare(sortkey.build(tuple1), sortkey.build(tuple2));
+				assertEquals(Integer.signum(expected), Integer.signum(result));
+			}
+	}
+
+	/**
+	 * This method checks every pair of values in the list, the sign of
+	 * the comparison of the normalized keys should be the same as the
+	 * one of the values.
+	 * @param list the list of values of the same type.
+	 */
+	private void checkOrder(List<DataType> list) {
+		for(DataType data1 : list)
+			for(DataType data2 : list) {
+				byte[] key1 = SortKey.normalize(new DataType[]{data1});
+				byte[] key2 = SortKey.normalize(new DataType[]{data2});
+				assertEquals(data1.print() + " " + data2.print(),
+						Integer.signum(data1.compare(data2)),
+						Integer.signum(SortKey.compare(key1, key2)));
+			}
+		/* the values could be sorted back by their keys. */
+		List<DataType> sorted = new ArrayList<>(list);
+		sorted.sort((a, b) -> SortKey.compare(SortKey.normalize(new DataType[]{a}),
+				SortKey.normalize(new DataType[]{b})));
+		for(int i=1;i<sorted.size();i++)
+			assertTrue(sorted.get(i - 1).compare(sorted.get(i)) <= 0);
+	}
+
+}
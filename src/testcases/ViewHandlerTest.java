@@ -0,0 +1,84 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import SmallSQLServer.Main;
+
+/**
+ * this class is mainly used for testing whether a query that could be
+ * answered by a materialized view gives the right answer after the base
+ * table is changed, both before the view is refreshed, when the view is
+ * out of date and should not be read, and after it is refreshed.
+ * @author messfish
+ *
+ */
+public class ViewHandlerTest {
+
+	private static final int NUM_OF_TUPLES = 1000; // the tuples in the table.
+	private DatabaseFixture db; // the database of the table.
+	
+	/**
+	 * This method tests the query on the view after an insertion and a
+	 * deletion on the base table.
+	 */
+	@Test
+	public void testStaleView() throws IOException {
+		setUp("viewhandlertest");
+		db.run("CREATE MATERIALIZED VIEW V AS SELECT S.A , S.C , COUNT ( * ) AS N , "
+				+ "SUM ( S.D ) AS T FROM S GROUP BY S.A , S.C");
+		String query = "SELECT S.A , COUNT ( * ) AS N FROM S GROUP BY S.A";
+		assertEquals(100L, (long)count(query).get(1L));
+		db.run("INSERT INTO S VALUES ( 1 , \"x\" , 5000 ) , ( 1 , \"y\" , 5001 )");
+		assertEquals(102L, (long)count(query).get(1L));
+		db.run("REFRESH MATERIALIZED VIEW V");
+		assertEquals(102L, (long)count(query).get(1L));
+		/* the query could not use the view, so the whole table is read. */
+		assertEquals(102L, (long)count("SELECT S.A , COUNT ( * ) AS N FROM S "
+				+ "WHERE S.D >= 0 GROUP BY S.A").get(1L));
+		db.run("DELETE FROM S WHERE S.D = 5000");
+		assertEquals(101L, (long)count(query).get(1L));
+		db.run("REFRESH MATERIALIZED VIEW V");
+		assertEquals(101L, (long)count(query).get(1L));
+		assertEquals(100L, (long)count(query).get(2L));
+		/* the views are written to their pages without a temp file. */
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+	
+	/**
+	 * This method builds the database with the table S, which has ten
+	 * values of A with the same number of tuples.
+	 * @param name the name of the directory of the database.
+	 */
+	private void setUp(String name) throws IOException {
+		db = new DatabaseFixture(name, "S A 1 C 2 D 1");
+		List<String[]> rows = new ArrayList<>();
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(i % 10), "c" + i % 3, String.valueOf(i)});
+		db.addTable("S", rows);
+	}
+	
+	/**
+	 * This method runs a query that returns two long integers for each
+	 * tuple, and reads its result file.
+	 * @param query the SQL query.
+	 * @return the map from the first value to the second.
+	 */
+	private Map<Long, Long> count(String query) throws IOException {
+		Map<Long, Long> result = new HashMap<>();
+		for(String str : db.fetch(query)) {
+			String[] array = str.split(" ");
+			result.put(Long.parseLong(array[0]), Long.parseLong(array[1]));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,75 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import SmallSQLServer.Main;
+
+/**
+ * this class is mainly used for testing whether the window functions
+ * give the same values when the partitions do not fit into the memory
+ * grant, so they are written to a file and computed by the cursors of
+ * the frames. The table S has three partitions of A, and the values of
+ * B repeat, so the tuples have peers.
+ * @author messfish
+ *
+ */
+public class WindowOperatorTest {
+
+	private static final int NUM_OF_TUPLES = 600; // the tuples in the table.
+	private DatabaseFixture db; // the database of the table.
+
+	/**
+	 * This method tests all the window functions and the kinds of frames.
+	 */
+	@Test
+	public void testSpilledPartitions() throws IOException {
+		setUp("windowoperatortest");
+		String over = " OVER ( PARTITION BY S.A ORDER BY S.B ";
+		String query = "SELECT S.D , ROW_NUMBER ( )" + over + ") AS R , "
+				+ "RANK ( )" + over + ") AS K , DENSE_RANK ( )" + over + ") AS E , "
+				+ "SUM ( S.D )" + over + ") AS T , COUNT ( * )" + over
+				+ "ROWS BETWEEN UNBOUNDED PRECEDING AND UNBOUNDED FOLLOWING ) AS N , "
+				+ "MIN ( S.D )" + over + "ROWS BETWEEN 3 PRECEDING AND 1 FOLLOWING ) AS M , "
+				+ "MAX ( S.D )" + over + "RANGE BETWEEN 2 PRECEDING AND 1 FOLLOWING ) AS X , "
+				+ "AVG ( S.D )" + over + "RANGE BETWEEN 1 FOLLOWING AND 3 FOLLOWING ) AS V , "
+				+ "SUM ( S.D )" + over + "ROWS BETWEEN 2 FOLLOWING AND 1 FOLLOWING ) AS Z , "
+				+ "LAG ( S.D , 2 , 0 )" + over + ") AS L , "
+				+ "LEAD ( S.D , 3 , 0 )" + over + ") AS U FROM S";
+		List<String> expected = db.fetch(query);
+		assertEquals(NUM_OF_TUPLES, expected.size());
+		for(String str : expected)
+			assertEquals("200", str.split(" ")[5]);
+		/* the first tuple of the partition of 0 is the one of D = 0. */
+		assertTrue(expected.get(0).startsWith("0 1 1 1 "));
+		long memory = Main.getMemory();
+		Main.setMemory(20000);
+		try {
+			assertEquals(expected, db.fetch(query));
+		} finally {
+			Main.setMemory(memory);
+		}
+		/* the sorted file and the spilled partitions are all deleted. */
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+
+	/**
+	 * This method builds the database with the table S.
+	 * @param name the name of the directory of the database.
+	 */
+	private void setUp(String name) throws IOException {
+		db = new DatabaseFixture(name, "S A 1 B 1 D 1");
+		List<String[]> rows = new ArrayList<>();
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(i % 3), String.valueOf(i % 17),
+								  String.valueOf(i)});
+		db.addTable("S", rows);
+	}
+
+}
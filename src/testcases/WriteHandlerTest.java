@@ -0,0 +1,97 @@
+package testcases;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import SmallSQLServer.Main;
+
+/**
+ * this class is mainly used for testing whether the insertions, the
+ * deletions and the updates keep the indexes right: the same changes
+ * are made to a table with a B+ tree, a hash and a bitmap index and to
+ * a copy of it without any index, then the queries answered by the
+ * indexes on the first table should give the same tuples as the ones
+ * answered by scanning the copy.
+ * @author messfish
+ *
+ */
+public class WriteHandlerTest {
+
+	private static final int NUM_OF_TUPLES = 1000; // the tuples in the table.
+	private static final String[] QUERIES = {
+		"SELECT X.A , X.B FROM X WHERE X.A = 8",
+		"SELECT * FROM X WHERE X.A >= 40 AND X.A <= 45",
+		"SELECT * FROM X WHERE X.D = 17",
+		"SELECT X.A , X.C FROM X WHERE X.E = 1",
+		"SELECT COUNT ( * ) AS N FROM X WHERE X.E = 3",
+		"SELECT * FROM X"
+	}; // the queries to compare, X is replaced by the name of the table.
+	private DatabaseFixture db; // the database of the tables.
+	
+	/**
+	 * This method tests the queries on the two tables after each change.
+	 */
+	@Test
+	public void testIndexes() throws IOException {
+		setUp("writehandlertest");
+		db.run("CREATE INDEX UA ON U ( A ) INCLUDE ( B )");
+		/* the entries sorted for the bulk load are deleted after it. */
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+		db.run("CREATE INDEX UD ON U USING HASH ( D )");
+		db.run("CREATE INDEX UE ON U USING BITMAP ( E )");
+		compare();
+		change("INSERT INTO X VALUES ( 99 , 1.25 , \"x\" , 17 , 1 ) , ( 8 , 3 , \"y\" , 7 , 3 )");
+		change("DELETE FROM X WHERE X.A = 7");
+		change("UPDATE X SET B = X.B + 1000 , A = 99 WHERE X.A = 8");
+		change("DELETE FROM X WHERE X.E = 3");
+		change("UPDATE X SET D = 5 , E = 1 WHERE X.D = 17");
+		change("INSERT INTO X VALUES ( 42 , 0.5 , \"z\" , 17 , 3 )");
+		/* the new tuples are written to the pages without a temp file. */
+		assertEquals(0, new File(Main.getTemp()).listFiles().length);
+	}
+	
+	/**
+	 * This method builds the database with the two tables of the same
+	 * tuples, U is the one with the indexes and R is the copy.
+	 * @param name the name of the directory of the database.
+	 */
+	private void setUp(String name) throws IOException {
+		db = new DatabaseFixture(name, "U A 1 B 5 C 2 D 1 E 1", "R A 1 B 5 C 2 D 1 E 1");
+		List<String[]> rows = new ArrayList<>();
+		for(int i=0;i<NUM_OF_TUPLES;i++)
+			rows.add(new String[]{String.valueOf(i % 50), String.valueOf(i * 0.5),
+								  "c" + i % 5, String.valueOf(i % 200), String.valueOf(i % 4)});
+		db.addTable("U", rows);
+		db.addTable("R", rows);
+	}
+	
+	/**
+	 * This method makes the same change to the two tables, and then
+	 * compares the queries on them.
+	 * @param query the SQL query which changes the tuples of table X.
+	 */
+	private void change(String query) throws IOException {
+		db.run(query.replace("X", "U"));
+		db.run(query.replace("X", "R"));
+		compare();
+	}
+	
+	/**
+	 * This method checks whether every query gives the same tuples on
+	 * the two tables.
+	 */
+	private void compare() throws IOException {
+		for(String query : QUERIES) {
+			List<String> indexed = db.fetch(query.replace("X", "U"));
+			List<String> scanned = db.fetch(query.replace("X", "R"));
+			assertEquals(scanned, indexed);
+		}
+	}
+
+}